@@ -133,7 +133,8 @@ public interface CaptchaValidationResponse {
     String getAction();
 
     /**
-     * Get the errors that have been set on the response
+     * Get the errors that have been set on the response.
+     * Modifying the returned array does not modify the response.
      *
      * @return The errors that are set on the response
      */
@@ -24,6 +24,16 @@
 
 package com.github.playerforcehd.gcaptchavalidator;
 
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Defines the interface between the library and a developer that utilizes it.
  * A normal developer that only wants to validate ReCaptcha responses should be satisfied by using
@@ -36,7 +46,14 @@ package com.github.playerforcehd.gcaptchavalidator;
  * validation of ReCaptcha responses.
  * <p>
  * Note that the default implementation of the {@link CaptchaValidator} deals only with immutable configuraiton.
- * Changing something will require you to create a new instance.
+ * Changing something requires to swap in a new configuration or to create a new instance.
+ * <p>
+ * Implementations of this interface have to be thread-safe, so a single instance can be shared by all threads
+ * of an application. All implementations of this library are thread-safe as long as the components they
+ * delegate to are thread-safe.
+ * <p>
+ * Every validation method is also available as an asynchronous variant that returns a
+ * {@link CompletableFuture} instead of blocking the calling thread.
  *
  * @author Pascal Zarrad
  * @since 3.0.0
@@ -97,6 +114,121 @@ public interface CaptchaValidator {
      */
     CaptchaValidationResponse validate(String response, String remoteIP);
 
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * The result if the response is valid is being returned as a {@link CaptchaValidationResponse}.
+     * <p>
+     * The remaining time until the deadline limits the request to the SiteVerify servers, including all of its
+     * retries and hedged requests. If the deadline expires before the validation has completed, a response with
+     * the {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     * is returned.
+     * <p>
+     * The default implementation runs {@link #validateAsync(String, String)} and waits for its result
+     * until the deadline expires.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     * @since 3.1.0
+     */
+    default CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        if (!deadline.isLimited()) {
+            return validate(response, remoteIP);
+        }
+
+        CompletableFuture<CaptchaValidationResponse> validation = validateAsync(response, remoteIP);
+        try {
+            return validation.get(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            validation.cancel(false);
+
+            return GCaptchaValidator.createInternalErrorResponse();
+        } catch (InterruptedException e) {
+            validation.cancel(false);
+            Thread.currentThread().interrupt();
+
+            return GCaptchaValidator.createInternalErrorResponse();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously.
+     * The returned {@link CompletableFuture} completes with the result if the response is valid as a boolean.
+     *
+     * @param response The response to validate
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    default CompletableFuture<Boolean> basicValidateAsync(String response) {
+        return basicValidateAsync(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously.
+     * The returned {@link CompletableFuture} completes with the result if the response is valid as a boolean.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    default CompletableFuture<Boolean> basicValidateAsync(String response, String remoteIP) {
+        return validateAsync(response, remoteIP).thenApply(CaptchaValidationResponse::hasSucceeded);
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously.
+     * The returned {@link CompletableFuture} completes with the result of the validation as a
+     * {@link CaptchaValidationResponse}.
+     *
+     * @param response The response to validate
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    default CompletableFuture<CaptchaValidationResponse> validateAsync(String response) {
+        return validateAsync(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously.
+     * The returned {@link CompletableFuture} completes with the result of the validation as a
+     * {@link CaptchaValidationResponse}.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    default CompletableFuture<CaptchaValidationResponse> validateAsync(String response, String remoteIP) {
+        return validateAsync(response, remoteIP, ValidationExecutors.defaultExecutor());
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * The returned {@link CompletableFuture} completes with the result of the validation as a
+     * {@link CaptchaValidationResponse}.
+     * <p>
+     * The default implementation runs {@link #validate(String, String)} on the supplied {@link Executor}.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    default CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        return CompletableFuture.supplyAsync(() -> validate(response, remoteIP), executor);
+    }
+
     /**
      * Get the {@link CaptchaValidatorConfiguration} that is currently used by this {@link CaptchaValidator}
      *
@@ -24,6 +24,7 @@
 
 package com.github.playerforcehd.gcaptchavalidator;
 
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -33,6 +34,9 @@ import java.util.Map;
  * - The secret token
  * - The site verification servers URL
  * <p>
+ * Optionally, the timeouts used when connecting to the site verification servers, when waiting for data
+ * and for a whole request can be configured.
+ * <p>
  * The default site verification URL points to Googles 'siteverify' URL as defined in the
  * ReCaptcha documentation.
  * The default ReCaptcha version that the library is expecting is version 3.
@@ -44,6 +48,27 @@ import java.util.Map;
  * @since 3.0.0
  */
 public interface CaptchaValidatorConfiguration {
+    /**
+     * The default timeout used when establishing a connection to the SiteVerify servers
+     *
+     * @since 3.1.0
+     */
+    Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * The default timeout used when waiting for data from the SiteVerify servers
+     *
+     * @since 3.1.0
+     */
+    Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default timeout of a whole request, from connecting until the response has been read
+     *
+     * @since 3.1.0
+     */
+    Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(15);
+
     /**
      * Get the configured secret token
      *
@@ -90,4 +115,76 @@ public interface CaptchaValidatorConfiguration {
      * @return This VerifierConfiguration instance
      */
     CaptchaValidatorConfiguration setHttpHeaders(Map<String, String> httpHeaders);
+
+    /**
+     * Get the timeout used when establishing a connection to the SiteVerify servers
+     *
+     * @return The connect timeout
+     * @since 3.1.0
+     */
+    default Duration getConnectTimeout() {
+        return DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    /**
+     * Set the timeout used when establishing a connection to the SiteVerify servers
+     * <p>
+     * The default implementation does not support changing the timeout.
+     *
+     * @param connectTimeout The connect timeout, must be positive
+     * @return This VerifierConfiguration instance
+     * @throws UnsupportedOperationException Thrown when the configuration does not support changing the timeout
+     * @since 3.1.0
+     */
+    default CaptchaValidatorConfiguration setConnectTimeout(Duration connectTimeout) {
+        throw new UnsupportedOperationException("This configuration does not support changing the connect timeout");
+    }
+
+    /**
+     * Get the timeout used when waiting for data from the SiteVerify servers
+     *
+     * @return The read timeout
+     * @since 3.1.0
+     */
+    default Duration getReadTimeout() {
+        return DEFAULT_READ_TIMEOUT;
+    }
+
+    /**
+     * Set the timeout used when waiting for data from the SiteVerify servers
+     * <p>
+     * The default implementation does not support changing the timeout.
+     *
+     * @param readTimeout The read timeout, must be positive
+     * @return This VerifierConfiguration instance
+     * @throws UnsupportedOperationException Thrown when the configuration does not support changing the timeout
+     * @since 3.1.0
+     */
+    default CaptchaValidatorConfiguration setReadTimeout(Duration readTimeout) {
+        throw new UnsupportedOperationException("This configuration does not support changing the read timeout");
+    }
+
+    /**
+     * Get the timeout of a whole request, from connecting until the response has been read
+     *
+     * @return The request timeout
+     * @since 3.1.0
+     */
+    default Duration getRequestTimeout() {
+        return DEFAULT_REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Set the timeout of a whole request, from connecting until the response has been read
+     * <p>
+     * The default implementation does not support changing the timeout.
+     *
+     * @param requestTimeout The request timeout, must be positive
+     * @return This VerifierConfiguration instance
+     * @throws UnsupportedOperationException Thrown when the configuration does not support changing the timeout
+     * @since 3.1.0
+     */
+    default CaptchaValidatorConfiguration setRequestTimeout(Duration requestTimeout) {
+        throw new UnsupportedOperationException("This configuration does not support changing the request timeout");
+    }
 }
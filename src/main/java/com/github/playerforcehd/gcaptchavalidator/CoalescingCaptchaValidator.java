@@ -0,0 +1,350 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CaptchaValidator} that coalesces concurrent validations of the same response.
+ * <p>
+ * Double-clicks, client retries or replays of a load-balancer often cause the same response to be validated
+ * several times within a few milliseconds. As Google accepts every response only once, all validations except
+ * the first would fail with {@link ValidationError#TIMEOUT_OR_DUPLICATE}.
+ * <p>
+ * This validator sends only one request to the wrapped {@link CaptchaValidator} for all validations of the same
+ * response and remote IP that are in flight at the same time. All of them receive the same
+ * {@link CaptchaValidationResponse}, or the same exception if the validation failed.
+ * As soon as the validation has completed, the next validation of the response is sent again.
+ * <p>
+ * Basic validations are coalesced with full validations, so they always run a full validation.
+ * <p>
+ * An instance of this validator is thread-safe as long as the wrapped {@link CaptchaValidator} is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CoalescingCaptchaValidator implements CaptchaValidator {
+    /**
+     * The validator that executes the validations
+     */
+    private final CaptchaValidator captchaValidator;
+
+    /**
+     * The validations that are currently in flight
+     */
+    private final ConcurrentMap<ValidationKey, CompletableFuture<CaptchaValidationResponse>> inFlightValidations =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The number of validations that joined a validation in flight instead of sending an own request
+     */
+    private final LongAdder coalescedValidations = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     */
+    public CoalescingCaptchaValidator(CaptchaValidator captchaValidator) {
+        this.captchaValidator = Objects.requireNonNull(captchaValidator, "captchaValidator");
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return basicValidate(response, "");
+    }
+
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        return validate(response, remoteIP).hasSucceeded();
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return validate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * If a validation of the same response and remote IP is already in flight, this call waits for it
+     * and returns its result instead of sending an own request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        return this.coalesce(
+            response,
+            remoteIP,
+            Deadline.none(),
+            () -> this.captchaValidator.validate(response, remoteIP)
+        );
+    }
+
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * <p>
+     * If a validation of the same response and remote IP is already in flight, this call waits for it
+     * until the deadline expires and returns its result instead of sending an own request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        return this.coalesce(
+            response,
+            remoteIP,
+            deadline,
+            () -> this.captchaValidator.validate(response, remoteIP, deadline)
+        );
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * <p>
+     * If a validation of the same response and remote IP is already in flight, the returned
+     * {@link CompletableFuture} completes with its result instead of sending an own request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        ValidationKey validationKey = new ValidationKey(response, remoteIP);
+        CompletableFuture<CaptchaValidationResponse> validation = new CompletableFuture<>();
+        CompletableFuture<CaptchaValidationResponse> inFlightValidation =
+            this.inFlightValidations.putIfAbsent(validationKey, validation);
+        if (inFlightValidation != null) {
+            this.coalescedValidations.increment();
+
+            return copy(inFlightValidation);
+        }
+
+        try {
+            this.captchaValidator.validateAsync(response, remoteIP, executor)
+                .whenComplete((captchaValidationResponse, throwable) -> {
+                    this.inFlightValidations.remove(validationKey, validation);
+                    if (throwable != null) {
+                        validation.completeExceptionally(throwable);
+                    } else {
+                        validation.complete(captchaValidationResponse);
+                    }
+                });
+        } catch (RuntimeException | Error e) {
+            this.inFlightValidations.remove(validationKey, validation);
+            validation.completeExceptionally(e);
+        }
+
+        return copy(validation);
+    }
+
+    /**
+     * Get the {@link CaptchaValidatorConfiguration} of the wrapped {@link CaptchaValidator}
+     *
+     * @return The {@link CaptchaValidatorConfiguration} used by the wrapped {@link CaptchaValidator}
+     */
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Get the number of validations that are currently in flight
+     *
+     * @return The number of validations in flight
+     */
+    public int getInFlightValidations() {
+        return this.inFlightValidations.size();
+    }
+
+    /**
+     * Get the number of validations that joined a validation in flight instead of sending an own request
+     *
+     * @return The number of coalesced validations since this validator has been created
+     */
+    public long getCoalescedValidations() {
+        return this.coalescedValidations.sum();
+    }
+
+    /**
+     * Run a validation, unless a validation of the same response and remote IP is already in flight.
+     *
+     * @param response   The response to validate
+     * @param remoteIP   The remote IP of the one who issued the request
+     * @param deadline   The deadline until which a validation in flight is awaited
+     * @param validation The validation by the wrapped {@link CaptchaValidator}
+     * @return The result of the own validation or the validation in flight
+     */
+    private CaptchaValidationResponse coalesce(
+        String response,
+        String remoteIP,
+        Deadline deadline,
+        Supplier<CaptchaValidationResponse> validation
+    ) {
+        ValidationKey validationKey = new ValidationKey(response, remoteIP);
+        CompletableFuture<CaptchaValidationResponse> ownValidation = new CompletableFuture<>();
+        CompletableFuture<CaptchaValidationResponse> inFlightValidation =
+            this.inFlightValidations.putIfAbsent(validationKey, ownValidation);
+        if (inFlightValidation != null) {
+            this.coalescedValidations.increment();
+
+            return join(inFlightValidation, deadline);
+        }
+
+        try {
+            CaptchaValidationResponse captchaValidationResponse = validation.get();
+            this.inFlightValidations.remove(validationKey, ownValidation);
+            ownValidation.complete(captchaValidationResponse);
+
+            return captchaValidationResponse;
+        } catch (RuntimeException | Error e) {
+            this.inFlightValidations.remove(validationKey, ownValidation);
+            ownValidation.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a validation in flight and get its result.
+     * If the validation failed, its exception is rethrown.
+     *
+     * @param validation The validation to wait for
+     * @param deadline   The deadline until which the validation is awaited
+     * @return The result of the validation, or a response with the
+     * {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     * if the deadline has expired
+     */
+    private static CaptchaValidationResponse join(
+        CompletableFuture<CaptchaValidationResponse> validation,
+        Deadline deadline
+    ) {
+        try {
+            if (!deadline.isLimited()) {
+                return validation.join();
+            }
+
+            return validation.get(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return GCaptchaValidator.createInternalErrorResponse();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return GCaptchaValidator.createInternalErrorResponse();
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Create a copy of a validation in flight that can be handed out to a caller.
+     * Completing or cancelling the copy does not affect the validation in flight.
+     *
+     * @param validation The validation to copy
+     * @return A {@link CompletableFuture} that completes with the result of the validation
+     */
+    private static CompletableFuture<CaptchaValidationResponse> copy(
+        CompletableFuture<CaptchaValidationResponse> validation
+    ) {
+        return validation.thenApply(captchaValidationResponse -> captchaValidationResponse);
+    }
+
+    /**
+     * The response and remote IP that identify a validation
+     */
+    private static final class ValidationKey {
+        /**
+         * The response to validate
+         */
+        private final String response;
+
+        /**
+         * The remote IP of the one who issued the request, never null
+         */
+        private final String remoteIP;
+
+        /**
+         * Constructor
+         *
+         * @param response The response to validate
+         * @param remoteIP The remote IP of the one who issued the request
+         */
+        private ValidationKey(String response, String remoteIP) {
+            this.response = response;
+            this.remoteIP = remoteIP == null ? "" : remoteIP;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ValidationKey validationKey = (ValidationKey) o;
+
+            return Objects.equals(this.response, validationKey.response)
+                && this.remoteIP.equals(validationKey.remoteIP);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(this.response) + this.remoteIP.hashCode();
+        }
+    }
+}
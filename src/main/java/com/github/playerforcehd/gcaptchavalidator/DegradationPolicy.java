@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides the result of a validation while the SiteVerify servers are unavailable.
+ * <p>
+ * A policy is asked once for every validation that a {@link DegradingCaptchaValidator} cannot send to Google.
+ * It must decide without blocking and in constant time, as it is called for every request during an outage.
+ *
+ * @author Pascal Zarrad
+ * @see DegradingCaptchaValidator
+ * @since 3.1.0
+ */
+@FunctionalInterface
+public interface DegradationPolicy {
+    /**
+     * Create a policy that rejects every validation.
+     *
+     * @return The created {@link DegradationPolicy}
+     */
+    static DegradationPolicy failClosed() {
+        return action -> false;
+    }
+
+    /**
+     * Create a policy that lets every validation pass.
+     *
+     * @return The created {@link DegradationPolicy}
+     */
+    static DegradationPolicy failOpen() {
+        return action -> true;
+    }
+
+    /**
+     * Create a policy that lets a random sample of the validations pass and rejects the others.
+     *
+     * @param sampleRate The rate of validations that pass, between 0 and 1
+     * @return The created {@link DegradationPolicy}
+     */
+    static DegradationPolicy failOpenSample(float sampleRate) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("The sample rate must be between 0 and 1");
+        }
+
+        return action -> ThreadLocalRandom.current().nextFloat() < sampleRate;
+    }
+
+    /**
+     * Create a policy that lets the validations of ReCaptcha 3.0 actions pass whose risk tier is below a limit.
+     * Validations of unknown actions or without an action are rejected.
+     *
+     * @param actionRiskTiers The risk tier of every known action, higher tiers are riskier
+     * @param riskTier        The risk tier from which on validations are rejected
+     * @return The created {@link DegradationPolicy}
+     */
+    static DegradationPolicy failOpenBelowRiskTier(Map<String, Integer> actionRiskTiers, int riskTier) {
+        Map<String, Integer> riskTiers = new HashMap<>(Objects.requireNonNull(actionRiskTiers, "actionRiskTiers"));
+
+        return action -> {
+            Integer actionRiskTier = action == null ? null : riskTiers.get(action);
+
+            return actionRiskTier != null && actionRiskTier < riskTier;
+        };
+    }
+
+    /**
+     * Decide if a validation passes while the SiteVerify servers are unavailable.
+     *
+     * @param action The expected ReCaptcha 3.0 action of the validation, or null if it is unknown
+     * @return true if the validation passes, false if it is rejected
+     */
+    boolean allows(String action);
+}
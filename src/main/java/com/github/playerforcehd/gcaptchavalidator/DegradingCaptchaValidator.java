@@ -0,0 +1,581 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.FingerprintTable;
+import com.github.playerforcehd.gcaptchavalidator.cache.ResponseFingerprint;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineExceededException;
+import com.github.playerforcehd.gcaptchavalidator.request.RequestFailureType;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreaker;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreakerState;
+import com.github.playerforcehd.gcaptchavalidator.util.validation.ResponsePrefilter;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CaptchaValidator} that decides validations by a {@link DegradationPolicy} while the SiteVerify servers
+ * are unavailable, instead of failing every validation with an internal error.
+ * <p>
+ * The health of the SiteVerify servers is tracked by a {@link CircuitBreaker}. Only failures of the SiteVerify
+ * servers count as failed calls: connections that could not be established or have been closed, timeouts,
+ * 5xx responses and 429 Too Many Requests. Requests that have been rejected locally, for example by a rate
+ * limit, a concurrency limit or an open circuit breaker of the request handler, and requests that exceeded the
+ * deadline of the caller say nothing about the SiteVerify servers and are not counted as failed. Otherwise,
+ * flooding the validator could switch it to degraded mode. Results with the
+ * {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR} whose cause is unknown, like a validation that has been
+ * given up because the deadline expired while waiting for it, count as failed, as they can not be told apart from
+ * a slow SiteVerify server. Validations that take at least the slow call duration count as slow calls.
+ * <p>
+ * Once the failure rate or the slow call rate reaches its threshold, the breaker opens and this validator switches
+ * to degraded mode: validations are not sent to Google, but decided locally without blocking. After the open
+ * duration, a few trial validations are sent to Google again, and the validator switches back to normal mode once
+ * they succeed. A validation that fails because of the SiteVerify servers while the breaker opens or during
+ * a trial is decided locally as well.
+ * <p>
+ * A degraded validation never accepts a response that can not be valid. The response is checked by a
+ * {@link ResponsePrefilter} first, and only then the {@link DegradationPolicy} is asked. A response it lets pass
+ * is recorded in a {@link FingerprintTable}, which also holds every response Google has answered, so a replayed
+ * response is rejected with {@link ValidationError#TIMEOUT_OR_DUPLICATE}. The table can be shared with a
+ * {@link ReplayGuardingCaptchaValidator}, which may wrap this validator or be wrapped by it. This validator records
+ * responses under a fingerprint of its own, so the guard does not reject its degraded validations, and also under
+ * the fingerprint of the guard when a response passes, so the guard rejects it once Google is available again.
+ * <p>
+ * Every degraded result contains the {@link ValidationError#GCAPTCHAVALIDATOR_DEGRADED}, which can be checked with
+ * {@link #isDegradedResponse(CaptchaValidationResponse)}. Degraded results that are rejected by the policy contain
+ * the {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR} as well, so they are treated like every other failed
+ * request. Listeners of the {@link CircuitBreaker} are notified when the validator switches its mode.
+ * <p>
+ * To keep degraded results out of caches, this validator should wrap all caching validators.
+ * An instance of this validator is thread-safe as long as the wrapped {@link CaptchaValidator} and the
+ * {@link DegradationPolicy} are thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class DegradingCaptchaValidator implements CaptchaValidator {
+    /**
+     * The validator that executes the validations
+     */
+    private final CaptchaValidator captchaValidator;
+
+    /**
+     * The policy that decides validations while the SiteVerify servers are unavailable
+     */
+    private final DegradationPolicy degradationPolicy;
+
+    /**
+     * The breaker that tracks the health of the SiteVerify servers
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * The checks that reject malformed responses before the policy is asked
+     */
+    private final ResponsePrefilter responsePrefilter;
+
+    /**
+     * The fingerprints of the responses that have been answered by Google or passed a degraded validation
+     */
+    private final FingerprintTable fingerprintTable;
+
+    /**
+     * The number of validations that have been decided locally
+     */
+    private final LongAdder degradedValidations = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator  The validator that executes the validations
+     * @param degradationPolicy The policy that decides validations while the SiteVerify servers are unavailable
+     */
+    public DegradingCaptchaValidator(CaptchaValidator captchaValidator, DegradationPolicy degradationPolicy) {
+        this(captchaValidator, degradationPolicy, new CircuitBreaker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator  The validator that executes the validations
+     * @param degradationPolicy The policy that decides validations while the SiteVerify servers are unavailable
+     * @param circuitBreaker    The breaker that tracks the health of the SiteVerify servers
+     */
+    public DegradingCaptchaValidator(
+        CaptchaValidator captchaValidator,
+        DegradationPolicy degradationPolicy,
+        CircuitBreaker circuitBreaker
+    ) {
+        this(
+            captchaValidator,
+            degradationPolicy,
+            circuitBreaker,
+            new ResponsePrefilter(),
+            new FingerprintTable(FingerprintTable.DEFAULT_CAPACITY, ReplayGuardingCaptchaValidator.DEFAULT_RETENTION)
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator  The validator that executes the validations
+     * @param degradationPolicy The policy that decides validations while the SiteVerify servers are unavailable
+     * @param circuitBreaker    The breaker that tracks the health of the SiteVerify servers
+     * @param responsePrefilter The checks that reject malformed responses before the policy is asked
+     * @param fingerprintTable  The table that remembers the responses that have already been used
+     */
+    public DegradingCaptchaValidator(
+        CaptchaValidator captchaValidator,
+        DegradationPolicy degradationPolicy,
+        CircuitBreaker circuitBreaker,
+        ResponsePrefilter responsePrefilter,
+        FingerprintTable fingerprintTable
+    ) {
+        this.captchaValidator = Objects.requireNonNull(captchaValidator, "captchaValidator");
+        this.degradationPolicy = Objects.requireNonNull(degradationPolicy, "degradationPolicy");
+        this.circuitBreaker = Objects.requireNonNull(circuitBreaker, "circuitBreaker");
+        this.responsePrefilter = Objects.requireNonNull(responsePrefilter, "responsePrefilter");
+        this.fingerprintTable = Objects.requireNonNull(fingerprintTable, "fingerprintTable");
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return basicValidate(response, "");
+    }
+
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        return validate(response, remoteIP).hasSucceeded();
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return validate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * While the SiteVerify servers are unavailable, the result is decided locally without an action.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        return this.validateForAction(response, remoteIP, null);
+    }
+
+    /**
+     * Validate a Google ReCaptcha 3.0 response of an action.
+     * <p>
+     * While the SiteVerify servers are unavailable, the result is decided locally for the supplied action.
+     * The action is not compared with the action of the response.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param action   The action the response has been issued for, or null if it is unknown
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    public CaptchaValidationResponse validateForAction(String response, String remoteIP, String action) {
+        return this.execute(response, action, () -> this.captchaValidator.validate(response, remoteIP));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * <p>
+     * While the SiteVerify servers are unavailable, the result is decided locally without waiting.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        return this.execute(response, null, () -> this.captchaValidator.validate(response, remoteIP, deadline));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * <p>
+     * While the SiteVerify servers are unavailable, the returned {@link CompletableFuture} is already completed
+     * with the result decided locally.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        return this.executeAsync(
+            response,
+            null,
+            () -> this.captchaValidator.validateAsync(response, remoteIP, executor)
+        );
+    }
+
+    /**
+     * Validate a Google ReCaptcha 3.0 response of an action asynchronously.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param action   The action the response has been issued for, or null if it is unknown
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     * @see #validateForAction(String, String, String)
+     */
+    public CompletableFuture<CaptchaValidationResponse> validateForActionAsync(
+        String response,
+        String remoteIP,
+        String action
+    ) {
+        return this.executeAsync(
+            response,
+            action,
+            () -> this.captchaValidator.validateAsync(response, remoteIP, ValidationExecutors.defaultExecutor())
+        );
+    }
+
+    /**
+     * Get the {@link CaptchaValidatorConfiguration} of the wrapped {@link CaptchaValidator}
+     *
+     * @return The {@link CaptchaValidatorConfiguration} used by the wrapped {@link CaptchaValidator}
+     */
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Check if this validator is in degraded mode, because the SiteVerify servers are considered unavailable.
+     *
+     * @return true if validations are currently decided locally
+     */
+    public boolean isDegraded() {
+        return this.circuitBreaker.getState() != CircuitBreakerState.CLOSED;
+    }
+
+    /**
+     * Get the breaker that tracks the health of the SiteVerify servers
+     *
+     * @return The {@link CircuitBreaker} of this validator
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Get the number of validations that have been decided locally
+     *
+     * @return The number of degraded validations since this validator has been created
+     */
+    public long getDegradedValidations() {
+        return this.degradedValidations.sum();
+    }
+
+    /**
+     * Check if the result of a validation has been decided locally instead of by Google.
+     *
+     * @param captchaValidationResponse The result of the validation
+     * @return true if the result contains the {@link ValidationError#GCAPTCHAVALIDATOR_DEGRADED}
+     */
+    public static boolean isDegradedResponse(CaptchaValidationResponse captchaValidationResponse) {
+        return hasError(captchaValidationResponse, ValidationError.GCAPTCHAVALIDATOR_DEGRADED);
+    }
+
+    /**
+     * Execute a validation if the SiteVerify servers are available, or decide it locally otherwise.
+     *
+     * @param response   The response to validate
+     * @param action     The action the response has been issued for, or null if it is unknown
+     * @param validation The validation to execute
+     * @return The result of the validation
+     */
+    private CaptchaValidationResponse execute(
+        String response,
+        String action,
+        Supplier<CaptchaValidationResponse> validation
+    ) {
+        if (!this.circuitBreaker.tryAcquirePermission()) {
+            return this.degrade(response, action);
+        }
+
+        long start = this.circuitBreaker.nanoTime();
+        CaptchaValidationResponse captchaValidationResponse;
+        try {
+            captchaValidationResponse = validation.get();
+        } catch (RuntimeException | Error e) {
+            this.record(start, e);
+            throw e;
+        }
+
+        return this.complete(response, action, start, captchaValidationResponse);
+    }
+
+    /**
+     * Execute a validation asynchronously if the SiteVerify servers are available, or decide it locally otherwise.
+     *
+     * @param response   The response to validate
+     * @param action     The action the response has been issued for, or null if it is unknown
+     * @param validation The validation to execute
+     * @return A {@link CompletableFuture} that completes with the result of the validation
+     */
+    private CompletableFuture<CaptchaValidationResponse> executeAsync(
+        String response,
+        String action,
+        Supplier<CompletableFuture<CaptchaValidationResponse>> validation
+    ) {
+        if (!this.circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.completedFuture(this.degrade(response, action));
+        }
+
+        long start = this.circuitBreaker.nanoTime();
+        CompletableFuture<CaptchaValidationResponse> captchaValidationResponse;
+        try {
+            captchaValidationResponse = validation.get();
+        } catch (RuntimeException | Error e) {
+            this.record(start, e);
+            throw e;
+        }
+
+        return captchaValidationResponse
+            .whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    this.record(start, throwable);
+                }
+            })
+            .thenApply(result -> this.complete(response, action, start, result));
+    }
+
+    /**
+     * Record the outcome of an executed validation.
+     * If the SiteVerify servers failed and the breaker is not closed anymore, the result is decided locally.
+     *
+     * @param response                  The validated response
+     * @param action                    The action the response has been issued for, or null if it is unknown
+     * @param start                     The time in nanoseconds at which the validation started
+     * @param captchaValidationResponse The result of the validation
+     * @return The result of the validation, or the result decided locally
+     */
+    private CaptchaValidationResponse complete(
+        String response,
+        String action,
+        long start,
+        CaptchaValidationResponse captchaValidationResponse
+    ) {
+        if (captchaValidationResponse instanceof RequestFailureResponse) {
+            Throwable cause = ((RequestFailureResponse) captchaValidationResponse).getCause();
+            this.record(start, cause);
+
+            return isUnavailable(cause) && this.isDegraded()
+                ? this.degrade(response, action)
+                : captchaValidationResponse;
+        }
+        if (captchaValidationResponse != null
+            && hasError(captchaValidationResponse, ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR)) {
+            // The cause is unknown, like a wait for a slow validation that has been given up, so the failure counts
+            this.circuitBreaker.onError(this.circuitBreaker.nanoTime() - start);
+
+            return this.isDegraded() ? this.degrade(response, action) : captchaValidationResponse;
+        }
+
+        this.record(start, null);
+        if (captchaValidationResponse != null) {
+            // Google has answered, so the response must not pass a degraded validation anymore
+            this.fingerprintTable.add(degradedFingerprintOf(response));
+        }
+
+        return captchaValidationResponse;
+    }
+
+    /**
+     * Record the outcome of a validation whose permission has been acquired from the breaker.
+     * <p>
+     * Only failures of the SiteVerify servers count as failed. Validations that exceeded the deadline of the
+     * caller count as successful, so only their duration is taken into account. Other failures have been
+     * caused locally and are not recorded at all.
+     *
+     * @param start   The time in nanoseconds at which the validation started
+     * @param failure The failure of the validation, or null if the SiteVerify servers answered
+     */
+    private void record(long start, Throwable failure) {
+        long durationNanos = this.circuitBreaker.nanoTime() - start;
+        if (failure == null || isDeadlineExceeded(failure)) {
+            this.circuitBreaker.onSuccess(durationNanos);
+        } else if (isUnavailable(failure)) {
+            this.circuitBreaker.onError(durationNanos);
+        } else {
+            this.circuitBreaker.onIgnored();
+        }
+    }
+
+    /**
+     * Decide a validation locally.
+     * <p>
+     * Missing and malformed responses are always rejected, and so are responses that have already been used.
+     * The {@link DegradationPolicy} decides about all other responses.
+     *
+     * @param response The response to validate
+     * @param action   The action the response has been issued for, or null if it is unknown
+     * @return A {@link CaptchaValidationResponse} with the {@link ValidationError#GCAPTCHAVALIDATOR_DEGRADED}
+     */
+    private CaptchaValidationResponse degrade(String response, String action) {
+        this.degradedValidations.increment();
+
+        ValidationError prefilterError = this.responsePrefilter.check(response);
+        if (prefilterError != null) {
+            return createDegradedResponse(false, action, prefilterError);
+        }
+        if (!this.degradationPolicy.allows(action)) {
+            return createDegradedResponse(false, action, ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR);
+        }
+        if (!this.fingerprintTable.add(degradedFingerprintOf(response))) {
+            return createDegradedResponse(false, action, ValidationError.TIMEOUT_OR_DUPLICATE);
+        }
+        // A wrapped ReplayGuardingCaptchaValidator that shares the table rejects the response once Google is back
+        this.fingerprintTable.add(fingerprintOf(response));
+
+        return createDegradedResponse(true, action, null);
+    }
+
+    /**
+     * Create the result of a validation that has been decided locally.
+     *
+     * @param succeeded If the validation succeeded
+     * @param action    The action the response has been issued for, or null if it is unknown
+     * @param error     The error of the validation, or null if it succeeded
+     * @return A {@link CaptchaValidationResponse} with the {@link ValidationError#GCAPTCHAVALIDATOR_DEGRADED}
+     */
+    private static CaptchaValidationResponse createDegradedResponse(
+        boolean succeeded,
+        String action,
+        ValidationError error
+    ) {
+        return new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            succeeded,
+            null,
+            null,
+            "",
+            -1f,
+            action == null ? "" : action,
+            error == null
+                ? new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_DEGRADED}
+                : new ValidationError[]{error, ValidationError.GCAPTCHAVALIDATOR_DEGRADED}
+        );
+    }
+
+    /**
+     * Check if a failure has been caused by the SiteVerify servers.
+     *
+     * @param failure The failure of a validation
+     * @return true if the SiteVerify servers could not be reached, timed out, failed or throttled the request
+     */
+    private static boolean isUnavailable(Throwable failure) {
+        if (isDeadlineExceeded(failure)) {
+            return false;
+        }
+
+        RequestFailureType requestFailureType = RequestFailureType.of(failure);
+
+        return requestFailureType != RequestFailureType.OTHER;
+    }
+
+    /**
+     * Check if a failure has been caused by an expired deadline of the caller.
+     *
+     * @param failure The failure of a validation
+     * @return true if the failure is or has been caused by a {@link DeadlineExceededException}
+     */
+    private static boolean isDeadlineExceeded(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the fingerprint of a response in the {@link FingerprintTable}.
+     * It is the same as the one used by the {@link ReplayGuardingCaptchaValidator}, so the table can be shared.
+     *
+     * @param response The response
+     * @return The fingerprint of the response
+     */
+    private static long fingerprintOf(String response) {
+        return ResponseFingerprint.of(response, null).getHigh();
+    }
+
+    /**
+     * Get the 64-bit fingerprint under which this validator records a response.
+     * <p>
+     * It differs from the fingerprint used by a {@link ReplayGuardingCaptchaValidator}, so a guard that shares
+     * the table and has already recorded the response in flight does not make a degraded validation fail.
+     *
+     * @param response The response
+     * @return The fingerprint of the response for degraded validations
+     */
+    private static long degradedFingerprintOf(String response) {
+        return ResponseFingerprint.of(response, null).getLow();
+    }
+
+    /**
+     * Check if the result of a validation contains an error.
+     *
+     * @param captchaValidationResponse The result of the validation
+     * @param validationError           The error to look for
+     * @return true if the result contains the error
+     */
+    private static boolean hasError(
+        CaptchaValidationResponse captchaValidationResponse,
+        ValidationError validationError
+    ) {
+        ValidationError[] errors = captchaValidationResponse.getErrors();
+        if (errors == null) {
+            return false;
+        }
+        for (ValidationError error : errors) {
+            if (error == validationError) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -26,13 +26,27 @@ package com.github.playerforcehd.gcaptchavalidator;
 
 import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
 import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.AsyncCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.ByteBufferCaptchaRequestHandler;
 import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
 import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineCaptchaRequestHandler;
 import com.github.playerforcehd.gcaptchavalidator.request.SiteVerifyCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.serialize.BasicCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.serialize.ByteBufferCaptchaResponseDeserializer;
 import com.github.playerforcehd.gcaptchavalidator.serialize.CaptchaResponseDeserializer;
 import com.github.playerforcehd.gcaptchavalidator.serialize.SiteVerifyCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Default implementation of {@link CaptchaValidator}.
@@ -45,6 +59,19 @@ import java.util.Map;
  * <p>
  * The CaptchaValidatorConfiguration instance that is used will be immutable as soon as it has been passed
  * as a parameter to this class to prevent concurrent modifications in multi-threaded environments.
+ * To rotate a secret or switch to another verifier without rebuilding the validator, a new configuration
+ * can be swapped in with {@link #setConfiguration(CaptchaValidatorConfiguration)} at any time.
+ * Every validation reads the current configuration once, without locking, and finishes with it,
+ * even if it is replaced while the validation is in flight.
+ * <p>
+ * An instance of this validator is thread-safe as long as the used {@link CaptchaRequestHandler} and
+ * {@link CaptchaResponseDeserializer} are thread-safe, which is the case for all implementations of this library.
+ * A single instance can therefore be shared by all threads of an application.
+ * <p>
+ * Asynchronous validations use the non-blocking
+ * {@link AsyncCaptchaRequestHandler#requestAsync(CaptchaValidatorConfiguration, String, String)}
+ * when the used {@link CaptchaRequestHandler} is an {@link AsyncCaptchaRequestHandler}.
+ * Otherwise, the blocking request is run on an {@link Executor}.
  *
  * @author Pascal Zarrad
  * @since 3.0.0
@@ -61,12 +88,15 @@ public class GCaptchaValidator implements CaptchaValidator {
     private final CaptchaResponseDeserializer captchaResponseDeserializer;
 
     /**
-     * The mutable {@link CaptchaValidatorConfiguration} that defines basic configuration like:
+     * The current snapshot of the {@link CaptchaValidatorConfiguration} that defines basic configuration like:
      * - The secret
      * - The URL to the SiteVerify servers
      * - The additional HTTP headers to send
+     * <p>
+     * The snapshot is replaced as a whole, so a validation that has read it once uses a consistent configuration.
      */
-    private final CaptchaValidatorConfiguration captchaValidatorConfiguration;
+    private final AtomicReference<CaptchaValidatorConfiguration> captchaValidatorConfiguration =
+        new AtomicReference<>();
 
     // --- Constructors with manual parameters
 
@@ -78,7 +108,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     public GCaptchaValidator(String secret) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ValidatorConfiguration(secret);
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret)));
     }
 
     /**
@@ -93,7 +123,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret));
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret)));
     }
 
     /**
@@ -108,7 +138,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret));
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret)));
     }
 
     /**
@@ -125,7 +155,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret));
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(new ValidatorConfiguration(secret)));
     }
 
     /**
@@ -137,9 +167,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     public GCaptchaValidator(String secret, String siteVerifyUrl) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl)
-        );
+        ));
     }
 
     /**
@@ -156,9 +186,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl)
-        );
+        ));
     }
 
     /**
@@ -175,9 +205,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl)
-        );
+        ));
     }
 
     /**
@@ -196,9 +226,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl)
-        );
+        ));
     }
 
     /**
@@ -211,9 +241,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     public GCaptchaValidator(String secret, String siteVerifyUrl, Map<String, String> httpHeaders) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl, httpHeaders)
-        );
+        ));
     }
 
     /**
@@ -232,9 +262,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl, httpHeaders)
-        );
+        ));
     }
 
     /**
@@ -253,9 +283,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl, httpHeaders)
-        );
+        ));
     }
 
     /**
@@ -276,9 +306,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(
             new ValidatorConfiguration(secret, siteVerifyUrl, httpHeaders)
-        );
+        ));
     }
 
     // --- Constructors with CaptchaValidatorConfiguration parameter
@@ -291,7 +321,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     public GCaptchaValidator(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(captchaValidatorConfiguration);
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(captchaValidatorConfiguration));
     }
 
     /**
@@ -306,7 +336,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = new SiteVerifyCaptchaResponseDeserializer();
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(captchaValidatorConfiguration);
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(captchaValidatorConfiguration));
     }
 
     /**
@@ -321,7 +351,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = new SiteVerifyCaptchaRequestHandler();
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(captchaValidatorConfiguration);
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(captchaValidatorConfiguration));
     }
 
     /**
@@ -338,7 +368,7 @@ public class GCaptchaValidator implements CaptchaValidator {
     ) {
         this.captchaRequestHandler = captchaRequestHandler;
         this.captchaResponseDeserializer = captchaResponseDeserializer;
-        this.captchaValidatorConfiguration = new ImmutableValidatorConfiguration(captchaValidatorConfiguration);
+        this.captchaValidatorConfiguration.set(new ImmutableValidatorConfiguration(captchaValidatorConfiguration));
     }
 
     /**
@@ -356,6 +386,9 @@ public class GCaptchaValidator implements CaptchaValidator {
     /**
      * Validate a Google ReCaptcha response.
      * The result if the response is valid is being returned as a boolean.
+     * <p>
+     * If the used {@link CaptchaResponseDeserializer} is a {@link BasicCaptchaResponseDeserializer},
+     * only the success flag of the response is extracted instead of deserializing the whole response.
      *
      * @param response The response to validate
      * @param remoteIP The remote IP of the one who issued the request
@@ -363,7 +396,57 @@ public class GCaptchaValidator implements CaptchaValidator {
      */
     @Override
     public boolean basicValidate(String response, String remoteIP) {
-        return validate(response, remoteIP).hasSucceeded();
+        if (!(this.captchaResponseDeserializer instanceof BasicCaptchaResponseDeserializer)) {
+            return validate(response, remoteIP).hasSucceeded();
+        }
+
+        BasicCaptchaResponseDeserializer basicCaptchaResponseDeserializer =
+            (BasicCaptchaResponseDeserializer) this.captchaResponseDeserializer;
+        try {
+            if (this.captchaRequestHandler instanceof ByteBufferCaptchaRequestHandler) {
+                return basicCaptchaResponseDeserializer.basicDeserialize(
+                    ((ByteBufferCaptchaRequestHandler) this.captchaRequestHandler)
+                        .requestBytes(this.captchaValidatorConfiguration.get(), response, remoteIP)
+                );
+            }
+
+            return basicCaptchaResponseDeserializer.basicDeserialize(
+                this.captchaRequestHandler.request(this.captchaValidatorConfiguration.get(), response, remoteIP)
+            );
+        } catch (CaptchaRequestHandlerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously.
+     * The result if the response is valid is being returned as a boolean.
+     * <p>
+     * Like {@link #basicValidate(String, String)}, only the success flag of the response is extracted
+     * if the used {@link CaptchaResponseDeserializer} is a {@link BasicCaptchaResponseDeserializer}.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<Boolean> basicValidateAsync(String response, String remoteIP) {
+        if (!(this.captchaResponseDeserializer instanceof BasicCaptchaResponseDeserializer)) {
+            return CaptchaValidator.super.basicValidateAsync(response, remoteIP);
+        }
+
+        Executor executor = ValidationExecutors.defaultExecutor();
+        if (!(this.captchaRequestHandler instanceof AsyncCaptchaRequestHandler)) {
+            return CompletableFuture.supplyAsync(() -> basicValidate(response, remoteIP), executor);
+        }
+
+        AsyncCaptchaRequestHandler asyncCaptchaRequestHandler = (AsyncCaptchaRequestHandler) this.captchaRequestHandler;
+        BasicCaptchaResponseDeserializer basicCaptchaResponseDeserializer =
+            (BasicCaptchaResponseDeserializer) this.captchaResponseDeserializer;
+
+        return asyncCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration.get(), response, remoteIP)
+            .thenApplyAsync(basicCaptchaResponseDeserializer::basicDeserialize, executor)
+            .exceptionally(throwable -> recoverFromRequestFailure(throwable, cause -> false));
     }
 
     @Override
@@ -385,25 +468,159 @@ public class GCaptchaValidator implements CaptchaValidator {
     @Override
     public CaptchaValidationResponse validate(String response, String remoteIP) {
         try {
+            // Pass the raw bytes to the deserializer if both sides support it
+            if (this.captchaRequestHandler instanceof ByteBufferCaptchaRequestHandler
+                && this.captchaResponseDeserializer instanceof ByteBufferCaptchaResponseDeserializer) {
+                ByteBuffer requestResponse = ((ByteBufferCaptchaRequestHandler) this.captchaRequestHandler)
+                    .requestBytes(this.captchaValidatorConfiguration.get(), response, remoteIP);
+
+                return ((ByteBufferCaptchaResponseDeserializer) this.captchaResponseDeserializer)
+                    .deserialize(requestResponse);
+            }
+
             String requestResponse = this.captchaRequestHandler.request(
-                this.captchaValidatorConfiguration,
+                this.captchaValidatorConfiguration.get(),
                 response,
                 remoteIP
             );
 
             return this.captchaResponseDeserializer.deserialize(requestResponse);
         } catch (CaptchaRequestHandlerException e) {
-            return new ValidationResponse(
-                ReCaptchaVersion.VERSION_2,
-                false,
-                null,
-                null,
-                "",
-                -1f,
-                "",
-                new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+            return createInternalErrorResponse(e);
+        }
+    }
+
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * <p>
+     * If the used {@link CaptchaRequestHandler} is a {@link DeadlineCaptchaRequestHandler}, the deadline is passed
+     * to it, so it limits the request itself. Otherwise, the validation is run asynchronously and its result is
+     * awaited until the deadline expires.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     * @since 3.1.0
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        if (!deadline.isLimited()) {
+            return validate(response, remoteIP);
+        }
+        if (!(this.captchaRequestHandler instanceof DeadlineCaptchaRequestHandler)) {
+            return CaptchaValidator.super.validate(response, remoteIP, deadline);
+        }
+
+        try {
+            // Pass the raw bytes to the deserializer if both sides support it
+            if (this.captchaRequestHandler instanceof ByteBufferCaptchaRequestHandler
+                && this.captchaResponseDeserializer instanceof ByteBufferCaptchaResponseDeserializer) {
+                ByteBuffer requestResponse = ((ByteBufferCaptchaRequestHandler) this.captchaRequestHandler)
+                    .requestBytes(this.captchaValidatorConfiguration.get(), response, remoteIP, deadline);
+
+                return ((ByteBufferCaptchaResponseDeserializer) this.captchaResponseDeserializer)
+                    .deserialize(requestResponse);
+            }
+
+            String requestResponse = ((DeadlineCaptchaRequestHandler) this.captchaRequestHandler).request(
+                this.captchaValidatorConfiguration.get(),
+                response,
+                remoteIP,
+                deadline
+            );
+
+            return this.captchaResponseDeserializer.deserialize(requestResponse);
+        } catch (CaptchaRequestHandlerException e) {
+            return createInternalErrorResponse(e);
+        }
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * <p>
+     * If the used {@link CaptchaRequestHandler} is an {@link AsyncCaptchaRequestHandler}, the request
+     * is executed without blocking any thread and the response is deserialized on the supplied {@link Executor}.
+     * Otherwise, the whole validation is run on the supplied {@link Executor}.
+     * <p>
+     * Failed requests result in a {@link CaptchaValidationResponse} with the
+     * {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}, just like on {@link #validate(String, String)}.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        if (!(this.captchaRequestHandler instanceof AsyncCaptchaRequestHandler)) {
+            return CompletableFuture.supplyAsync(() -> validate(response, remoteIP), executor);
+        }
+
+        AsyncCaptchaRequestHandler asyncCaptchaRequestHandler = (AsyncCaptchaRequestHandler) this.captchaRequestHandler;
+
+        return asyncCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration.get(), response, remoteIP)
+            .thenApplyAsync(this.captchaResponseDeserializer::deserialize, executor)
+            .exceptionally(
+                throwable -> recoverFromRequestFailure(throwable, GCaptchaValidator::createInternalErrorResponse)
             );
+    }
+
+    /**
+     * Recover from an asynchronous validation that failed because the request to the SiteVerify servers failed.
+     * Any other failure is passed on.
+     *
+     * @param throwable The failure of the asynchronous validation
+     * @param fallback  Creates the result of the validation from the failure of the request
+     * @param <T>       The type of the result
+     * @return The result created by the supplied fallback
+     * @throws CompletionException Thrown when the failure has not been caused by the request
+     */
+    private static <T> T recoverFromRequestFailure(
+        Throwable throwable,
+        Function<CaptchaRequestHandlerException, T> fallback
+    ) {
+        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        if (cause instanceof CaptchaRequestHandlerException) {
+            return fallback.apply((CaptchaRequestHandlerException) cause);
         }
+
+        throw new CompletionException(cause);
+    }
+
+    /**
+     * Create the response returned when the request to the SiteVerify servers failed.
+     *
+     * @return A failed {@link CaptchaValidationResponse} with the
+     * {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     */
+    static CaptchaValidationResponse createInternalErrorResponse() {
+        return new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            false,
+            null,
+            null,
+            "",
+            -1f,
+            "",
+            new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+        );
+    }
+
+    /**
+     * Create the response returned when the request to the SiteVerify servers failed.
+     * The response keeps the failure, so it can be told apart from requests that have been rejected locally.
+     *
+     * @param cause The failure of the request
+     * @return A failed {@link CaptchaValidationResponse} with the
+     * {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     */
+    static CaptchaValidationResponse createInternalErrorResponse(CaptchaRequestHandlerException cause) {
+        return new RequestFailureResponse(cause);
     }
 
     /**
@@ -413,6 +630,25 @@ public class GCaptchaValidator implements CaptchaValidator {
      */
     @Override
     public CaptchaValidatorConfiguration getConfiguration() {
-        return this.captchaValidatorConfiguration;
+        return this.captchaValidatorConfiguration.get();
+    }
+
+    /**
+     * Replace the {@link CaptchaValidatorConfiguration} used by this {@link CaptchaValidator}.
+     * <p>
+     * The supplied configuration is copied into an immutable snapshot, so later changes to it have no effect.
+     * Validations started after this method returned use the new configuration, while validations that are
+     * in flight finish with the configuration they started with.
+     *
+     * @param captchaValidatorConfiguration The new {@link CaptchaValidatorConfiguration} to use
+     * @return The previously used {@link CaptchaValidatorConfiguration}
+     * @since 3.1.0
+     */
+    public CaptchaValidatorConfiguration setConfiguration(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        ImmutableValidatorConfiguration immutableValidatorConfiguration = new ImmutableValidatorConfiguration(
+            Objects.requireNonNull(captchaValidatorConfiguration, "captchaValidatorConfiguration")
+        );
+
+        return this.captchaValidatorConfiguration.getAndSet(immutableValidatorConfiguration);
     }
 }
@@ -24,7 +24,9 @@
 
 package com.github.playerforcehd.gcaptchavalidator;
 
-import java.util.Collections;
+import com.github.playerforcehd.gcaptchavalidator.util.request.RequestTemplate;
+
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -33,6 +35,9 @@ import java.util.Map;
  * Instances of this class do not allow to change the configuration.
  * The setters of the class will do nothing, except returning the current instance.
  * <p>
+ * The parts of a request that only depend on the configuration are compiled once into a
+ * {@link RequestTemplate} when an instance is created.
+ * <p>
  * {@inheritDoc}
  *
  * @author Pascal Zarrad
@@ -55,6 +60,26 @@ public class ImmutableValidatorConfiguration implements CaptchaValidatorConfigur
      */
     private final Map<String, String> httpHeaders;
 
+    /**
+     * The timeout used when establishing a connection to the SiteVerify servers
+     */
+    private final Duration connectTimeout;
+
+    /**
+     * The timeout used when waiting for data from the SiteVerify servers
+     */
+    private final Duration readTimeout;
+
+    /**
+     * The timeout of a whole request
+     */
+    private final Duration requestTimeout;
+
+    /**
+     * The compiled request template of this configuration
+     */
+    private final RequestTemplate requestTemplate;
+
     /**
      * Constructor
      *
@@ -63,7 +88,11 @@ public class ImmutableValidatorConfiguration implements CaptchaValidatorConfigur
     ImmutableValidatorConfiguration(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
         this.secretToken = captchaValidatorConfiguration.getSecretToken();
         this.verifierUrl = captchaValidatorConfiguration.getVerifierUrl();
-        this.httpHeaders = Collections.unmodifiableMap(captchaValidatorConfiguration.getHttpHeaders());
+        this.connectTimeout = captchaValidatorConfiguration.getConnectTimeout();
+        this.readTimeout = captchaValidatorConfiguration.getReadTimeout();
+        this.requestTimeout = captchaValidatorConfiguration.getRequestTimeout();
+        this.requestTemplate = new RequestTemplate(captchaValidatorConfiguration);
+        this.httpHeaders = this.requestTemplate.getHttpHeaders();
     }
 
     @Override
@@ -95,4 +124,44 @@ public class ImmutableValidatorConfiguration implements CaptchaValidatorConfigur
     public CaptchaValidatorConfiguration setHttpHeaders(Map<String, String> httpHeaders) {
         return this;
     }
+
+    @Override
+    public Duration getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    @Override
+    public ImmutableValidatorConfiguration setConnectTimeout(Duration connectTimeout) {
+        return this;
+    }
+
+    @Override
+    public Duration getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    @Override
+    public ImmutableValidatorConfiguration setReadTimeout(Duration readTimeout) {
+        return this;
+    }
+
+    @Override
+    public Duration getRequestTimeout() {
+        return this.requestTimeout;
+    }
+
+    @Override
+    public ImmutableValidatorConfiguration setRequestTimeout(Duration requestTimeout) {
+        return this;
+    }
+
+    /**
+     * Get the compiled request template of this configuration
+     *
+     * @return The request template of this configuration
+     * @since 3.1.0
+     */
+    public RequestTemplate getRequestTemplate() {
+        return this.requestTemplate;
+    }
 }
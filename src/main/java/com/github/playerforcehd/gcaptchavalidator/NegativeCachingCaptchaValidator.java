@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.CacheStatistics;
+import com.github.playerforcehd.gcaptchavalidator.cache.ExpiringLruCache;
+import com.github.playerforcehd.gcaptchavalidator.cache.ResponseFingerprint;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link CaptchaValidator} that remembers responses which Google has rejected as invalid for a limited time.
+ * <p>
+ * Bots tend to send the same malformed response over and over again. A response that Google has rejected with
+ * {@link ValidationError#INVALID_INPUT_RESPONSE} or {@link ValidationError#BAD_REQUEST} will never become valid,
+ * so this validator keeps the rejection for a configurable window and returns it for every further validation
+ * of the same response, regardless of the remote IP and without sending another request to Google.
+ * Other failures, like {@link ValidationError#TIMEOUT_OR_DUPLICATE} or internal errors, are not cached.
+ * <p>
+ * The cache is bounded and evicts the least recently used entries once it is full.
+ * Its entries are keyed by a {@link ResponseFingerprint} instead of the response itself.
+ * <p>
+ * An instance of this validator is thread-safe as long as the wrapped {@link CaptchaValidator} is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NegativeCachingCaptchaValidator implements CaptchaValidator {
+    /**
+     * The default time for which a rejection is cached
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    /**
+     * The default maximum number of cached rejections
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1_000;
+
+    /**
+     * The validator that executes the validations
+     */
+    private final CaptchaValidator captchaValidator;
+
+    /**
+     * The rejected validations
+     */
+    private final ExpiringLruCache<ResponseFingerprint, CaptchaValidationResponse> cache;
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     */
+    public NegativeCachingCaptchaValidator(CaptchaValidator captchaValidator) {
+        this(captchaValidator, DEFAULT_TIME_TO_LIVE, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     * @param timeToLive       The time for which a rejection is cached
+     * @param maximumSize      The maximum number of cached rejections
+     */
+    public NegativeCachingCaptchaValidator(CaptchaValidator captchaValidator, Duration timeToLive, int maximumSize) {
+        this(captchaValidator, new ExpiringLruCache<>(timeToLive, maximumSize));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     * @param cache            The cache that holds the rejected validations
+     */
+    public NegativeCachingCaptchaValidator(
+        CaptchaValidator captchaValidator,
+        ExpiringLruCache<ResponseFingerprint, CaptchaValidationResponse> cache
+    ) {
+        this.captchaValidator = Objects.requireNonNull(captchaValidator, "captchaValidator");
+        this.cache = Objects.requireNonNull(cache, "cache");
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return basicValidate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * A full validation is executed on a cache miss, so that a rejection can be cached.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a simple boolean
+     */
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        return validate(response, remoteIP).hasSucceeded();
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return validate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * If the response has been rejected as invalid before and the rejection has not expired yet,
+     * the cached rejection is returned.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        ResponseFingerprint responseFingerprint = ResponseFingerprint.of(response, null);
+        CaptchaValidationResponse cachedResponse = this.cache.get(responseFingerprint);
+        if (cachedResponse != null) {
+            return cachedResponse;
+        }
+
+        return this.store(responseFingerprint, this.captchaValidator.validate(response, remoteIP));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * <p>
+     * If the response has been rejected as invalid before and the rejection has not expired yet,
+     * the cached rejection is returned without waiting.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        ResponseFingerprint responseFingerprint = ResponseFingerprint.of(response, null);
+        CaptchaValidationResponse cachedResponse = this.cache.get(responseFingerprint);
+        if (cachedResponse != null) {
+            return cachedResponse;
+        }
+
+        return this.store(responseFingerprint, this.captchaValidator.validate(response, remoteIP, deadline));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * <p>
+     * If the response has been rejected as invalid before and the rejection has not expired yet,
+     * the returned {@link CompletableFuture} is already completed with the cached rejection.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        ResponseFingerprint responseFingerprint = ResponseFingerprint.of(response, null);
+        CaptchaValidationResponse cachedResponse = this.cache.get(responseFingerprint);
+        if (cachedResponse != null) {
+            return CompletableFuture.completedFuture(cachedResponse);
+        }
+
+        return this.captchaValidator.validateAsync(response, remoteIP, executor)
+            .thenApply(captchaValidationResponse -> this.store(responseFingerprint, captchaValidationResponse));
+    }
+
+    /**
+     * Get the {@link CaptchaValidatorConfiguration} of the wrapped {@link CaptchaValidator}
+     *
+     * @return The {@link CaptchaValidatorConfiguration} used by the wrapped {@link CaptchaValidator}
+     */
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Get a snapshot of the statistics of the cache.
+     * Every hit is a request that has not been sent to Google.
+     *
+     * @return The statistics of the cache
+     */
+    public CacheStatistics getStatistics() {
+        return this.cache.getStatistics();
+    }
+
+    /**
+     * Remove all cached rejections.
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Cache the result of a validation if Google has rejected the response as invalid.
+     *
+     * @param responseFingerprint       The fingerprint of the validated response
+     * @param captchaValidationResponse The result of the validation
+     * @return The result of the validation
+     */
+    private CaptchaValidationResponse store(
+        ResponseFingerprint responseFingerprint,
+        CaptchaValidationResponse captchaValidationResponse
+    ) {
+        if (captchaValidationResponse != null && isRejectedAsInvalid(captchaValidationResponse)) {
+            this.cache.put(responseFingerprint, captchaValidationResponse);
+        }
+
+        return captchaValidationResponse;
+    }
+
+    /**
+     * Check if Google has rejected a response as invalid.
+     *
+     * @param captchaValidationResponse The result of the validation
+     * @return true if the validation failed with {@link ValidationError#INVALID_INPUT_RESPONSE} or
+     * {@link ValidationError#BAD_REQUEST}
+     */
+    private static boolean isRejectedAsInvalid(CaptchaValidationResponse captchaValidationResponse) {
+        ValidationError[] errors = captchaValidationResponse.getErrors();
+        if (captchaValidationResponse.hasSucceeded() || errors == null) {
+            return false;
+        }
+        for (ValidationError error : errors) {
+            if (error == ValidationError.INVALID_INPUT_RESPONSE || error == ValidationError.BAD_REQUEST) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
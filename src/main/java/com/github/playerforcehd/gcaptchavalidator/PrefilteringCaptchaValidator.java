@@ -0,0 +1,258 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.validation.ResponsePrefilter;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CaptchaValidator} that rejects malformed responses locally, before any request is sent to Google.
+ * <p>
+ * Bots often submit empty responses, short junk or huge payloads. Google rejects them anyway, but
+ * every rejection costs a full request. This validator checks every response with a {@link ResponsePrefilter}
+ * first and answers responses that can never be valid immediately with
+ * {@link ValidationError#MISSING_INPUT_RESPONSE} or {@link ValidationError#INVALID_INPUT_RESPONSE}.
+ * <p>
+ * Rejecting a response synchronously does not allocate any memory. To achieve this, the responses returned
+ * for rejected validations are shared. Callers can not modify them, as
+ * {@link CaptchaValidationResponse#getErrors()} returns a copy of their errors.
+ * <p>
+ * An instance of this validator is thread-safe as long as the wrapped {@link CaptchaValidator} is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class PrefilteringCaptchaValidator implements CaptchaValidator {
+    /**
+     * The response returned for null or empty responses
+     */
+    private static final CaptchaValidationResponse MISSING_INPUT_RESPONSE = createRejectedResponse(
+        ValidationError.MISSING_INPUT_RESPONSE
+    );
+
+    /**
+     * The response returned for malformed responses
+     */
+    private static final CaptchaValidationResponse INVALID_INPUT_RESPONSE = createRejectedResponse(
+        ValidationError.INVALID_INPUT_RESPONSE
+    );
+
+    /**
+     * The validator that executes the validations
+     */
+    private final CaptchaValidator captchaValidator;
+
+    /**
+     * The checks applied to every response
+     */
+    private final ResponsePrefilter responsePrefilter;
+
+    /**
+     * The number of validations rejected because the response was missing
+     */
+    private final LongAdder missingResponses = new LongAdder();
+
+    /**
+     * The number of validations rejected because the response was malformed
+     */
+    private final LongAdder invalidResponses = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     */
+    public PrefilteringCaptchaValidator(CaptchaValidator captchaValidator) {
+        this(captchaValidator, new ResponsePrefilter());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator  The validator that executes the validations
+     * @param responsePrefilter The checks applied to every response
+     */
+    public PrefilteringCaptchaValidator(CaptchaValidator captchaValidator, ResponsePrefilter responsePrefilter) {
+        this.captchaValidator = Objects.requireNonNull(captchaValidator, "captchaValidator");
+        this.responsePrefilter = Objects.requireNonNull(responsePrefilter, "responsePrefilter");
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return basicValidate(response, "");
+    }
+
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        if (this.reject(response) != null) {
+            return false;
+        }
+
+        return this.captchaValidator.basicValidate(response, remoteIP);
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return validate(response, "");
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        ValidationError error = this.reject(response);
+        if (error == ValidationError.MISSING_INPUT_RESPONSE) {
+            return MISSING_INPUT_RESPONSE;
+        } else if (error != null) {
+            return INVALID_INPUT_RESPONSE;
+        }
+
+        return this.captchaValidator.validate(response, remoteIP);
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        ValidationError error = this.reject(response);
+        if (error == ValidationError.MISSING_INPUT_RESPONSE) {
+            return MISSING_INPUT_RESPONSE;
+        } else if (error != null) {
+            return INVALID_INPUT_RESPONSE;
+        }
+
+        return this.captchaValidator.validate(response, remoteIP, deadline);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> basicValidateAsync(String response, String remoteIP) {
+        if (this.reject(response) != null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return this.captchaValidator.basicValidateAsync(response, remoteIP);
+    }
+
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        ValidationError error = this.reject(response);
+        if (error == ValidationError.MISSING_INPUT_RESPONSE) {
+            return CompletableFuture.completedFuture(MISSING_INPUT_RESPONSE);
+        } else if (error != null) {
+            return CompletableFuture.completedFuture(INVALID_INPUT_RESPONSE);
+        }
+
+        return this.captchaValidator.validateAsync(response, remoteIP, executor);
+    }
+
+    /**
+     * Get the {@link CaptchaValidatorConfiguration} of the wrapped {@link CaptchaValidator}
+     *
+     * @return The {@link CaptchaValidatorConfiguration} used by the wrapped {@link CaptchaValidator}
+     */
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Get the checks applied to every response
+     *
+     * @return The {@link ResponsePrefilter} of this validator
+     */
+    public ResponsePrefilter getResponsePrefilter() {
+        return this.responsePrefilter;
+    }
+
+    /**
+     * Get the number of validations that have been rejected because the response was null or empty
+     *
+     * @return The number of validations rejected with {@link ValidationError#MISSING_INPUT_RESPONSE}
+     */
+    public long getMissingResponses() {
+        return this.missingResponses.sum();
+    }
+
+    /**
+     * Get the number of validations that have been rejected because the response was malformed
+     *
+     * @return The number of validations rejected with {@link ValidationError#INVALID_INPUT_RESPONSE}
+     */
+    public long getInvalidResponses() {
+        return this.invalidResponses.sum();
+    }
+
+    /**
+     * Get the number of requests to Google that have been saved by rejecting responses locally
+     *
+     * @return The number of rejected validations since this validator has been created
+     */
+    public long getRejectedValidations() {
+        return this.getMissingResponses() + this.getInvalidResponses();
+    }
+
+    /**
+     * Check a response and count it if it is rejected.
+     *
+     * @param response The response to check
+     * @return null if the response passes the checks, otherwise the {@link ValidationError} it is rejected with
+     */
+    private ValidationError reject(String response) {
+        ValidationError error = this.responsePrefilter.check(response);
+        if (error == ValidationError.MISSING_INPUT_RESPONSE) {
+            this.missingResponses.increment();
+        } else if (error != null) {
+            this.invalidResponses.increment();
+        }
+
+        return error;
+    }
+
+    /**
+     * Create the shared response returned for rejected validations.
+     *
+     * @param error The error the validation is rejected with
+     * @return A failed {@link CaptchaValidationResponse} with the given error
+     */
+    private static CaptchaValidationResponse createRejectedResponse(ValidationError error) {
+        return new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            false,
+            null,
+            null,
+            "",
+            -1f,
+            "",
+            new ValidationError[]{error}
+        );
+    }
+}
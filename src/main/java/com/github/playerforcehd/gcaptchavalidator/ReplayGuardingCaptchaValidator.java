@@ -0,0 +1,341 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.FingerprintTable;
+import com.github.playerforcehd.gcaptchavalidator.cache.ResponseFingerprint;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CaptchaValidator} that rejects responses which have already been sent to Google without
+ * sending them again.
+ * <p>
+ * Google accepts every response only once. Attackers that replay harvested responses at high rates would
+ * cost a request to Google for every replay, just to receive {@link ValidationError#TIMEOUT_OR_DUPLICATE}.
+ * This validator records a fingerprint of every response it passes on in a {@link FingerprintTable}
+ * and answers every further validation of the response with {@link ValidationError#TIMEOUT_OR_DUPLICATE},
+ * regardless of the remote IP and without any request.
+ * <p>
+ * If a validation fails with {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR} or an exception,
+ * Google may not have seen the response, so its fingerprint is removed again to allow a retry.
+ * Empty responses are never recorded.
+ * <p>
+ * To keep legitimate retries working, place a {@link CachingCaptchaValidator} in front of this validator.
+ * Concurrent validations of the same response are rejected as duplicates, except for the first one,
+ * unless a {@link CoalescingCaptchaValidator} is placed in front of this validator.
+ * <p>
+ * An instance of this validator is thread-safe as long as the wrapped {@link CaptchaValidator} is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ReplayGuardingCaptchaValidator implements CaptchaValidator {
+    /**
+     * The default time for which a response is remembered.
+     * Google rejects responses that are older than two minutes anyway.
+     */
+    public static final Duration DEFAULT_RETENTION = Duration.ofMinutes(2);
+
+    /**
+     * The validator that executes the validations
+     */
+    private final CaptchaValidator captchaValidator;
+
+    /**
+     * The fingerprints of the responses that have been sent to Google
+     */
+    private final FingerprintTable fingerprintTable;
+
+    /**
+     * The number of validations that have been rejected without a request
+     */
+    private final LongAdder rejectedValidations = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     */
+    public ReplayGuardingCaptchaValidator(CaptchaValidator captchaValidator) {
+        this(captchaValidator, FingerprintTable.DEFAULT_CAPACITY, DEFAULT_RETENTION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     * @param capacity         The number of fingerprints that can be remembered, each occupies 8 bytes off-heap
+     * @param retention        The minimum time for which a response is remembered
+     */
+    public ReplayGuardingCaptchaValidator(CaptchaValidator captchaValidator, int capacity, Duration retention) {
+        this(captchaValidator, new FingerprintTable(capacity, retention));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     * @param fingerprintTable The table that records the fingerprints of the responses
+     */
+    public ReplayGuardingCaptchaValidator(CaptchaValidator captchaValidator, FingerprintTable fingerprintTable) {
+        this.captchaValidator = Objects.requireNonNull(captchaValidator, "captchaValidator");
+        this.fingerprintTable = Objects.requireNonNull(fingerprintTable, "fingerprintTable");
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return basicValidate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * A full validation is executed, so that failed requests can be told apart from rejected responses.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a simple boolean
+     */
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        return validate(response, remoteIP).hasSucceeded();
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return validate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * <p>
+     * If the response has already been sent to Google, a response with the
+     * {@link ValidationError#TIMEOUT_OR_DUPLICATE} is returned without sending a request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        return this.guard(response, () -> this.captchaValidator.validate(response, remoteIP));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response within a deadline.
+     * <p>
+     * If the response has already been sent to Google, a response with the
+     * {@link ValidationError#TIMEOUT_OR_DUPLICATE} is returned without sending a request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param deadline The deadline until which the validation has to complete
+     * @return The result of the external validation as a {@link CaptchaValidationResponse}
+     */
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        return this.guard(response, () -> this.captchaValidator.validate(response, remoteIP, deadline));
+    }
+
+    /**
+     * Validate a Google ReCaptcha response asynchronously using the supplied {@link Executor}.
+     * <p>
+     * If the response has already been sent to Google, the returned {@link CompletableFuture} is already
+     * completed with a response with the {@link ValidationError#TIMEOUT_OR_DUPLICATE}.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @param executor The {@link Executor} used to run the validation
+     * @return A {@link CompletableFuture} that completes with the result of the external validation
+     */
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        if (response == null || response.isEmpty()) {
+            return this.captchaValidator.validateAsync(response, remoteIP, executor);
+        }
+
+        long fingerprint = fingerprintOf(response);
+        if (!this.fingerprintTable.add(fingerprint)) {
+            this.rejectedValidations.increment();
+
+            return CompletableFuture.completedFuture(createDuplicateResponse());
+        }
+
+        CompletableFuture<CaptchaValidationResponse> validation;
+        try {
+            validation = this.captchaValidator.validateAsync(response, remoteIP, executor);
+        } catch (RuntimeException | Error e) {
+            this.fingerprintTable.remove(fingerprint);
+
+            throw e;
+        }
+
+        return validation.whenComplete((captchaValidationResponse, throwable) -> {
+            if (throwable != null) {
+                this.fingerprintTable.remove(fingerprint);
+            } else {
+                this.forgetIfNotSeen(fingerprint, captchaValidationResponse);
+            }
+        });
+    }
+
+    /**
+     * Get the {@link CaptchaValidatorConfiguration} of the wrapped {@link CaptchaValidator}
+     *
+     * @return The {@link CaptchaValidatorConfiguration} used by the wrapped {@link CaptchaValidator}
+     */
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Get the number of validations that have been rejected as replays without sending a request
+     *
+     * @return The number of rejected validations since this validator has been created
+     */
+    public long getRejectedValidations() {
+        return this.rejectedValidations.sum();
+    }
+
+    /**
+     * Get the table that records the fingerprints of the responses
+     *
+     * @return The fingerprint table
+     */
+    public FingerprintTable getFingerprintTable() {
+        return this.fingerprintTable;
+    }
+
+    /**
+     * Run a validation unless its response has already been sent to Google.
+     *
+     * @param response   The response to validate
+     * @param validation The validation by the wrapped {@link CaptchaValidator}
+     * @return The result of the validation, or a response with the {@link ValidationError#TIMEOUT_OR_DUPLICATE}
+     */
+    private CaptchaValidationResponse guard(String response, Supplier<CaptchaValidationResponse> validation) {
+        if (response == null || response.isEmpty()) {
+            return validation.get();
+        }
+
+        long fingerprint = fingerprintOf(response);
+        if (!this.fingerprintTable.add(fingerprint)) {
+            this.rejectedValidations.increment();
+
+            return createDuplicateResponse();
+        }
+
+        CaptchaValidationResponse captchaValidationResponse;
+        try {
+            captchaValidationResponse = validation.get();
+        } catch (RuntimeException | Error e) {
+            this.fingerprintTable.remove(fingerprint);
+
+            throw e;
+        }
+
+        return this.forgetIfNotSeen(fingerprint, captchaValidationResponse);
+    }
+
+    /**
+     * Remove the fingerprint of a response if the validation failed before Google could see it.
+     *
+     * @param fingerprint               The fingerprint of the response
+     * @param captchaValidationResponse The result of the validation
+     * @return The result of the validation
+     */
+    private CaptchaValidationResponse forgetIfNotSeen(
+        long fingerprint,
+        CaptchaValidationResponse captchaValidationResponse
+    ) {
+        if (captchaValidationResponse == null || hasInternalError(captchaValidationResponse)) {
+            this.fingerprintTable.remove(fingerprint);
+        }
+
+        return captchaValidationResponse;
+    }
+
+    /**
+     * Get the 64-bit fingerprint of a response.
+     *
+     * @param response The response
+     * @return The fingerprint of the response
+     */
+    private static long fingerprintOf(String response) {
+        return ResponseFingerprint.of(response, null).getHigh();
+    }
+
+    /**
+     * Check if a validation failed because of an internal error.
+     *
+     * @param captchaValidationResponse The result of the validation
+     * @return true if the validation failed with the {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     */
+    private static boolean hasInternalError(CaptchaValidationResponse captchaValidationResponse) {
+        ValidationError[] errors = captchaValidationResponse.getErrors();
+        if (errors == null) {
+            return false;
+        }
+        for (ValidationError error : errors) {
+            if (error == ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Create the response returned for a response that has already been sent to Google.
+     *
+     * @return A failed {@link CaptchaValidationResponse} with the {@link ValidationError#TIMEOUT_OR_DUPLICATE}
+     */
+    private static CaptchaValidationResponse createDuplicateResponse() {
+        return new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            false,
+            null,
+            null,
+            "",
+            -1f,
+            "",
+            new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE}
+        );
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+
+import java.util.Date;
+
+/**
+ * The {@link CaptchaValidationResponse} of a validation whose request to the SiteVerify servers failed.
+ * <p>
+ * It looks like every other response with the {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR},
+ * but keeps the failure of the request, so decorating validators can tell apart a failure of the SiteVerify
+ * servers from a request that has been rejected locally.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class RequestFailureResponse implements CaptchaValidationResponse {
+    /**
+     * The failure of the request
+     */
+    private final CaptchaRequestHandlerException cause;
+
+    /**
+     * Constructor
+     *
+     * @param cause The failure of the request
+     */
+    RequestFailureResponse(CaptchaRequestHandlerException cause) {
+        this.cause = cause;
+    }
+
+    @Override
+    public ReCaptchaVersion getReCaptchaVersion() {
+        return ReCaptchaVersion.VERSION_2;
+    }
+
+    @Override
+    public boolean hasSucceeded() {
+        return false;
+    }
+
+    @Override
+    public Date getChallengeTimestamp() {
+        return null;
+    }
+
+    @Override
+    public ClientType getClientType() {
+        return null;
+    }
+
+    @Override
+    public String getHostnameOrPackageName() {
+        return "";
+    }
+
+    @Override
+    public float getScore() {
+        return -1f;
+    }
+
+    @Override
+    public String getAction() {
+        return "";
+    }
+
+    @Override
+    public ValidationError[] getErrors() {
+        return new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR};
+    }
+
+    /**
+     * Get the failure of the request
+     *
+     * @return The failure of the request
+     */
+    CaptchaRequestHandlerException getCause() {
+        return this.cause;
+    }
+}
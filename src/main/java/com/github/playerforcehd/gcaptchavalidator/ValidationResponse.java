@@ -34,6 +34,9 @@ import java.util.Date;
  * An implementation of the {@link CaptchaValidationResponse}.
  * <p>
  * Take a look on the {@link CaptchaValidationResponse} documentation to see the public API.
+ * <p>
+ * The errors and the challenge timestamp are returned as copies, so a caller can not modify a response.
+ * This allows validators to return the same instance to many callers, for example from a cache.
  *
  * @author Pascal Zarrad
  * @see com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse
@@ -125,7 +128,7 @@ public final class ValidationResponse implements CaptchaValidationResponse {
 
     @Override
     public Date getChallengeTimestamp() {
-        return this.challengeTimestamp;
+        return this.challengeTimestamp != null ? (Date) this.challengeTimestamp.clone() : null;
     }
 
     @Override
@@ -150,6 +153,7 @@ public final class ValidationResponse implements CaptchaValidationResponse {
 
     @Override
     public ValidationError[] getErrors() {
-        return this.errors;
+        // Empty arrays can not be modified, so they are returned without copying them
+        return this.errors == null || this.errors.length == 0 ? this.errors : this.errors.clone();
     }
 }
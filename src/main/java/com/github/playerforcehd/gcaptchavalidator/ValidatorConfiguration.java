@@ -24,6 +24,7 @@
 
 package com.github.playerforcehd.gcaptchavalidator;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,6 +55,21 @@ public class ValidatorConfiguration implements CaptchaValidatorConfiguration {
      */
     private Map<String, String> httpHeaders;
 
+    /**
+     * The timeout used when establishing a connection to the SiteVerify servers
+     */
+    private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * The timeout used when waiting for data from the SiteVerify servers
+     */
+    private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+
+    /**
+     * The timeout of a whole request
+     */
+    private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
     /**
      * Constructor
      *
@@ -149,4 +165,55 @@ public class ValidatorConfiguration implements CaptchaValidatorConfiguration {
 
         return this;
     }
+
+    @Override
+    public Duration getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    @Override
+    public ValidatorConfiguration setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = requirePositive(connectTimeout, "connectTimeout");
+
+        return this;
+    }
+
+    @Override
+    public Duration getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    @Override
+    public ValidatorConfiguration setReadTimeout(Duration readTimeout) {
+        this.readTimeout = requirePositive(readTimeout, "readTimeout");
+
+        return this;
+    }
+
+    @Override
+    public Duration getRequestTimeout() {
+        return this.requestTimeout;
+    }
+
+    @Override
+    public ValidatorConfiguration setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requirePositive(requestTimeout, "requestTimeout");
+
+        return this;
+    }
+
+    /**
+     * Check that a timeout is positive.
+     *
+     * @param timeout The timeout to check
+     * @param name    The name of the timeout
+     * @return The supplied timeout
+     */
+    private static Duration requirePositive(Duration timeout, String name) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("The " + name + " must be positive");
+        }
+
+        return timeout;
+    }
 }
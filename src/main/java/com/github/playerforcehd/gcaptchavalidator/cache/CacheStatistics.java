@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+/**
+ * An immutable snapshot of the statistics of a cache.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public final class CacheStatistics {
+    /**
+     * The number of lookups that found an entry
+     */
+    private final long hitCount;
+
+    /**
+     * The number of lookups that found no entry
+     */
+    private final long missCount;
+
+    /**
+     * The number of entries that have been evicted because the cache was full
+     */
+    private final long evictionCount;
+
+    /**
+     * The number of entries that have been removed because they expired
+     */
+    private final long expirationCount;
+
+    /**
+     * The number of entries in the cache
+     */
+    private final int size;
+
+    /**
+     * Constructor
+     *
+     * @param hitCount        The number of lookups that found an entry
+     * @param missCount       The number of lookups that found no entry
+     * @param evictionCount   The number of entries that have been evicted because the cache was full
+     * @param expirationCount The number of entries that have been removed because they expired
+     * @param size            The number of entries in the cache
+     */
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, long expirationCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+    }
+
+    /**
+     * Get the number of lookups that found an entry
+     *
+     * @return The number of hits
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Get the number of lookups that found no entry
+     *
+     * @return The number of misses
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Get the number of lookups
+     *
+     * @return The number of hits and misses
+     */
+    public long getRequestCount() {
+        return this.hitCount + this.missCount;
+    }
+
+    /**
+     * Get the ratio of lookups that found an entry
+     *
+     * @return The hit rate between 0 and 1, or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        long requestCount = this.getRequestCount();
+
+        return requestCount == 0 ? 0 : (double) this.hitCount / requestCount;
+    }
+
+    /**
+     * Get the number of entries that have been evicted because the cache was full
+     *
+     * @return The number of evictions
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * Get the number of entries that have been removed because they expired
+     *
+     * @return The number of expirations
+     */
+    public long getExpirationCount() {
+        return this.expirationCount;
+    }
+
+    /**
+     * Get the number of entries in the cache
+     *
+     * @return The size of the cache
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" +
+            "hitCount=" + this.hitCount +
+            ", missCount=" + this.missCount +
+            ", hitRate=" + this.getHitRate() +
+            ", evictionCount=" + this.evictionCount +
+            ", expirationCount=" + this.expirationCount +
+            ", size=" + this.size +
+            '}';
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A thread-safe cache whose entries expire a fixed time after they have been stored
+ * and which evicts the least recently used entries once it is full.
+ * <p>
+ * To avoid that all threads contend for a single lock, larger caches are split into up to
+ * {@value #MAX_SEGMENTS} segments that are locked independently. Each segment evicts its own least recently
+ * used entry, which approximates a global least recently used eviction.
+ * Expired entries are removed when they are looked up or when they are the least recently used entries
+ * of a segment that an entry is stored in.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ExpiringLruCache<K, V> {
+    /**
+     * The maximum number of segments
+     */
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * The minimum number of entries of a single segment, smaller caches use fewer segments
+     */
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    /**
+     * The segments that hold the entries
+     */
+    private final Segment<K, V>[] segments;
+
+    /**
+     * The time to live of an entry in nanoseconds
+     */
+    private final long timeToLiveNanos;
+
+    /**
+     * The source of the current time in nanoseconds
+     */
+    private final LongSupplier ticker;
+
+    /**
+     * The number of lookups that found an entry
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * The number of lookups that found no entry
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * The number of entries that have been evicted because the cache was full
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * The number of entries that have been removed because they expired
+     */
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param timeToLive  The time after which an entry expires
+     * @param maximumSize The maximum number of entries
+     */
+    public ExpiringLruCache(Duration timeToLive, int maximumSize) {
+        this(timeToLive, maximumSize, System::nanoTime);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param timeToLive  The time after which an entry expires
+     * @param maximumSize The maximum number of entries
+     * @param ticker      The source of the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    public ExpiringLruCache(Duration timeToLive, int maximumSize, LongSupplier ticker) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("The time to live must be positive");
+        }
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1");
+        }
+
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.ticker = Objects.requireNonNull(ticker, "ticker");
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maximumSize) {
+            segmentCount *= 2;
+        }
+        this.segments = newSegments(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<>(maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * Create an array that holds segments.
+     *
+     * @param length The number of segments
+     * @param <K>    The type of the keys
+     * @param <V>    The type of the values
+     * @return The created array
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int length) {
+        return (Segment<K, V>[]) new Segment<?, ?>[length];
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key The key to look up
+     * @return The value of the key or null if there is no entry or the entry has expired
+     */
+    public V get(K key) {
+        Segment<K, V> segment = this.segmentOf(key);
+        long now = this.ticker.getAsLong();
+        synchronized (segment) {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                segment.entries.remove(key);
+                this.expirationCount.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                this.missCount.increment();
+
+                return null;
+            }
+            this.hitCount.increment();
+
+            return entry.value;
+        }
+    }
+
+    /**
+     * Store the value of a key.
+     * An existing entry of the key is replaced and its time to live starts again.
+     *
+     * @param key   The key to store the value for
+     * @param value The value to store
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        Segment<K, V> segment = this.segmentOf(key);
+        long now = this.ticker.getAsLong();
+        synchronized (segment) {
+            Iterator<Entry<V>> leastRecentlyUsed = segment.entries.values().iterator();
+            while (leastRecentlyUsed.hasNext() && leastRecentlyUsed.next().isExpired(now)) {
+                leastRecentlyUsed.remove();
+                this.expirationCount.increment();
+            }
+
+            segment.entries.put(key, new Entry<>(value, now + this.timeToLiveNanos));
+            if (segment.entries.size() > segment.capacity) {
+                Iterator<Entry<V>> eldest = segment.entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+                this.evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove the entry of a key.
+     *
+     * @param key The key to remove
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = this.segmentOf(key);
+        synchronized (segment) {
+            segment.entries.remove(key);
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries, including expired entries that have not been removed yet.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Get a snapshot of the statistics of this cache.
+     *
+     * @return The statistics of this cache
+     */
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(
+            this.hitCount.sum(),
+            this.missCount.sum(),
+            this.evictionCount.sum(),
+            this.expirationCount.sum(),
+            this.size()
+        );
+    }
+
+    /**
+     * Get the segment that holds the entry of a key.
+     *
+     * @param key The key
+     * @return The segment of the key
+     */
+    private Segment<K, V> segmentOf(K key) {
+        int hash = key.hashCode();
+
+        return this.segments[(hash ^ (hash >>> 16)) & (this.segments.length - 1)];
+    }
+
+    /**
+     * A part of the cache that is locked independently of the other parts.
+     *
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     */
+    private static final class Segment<K, V> {
+        /**
+         * The entries of the segment, ordered from the least to the most recently used
+         */
+        private final Map<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * The maximum number of entries of the segment
+         */
+        private final int capacity;
+
+        /**
+         * Constructor
+         *
+         * @param capacity The maximum number of entries of the segment
+         */
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * A value and the time at which it expires.
+     *
+     * @param <V> The type of the value
+     */
+    private static final class Entry<V> {
+        /**
+         * The cached value
+         */
+        private final V value;
+
+        /**
+         * The time in nanoseconds at which the value expires
+         */
+        private final long expiresAt;
+
+        /**
+         * Constructor
+         *
+         * @param value     The cached value
+         * @param expiresAt The time in nanoseconds at which the value expires
+         */
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Check if the value has expired.
+         *
+         * @param now The current time in nanoseconds
+         * @return true if the value has expired
+         */
+        private boolean isExpired(long now) {
+            return now - this.expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed-size set of 64-bit fingerprints whose entries expire after a retention period.
+ * <p>
+ * The table is stored outside of the Java heap in a single direct {@link ByteBuffer}, which means that
+ * it occupies exactly 8 bytes per slot, regardless of how many fingerprints it holds, and causes no garbage
+ * collection work at all.
+ * <p>
+ * The slots are grouped into blocks of {@value #BLOCK_SIZE} slots that span two cache lines.
+ * A fingerprint is only stored in the block its hash points to (open addressing with a bounded probe),
+ * so every operation reads at most one block. Each slot holds 48 bits of the fingerprint and the time bucket
+ * in which it has been added. The retention is divided into {@value #RETAINED_BUCKETS} buckets, and a
+ * fingerprint expires once it is more than {@value #RETAINED_BUCKETS} buckets old.
+ * Expired and removed slots are reused. If a block is full of live fingerprints, the oldest one is evicted.
+ * <p>
+ * The blocks are guarded by a fixed number of locks, so concurrent operations on different blocks
+ * rarely contend with each other. Instances of this class are thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class FingerprintTable {
+    /**
+     * The default number of slots, which occupy 8 MiB
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The maximum number of slots, which occupy 1 GiB
+     */
+    public static final int MAX_CAPACITY = 1 << 27;
+
+    /**
+     * The number of slots of a block
+     */
+    static final int BLOCK_SIZE = 16;
+
+    /**
+     * The number of time buckets after which a fingerprint expires
+     */
+    static final int RETAINED_BUCKETS = 8;
+
+    /**
+     * The size of a slot in bytes
+     */
+    static final int SLOT_SIZE = Long.BYTES;
+
+    /**
+     * The bits of a slot that hold the time bucket
+     */
+    private static final long BUCKET_MASK = 0xFFFFL;
+
+    /**
+     * The bits of a slot that hold the fingerprint
+     */
+    private static final long FINGERPRINT_MASK = ~BUCKET_MASK;
+
+    /**
+     * The maximum number of locks
+     */
+    private static final int MAX_LOCKS = 1024;
+
+    /**
+     * The buffer that holds the slots
+     */
+    private final ByteBuffer slots;
+
+    /**
+     * The number of blocks minus one, used to map a hash to a block
+     */
+    private final int blockMask;
+
+    /**
+     * The locks that guard the blocks
+     */
+    private final Object[] locks;
+
+    /**
+     * The duration of a time bucket in milliseconds
+     */
+    private final long bucketMillis;
+
+    /**
+     * The source of the current time in milliseconds
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The number of live fingerprints that have been evicted because their block was full
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Whether the slots have been released, written while holding all locks
+     */
+    private boolean released;
+
+    /**
+     * Constructor
+     *
+     * @param capacity  The number of slots, rounded up to the next power of two
+     * @param retention The minimum time for which a fingerprint is kept
+     */
+    public FingerprintTable(int capacity, Duration retention) {
+        this(capacity, retention, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity  The number of slots, rounded up to the next power of two
+     * @param retention The minimum time for which a fingerprint is kept
+     * @param clock     The source of the current time in milliseconds, like {@link System#currentTimeMillis()}
+     */
+    public FingerprintTable(int capacity, Duration retention, LongSupplier clock) {
+        this(ByteBuffer.allocateDirect(checkCapacity(capacity) * SLOT_SIZE), retention, clock);
+    }
+
+    /**
+     * Constructor
+     * <p>
+     * Allows subclasses to supply the buffer that holds the slots.
+     * The buffer must be zeroed or contain the slots of a table with the same retention.
+     *
+     * @param slots     The buffer that holds the slots, its capacity must be a power of two multiple of a block
+     * @param retention The minimum time for which a fingerprint is kept
+     * @param clock     The source of the current time in milliseconds, like {@link System#currentTimeMillis()}
+     */
+    protected FingerprintTable(ByteBuffer slots, Duration retention, LongSupplier clock) {
+        int blocks = slots.capacity() / (BLOCK_SIZE * SLOT_SIZE);
+        if (blocks < 1 || Integer.bitCount(blocks) != 1 || slots.capacity() % (BLOCK_SIZE * SLOT_SIZE) != 0) {
+            throw new IllegalArgumentException(
+                "The capacity of the buffer must be a power of two multiple of " + BLOCK_SIZE * SLOT_SIZE + " bytes"
+            );
+        }
+        this.slots = slots.duplicate().order(ByteOrder.nativeOrder());
+        this.blockMask = blocks - 1;
+        this.locks = new Object[Math.min(blocks, MAX_LOCKS)];
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+        this.bucketMillis = checkRetention(retention);
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Add a fingerprint, unless it is already contained.
+     *
+     * @param fingerprint The fingerprint to add
+     * @return true if the fingerprint has been added, false if it was already contained
+     */
+    public boolean add(long fingerprint) {
+        long storedFingerprint = toStoredFingerprint(fingerprint);
+        long bucket = this.currentBucket();
+        int block = this.blockOf(fingerprint);
+        int blockOffset = block * BLOCK_SIZE * SLOT_SIZE;
+
+        synchronized (this.lockOf(block)) {
+            this.checkNotReleased();
+            int freeSlot = -1;
+            int oldestSlot = -1;
+            long oldestAge = -1;
+            for (int slot = 0; slot < BLOCK_SIZE; slot++) {
+                long value = this.slots.getLong(blockOffset + slot * SLOT_SIZE);
+                long age = (bucket - value) & BUCKET_MASK;
+                if (value == 0 || age > RETAINED_BUCKETS) {
+                    if (freeSlot < 0) {
+                        freeSlot = slot;
+                    }
+                    continue;
+                }
+                if ((value & FINGERPRINT_MASK) == storedFingerprint) {
+                    return false;
+                }
+                if (age > oldestAge) {
+                    oldestSlot = slot;
+                    oldestAge = age;
+                }
+            }
+
+            if (freeSlot < 0) {
+                freeSlot = oldestSlot;
+                this.evictionCount.increment();
+            }
+            this.slots.putLong(blockOffset + freeSlot * SLOT_SIZE, storedFingerprint | (bucket & BUCKET_MASK));
+
+            return true;
+        }
+    }
+
+    /**
+     * Check if a fingerprint is contained.
+     *
+     * @param fingerprint The fingerprint to look up
+     * @return true if the fingerprint is contained and has not expired yet
+     */
+    public boolean contains(long fingerprint) {
+        return this.find(fingerprint, false);
+    }
+
+    /**
+     * Remove a fingerprint.
+     *
+     * @param fingerprint The fingerprint to remove
+     * @return true if the fingerprint has been removed, false if it was not contained
+     */
+    public boolean remove(long fingerprint) {
+        return this.find(fingerprint, true);
+    }
+
+    /**
+     * Get the number of slots of this table
+     *
+     * @return The number of slots
+     */
+    public int getCapacity() {
+        return this.slots.capacity() / SLOT_SIZE;
+    }
+
+    /**
+     * Get the number of live fingerprints that have been evicted because their block was full.
+     * Evicted fingerprints are no longer recognized, so a table that evicts often should be larger.
+     *
+     * @return The number of evicted fingerprints
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    /**
+     * Release the slots of this table once no operation uses them anymore.
+     * All locks are held while the release action runs, and later operations fail with an
+     * {@link IllegalStateException}, so the action may free the memory that backs the slots.
+     * The action only runs on the first call.
+     *
+     * @param releaseAction The action that frees the slots
+     */
+    protected void release(Runnable releaseAction) {
+        this.release(releaseAction, 0);
+    }
+
+    /**
+     * Acquire the remaining locks, starting at the given one, and release the slots.
+     *
+     * @param releaseAction The action that frees the slots
+     * @param lockIndex     The index of the next lock to acquire
+     */
+    private void release(Runnable releaseAction, int lockIndex) {
+        if (lockIndex < this.locks.length) {
+            synchronized (this.locks[lockIndex]) {
+                this.release(releaseAction, lockIndex + 1);
+            }
+        } else if (!this.released) {
+            this.released = true;
+            releaseAction.run();
+        }
+    }
+
+    /**
+     * Ensure that the slots have not been released, while holding the lock of a block.
+     *
+     * @throws IllegalStateException Thrown when the slots have been released
+     */
+    private void checkNotReleased() {
+        if (this.released) {
+            throw new IllegalStateException("The fingerprint table has been closed");
+        }
+    }
+
+    /**
+     * Look up a live fingerprint and optionally remove it.
+     *
+     * @param fingerprint The fingerprint to look up
+     * @param remove      true to remove the fingerprint if it is found
+     * @return true if the fingerprint has been found
+     */
+    private boolean find(long fingerprint, boolean remove) {
+        long storedFingerprint = toStoredFingerprint(fingerprint);
+        long bucket = this.currentBucket();
+        int block = this.blockOf(fingerprint);
+        int blockOffset = block * BLOCK_SIZE * SLOT_SIZE;
+
+        synchronized (this.lockOf(block)) {
+            this.checkNotReleased();
+            for (int slot = 0; slot < BLOCK_SIZE; slot++) {
+                long value = this.slots.getLong(blockOffset + slot * SLOT_SIZE);
+                if (value != 0
+                    && (value & FINGERPRINT_MASK) == storedFingerprint
+                    && ((bucket - value) & BUCKET_MASK) <= RETAINED_BUCKETS) {
+                    if (remove) {
+                        this.slots.putLong(blockOffset + slot * SLOT_SIZE, 0);
+                    }
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the current time bucket.
+     *
+     * @return The current time bucket
+     */
+    private long currentBucket() {
+        return this.clock.getAsLong() / this.bucketMillis;
+    }
+
+    /**
+     * Get the block a fingerprint is stored in.
+     *
+     * @param fingerprint The fingerprint
+     * @return The index of the block
+     */
+    private int blockOf(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & this.blockMask;
+    }
+
+    /**
+     * Get the lock that guards a block.
+     *
+     * @param block The index of the block
+     * @return The lock of the block
+     */
+    private Object lockOf(int block) {
+        return this.locks[block & (this.locks.length - 1)];
+    }
+
+    /**
+     * Get the bits of a fingerprint that are stored in a slot.
+     * As an empty slot is zero, the stored bits are never zero.
+     *
+     * @param fingerprint The fingerprint
+     * @return The stored bits of the fingerprint
+     */
+    private static long toStoredFingerprint(long fingerprint) {
+        long storedFingerprint = fingerprint & FINGERPRINT_MASK;
+
+        return storedFingerprint == 0 ? BUCKET_MASK + 1 : storedFingerprint;
+    }
+
+    /**
+     * Round a capacity up to the next power of two multiple of a block and validate it.
+     *
+     * @param capacity The requested number of slots
+     * @return The number of slots
+     */
+    static int checkCapacity(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity must be between 1 and " + MAX_CAPACITY);
+        }
+
+        return Math.max(BLOCK_SIZE, Integer.highestOneBit(capacity - 1) << 1);
+    }
+
+    /**
+     * Validate a retention and get the duration of its time buckets.
+     *
+     * @param retention The minimum time for which a fingerprint is kept
+     * @return The duration of a time bucket in milliseconds
+     */
+    static long checkRetention(Duration retention) {
+        if (retention.toMillis() < RETAINED_BUCKETS) {
+            throw new IllegalArgumentException("The retention must be at least " + RETAINED_BUCKETS + " milliseconds");
+        }
+
+        return retention.toMillis() / RETAINED_BUCKETS;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link FingerprintTable} that is stored in a memory-mapped file and survives restarts.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes that describes the layout of the table,
+ * followed by the slots. As the time buckets of the slots are derived from the wall clock, a table that is
+ * reopened after a restart keeps recognizing the fingerprints that have been added before, until they expire.
+ * Multiple processes on the same machine can map the same file and see the fingerprints of each other.
+ * Note that the locks of a table only guard the operations within a single process, so two processes that
+ * add the same fingerprint at the very same time may both succeed.
+ * <p>
+ * The header is validated and initialized while holding an exclusive lock on the file, so a process never
+ * resizes a file that another process has mapped. The header is written in a crash-safe order: The layout and its
+ * checksum are written and flushed first, the magic number that marks the file as valid is written last. A file that
+ * has not been initialized completely is discarded and initialized as an empty table. A file whose checksum does not
+ * match, whose layout differs from the requested capacity and retention, or that has been created on a machine with
+ * a different byte order is rejected with an {@link IOException} and left untouched, as other processes may still
+ * use it. The slots themselves are written with single aligned 8-byte writes, so a crash never leaves a partially
+ * written fingerprint behind. Fingerprints that have been added shortly before a crash of the operating system may
+ * be lost, unless {@link #flush()} has been called.
+ * <p>
+ * All processes that share a file must use the same capacity and retention.
+ * The file is stored in the native byte order of the machine.
+ * <p>
+ * A table that is no longer used should be closed, which writes back its changes and unmaps the file.
+ * Operations on a closed table fail with an {@link IllegalStateException}.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class MappedFingerprintTable extends FingerprintTable implements Closeable {
+    /**
+     * The size of the header in bytes, which keeps the slots aligned to pages
+     */
+    static final int HEADER_SIZE = 4096;
+
+    /**
+     * The magic number that marks a completely initialized file, "GCVFPTBL" in ASCII
+     */
+    static final long MAGIC = 0x4743564650544246L;
+
+    /**
+     * The version of the file layout
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The offset of the magic number in the header
+     */
+    private static final int MAGIC_OFFSET = 0;
+
+    /**
+     * The offset of the version in the header
+     */
+    private static final int VERSION_OFFSET = 8;
+
+    /**
+     * The offset of the number of slots in the header
+     */
+    private static final int CAPACITY_OFFSET = 12;
+
+    /**
+     * The offset of the duration of a time bucket in the header
+     */
+    private static final int BUCKET_MILLIS_OFFSET = 16;
+
+    /**
+     * The offset of the checksum of the layout in the header
+     */
+    static final int CHECKSUM_OFFSET = 24;
+
+    /**
+     * The lock that serializes the mapping of files within this process,
+     * as a process cannot hold overlapping locks on the same file
+     */
+    private static final Object MAP_LOCK = new Object();
+
+    /**
+     * The buffer that maps the header
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * The buffer that maps the slots
+     */
+    private final MappedByteBuffer slots;
+
+    /**
+     * Whether this table has been closed, guarded by the monitor of the table
+     */
+    private boolean closed;
+
+    /**
+     * Constructor
+     * <p>
+     * Opens the table stored in the given file, or creates it if the file does not exist.
+     *
+     * @param path      The path of the file
+     * @param capacity  The number of slots, rounded up to the next power of two
+     * @param retention The minimum time for which a fingerprint is kept
+     * @throws IOException Thrown when the file cannot be opened or mapped, or is not a fingerprint table
+     */
+    public MappedFingerprintTable(Path path, int capacity, Duration retention) throws IOException {
+        this(map(path, checkCapacity(capacity), checkRetention(retention)), retention);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param buffers   The mapped header and slots
+     * @param retention The minimum time for which a fingerprint is kept
+     */
+    private MappedFingerprintTable(MappedByteBuffer[] buffers, Duration retention) {
+        super(buffers[1], retention, System::currentTimeMillis);
+        this.header = buffers[0];
+        this.slots = buffers[1];
+    }
+
+    /**
+     * Write all changes of the table to the underlying storage device.
+     * <p>
+     * The operating system writes the changes back on its own, so this is only required
+     * to survive a crash of the operating system or a power loss.
+     */
+    public synchronized void flush() {
+        if (this.closed) {
+            throw new IllegalStateException("The fingerprint table has been closed");
+        }
+        this.slots.force();
+        this.header.force();
+    }
+
+    /**
+     * Write all changes of the table to the underlying storage device and unmap the file.
+     * <p>
+     * Waits for running operations to complete. Closing a closed table has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.release(() -> {
+            this.slots.force();
+            this.header.force();
+            unmap(this.slots);
+            unmap(this.header);
+        });
+    }
+
+    /**
+     * Open and map a file, and initialize it if it does not contain a table yet.
+     *
+     * @param path         The path of the file
+     * @param capacity     The number of slots
+     * @param bucketMillis The duration of a time bucket in milliseconds
+     * @return The mapped header and slots
+     * @throws IOException Thrown when the file cannot be opened or mapped, or does not contain a table
+     *                     with the requested layout
+     */
+    private static MappedByteBuffer[] map(Path path, int capacity, long bucketMillis) throws IOException {
+        long slotsSize = (long) capacity * SLOT_SIZE;
+
+        synchronized (MAP_LOCK) {
+            try (FileChannel fileChannel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            )) {
+                FileLock fileLock = fileChannel.lock();
+                try {
+                    MappedByteBuffer header = map(fileChannel, 0, HEADER_SIZE);
+                    long magic = header.getLong(MAGIC_OFFSET);
+                    if (magic == Long.reverseBytes(MAGIC)) {
+                        throw new IOException("The file " + path + " has been created with a different byte order");
+                    }
+                    if (magic != 0 && magic != MAGIC) {
+                        throw new IOException("The file " + path + " does not contain a fingerprint table");
+                    }
+
+                    if (magic == MAGIC) {
+                        checkLayout(path, header, fileChannel.size(), capacity, bucketMillis);
+
+                        return new MappedByteBuffer[]{header, map(fileChannel, HEADER_SIZE, slotsSize)};
+                    }
+
+                    // The file has not been initialized completely, so no other process has mapped its slots
+                    fileChannel.truncate(HEADER_SIZE);
+                    MappedByteBuffer slots = map(fileChannel, HEADER_SIZE, slotsSize);
+                    slots.force();
+                    header.putInt(VERSION_OFFSET, VERSION);
+                    header.putInt(CAPACITY_OFFSET, capacity);
+                    header.putLong(BUCKET_MILLIS_OFFSET, bucketMillis);
+                    header.putLong(CHECKSUM_OFFSET, checksum(capacity, bucketMillis));
+                    header.force();
+                    header.putLong(MAGIC_OFFSET, MAGIC);
+                    header.force();
+
+                    return new MappedByteBuffer[]{header, slots};
+                } finally {
+                    fileLock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensure that an initialized file contains a table with the requested layout.
+     *
+     * @param path         The path of the file
+     * @param header       The mapped header of the file
+     * @param fileSize     The size of the file
+     * @param capacity     The number of slots
+     * @param bucketMillis The duration of a time bucket in milliseconds
+     * @throws IOException Thrown when the header is corrupted or the layout differs
+     */
+    private static void checkLayout(
+        Path path,
+        MappedByteBuffer header,
+        long fileSize,
+        int capacity,
+        long bucketMillis
+    ) throws IOException {
+        int storedVersion = header.getInt(VERSION_OFFSET);
+        int storedCapacity = header.getInt(CAPACITY_OFFSET);
+        long storedBucketMillis = header.getLong(BUCKET_MILLIS_OFFSET);
+        if (storedVersion != VERSION
+            || header.getLong(CHECKSUM_OFFSET) != checksum(storedCapacity, storedBucketMillis)) {
+            throw new IOException("The header of the fingerprint table " + path + " is corrupted");
+        }
+        if (storedCapacity != capacity || storedBucketMillis != bucketMillis) {
+            throw new IOException(
+                "The fingerprint table " + path + " has a capacity of " + storedCapacity
+                    + " slots and a retention of " + storedBucketMillis * RETAINED_BUCKETS
+                    + " milliseconds, which differs from the requested layout"
+            );
+        }
+        if (fileSize != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            throw new IOException("The size of the fingerprint table " + path + " does not match its layout");
+        }
+    }
+
+    /**
+     * Unmap a buffer immediately instead of waiting for it to be garbage collected.
+     * Java offers no public API for this, so the internal cleaner of the buffer is invoked.
+     * If that is not possible, the buffer is unmapped by the garbage collector.
+     *
+     * @param mappedByteBuffer The buffer to unmap, which must not be accessed anymore
+     */
+    private static void unmap(MappedByteBuffer mappedByteBuffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mappedByteBuffer);
+        } catch (NoSuchMethodException e) {
+            unmapLegacy(mappedByteBuffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The garbage collector unmaps the buffer
+        }
+    }
+
+    /**
+     * Unmap a buffer on Java 8, which has no {@code Unsafe.invokeCleaner}.
+     *
+     * @param mappedByteBuffer The buffer to unmap, which must not be accessed anymore
+     */
+    private static void unmapLegacy(MappedByteBuffer mappedByteBuffer) {
+        try {
+            Method cleanerMethod = mappedByteBuffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mappedByteBuffer);
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The garbage collector unmaps the buffer
+        }
+    }
+
+    /**
+     * Map a region of a file in native byte order.
+     * The file is extended with zeros if it is smaller than the region.
+     *
+     * @param fileChannel The channel of the file
+     * @param position    The position of the region
+     * @param size        The size of the region
+     * @return The mapped region
+     * @throws IOException Thrown when the region cannot be mapped
+     */
+    private static MappedByteBuffer map(FileChannel fileChannel, long position, long size) throws IOException {
+        MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        mappedByteBuffer.order(ByteOrder.nativeOrder());
+
+        return mappedByteBuffer;
+    }
+
+    /**
+     * Calculate the checksum of a layout.
+     *
+     * @param capacity     The number of slots
+     * @param bucketMillis The duration of a time bucket in milliseconds
+     * @return The checksum
+     */
+    static long checksum(int capacity, long bucketMillis) {
+        CRC32 crc32 = new CRC32();
+        long[] values = {VERSION, capacity, bucketMillis};
+        for (long value : values) {
+            for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+                crc32.update((int) (value >>> shift));
+            }
+        }
+
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A compact fingerprint of a ReCaptcha response and the remote IP it has been validated for.
+ * <p>
+ * Caches key their entries by fingerprints instead of the responses themselves.
+ * This way, no response that could still be redeemed is kept in memory and every key has the same
+ * small size, regardless of the length of the response.
+ * <p>
+ * A fingerprint consists of the first 128 bits of the SHA-256 hash of the response and the remote IP.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public final class ResponseFingerprint {
+    /**
+     * A prototype of the digest that is cloned for every fingerprint, which is cheaper than looking it up
+     */
+    private static final MessageDigest DIGEST_PROTOTYPE = createDigest();
+
+    /**
+     * The first 64 bits of the fingerprint
+     */
+    private final long high;
+
+    /**
+     * The second 64 bits of the fingerprint
+     */
+    private final long low;
+
+    /**
+     * Constructor
+     *
+     * @param high The first 64 bits of the fingerprint
+     * @param low  The second 64 bits of the fingerprint
+     */
+    public ResponseFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Create the fingerprint of a response and remote IP.
+     * A remote IP that is null is treated like an empty remote IP.
+     *
+     * @param response The response
+     * @param remoteIP The remote IP the response is validated for, can be null or empty
+     * @return The fingerprint of the response and remote IP
+     */
+    public static ResponseFingerprint of(String response, String remoteIP) {
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(response).getBytes(StandardCharsets.UTF_8));
+        // Separate the response from the remote IP, neither of them can contain a NUL character
+        digest.update((byte) 0);
+        if (remoteIP != null) {
+            digest.update(remoteIP.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] hash = digest.digest();
+
+        return new ResponseFingerprint(readLong(hash, 0), readLong(hash, 8));
+    }
+
+    /**
+     * Get the first 64 bits of the fingerprint
+     *
+     * @return The first 64 bits of the fingerprint
+     */
+    public long getHigh() {
+        return this.high;
+    }
+
+    /**
+     * Get the second 64 bits of the fingerprint
+     *
+     * @return The second 64 bits of the fingerprint
+     */
+    public long getLow() {
+        return this.low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ResponseFingerprint responseFingerprint = (ResponseFingerprint) o;
+
+        return this.high == responseFingerprint.high && this.low == responseFingerprint.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // The bits of a hash are already evenly distributed
+        return (int) this.low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", this.high, this.low);
+    }
+
+    /**
+     * Create a new SHA-256 digest.
+     *
+     * @return A new SHA-256 digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return (MessageDigest) DIGEST_PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            return createDigest();
+        }
+    }
+
+    /**
+     * Look up a new SHA-256 digest.
+     *
+     * @return A new SHA-256 digest
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Read 64 bits in big-endian order from a byte array.
+     *
+     * @param bytes  The array to read from
+     * @param offset The index of the first byte to read
+     * @return The read bits
+     */
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+
+        return value;
+    }
+}
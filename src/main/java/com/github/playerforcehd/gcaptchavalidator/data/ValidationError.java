@@ -42,7 +42,9 @@ public enum ValidationError {
     BAD_REQUEST("bad-request"),
     TIMEOUT_OR_DUPLICATE("timeout-or-duplicate"),
     // Custom error that indicates some issue with reaching the SiteVerify API or a malformed JSon response
-    GCAPTCHAVALIDATOR_INTERNAL_ERROR("gcaptchavaliator-internal-error");
+    GCAPTCHAVALIDATOR_INTERNAL_ERROR("gcaptchavaliator-internal-error"),
+    // Custom error that indicates that the result has been decided by a degradation policy instead of Google
+    GCAPTCHAVALIDATOR_DEGRADED("gcaptchavalidator-degraded");
 
     /**
      * The error that has been thrown.
@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CaptchaRequestHandler} that is able to execute requests without blocking the calling thread.
+ * <p>
+ * {@link com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator} uses
+ * {@link #requestAsync(CaptchaValidatorConfiguration, String, String)} for asynchronous validations
+ * when its handler implements this interface.
+ * Handlers that only implement {@link CaptchaRequestHandler} are run on an
+ * {@link java.util.concurrent.Executor} instead.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public interface AsyncCaptchaRequestHandler extends CaptchaRequestHandler {
+    /**
+     * Execute a request to validate a response from a client without blocking the calling thread.
+     * Note that the supplied Strings should be UTF-8,
+     * <p>
+     * If the request fails, the returned {@link CompletableFuture} is completed exceptionally
+     * with a {@link CaptchaRequestHandlerException}.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @return A {@link CompletableFuture} that completes with the response from the SiteVerify servers
+     */
+    CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    );
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CaptchaRequestHandler} that is able to return the raw bytes that the SiteVerify servers responded with.
+ * <p>
+ * {@link com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator} uses
+ * {@link #requestBytes(CaptchaValidatorConfiguration, String, String)} instead of
+ * {@link #request(CaptchaValidatorConfiguration, String, String)} when its handler implements this interface
+ * and its deserializer implements
+ * {@link com.github.playerforcehd.gcaptchavalidator.serialize.ByteBufferCaptchaResponseDeserializer}.
+ * This avoids decoding the response into an intermediate String that is parsed again afterwards.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public interface ByteBufferCaptchaRequestHandler extends CaptchaRequestHandler {
+    /**
+     * Execute a request to validate a response from a client and return the raw response body.
+     * Note that the supplied Strings should be UTF-8,
+     * <p>
+     * The remaining bytes of the returned {@link ByteBuffer} are the UTF-8 encoded response body.
+     * The caller owns the returned {@link ByteBuffer} and is allowed to consume it.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @return The raw response body from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails or the response is too large
+     */
+    ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException;
+
+    /**
+     * Execute a request to validate a response from a client that completes within a deadline
+     * and return the raw response body.
+     * <p>
+     * The default implementation only checks the deadline before the request is executed.
+     * Handlers that also implement {@link DeadlineCaptchaRequestHandler} override it to limit the request itself.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @param deadline                      The deadline until which the request has to complete
+     * @return The raw response body from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails, the response is too large
+     *                                        or the deadline has expired
+     */
+    default ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        if (deadline.isExpired()) {
+            throw CaptchaRequestHandlers.createDeadlineExceededException();
+        }
+
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class that executes requests with any {@link CaptchaRequestHandler}, using its optional capabilities
+ * if it has them and falling back to plain requests otherwise.
+ * Used by request handlers that decorate other request handlers.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class CaptchaRequestHandlers {
+    /**
+     * Constructor
+     */
+    private CaptchaRequestHandlers() {
+    }
+
+    /**
+     * Execute a request and return the raw response body.
+     * If the handler is no {@link ByteBufferCaptchaRequestHandler}, its String response is encoded as UTF-8.
+     *
+     * @param captchaRequestHandler         The handler that executes the request
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @return The raw response body from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails
+     */
+    static ByteBuffer requestBytes(
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        if (captchaRequestHandler instanceof ByteBufferCaptchaRequestHandler) {
+            return ((ByteBufferCaptchaRequestHandler) captchaRequestHandler).requestBytes(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP
+            );
+        }
+
+        return ByteBuffer.wrap(
+            captchaRequestHandler.request(captchaValidatorConfiguration, response, remoteIP)
+                .getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Execute a request within a deadline and return the raw response body.
+     * If the handler is no {@link ByteBufferCaptchaRequestHandler}, its String response is encoded as UTF-8.
+     *
+     * @param captchaRequestHandler         The handler that executes the request
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @param deadline                      The deadline until which the request has to complete
+     * @return The raw response body from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails or the deadline has expired
+     */
+    static ByteBuffer requestBytes(
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        if (captchaRequestHandler instanceof ByteBufferCaptchaRequestHandler) {
+            return ((ByteBufferCaptchaRequestHandler) captchaRequestHandler).requestBytes(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        }
+
+        return ByteBuffer.wrap(
+            request(captchaRequestHandler, captchaValidatorConfiguration, response, remoteIP, deadline)
+                .getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Execute a request asynchronously.
+     * If the handler is no {@link AsyncCaptchaRequestHandler}, its blocking request is run on
+     * {@link ValidationExecutors#defaultExecutor()}.
+     *
+     * @param captchaRequestHandler         The handler that executes the request
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @return A {@link CompletableFuture} that completes with the response from the SiteVerify servers
+     */
+    static CompletableFuture<String> requestAsync(
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        if (captchaRequestHandler instanceof AsyncCaptchaRequestHandler) {
+            return ((AsyncCaptchaRequestHandler) captchaRequestHandler).requestAsync(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP
+            );
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return captchaRequestHandler.request(captchaValidatorConfiguration, response, remoteIP);
+            } catch (CaptchaRequestHandlerException e) {
+                throw new CompletionException(e);
+            }
+        }, ValidationExecutors.defaultExecutor());
+    }
+
+    /**
+     * Execute a request within a deadline.
+     * If the handler is no {@link DeadlineCaptchaRequestHandler}, the deadline is only checked before the request
+     * is executed and the request is bound by the timeouts of the handler alone.
+     *
+     * @param captchaRequestHandler         The handler that executes the request
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @param deadline                      The deadline until which the request has to complete
+     * @return The response from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails or the deadline has expired
+     */
+    static String request(
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        if (captchaRequestHandler instanceof DeadlineCaptchaRequestHandler) {
+            return ((DeadlineCaptchaRequestHandler) captchaRequestHandler).request(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        }
+        if (deadline.isExpired()) {
+            throw createDeadlineExceededException();
+        }
+
+        return captchaRequestHandler.request(captchaValidatorConfiguration, response, remoteIP);
+    }
+
+    /**
+     * Execute a request asynchronously within a deadline.
+     * If the handler is no {@link DeadlineCaptchaRequestHandler}, the returned {@link CompletableFuture} fails
+     * with a {@link DeadlineExceededException} once the deadline expires, while the request itself goes on.
+     *
+     * @param captchaRequestHandler         The handler that executes the request
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @param deadline                      The deadline until which the request has to complete
+     * @return A {@link CompletableFuture} that completes with the response from the SiteVerify servers
+     */
+    static CompletableFuture<String> requestAsync(
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        if (captchaRequestHandler instanceof DeadlineCaptchaRequestHandler) {
+            return ((DeadlineCaptchaRequestHandler) captchaRequestHandler).requestAsync(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        }
+        if (!deadline.isLimited()) {
+            return requestAsync(captchaRequestHandler, captchaValidatorConfiguration, response, remoteIP);
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (deadline.isExpired()) {
+            result.completeExceptionally(createDeadlineExceededException());
+
+            return result;
+        }
+
+        CompletableFuture<String> request = requestAsync(
+            captchaRequestHandler,
+            captchaValidatorConfiguration,
+            response,
+            remoteIP
+        );
+        ScheduledFuture<?> expiry = ValidationExecutors.scheduler().schedule(
+            () -> result.completeExceptionally(createDeadlineExceededException()),
+            deadline.remaining(TimeUnit.NANOSECONDS),
+            TimeUnit.NANOSECONDS
+        );
+        request.whenComplete((body, throwable) -> {
+            if (throwable == null) {
+                result.complete(body);
+            } else {
+                result.completeExceptionally(unwrap(throwable));
+            }
+        });
+        result.whenComplete((body, throwable) -> {
+            expiry.cancel(false);
+            request.cancel(false);
+        });
+
+        return result;
+    }
+
+    /**
+     * Create the exception thrown when the deadline of a request has expired.
+     *
+     * @return The created exception
+     */
+    static DeadlineExceededException createDeadlineExceededException() {
+        return new DeadlineExceededException("The deadline of the request has expired");
+    }
+
+    /**
+     * Unwrap the failure of a {@link CompletableFuture}.
+     *
+     * @param throwable The failure, possibly wrapped in a {@link CompletionException}
+     * @return The actual failure
+     */
+    static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+    }
+}
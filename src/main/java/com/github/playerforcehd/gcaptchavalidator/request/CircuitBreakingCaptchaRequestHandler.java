@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreaker;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CaptchaRequestHandler} that guards another {@link CaptchaRequestHandler} with a {@link CircuitBreaker}.
+ * <p>
+ * Every request and its duration are recorded by the {@link CircuitBreaker}. Requests that throw
+ * a {@link CaptchaRequestHandlerException} count as failed. While the breaker is open, requests fail immediately
+ * with a {@link CircuitBreakerOpenException}, which validators turn into a response with the
+ * {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}.
+ * This way, no threads pile up waiting for the timeouts of a dependency that is down.
+ * <p>
+ * Requests that fail with a {@link DeadlineExceededException} are not counted as failed, as the deadline is
+ * the budget of the caller and not a failure of the SiteVerify servers. Their duration is still recorded,
+ * so they count as slow if they took long.
+ * <p>
+ * This handler supports asynchronous requests and returning raw bytes. If the wrapped handler does not support
+ * them itself, its blocking requests are run on
+ * {@link com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors#defaultExecutor()}
+ * and its String responses are encoded, respectively.
+ * <p>
+ * An instance of this handler is thread-safe as long as the wrapped handler is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CircuitBreakingCaptchaRequestHandler implements AsyncCaptchaRequestHandler,
+    ByteBufferCaptchaRequestHandler, DeadlineCaptchaRequestHandler {
+    /**
+     * The handler that executes the requests
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The breaker that guards the requests
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     */
+    public CircuitBreakingCaptchaRequestHandler(CaptchaRequestHandler captchaRequestHandler) {
+        this(captchaRequestHandler, new CircuitBreaker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param circuitBreaker        The breaker that guards the requests
+     */
+    public CircuitBreakingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        CircuitBreaker circuitBreaker
+    ) {
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.circuitBreaker = Objects.requireNonNull(circuitBreaker, "circuitBreaker");
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquirePermission();
+
+        long start = this.circuitBreaker.nanoTime();
+        boolean failed = true;
+        try {
+            String requestResponse = CaptchaRequestHandlers.request(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+            failed = false;
+
+            return requestResponse;
+        } catch (DeadlineExceededException e) {
+            failed = false;
+
+            throw e;
+        } finally {
+            this.record(start, failed);
+        }
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquirePermission();
+
+        long start = this.circuitBreaker.nanoTime();
+        boolean failed = true;
+        try {
+            ByteBuffer requestResponse = CaptchaRequestHandlers.requestBytes(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+            failed = false;
+
+            return requestResponse;
+        } catch (DeadlineExceededException e) {
+            failed = false;
+
+            throw e;
+        } finally {
+            this.record(start, failed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        if (!this.circuitBreaker.tryAcquirePermission()) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(createOpenException());
+
+            return result;
+        }
+
+        long start = this.circuitBreaker.nanoTime();
+        CompletableFuture<String> requestResponse;
+        try {
+            requestResponse = CaptchaRequestHandlers.requestAsync(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        } catch (RuntimeException | Error e) {
+            this.record(start, true);
+
+            throw e;
+        }
+
+        return requestResponse.whenComplete((body, throwable) -> this.record(
+            start,
+            throwable != null && !(CaptchaRequestHandlers.unwrap(throwable) instanceof DeadlineExceededException)
+        ));
+    }
+
+    /**
+     * Get the breaker that guards the requests of this handler
+     *
+     * @return The {@link CircuitBreaker} of this handler
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Acquire the permission to execute a request.
+     *
+     * @throws CircuitBreakerOpenException Thrown when the breaker does not permit the request
+     */
+    private void acquirePermission() throws CircuitBreakerOpenException {
+        if (!this.circuitBreaker.tryAcquirePermission()) {
+            throw createOpenException();
+        }
+    }
+
+    /**
+     * Record the outcome of a request.
+     *
+     * @param start  The time in nanoseconds at which the request has been started
+     * @param failed If the request has failed
+     */
+    private void record(long start, boolean failed) {
+        long duration = this.circuitBreaker.nanoTime() - start;
+        if (failed) {
+            this.circuitBreaker.onError(duration);
+        } else {
+            this.circuitBreaker.onSuccess(duration);
+        }
+    }
+
+    /**
+     * Create the exception thrown while the breaker does not permit requests.
+     *
+     * @return The created exception
+     */
+    private static CircuitBreakerOpenException createOpenException() {
+        return new CircuitBreakerOpenException(
+            "The circuit breaker does not permit requests to the SiteVerify servers"
+        );
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.AdaptiveConcurrencyLimiter;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CaptchaRequestHandler} that limits the number of concurrent requests of another
+ * {@link CaptchaRequestHandler} with an {@link AdaptiveConcurrencyLimiter}.
+ * <p>
+ * Instead of a fixed number of threads, the limit adapts itself to the round-trip times of the requests.
+ * When the SiteVerify servers or the network in between slow down, fewer requests are sent at the same time,
+ * so they don't queue up and overload them even more. Requests that time out, can't connect, are closed or are
+ * answered with a 5xx or 429 status decrease the limit as well. Other failures and expired deadlines of the caller
+ * don't change the limit.
+ * <p>
+ * Blocking requests that exceed the limit wait for a permit for at most the maximum wait time, which is zero by
+ * default, and the time left until their deadline. Asynchronous requests never wait. Requests that don't get a
+ * permit fail with a {@link ConcurrencyLimitExceededException}, which validators turn into a response with the
+ * {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}.
+ * <p>
+ * This handler supports asynchronous requests and returning raw bytes. If the wrapped handler does not support
+ * them itself, its blocking requests are run on
+ * {@link com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors#defaultExecutor()}
+ * and its String responses are encoded, respectively.
+ * <p>
+ * An instance of this handler is thread-safe as long as the wrapped handler is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ConcurrencyLimitingCaptchaRequestHandler implements AsyncCaptchaRequestHandler,
+    ByteBufferCaptchaRequestHandler, DeadlineCaptchaRequestHandler {
+    /**
+     * The handler that executes the requests
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The limiter that limits the concurrent requests
+     */
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * The maximum time in nanoseconds a blocking request waits for a permit
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     */
+    public ConcurrencyLimitingCaptchaRequestHandler(CaptchaRequestHandler captchaRequestHandler) {
+        this(captchaRequestHandler, new AdaptiveConcurrencyLimiter());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param concurrencyLimiter    The limiter that limits the concurrent requests
+     */
+    public ConcurrencyLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        AdaptiveConcurrencyLimiter concurrencyLimiter
+    ) {
+        this(captchaRequestHandler, concurrencyLimiter, Duration.ZERO);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param concurrencyLimiter    The limiter that limits the concurrent requests
+     * @param maxWait               The maximum time a blocking request waits for a permit
+     */
+    public ConcurrencyLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        Duration maxWait
+    ) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("The maximum wait time must not be negative");
+        }
+
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.concurrencyLimiter = Objects.requireNonNull(concurrencyLimiter, "concurrencyLimiter");
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquire(deadline);
+
+        long start = this.concurrencyLimiter.nanoTime();
+        Throwable failure = null;
+        try {
+            return CaptchaRequestHandlers.request(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        } catch (CaptchaRequestHandlerException | RuntimeException | Error e) {
+            failure = e;
+
+            throw e;
+        } finally {
+            this.release(start, failure);
+        }
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquire(deadline);
+
+        long start = this.concurrencyLimiter.nanoTime();
+        Throwable failure = null;
+        try {
+            return CaptchaRequestHandlers.requestBytes(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        } catch (CaptchaRequestHandlerException | RuntimeException | Error e) {
+            failure = e;
+
+            throw e;
+        } finally {
+            this.release(start, failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        if (!this.concurrencyLimiter.tryAcquire()) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(createLimitExceededException());
+
+            return result;
+        }
+
+        long start = this.concurrencyLimiter.nanoTime();
+        CompletableFuture<String> requestResponse;
+        try {
+            requestResponse = CaptchaRequestHandlers.requestAsync(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        } catch (RuntimeException | Error e) {
+            this.release(start, e);
+
+            throw e;
+        }
+
+        return requestResponse.whenComplete((body, throwable) -> this.release(start, throwable));
+    }
+
+    /**
+     * Get the limiter that limits the concurrent requests of this handler
+     *
+     * @return The {@link AdaptiveConcurrencyLimiter} of this handler
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    /**
+     * Acquire a permit to execute a blocking request.
+     *
+     * @param deadline The deadline of the request
+     * @throws CaptchaRequestHandlerException Thrown when no permit has been acquired in time
+     */
+    private void acquire(Deadline deadline) throws CaptchaRequestHandlerException {
+        long waitNanos = Math.min(this.maxWaitNanos, Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)));
+        boolean acquired;
+        if (waitNanos == 0) {
+            acquired = this.concurrencyLimiter.tryAcquire();
+        } else {
+            try {
+                acquired = this.concurrencyLimiter.acquire(waitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new CaptchaRequestHandlerException("Interrupted while waiting for a request permit", e);
+            }
+        }
+
+        if (!acquired) {
+            throw createLimitExceededException();
+        }
+    }
+
+    /**
+     * Release the permit of a request and report its outcome to the limiter.
+     *
+     * @param start   The time in nanoseconds at which the request has been started
+     * @param failure The failure of the request, or null if it has succeeded
+     */
+    private void release(long start, Throwable failure) {
+        if (failure == null) {
+            this.concurrencyLimiter.onSuccess(this.concurrencyLimiter.nanoTime() - start);
+        } else if (isDropped(failure)) {
+            this.concurrencyLimiter.onDropped();
+        } else {
+            this.concurrencyLimiter.onIgnored();
+        }
+    }
+
+    /**
+     * Check if a failure shows that the SiteVerify servers or the network are overloaded.
+     *
+     * @param failure The failure of a request
+     * @return true if the failure should decrease the limit
+     */
+    private static boolean isDropped(Throwable failure) {
+        if (CaptchaRequestHandlers.unwrap(failure) instanceof DeadlineExceededException) {
+            return false;
+        }
+
+        switch (RequestFailureType.of(failure)) {
+            case CONNECT:
+            case TIMEOUT:
+            case CONNECTION_CLOSED:
+            case SERVER_ERROR:
+            case TOO_MANY_REQUESTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Create the exception thrown while the limit of concurrent requests has been reached.
+     *
+     * @return The created exception
+     */
+    private static ConcurrencyLimitExceededException createLimitExceededException() {
+        return new ConcurrencyLimitExceededException(
+            "The limit of concurrent requests to the SiteVerify servers has been reached"
+        );
+    }
+}
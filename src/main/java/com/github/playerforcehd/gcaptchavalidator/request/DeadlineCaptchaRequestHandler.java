@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A {@link CaptchaRequestHandler} that is able to complete requests within a {@link Deadline}.
+ * <p>
+ * {@link com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator} passes the deadline of a validation
+ * to its handler when the handler implements this interface. Handlers that decorate other handlers pass the
+ * remaining time on, so retries and hedged requests never exceed the deadline of the caller either.
+ * If the deadline expires, the request fails with a {@link CaptchaRequestHandlerException}, usually a
+ * {@link DeadlineExceededException}, that is classified as {@link RequestFailureType#TIMEOUT}.
+ * <p>
+ * The timeouts of the {@link CaptchaValidatorConfiguration} still apply, the deadline can only shorten them.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public interface DeadlineCaptchaRequestHandler extends CaptchaRequestHandler {
+    /**
+     * Execute a request to validate a response from a client that completes within a deadline.
+     * Note that the supplied Strings should be UTF-8,
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @param deadline                      The deadline until which the request has to complete
+     * @return The response from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails or the deadline has expired
+     */
+    String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException;
+
+    /**
+     * Execute a request to validate a response from a client within a deadline without blocking the calling thread.
+     * <p>
+     * The default implementation runs {@link #request(CaptchaValidatorConfiguration, String, String, Deadline)}
+     * on {@link ValidationExecutors#defaultExecutor()}.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @param deadline                      The deadline until which the request has to complete
+     * @return A {@link CompletableFuture} that completes with the response from the SiteVerify servers
+     */
+    default CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.request(captchaValidatorConfiguration, response, remoteIP, deadline);
+            } catch (CaptchaRequestHandlerException e) {
+                throw new CompletionException(e);
+            }
+        }, ValidationExecutors.defaultExecutor());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+/**
+ * An exception thrown when the deadline of a request has expired before the request completed.
+ * <p>
+ * As a deadline is often exceeded under load, the exception does not capture a stack trace.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class DeadlineExceededException extends CaptchaRequestHandlerException {
+    /**
+     * Constructor
+     *
+     * @param message The detail message
+     */
+    public DeadlineExceededException(String message) {
+        super(message, null, false, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param message The detail message
+     * @param cause   The failure caused by the expired deadline
+     */
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.LatencyTracker;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.RetryBudget;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CaptchaRequestHandler} that hedges slow requests of another {@link CaptchaRequestHandler}.
+ * <p>
+ * If a request has not completed after an adaptive threshold, which is a percentile of the observed latencies
+ * like the p95, a second identical request is sent. With a pooling handler, like the
+ * {@link com.github.playerforcehd.gcaptchavalidator.request.nio.NioCaptchaRequestHandler}, the second request uses
+ * another connection than the first one. The first answer wins and the other request is cancelled.
+ * Until enough latencies have been observed to estimate the threshold, requests are not hedged.
+ * <p>
+ * As every response can only be validated once, the request that reaches the SiteVerify servers last is answered
+ * with {@link ValidationError#TIMEOUT_OR_DUPLICATE}. Such an answer only wins if the other request has completed
+ * without a better answer, so hedging never turns a valid response into a duplicate.
+ * Failed requests are not hedged again, use a {@link RetryingCaptchaRequestHandler} for that.
+ * <p>
+ * The hedges are paid from a {@link RetryBudget}, which caps them at a ratio of all requests.
+ * Both requests share the {@link Deadline} of the caller, and no hedge is sent if the deadline would expire first.
+ * <p>
+ * Requests of a wrapped handler that is no {@link AsyncCaptchaRequestHandler} are run on
+ * {@link ValidationExecutors#defaultExecutor()}, as hedging requires two requests to be in flight at once.
+ * An instance of this handler is thread-safe as long as the wrapped handler is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class HedgingCaptchaRequestHandler implements AsyncCaptchaRequestHandler, DeadlineCaptchaRequestHandler {
+    /**
+     * The default percentile of the latencies after which a request is hedged
+     */
+    public static final float DEFAULT_HEDGE_PERCENTILE = 0.95f;
+
+    /**
+     * The default maximum ratio of hedged requests
+     */
+    public static final float DEFAULT_MAX_HEDGE_RATIO = 0.05f;
+
+    /**
+     * The default number of hedges that are possible at once
+     */
+    public static final int DEFAULT_MAX_HEDGE_BURST = 10;
+
+    /**
+     * The default minimum time after which a request is hedged
+     */
+    public static final Duration DEFAULT_MIN_HEDGE_DELAY = Duration.ofMillis(10);
+
+    /**
+     * The handler that executes the requests
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The tracker that estimates the latency after which a request is hedged
+     */
+    private final LatencyTracker latencyTracker;
+
+    /**
+     * The budget that pays for the hedges
+     */
+    private final RetryBudget hedgeBudget;
+
+    /**
+     * The minimum time after which a request is hedged in nanoseconds
+     */
+    private final long minHedgeDelayNanos;
+
+    /**
+     * The number of hedges that have been sent
+     */
+    private final LongAdder hedges = new LongAdder();
+
+    /**
+     * The number of hedges that answered before the request they hedged
+     */
+    private final LongAdder wonHedges = new LongAdder();
+
+    /**
+     * The number of hedges that have been skipped because the budget was exhausted
+     */
+    private final LongAdder budgetExhaustedHedges = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     */
+    public HedgingCaptchaRequestHandler(CaptchaRequestHandler captchaRequestHandler) {
+        this(captchaRequestHandler, DEFAULT_HEDGE_PERCENTILE, DEFAULT_MAX_HEDGE_RATIO);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param hedgePercentile       The percentile of the latencies after which a request is hedged, e.g. 0.95
+     * @param maxHedgeRatio         The maximum ratio of requests that are hedged, e.g. 0.05 for 5%
+     */
+    public HedgingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        float hedgePercentile,
+        float maxHedgeRatio
+    ) {
+        this(
+            captchaRequestHandler,
+            new LatencyTracker(hedgePercentile),
+            new RetryBudget(maxHedgeRatio, DEFAULT_MAX_HEDGE_BURST),
+            DEFAULT_MIN_HEDGE_DELAY
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param latencyTracker        The tracker that estimates the latency after which a request is hedged
+     * @param hedgeBudget           The budget that pays for the hedges
+     * @param minHedgeDelay         The minimum time after which a request is hedged
+     */
+    public HedgingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        LatencyTracker latencyTracker,
+        RetryBudget hedgeBudget,
+        Duration minHedgeDelay
+    ) {
+        if (minHedgeDelay.isNegative()) {
+            throw new IllegalArgumentException("The minimum hedge delay must not be negative");
+        }
+
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.latencyTracker = Objects.requireNonNull(latencyTracker, "latencyTracker");
+        this.hedgeBudget = Objects.requireNonNull(hedgeBudget, "hedgeBudget");
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        CompletableFuture<String> result = this.requestAsync(
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        );
+        try {
+            return deadline.isLimited()
+                ? result.get(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS)
+                : result.get();
+        } catch (TimeoutException e) {
+            result.cancel(false);
+
+            throw CaptchaRequestHandlers.createDeadlineExceededException();
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+
+            throw new CaptchaRequestHandlerException("Interrupted while waiting for the SiteVerify servers", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CaptchaRequestHandlerException) {
+                throw (CaptchaRequestHandlerException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new CaptchaRequestHandlerException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        this.hedgeBudget.onRequest();
+        HedgedRequest hedgedRequest = new HedgedRequest(captchaValidatorConfiguration, response, remoteIP, deadline);
+        hedgedRequest.start();
+
+        return hedgedRequest.result;
+    }
+
+    /**
+     * Get the tracker that estimates the latency after which a request is hedged
+     *
+     * @return The {@link LatencyTracker} of this handler
+     */
+    public LatencyTracker getLatencyTracker() {
+        return this.latencyTracker;
+    }
+
+    /**
+     * Get the budget that pays for the hedges
+     *
+     * @return The {@link RetryBudget} of this handler
+     */
+    public RetryBudget getHedgeBudget() {
+        return this.hedgeBudget;
+    }
+
+    /**
+     * Get the number of hedges that have been sent
+     *
+     * @return The number of hedges since this handler has been created
+     */
+    public long getHedges() {
+        return this.hedges.sum();
+    }
+
+    /**
+     * Get the number of hedges that answered before the request they hedged
+     *
+     * @return The number of won hedges since this handler has been created
+     */
+    public long getWonHedges() {
+        return this.wonHedges.sum();
+    }
+
+    /**
+     * Get the number of hedges that have been skipped because the budget was exhausted
+     *
+     * @return The number of skipped hedges since this handler has been created
+     */
+    public long getBudgetExhaustedHedges() {
+        return this.budgetExhaustedHedges.sum();
+    }
+
+    /**
+     * Get the time after which a request is hedged.
+     *
+     * @return The delay in nanoseconds, or -1 if requests are not hedged yet
+     */
+    private long hedgeDelayNanos() {
+        long percentileNanos = this.latencyTracker.getPercentileNanos();
+
+        return percentileNanos < 0 ? -1 : Math.max(percentileNanos, this.minHedgeDelayNanos);
+    }
+
+    /**
+     * Check if the body of a response reports that the response has already been validated.
+     *
+     * @param body The body of a response
+     * @return true if the SiteVerify servers answered with {@link ValidationError#TIMEOUT_OR_DUPLICATE}
+     */
+    private static boolean isDuplicate(String body) {
+        return body != null && body.contains(ValidationError.TIMEOUT_OR_DUPLICATE.getPlainError());
+    }
+
+    /**
+     * A request and its hedge.
+     * The fields that track the requests in flight are guarded by the instance lock.
+     */
+    private final class HedgedRequest {
+        /**
+         * The configuration of the validator
+         */
+        private final CaptchaValidatorConfiguration captchaValidatorConfiguration;
+
+        /**
+         * The response to validate
+         */
+        private final String response;
+
+        /**
+         * The remoteIP of the user to validate
+         */
+        private final String remoteIP;
+
+        /**
+         * The deadline until which the request has to complete
+         */
+        private final Deadline deadline;
+
+        /**
+         * The future that is completed with the winning answer
+         */
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        /**
+         * The time at which the first request has been sent
+         */
+        private long startNanos;
+
+        /**
+         * The number of requests in flight
+         */
+        private int pendingRequests;
+
+        /**
+         * A duplicate answer that wins if no better answer arrives
+         */
+        private String duplicateBody;
+
+        /**
+         * The failure of the first failed request
+         */
+        private Throwable failure;
+
+        /**
+         * Constructor
+         *
+         * @param captchaValidatorConfiguration The configuration of the validator
+         * @param response                      The response to validate
+         * @param remoteIP                      The remoteIP of the user to validate, can be empty
+         * @param deadline                      The deadline until which the request has to complete
+         */
+        private HedgedRequest(
+            CaptchaValidatorConfiguration captchaValidatorConfiguration,
+            String response,
+            String remoteIP,
+            Deadline deadline
+        ) {
+            this.captchaValidatorConfiguration = captchaValidatorConfiguration;
+            this.response = response;
+            this.remoteIP = remoteIP;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Send the first request and schedule its hedge.
+         */
+        private void start() {
+            this.startNanos = System.nanoTime();
+            CompletableFuture<String> request = this.send(false);
+
+            long hedgeDelayNanos = HedgingCaptchaRequestHandler.this.hedgeDelayNanos();
+            if (hedgeDelayNanos < 0
+                || hedgeDelayNanos >= this.deadline.remaining(TimeUnit.NANOSECONDS)
+                || this.result.isDone()) {
+                return;
+            }
+
+            ScheduledFuture<?> hedgeTask = ValidationExecutors.scheduler().schedule(
+                this::hedge,
+                hedgeDelayNanos,
+                TimeUnit.NANOSECONDS
+            );
+            this.result.whenComplete((body, throwable) -> {
+                hedgeTask.cancel(false);
+                request.cancel(false);
+            });
+        }
+
+        /**
+         * Send the hedge if the first request is still in flight and the budget allows it.
+         */
+        private void hedge() {
+            if (this.result.isDone()) {
+                return;
+            }
+            if (!HedgingCaptchaRequestHandler.this.hedgeBudget.tryAcquireRetry()) {
+                HedgingCaptchaRequestHandler.this.budgetExhaustedHedges.increment();
+
+                return;
+            }
+
+            HedgingCaptchaRequestHandler.this.hedges.increment();
+            CompletableFuture<String> hedge = this.send(true);
+            this.result.whenComplete((body, throwable) -> hedge.cancel(false));
+        }
+
+        /**
+         * Send a request.
+         *
+         * @param isHedge If the request is the hedge
+         * @return The future of the request
+         */
+        private CompletableFuture<String> send(boolean isHedge) {
+            synchronized (this) {
+                this.pendingRequests++;
+            }
+
+            CompletableFuture<String> request;
+            try {
+                request = CaptchaRequestHandlers.requestAsync(
+                    HedgingCaptchaRequestHandler.this.captchaRequestHandler,
+                    this.captchaValidatorConfiguration,
+                    this.response,
+                    this.remoteIP,
+                    this.deadline
+                );
+            } catch (RuntimeException | Error e) {
+                request = new CompletableFuture<>();
+                request.completeExceptionally(e);
+            }
+            request.whenComplete((body, throwable) -> this.onComplete(body, throwable, isHedge));
+
+            return request;
+        }
+
+        /**
+         * Handle the answer of a request.
+         * A successful answer that is no duplicate wins immediately, all other answers are kept
+         * until no request is in flight anymore.
+         *
+         * @param body      The body of the answer, or null if the request failed
+         * @param throwable The failure of the request, or null if it succeeded
+         * @param isHedge   If the request is the hedge
+         */
+        private void onComplete(String body, Throwable throwable, boolean isHedge) {
+            if (throwable == null && !isDuplicate(body)) {
+                // Record the winner before completing, so callers observe the statistics of their request
+                if (!this.result.isDone()) {
+                    HedgingCaptchaRequestHandler.this.latencyTracker.record(System.nanoTime() - this.startNanos);
+                    if (isHedge) {
+                        HedgingCaptchaRequestHandler.this.wonHedges.increment();
+                    }
+                }
+                this.result.complete(body);
+                synchronized (this) {
+                    this.pendingRequests--;
+                }
+
+                return;
+            }
+
+            String winningBody;
+            Throwable winningFailure;
+            synchronized (this) {
+                this.pendingRequests--;
+                if (throwable == null) {
+                    this.duplicateBody = body;
+                } else if (this.failure == null) {
+                    this.failure = CaptchaRequestHandlers.unwrap(throwable);
+                }
+                if (this.pendingRequests > 0) {
+                    return;
+                }
+
+                winningBody = this.duplicateBody;
+                winningFailure = this.failure;
+            }
+
+            if (winningBody != null) {
+                this.result.complete(winningBody);
+            } else {
+                this.result.completeExceptionally(winningFailure);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * An exception thrown when the SiteVerify servers respond with a status that indicates a temporary failure,
+ * which is {@code 429 Too Many Requests} or any {@code 5xx} status.
+ * <p>
+ * The value of the {@code Retry-After} header of the response is retained, if there was one.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class HttpStatusException extends CaptchaRequestHandlerException {
+    /**
+     * The status code of the response
+     */
+    private final int statusCode;
+
+    /**
+     * The time to wait before retrying, or null if the response did not specify it
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Constructor
+     *
+     * @param statusCode The status code of the response
+     * @param retryAfter The time to wait before retrying, or null if the response did not specify it
+     */
+    public HttpStatusException(int statusCode, Duration retryAfter) {
+        super("The SiteVerify servers responded with status " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Get the status code of the response
+     *
+     * @return The status code
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Get the time to wait before retrying, as requested by the {@code Retry-After} header of the response
+     *
+     * @return The time to wait, or null if the response did not specify it
+     */
+    public Duration getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    /**
+     * Check if a status indicates a temporary failure that should be reported with an {@link HttpStatusException}.
+     *
+     * @param statusCode The status code of a response
+     * @return true if the status is 429 or 5xx
+     */
+    public static boolean isTemporaryFailure(int statusCode) {
+        return statusCode == 429 || statusCode >= 500 && statusCode < 600;
+    }
+
+    /**
+     * Parse the value of a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+     *
+     * @param value The value of the header, may be null
+     * @return The time to wait, which is zero for dates in the past, or null if the value is missing or malformed
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+
+        String trimmedValue = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmedValue);
+
+            return seconds < 0 ? null : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try an HTTP date
+        }
+
+        try {
+            Duration retryAfter = Duration.between(
+                ZonedDateTime.now(),
+                ZonedDateTime.parse(trimmedValue, DateTimeFormatter.RFC_1123_DATE_TIME)
+            );
+
+            return retryAfter.isNegative() ? Duration.ZERO : retryAfter;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
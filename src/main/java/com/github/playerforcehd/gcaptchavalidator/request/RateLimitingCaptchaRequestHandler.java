@@ -0,0 +1,428 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.TokenBucket;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CaptchaRequestHandler} that limits the rate of requests of another {@link CaptchaRequestHandler}
+ * with a {@link TokenBucket}.
+ * <p>
+ * Google enforces a quota per secret. If several nodes share a secret, a burst on all of them can exceed the quota,
+ * which lets the validations of all users fail. Giving every node a share of the quota protects the others.
+ * <p>
+ * Every secret gets its own bucket, so validators with different {@link CaptchaValidatorConfiguration}s that use
+ * this handler don't share their limits. The buckets are created on the first request of a secret.
+ * Buckets that have been full for the idle timeout are evicted, as they behave exactly like new buckets.
+ * This keeps the number of buckets bounded by the number of recently active secrets.
+ * A request that races with the eviction of a bucket may still take a token from the evicted bucket.
+ * <p>
+ * Requests that exceed the rate wait until a token is refilled, for at most the maximum wait time and the time left
+ * until their deadline, which is also honored when the raw bytes are requested.
+ * The maximum wait time is zero by default, which rejects them immediately.
+ * Blocking requests sleep while waiting, asynchronous requests are scheduled on
+ * {@link ValidationExecutors#scheduler()}. Requests that don't get a token fail with a
+ * {@link RateLimitExceededException}, which validators turn into a response with the
+ * {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}.
+ * <p>
+ * This handler supports asynchronous requests and returning raw bytes. If the wrapped handler does not support
+ * them itself, its blocking requests are run on {@link ValidationExecutors#defaultExecutor()}
+ * and its String responses are encoded, respectively.
+ * <p>
+ * An instance of this handler is thread-safe as long as the wrapped handler is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RateLimitingCaptchaRequestHandler implements AsyncCaptchaRequestHandler, ByteBufferCaptchaRequestHandler,
+    DeadlineCaptchaRequestHandler {
+    /**
+     * The default time after which the bucket of a secret without requests is evicted
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * The handler that executes the requests
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The factory of the bucket of every secret
+     */
+    private final Supplier<TokenBucket> tokenBucketFactory;
+
+    /**
+     * The maximum time in nanoseconds a request waits for a token
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * The time in nanoseconds a bucket has to be full before it is evicted
+     */
+    private final long idleTimeoutNanos;
+
+    /**
+     * The buckets by the secret they limit
+     */
+    private final ConcurrentMap<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link System#nanoTime()} at which the buckets are checked for eviction next
+     */
+    private final AtomicLong nextEvictionAt;
+
+    /**
+     * The number of rejected requests of the buckets that have been evicted
+     */
+    private final LongAdder evictedRejections = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param permitsPerSecond      The number of requests per second and secret
+     * @param burstSize             The number of requests per secret that may be sent at once
+     */
+    public RateLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        double permitsPerSecond,
+        int burstSize
+    ) {
+        this(captchaRequestHandler, permitsPerSecond, burstSize, Duration.ZERO);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param permitsPerSecond      The number of requests per second and secret
+     * @param burstSize             The number of requests per secret that may be sent at once
+     * @param maxWait               The maximum time a request waits for a token
+     */
+    public RateLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        double permitsPerSecond,
+        int burstSize,
+        Duration maxWait
+    ) {
+        this(captchaRequestHandler, createTokenBucketFactory(permitsPerSecond, burstSize), maxWait);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param tokenBucketFactory    The factory that creates the bucket of every secret
+     * @param maxWait               The maximum time a request waits for a token
+     */
+    public RateLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        Supplier<TokenBucket> tokenBucketFactory,
+        Duration maxWait
+    ) {
+        this(captchaRequestHandler, tokenBucketFactory, maxWait, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param tokenBucketFactory    The factory that creates the bucket of every secret
+     * @param maxWait               The maximum time a request waits for a token
+     * @param idleTimeout           The time a bucket has to be full before it is evicted
+     */
+    public RateLimitingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        Supplier<TokenBucket> tokenBucketFactory,
+        Duration maxWait,
+        Duration idleTimeout
+    ) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("The maximum wait time must not be negative");
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("The idle timeout must be positive");
+        }
+
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.tokenBucketFactory = Objects.requireNonNull(tokenBucketFactory, "tokenBucketFactory");
+        this.maxWaitNanos = maxWait.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.nextEvictionAt = new AtomicLong(System.nanoTime() + this.idleTimeoutNanos);
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquire(captchaValidatorConfiguration, deadline);
+
+        return CaptchaRequestHandlers.request(
+            this.captchaRequestHandler,
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        );
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        this.acquire(captchaValidatorConfiguration, deadline);
+
+        return CaptchaRequestHandlers.requestBytes(
+            this.captchaRequestHandler,
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        );
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        long waitNanos = this.getTokenBucket(captchaValidatorConfiguration).reserve(
+            this.maxWaitNanos(deadline),
+            TimeUnit.NANOSECONDS
+        );
+        if (waitNanos < 0) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(createRateLimitExceededException());
+
+            return result;
+        }
+        if (waitNanos == 0) {
+            return CaptchaRequestHandlers.requestAsync(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        ScheduledFuture<?> delayedRequest = ValidationExecutors.scheduler().schedule(
+            () -> {
+                if (result.isDone()) {
+                    // The caller is no longer interested in the result
+                    return;
+                }
+
+                try {
+                    CompletableFuture<String> request = CaptchaRequestHandlers.requestAsync(
+                        this.captchaRequestHandler,
+                        captchaValidatorConfiguration,
+                        response,
+                        remoteIP,
+                        deadline
+                    );
+                    request.whenComplete((body, throwable) -> {
+                        if (throwable == null) {
+                            result.complete(body);
+                        } else {
+                            result.completeExceptionally(CaptchaRequestHandlers.unwrap(throwable));
+                        }
+                    });
+                    result.whenComplete((body, throwable) -> request.cancel(true));
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            },
+            waitNanos,
+            TimeUnit.NANOSECONDS
+        );
+        result.whenComplete((body, throwable) -> delayedRequest.cancel(false));
+
+        return result;
+    }
+
+    /**
+     * Get the bucket that limits the requests with the secret of a configuration.
+     * The bucket is created if no request with the secret has been executed yet or if it has been evicted.
+     *
+     * @param captchaValidatorConfiguration The configuration that holds the secret
+     * @return The {@link TokenBucket} of the secret
+     */
+    public TokenBucket getTokenBucket(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        this.evictIdleTokenBuckets();
+
+        return this.tokenBuckets.computeIfAbsent(
+            captchaValidatorConfiguration.getSecretToken(),
+            secretToken -> this.tokenBucketFactory.get()
+        );
+    }
+
+    /**
+     * Get the number of requests that did not get a token
+     *
+     * @return The number of rejected requests of all secrets since this handler has been created
+     */
+    public long getRejections() {
+        return this.evictedRejections.sum()
+            + this.tokenBuckets.values().stream().mapToLong(TokenBucket::getRejections).sum();
+    }
+
+    /**
+     * Get the number of buckets that are currently kept
+     *
+     * @return The number of secrets with a bucket
+     */
+    public int getTokenBucketCount() {
+        return this.tokenBuckets.size();
+    }
+
+    /**
+     * Evict the buckets that have been full for the idle timeout.
+     * The buckets are checked at most once per idle timeout, by the first request after it has elapsed.
+     */
+    private void evictIdleTokenBuckets() {
+        long now = System.nanoTime();
+        long evictionAt = this.nextEvictionAt.get();
+        if (now - evictionAt < 0 || !this.nextEvictionAt.compareAndSet(evictionAt, now + this.idleTimeoutNanos)) {
+            return;
+        }
+
+        this.tokenBuckets.forEach((secretToken, tokenBucket) -> {
+            if (tokenBucket.getIdleNanos() >= this.idleTimeoutNanos
+                && this.tokenBuckets.remove(secretToken, tokenBucket)) {
+                this.evictedRejections.add(tokenBucket.getRejections());
+            }
+        });
+    }
+
+    /**
+     * Take a token for a blocking request, waiting until it has been refilled if necessary.
+     *
+     * @param captchaValidatorConfiguration The configuration that holds the secret of the request
+     * @param deadline                      The deadline of the request
+     * @throws CaptchaRequestHandlerException Thrown when no token will be available in time
+     */
+    private void acquire(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        try {
+            if (!this.getTokenBucket(captchaValidatorConfiguration).tryAcquire(
+                this.maxWaitNanos(deadline),
+                TimeUnit.NANOSECONDS
+            )) {
+                throw createRateLimitExceededException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new CaptchaRequestHandlerException("Interrupted while waiting for the rate limit", e);
+        }
+    }
+
+    /**
+     * Get the maximum time a request waits for a token.
+     *
+     * @param deadline The deadline of the request
+     * @return The shorter of the maximum wait time and the time left until the deadline in nanoseconds
+     */
+    private long maxWaitNanos(Deadline deadline) {
+        return Math.min(this.maxWaitNanos, Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)));
+    }
+
+    /**
+     * Create a factory of buckets with the same rate and burst size.
+     *
+     * @param permitsPerSecond The number of tokens refilled per second
+     * @param burstSize        The maximum number of tokens in a bucket
+     * @return The created factory
+     */
+    private static Supplier<TokenBucket> createTokenBucketFactory(double permitsPerSecond, int burstSize) {
+        // Validate the arguments right away instead of on the first request
+        new TokenBucket(permitsPerSecond, burstSize);
+
+        return () -> new TokenBucket(permitsPerSecond, burstSize);
+    }
+
+    /**
+     * Create the exception thrown while the rate limit has been reached.
+     *
+     * @return The created exception
+     */
+    private static RateLimitExceededException createRateLimitExceededException() {
+        return new RateLimitExceededException("The rate limit of requests to the SiteVerify servers has been reached");
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Contains the classes of failures of a request to the SiteVerify servers.
+ * <p>
+ * The class of a failure tells if the request is worth being retried.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public enum RequestFailureType {
+    /**
+     * The connection could not be established, so the request has not been sent
+     */
+    CONNECT,
+    /**
+     * No response has been received in time, the request may have been processed anyway
+     */
+    TIMEOUT,
+    /**
+     * The connection has been reset or closed before the response has been received
+     */
+    CONNECTION_CLOSED,
+    /**
+     * The SiteVerify servers responded with a 5xx status
+     */
+    SERVER_ERROR,
+    /**
+     * The SiteVerify servers responded with 429 Too Many Requests
+     */
+    TOO_MANY_REQUESTS,
+    /**
+     * Any other failure, which is not expected to go away on a retry
+     */
+    OTHER;
+
+    /**
+     * Name of the exception thrown by {@code java.net.http.HttpClient} if a connection could not be established
+     * in time. The library is compiled for Java 8, which is why the exception is matched by name.
+     */
+    private static final String HTTP_CONNECT_TIMEOUT_EXCEPTION = "java.net.http.HttpConnectTimeoutException";
+
+    /**
+     * Name of the exception thrown by {@code java.net.http.HttpClient} if a response has not arrived in time
+     */
+    private static final String HTTP_TIMEOUT_EXCEPTION = "java.net.http.HttpTimeoutException";
+
+    /**
+     * Classify the failure of a request.
+     * The causes of wrapping exceptions are inspected until a known failure is found.
+     *
+     * @param throwable The failure of the request
+     * @return The class of the failure
+     */
+    public static RequestFailureType of(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof HttpStatusException) {
+                int statusCode = ((HttpStatusException) cause).getStatusCode();
+
+                return statusCode == 429 ? TOO_MANY_REQUESTS : statusCode >= 500 ? SERVER_ERROR : OTHER;
+            }
+            if (cause instanceof CircuitBreakerOpenException
+                || cause instanceof ConcurrencyLimitExceededException
+                || cause instanceof RateLimitExceededException) {
+                return OTHER;
+            }
+            if (cause instanceof DeadlineExceededException) {
+                return TIMEOUT;
+            }
+
+            String className = cause.getClass().getName();
+            if (cause instanceof ConnectException
+                || cause instanceof NoRouteToHostException
+                || cause instanceof UnknownHostException
+                || HTTP_CONNECT_TIMEOUT_EXCEPTION.equals(className)) {
+                return CONNECT;
+            }
+            if (cause instanceof SocketTimeoutException || HTTP_TIMEOUT_EXCEPTION.equals(className)) {
+                return TIMEOUT;
+            }
+            if (cause instanceof SocketException || cause instanceof EOFException) {
+                return CONNECTION_CLOSED;
+            }
+            if (!(cause instanceof CaptchaRequestHandlerException
+                || cause instanceof CompletionException
+                || cause instanceof ExecutionException)) {
+                return OTHER;
+            }
+
+            cause = cause.getCause();
+        }
+
+        return OTHER;
+    }
+}
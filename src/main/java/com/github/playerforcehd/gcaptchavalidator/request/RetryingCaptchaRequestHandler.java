@@ -0,0 +1,479 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.RetryBudget;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CaptchaRequestHandler} that retries failed requests of another {@link CaptchaRequestHandler}.
+ * <p>
+ * Failures are classified by their {@link RequestFailureType}, and only failures of the configured types are
+ * retried. By default, these are failures to connect, closed connections, 5xx responses and 429 responses.
+ * Timeouts are not retried by default: The SiteVerify servers may have processed the request already, and as every
+ * response can only be validated once, a retry would most likely fail with
+ * {@link com.github.playerforcehd.gcaptchavalidator.data.ValidationError#TIMEOUT_OR_DUPLICATE}.
+ * <p>
+ * Retries are delayed using exponential backoff with full jitter: The n-th retry waits a random time between zero
+ * and {@code min(maxDelay, baseDelay * 2^(n-1))}. If the SiteVerify servers requested a delay with a
+ * {@code Retry-After} header, exactly that delay is used instead. If the requested delay exceeds the maximum delay,
+ * the request is not retried at all.
+ * <p>
+ * A request with a {@link Deadline} is not retried if the deadline would expire before the retry is sent,
+ * and every attempt only gets the time that is left until the deadline.
+ * <p>
+ * All retries are paid from a {@link RetryBudget}, which bounds the ratio of retries to requests.
+ * During an outage, retries therefore only add a small fraction of load instead of multiplying it.
+ * <p>
+ * Blocking requests sleep between their attempts. Asynchronous requests schedule their retries on
+ * {@link ValidationExecutors#scheduler()} and do not block any thread.
+ * If the wrapped handler does not support asynchronous requests or returning raw bytes, its blocking requests are
+ * run on {@link ValidationExecutors#defaultExecutor()} and its String responses are encoded, respectively.
+ * <p>
+ * An instance of this handler is thread-safe as long as the wrapped handler is thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RetryingCaptchaRequestHandler implements AsyncCaptchaRequestHandler, ByteBufferCaptchaRequestHandler,
+    DeadlineCaptchaRequestHandler {
+    /**
+     * The default maximum number of attempts of a request, including the first one
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * The default upper bound of the delay before the first retry
+     */
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(100);
+
+    /**
+     * The default maximum delay before a retry
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(2);
+
+    /**
+     * The failures that are retried by default
+     */
+    public static final Set<RequestFailureType> DEFAULT_RETRYABLE_FAILURES = Collections.unmodifiableSet(EnumSet.of(
+        RequestFailureType.CONNECT,
+        RequestFailureType.CONNECTION_CLOSED,
+        RequestFailureType.SERVER_ERROR,
+        RequestFailureType.TOO_MANY_REQUESTS
+    ));
+
+    /**
+     * The handler that executes the requests
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The maximum number of attempts of a request, including the first one
+     */
+    private final int maxAttempts;
+
+    /**
+     * The upper bound of the delay before the first retry in nanoseconds
+     */
+    private final long baseDelayNanos;
+
+    /**
+     * The maximum delay before a retry in nanoseconds
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * The budget that pays for the retries
+     */
+    private final RetryBudget retryBudget;
+
+    /**
+     * The failures that are retried
+     */
+    private final Set<RequestFailureType> retryableFailures;
+
+    /**
+     * The number of retries that have been executed
+     */
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * The number of retries that have been skipped because the budget was exhausted
+     */
+    private final LongAdder budgetExhaustedRetries = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     */
+    public RetryingCaptchaRequestHandler(CaptchaRequestHandler captchaRequestHandler) {
+        this(captchaRequestHandler, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param maxAttempts           The maximum number of attempts of a request, including the first one
+     * @param baseDelay             The upper bound of the delay before the first retry
+     * @param maxDelay              The maximum delay before a retry
+     */
+    public RetryingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        int maxAttempts,
+        Duration baseDelay,
+        Duration maxDelay
+    ) {
+        this(captchaRequestHandler, maxAttempts, baseDelay, maxDelay, new RetryBudget(), DEFAULT_RETRYABLE_FAILURES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param captchaRequestHandler The handler that executes the requests
+     * @param maxAttempts           The maximum number of attempts of a request, including the first one
+     * @param baseDelay             The upper bound of the delay before the first retry
+     * @param maxDelay              The maximum delay before a retry
+     * @param retryBudget           The budget that pays for the retries, can be shared between handlers
+     * @param retryableFailures     The failures that are retried
+     */
+    public RetryingCaptchaRequestHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        int maxAttempts,
+        Duration baseDelay,
+        Duration maxDelay,
+        RetryBudget retryBudget,
+        Set<RequestFailureType> retryableFailures
+    ) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximum number of attempts must be at least 1");
+        }
+        if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("The delays must satisfy 0 <= baseDelay <= maxDelay");
+        }
+
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.retryBudget = Objects.requireNonNull(retryBudget, "retryBudget");
+        this.retryableFailures = retryableFailures.isEmpty()
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(EnumSet.copyOf(retryableFailures));
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        return this.execute(() -> CaptchaRequestHandlers.request(
+            this.captchaRequestHandler,
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        ), deadline);
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        return this.execute(() -> CaptchaRequestHandlers.requestBytes(
+            this.captchaRequestHandler,
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        ), deadline);
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        this.retryBudget.onRequest();
+        this.attemptAsync(captchaValidatorConfiguration, response, remoteIP, deadline, 1, result);
+
+        return result;
+    }
+
+    /**
+     * Get the budget that pays for the retries of this handler
+     *
+     * @return The {@link RetryBudget} of this handler
+     */
+    public RetryBudget getRetryBudget() {
+        return this.retryBudget;
+    }
+
+    /**
+     * Get the number of retries that have been executed
+     *
+     * @return The number of retries since this handler has been created
+     */
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    /**
+     * Get the number of retries that have been skipped because the {@link RetryBudget} was exhausted
+     *
+     * @return The number of skipped retries since this handler has been created
+     */
+    public long getBudgetExhaustedRetries() {
+        return this.budgetExhaustedRetries.sum();
+    }
+
+    /**
+     * Execute a blocking request and retry it until it succeeds or may not be retried anymore.
+     *
+     * @param attempt  The request to execute
+     * @param deadline The deadline until which the request has to complete
+     * @param <T>      The type of the response
+     * @return The response of the first successful attempt
+     * @throws CaptchaRequestHandlerException Thrown when the last attempt failed
+     */
+    private <T> T execute(Attempt<T> attempt, Deadline deadline) throws CaptchaRequestHandlerException {
+        this.retryBudget.onRequest();
+
+        for (int attempts = 1; ; attempts++) {
+            try {
+                return attempt.run();
+            } catch (CaptchaRequestHandlerException e) {
+                long delayNanos = this.nextDelayNanos(attempts, e, deadline);
+                if (delayNanos < 0) {
+                    throw e;
+                }
+
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(interruptedException);
+
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute an asynchronous attempt of a request and schedule a retry if it fails.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @param deadline                      The deadline until which the request has to complete
+     * @param attempts                      The number of the attempt, starting with 1
+     * @param result                        The future that is completed with the result of the request
+     */
+    private void attemptAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline,
+        int attempts,
+        CompletableFuture<String> result
+    ) {
+        if (result.isDone()) {
+            // The caller is no longer interested in the result
+            return;
+        }
+
+        CompletableFuture<String> attempt;
+        try {
+            attempt = CaptchaRequestHandlers.requestAsync(
+                this.captchaRequestHandler,
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline
+            );
+        } catch (RuntimeException | Error e) {
+            result.completeExceptionally(e);
+
+            return;
+        }
+
+        attempt.whenComplete((body, throwable) -> {
+            if (throwable == null) {
+                result.complete(body);
+
+                return;
+            }
+
+            Throwable cause = CaptchaRequestHandlers.unwrap(throwable);
+            long delayNanos = cause instanceof CaptchaRequestHandlerException
+                ? this.nextDelayNanos(attempts, cause, deadline)
+                : -1;
+            if (delayNanos < 0) {
+                result.completeExceptionally(cause);
+
+                return;
+            }
+
+            ValidationExecutors.scheduler().schedule(
+                () -> this.attemptAsync(
+                    captchaValidatorConfiguration,
+                    response,
+                    remoteIP,
+                    deadline,
+                    attempts + 1,
+                    result
+                ),
+                delayNanos,
+                TimeUnit.NANOSECONDS
+            );
+        });
+    }
+
+    /**
+     * Decide if a failed attempt is retried and how long to wait before the retry.
+     * A retry withdraws a token from the {@link RetryBudget}.
+     *
+     * @param attempts The number of attempts that have been executed so far
+     * @param failure  The failure of the last attempt
+     * @param deadline The deadline until which the request has to complete
+     * @return The delay before the retry in nanoseconds, or -1 if the request must not be retried
+     */
+    private long nextDelayNanos(int attempts, Throwable failure, Deadline deadline) {
+        if (attempts >= this.maxAttempts || !this.retryableFailures.contains(RequestFailureType.of(failure))) {
+            return -1;
+        }
+
+        long delayNanos;
+        Duration retryAfter = findRetryAfter(failure);
+        if (retryAfter != null) {
+            delayNanos = retryAfter.toNanos();
+            if (delayNanos > this.maxDelayNanos) {
+                return -1;
+            }
+        } else {
+            // Full jitter: a random delay up to the exponentially growing bound
+            long boundNanos = this.baseDelayNanos << Math.min(attempts - 1, 30);
+            if (boundNanos < 0 || boundNanos > this.maxDelayNanos) {
+                boundNanos = this.maxDelayNanos;
+            }
+            delayNanos = boundNanos == 0 ? 0 : ThreadLocalRandom.current().nextLong(boundNanos + 1);
+        }
+
+        if (delayNanos >= deadline.remaining(TimeUnit.NANOSECONDS)) {
+            // The retry would not be sent before the deadline expires
+            return -1;
+        }
+        if (!this.retryBudget.tryAcquireRetry()) {
+            this.budgetExhaustedRetries.increment();
+
+            return -1;
+        }
+        this.retries.increment();
+
+        return delayNanos;
+    }
+
+    /**
+     * Find the delay requested by the SiteVerify servers with a {@code Retry-After} header.
+     *
+     * @param failure The failure of an attempt
+     * @return The requested delay, or null if there is none
+     */
+    private static Duration findRetryAfter(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException) {
+                return ((HttpStatusException) cause).getRetryAfter();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A single attempt of a blocking request.
+     *
+     * @param <T> The type of the response
+     */
+    @FunctionalInterface
+    private interface Attempt<T> {
+        /**
+         * Execute the attempt.
+         *
+         * @return The response of the SiteVerify servers
+         * @throws CaptchaRequestHandlerException Thrown when the attempt failed
+         */
+        T run() throws CaptchaRequestHandlerException;
+    }
+}
@@ -25,29 +25,71 @@
 package com.github.playerforcehd.gcaptchavalidator.request;
 
 import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
-import com.github.playerforcehd.gcaptchavalidator.util.request.PostData;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.request.RequestTemplate;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.Arrays;
 
 /**
  * The default implementation of a {@link CaptchaRequestHandler} that uses a simple HttpUrlConnection
  * for communication.
+ * <p>
+ * The response body is read in bulk into a byte array that is limited to a maximum size.
+ * Responses with a status of 429 or 5xx fail the request with an {@link HttpStatusException}.
+ * <p>
+ * The connect and read timeouts of the {@link CaptchaValidatorConfiguration} are applied to the connection.
+ * The request timeout and the {@link Deadline} of a request are checked whenever data has been read, and they
+ * also shorten the connect and read timeouts, so a single blocking read never waits longer than the time that
+ * was left when the request has been started.
  *
  * @author Pascal Zarrad
  * @since 3.0.0
  */
-public class SiteVerifyCaptchaRequestHandler implements CaptchaRequestHandler {
+public class SiteVerifyCaptchaRequestHandler implements ByteBufferCaptchaRequestHandler, DeadlineCaptchaRequestHandler {
     /**
-     * Default charset used by this utility.
+     * The default maximum size of a response body in bytes.
+     * Responses of the SiteVerify servers are only a few hundred bytes large.
+     *
+     * @since 3.1.0
      */
-    private static final String DEFAULT_CHARSET = StandardCharsets.UTF_8.toString();
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 64 * 1024;
+
+    /**
+     * Initial size of the buffer used to read a response of unknown length.
+     */
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    /**
+     * The maximum size of a response body in bytes
+     */
+    private final int maxResponseSize;
+
+    /**
+     * Constructor
+     */
+    public SiteVerifyCaptchaRequestHandler() {
+        this(DEFAULT_MAX_RESPONSE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxResponseSize The maximum size of a response body in bytes, larger responses fail the request
+     * @since 3.1.0
+     */
+    public SiteVerifyCaptchaRequestHandler(int maxResponseSize) {
+        if (maxResponseSize < 1) {
+            throw new IllegalArgumentException("The maximum response size must be at least 1 byte");
+        }
+
+        this.maxResponseSize = maxResponseSize;
+    }
 
     @Override
     public String request(
@@ -55,51 +97,204 @@ public class SiteVerifyCaptchaRequestHandler implements CaptchaRequestHandler {
         String response,
         String remoteIP
     ) throws CaptchaRequestHandlerException {
-        // Create map with parameters
-        Map<String, Object> params = new LinkedHashMap<>();
-        params.put("secret", captchaValidatorConfiguration.getSecretToken());
-        params.put("response", response);
-        if (remoteIP != null && !remoteIP.isEmpty()) {
-            params.put("remoteip", remoteIP);
-        }
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        ByteBuffer body = this.requestBytes(captchaValidatorConfiguration, response, remoteIP, deadline);
+
+        return new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.requestBytes(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    /**
+     * Execute a request to validate a response from a client that completes within a deadline
+     * and return the raw response body.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      Optional. The remoteIP of the user to validate. Can be empty.
+     * @param deadline                      The deadline until which the request has to complete
+     * @return The raw response body from the SiteVerify servers
+     * @throws CaptchaRequestHandlerException Thrown when the request fails or the deadline has expired
+     * @since 3.1.0
+     */
+    @Override
+    public ByteBuffer requestBytes(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        RequestTemplate requestTemplate = RequestTemplate.of(captchaValidatorConfiguration);
+        Deadline requestDeadline = deadline.min(captchaValidatorConfiguration.getRequestTimeout());
+        checkDeadline(requestDeadline);
 
         try {
-            // Prepare post data from Map
-            byte[] parsedParams = PostData.createPostData(params, DEFAULT_CHARSET);
+            // Prepare post data
+            byte[] parsedParams = requestTemplate.createPostData(response, remoteIP);
 
             // Execute request
-            URL url = new URL(captchaValidatorConfiguration.getVerifierUrl());
-            HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+            HttpURLConnection httpURLConnection = (HttpURLConnection) requestTemplate.getVerifierUrl().openConnection();
             httpURLConnection.setRequestMethod("POST");
-            httpURLConnection.addRequestProperty("Content-Length", String.valueOf(parsedParams.length));
-            captchaValidatorConfiguration.getHttpHeaders().forEach(httpURLConnection::addRequestProperty);
+            httpURLConnection.setConnectTimeout(
+                timeoutMillis(requestDeadline, captchaValidatorConfiguration.getConnectTimeout())
+            );
+            httpURLConnection.setReadTimeout(
+                timeoutMillis(requestDeadline, captchaValidatorConfiguration.getReadTimeout())
+            );
+            requestTemplate.getHttpHeaders().forEach(httpURLConnection::addRequestProperty);
             httpURLConnection.setDoOutput(true);
+            // Stream the post data instead of buffering a copy of it, this also sets the Content-Length
+            httpURLConnection.setFixedLengthStreamingMode(parsedParams.length);
             httpURLConnection.getOutputStream().write(parsedParams);
-            StringBuilder stringBuilder = new StringBuilder();
-            try (
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
-                    httpURLConnection.getInputStream(),
-                    DEFAULT_CHARSET
-                ))
-            ) {
-                for (int c; (c = bufferedReader.read()) >= 0; ) {
-                    stringBuilder.append((char) c);
+
+            // Temporary failures carry no usable body, report them with their status instead
+            int statusCode = httpURLConnection.getResponseCode();
+            if (HttpStatusException.isTemporaryFailure(statusCode)) {
+                InputStream errorStream = httpURLConnection.getErrorStream();
+                if (errorStream != null) {
+                    errorStream.close();
                 }
+
+                throw new HttpStatusException(
+                    statusCode,
+                    HttpStatusException.parseRetryAfter(httpURLConnection.getHeaderField("Retry-After"))
+                );
+            }
+
+            InputStream inputStream;
+            try {
+                inputStream = httpURLConnection.getInputStream();
             } catch (IOException e) {
-                // Fallback to error stream and if that fails, fallback to outer catch block
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
-                    httpURLConnection.getErrorStream(),
-                    DEFAULT_CHARSET
-                ));
-
-                for (int c; (c = bufferedReader.read()) >= 0; ) {
-                    stringBuilder.append((char) c);
+                // Fallback to error stream and if there is none, fallback to outer catch block
+                inputStream = httpURLConnection.getErrorStream();
+                if (inputStream == null) {
+                    throw e;
                 }
             }
 
-            return stringBuilder.toString();
+            try (InputStream bodyInputStream = inputStream) {
+                return this.readBody(bodyInputStream, httpURLConnection.getContentLength(), requestDeadline);
+            }
         } catch (IOException e) {
+            if (requestDeadline.isExpired()) {
+                throw new DeadlineExceededException("The deadline of the request has expired", e);
+            }
+
             throw new CaptchaRequestHandlerException(e);
         }
     }
+
+    /**
+     * Get the maximum size of a response body in bytes
+     *
+     * @return The maximum size of a response body
+     * @since 3.1.0
+     */
+    public int getMaxResponseSize() {
+        return this.maxResponseSize;
+    }
+
+    /**
+     * Read the whole response body in bulk.
+     * <p>
+     * If the length of the body is known upfront, the buffer is allocated with exactly that size.
+     * Otherwise, it grows until the maximum response size is reached.
+     *
+     * @param inputStream   The stream to read the body from
+     * @param contentLength The length of the body or -1 if unknown
+     * @param deadline      The deadline until which the body has to be read
+     * @return The body of the response
+     * @throws IOException                    Thrown when reading fails
+     * @throws CaptchaRequestHandlerException Thrown when the body exceeds the maximum response size
+     *                                        or the deadline has expired
+     */
+    private ByteBuffer readBody(
+        InputStream inputStream,
+        int contentLength,
+        Deadline deadline
+    ) throws IOException, CaptchaRequestHandlerException {
+        if (contentLength > this.maxResponseSize) {
+            throw this.createResponseTooLargeException();
+        }
+
+        byte[] buffer = new byte[contentLength > 0 ? contentLength : Math.min(READ_BUFFER_SIZE, this.maxResponseSize)];
+        int size = 0;
+        while (true) {
+            if (size == buffer.length) {
+                // Only grow the buffer if there is more data
+                int next = inputStream.read();
+                if (next < 0) {
+                    break;
+                }
+                if (size >= this.maxResponseSize) {
+                    throw this.createResponseTooLargeException();
+                }
+
+                buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, this.maxResponseSize));
+                buffer[size++] = (byte) next;
+            }
+
+            int read = inputStream.read(buffer, size, buffer.length - size);
+            if (read < 0) {
+                break;
+            }
+            size += read;
+            checkDeadline(deadline);
+        }
+
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    /**
+     * Get the timeout of a blocking operation of the connection.
+     *
+     * @param deadline The deadline of the request
+     * @param timeout  The configured timeout of the operation
+     * @return The shorter of the timeout and the time left until the deadline in milliseconds, at least 1
+     */
+    private static int timeoutMillis(Deadline deadline, Duration timeout) {
+        // A timeout of 0 would wait forever, so always wait at least one millisecond
+        long timeoutMillis = deadline.limit(timeout).toMillis();
+
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeoutMillis));
+    }
+
+    /**
+     * Fail if the deadline of a request has expired.
+     *
+     * @param deadline The deadline of the request
+     * @throws DeadlineExceededException Thrown when the deadline has expired
+     */
+    private static void checkDeadline(Deadline deadline) throws DeadlineExceededException {
+        if (deadline.isExpired()) {
+            throw CaptchaRequestHandlers.createDeadlineExceededException();
+        }
+    }
+
+    /**
+     * Create the exception thrown when a response exceeds the maximum response size.
+     *
+     * @return The created exception
+     */
+    private CaptchaRequestHandlerException createResponseTooLargeException() {
+        return new CaptchaRequestHandlerException(
+            "The response exceeds the maximum size of " + this.maxResponseSize + " bytes"
+        );
+    }
 }
@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.request.AsyncCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.request.RequestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link AsyncCaptchaRequestHandler} that multiplexes all requests over a few selector-driven event loops.
+ * <p>
+ * Every event loop is a single thread that drives many non-blocking {@link java.nio.channels.SocketChannel}s,
+ * secured by an {@link javax.net.ssl.SSLEngine} when the verifier URL uses HTTPS.
+ * Connections to the SiteVerify servers are kept alive and reused for subsequent requests.
+ * Because waiting for a response does not occupy a thread, tens of thousands of validations can be in flight
+ * while only a handful of threads are used.
+ * <p>
+ * Each event loop opens at most a configured number of connections per SiteVerify server.
+ * Requests that exceed this bound are queued until a connection becomes available.
+ * Responses with a status of 429 or 5xx fail the request with an
+ * {@link com.github.playerforcehd.gcaptchavalidator.request.HttpStatusException}.
+ * <p>
+ * A request times out after the shortest of the request timeout of this handler, the request timeout of the
+ * {@link CaptchaValidatorConfiguration} and the time left until its {@link Deadline}, including the time it
+ * waits for a connection. The connect timeout and the read timeout of the configuration are applied as well:
+ * a new connection has to be established within the connect timeout, and the server has to send data within
+ * the read timeout after the request has been started and after every received chunk. The timeouts are checked
+ * by the event loops every few milliseconds. A blocking request that is interrupted cancels its exchange.
+ * <p>
+ * An instance of this handler is thread-safe and meant to be shared.
+ * It should be closed when it is no longer needed to stop its threads and close its connections.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NioCaptchaRequestHandler
+    implements AsyncCaptchaRequestHandler, DeadlineCaptchaRequestHandler, Closeable {
+    /**
+     * The default number of event loops
+     */
+    public static final int DEFAULT_EVENT_LOOPS = 2;
+
+    /**
+     * The default maximum number of connections of a single event loop to one SiteVerify server
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_EVENT_LOOP = 128;
+
+    /**
+     * The default timeout of a single request, including the time it waits for a connection
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default time after which idle connections are closed
+     */
+    public static final Duration DEFAULT_KEEP_ALIVE = Duration.ofSeconds(30);
+
+    /**
+     * The maximum accepted size of a response of the SiteVerify servers
+     */
+    public static final int MAX_RESPONSE_SIZE = 64 * 1024;
+
+    /**
+     * The time a blocking request waits for its result after its timeout has elapsed,
+     * before it stops waiting for an event loop that does not respond anymore
+     */
+    private static final long RESULT_GRACE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The event loops that execute the requests
+     */
+    private final NioEventLoop[] eventLoops;
+
+    /**
+     * The counter used to distribute requests over the event loops
+     */
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+    /**
+     * The timeout of a single request in nanoseconds
+     */
+    private final long requestTimeoutNanos;
+
+    /**
+     * Constructor
+     */
+    public NioCaptchaRequestHandler() {
+        this(DEFAULT_EVENT_LOOPS, DEFAULT_MAX_CONNECTIONS_PER_EVENT_LOOP, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param eventLoops                 The number of event loops (threads) to use
+     * @param maxConnectionsPerEventLoop The maximum number of connections of a single event loop to one server
+     * @param requestTimeout             The timeout of a single request
+     */
+    public NioCaptchaRequestHandler(int eventLoops, int maxConnectionsPerEventLoop, Duration requestTimeout) {
+        this(getDefaultSslContext(), eventLoops, maxConnectionsPerEventLoop, requestTimeout, DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sslContext                 The {@link SSLContext} used for HTTPS connections
+     * @param eventLoops                 The number of event loops (threads) to use
+     * @param maxConnectionsPerEventLoop The maximum number of connections of a single event loop to one server
+     * @param requestTimeout             The timeout of a single request
+     * @param keepAlive                  The time after which idle connections are closed
+     */
+    public NioCaptchaRequestHandler(
+        SSLContext sslContext,
+        int eventLoops,
+        int maxConnectionsPerEventLoop,
+        Duration requestTimeout,
+        Duration keepAlive
+    ) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("At least one event loop is required");
+        }
+        if (maxConnectionsPerEventLoop < 1) {
+            throw new IllegalArgumentException("The maximum number of connections must be at least 1");
+        }
+
+        this.requestTimeoutNanos = requestTimeout.toNanos();
+        this.eventLoops = new NioEventLoop[eventLoops];
+
+        ThreadFactory threadFactory = ValidationExecutors.daemonThreadFactory("gcaptchavalidator-nio-");
+        try {
+            for (int i = 0; i < eventLoops; i++) {
+                this.eventLoops[i] = new NioEventLoop(
+                    threadFactory,
+                    sslContext,
+                    maxConnectionsPerEventLoop,
+                    keepAlive.toNanos(),
+                    MAX_RESPONSE_SIZE
+                );
+            }
+        } catch (IOException e) {
+            this.close();
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        CompletableFuture<String> result = this.requestAsync(
+            captchaValidatorConfiguration,
+            response,
+            remoteIP,
+            deadline
+        );
+        try {
+            // The event loop fails the exchange once it times out, this only guards against an unresponsive loop
+            return result.get(
+                this.getTimeoutNanos(captchaValidatorConfiguration, deadline) + RESULT_GRACE_PERIOD_NANOS,
+                TimeUnit.NANOSECONDS
+            );
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+
+            throw new CaptchaRequestHandlerException(e);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+
+            throw new CaptchaRequestHandlerException(new SocketTimeoutException("Request timed out"));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CaptchaRequestHandlerException) {
+                throw (CaptchaRequestHandlerException) e.getCause();
+            }
+
+            throw new CaptchaRequestHandlerException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        NioExchange exchange;
+        try {
+            RequestTemplate requestTemplate = RequestTemplate.of(captchaValidatorConfiguration);
+            NioOrigin origin = NioOrigin.of(requestTemplate.getVerifierUri());
+            byte[] request = requestTemplate.createHttpRequest(response, remoteIP);
+            long timeoutNanos = this.getTimeoutNanos(captchaValidatorConfiguration, deadline);
+            exchange = new NioExchange(
+                origin,
+                request,
+                System.nanoTime() + timeoutNanos,
+                captchaValidatorConfiguration.getConnectTimeout().toNanos(),
+                captchaValidatorConfiguration.getReadTimeout().toNanos()
+            );
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            CompletableFuture<String> failedRequest = new CompletableFuture<>();
+            failedRequest.completeExceptionally(new CaptchaRequestHandlerException(e));
+
+            return failedRequest;
+        }
+
+        this.nextRunningEventLoop().submit(exchange);
+
+        return exchange.getResult();
+    }
+
+    /**
+     * Get the timeout of a request, which is the shortest of the request timeout of this handler,
+     * the request timeout of the configuration and the time left until the deadline.
+     *
+     * @param captchaValidatorConfiguration The configuration of the request
+     * @param deadline                      The deadline of the request
+     * @return The timeout in nanoseconds
+     */
+    private long getTimeoutNanos(CaptchaValidatorConfiguration captchaValidatorConfiguration, Deadline deadline) {
+        return Math.min(
+            this.requestTimeoutNanos,
+            deadline.limit(captchaValidatorConfiguration.getRequestTimeout()).toNanos()
+        );
+    }
+
+    /**
+     * Get the next event loop in round-robin order, skipping event loops that have failed.
+     * If no event loop is running anymore, the next one is returned, which fails the exchange.
+     *
+     * @return The event loop that executes the next exchange
+     */
+    private NioEventLoop nextRunningEventLoop() {
+        int first = this.nextEventLoop.getAndIncrement();
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            NioEventLoop eventLoop = this.eventLoops[Math.floorMod(first + i, this.eventLoops.length)];
+            if (eventLoop.isRunning()) {
+                return eventLoop;
+            }
+        }
+
+        return this.eventLoops[Math.floorMod(first, this.eventLoops.length)];
+    }
+
+    /**
+     * Get the number of connections that are currently open.
+     *
+     * @return The number of open connections of all event loops
+     */
+    public int getOpenConnections() {
+        int openConnections = 0;
+        for (NioEventLoop eventLoop : this.eventLoops) {
+            openConnections += eventLoop.getOpenConnections();
+        }
+
+        return openConnections;
+    }
+
+    /**
+     * Stop all event loops and close all connections.
+     * Requests that are still in flight fail with a {@link CaptchaRequestHandlerException}.
+     */
+    @Override
+    public void close() {
+        for (NioEventLoop eventLoop : this.eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.close();
+            }
+        }
+    }
+
+    /**
+     * Get the default {@link SSLContext} of the JVM.
+     *
+     * @return The default {@link SSLContext}
+     */
+    private static SSLContext getDefaultSslContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No default SSLContext available", e);
+        }
+    }
+}
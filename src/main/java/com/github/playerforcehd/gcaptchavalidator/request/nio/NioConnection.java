@@ -0,0 +1,694 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import com.github.playerforcehd.gcaptchavalidator.request.HttpStatusException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking HTTP/1.1 connection to a SiteVerify server, optionally secured by an {@link SSLEngine}.
+ * <p>
+ * A connection executes one {@link NioExchange} at a time and is kept alive afterwards, so that
+ * the {@link NioEventLoop} can reuse it for the next exchange to the same origin.
+ * Instances are confined to the thread of their {@link NioEventLoop} and therefore need no synchronization.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class NioConnection {
+    /**
+     * Empty buffer used to wrap handshake messages
+     */
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    /**
+     * The default size of the network buffers of plain connections
+     */
+    private static final int PLAIN_BUFFER_SIZE = 8192;
+
+    /**
+     * The {@link NioEventLoop} this connection belongs to
+     */
+    private final NioEventLoop eventLoop;
+
+    /**
+     * The origin this connection is connected to
+     */
+    private final NioOrigin origin;
+
+    /**
+     * The underlying channel
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The {@link SelectionKey} of the channel
+     */
+    private final SelectionKey selectionKey;
+
+    /**
+     * The {@link SSLEngine} of secure connections, null for plain connections
+     */
+    private final SSLEngine sslEngine;
+
+    /**
+     * The parser for the responses received on this connection
+     */
+    private final NioResponseParser responseParser;
+
+    /**
+     * Bytes read from the network (encrypted on secure connections), in write mode
+     */
+    private ByteBuffer networkInput;
+
+    /**
+     * Encrypted bytes that still have to be written to the network, in write mode.
+     * Unused on plain connections.
+     */
+    private ByteBuffer networkOutput;
+
+    /**
+     * Decrypted bytes of secure connections, in write mode.
+     * Unused on plain connections.
+     */
+    private ByteBuffer applicationInput;
+
+    /**
+     * The request of the current exchange that still has to be written, in read mode
+     */
+    private ByteBuffer applicationOutput;
+
+    /**
+     * The exchange that is currently executed, null if the connection is idle
+     */
+    private NioExchange exchange;
+
+    /**
+     * The state if the channel has been connected
+     */
+    private boolean connected;
+
+    /**
+     * The state if the connection has already completed an exchange before the current one
+     */
+    private boolean reused;
+
+    /**
+     * The state if a part of the request of the current exchange has been written to the channel
+     */
+    private boolean requestWritten;
+
+    /**
+     * The state if the response of the current exchange has been received completely
+     */
+    private boolean responseComplete;
+
+    /**
+     * The state if the connection has been closed
+     */
+    private boolean closed;
+
+    /**
+     * The {@link System#nanoTime()} since when the connection is idle
+     */
+    private long idleSince;
+
+    /**
+     * The {@link System#nanoTime()} at which the connection establishment has been initiated
+     */
+    private final long connectStartedAt = System.nanoTime();
+
+    /**
+     * The {@link System#nanoTime()} since when the current exchange waits for data from the server
+     */
+    private long waitingForInputSince;
+
+    /**
+     * Constructor
+     *
+     * @param eventLoop       The {@link NioEventLoop} this connection belongs to
+     * @param origin          The origin to connect to
+     * @param selector        The {@link Selector} of the {@link NioEventLoop}
+     * @param sslContext      The {@link SSLContext} used for secure connections
+     * @param maxResponseSize The maximum accepted size of a response body
+     * @throws IOException Thrown when the connection could not be initiated
+     */
+    NioConnection(
+        NioEventLoop eventLoop,
+        NioOrigin origin,
+        Selector selector,
+        SSLContext sslContext,
+        int maxResponseSize
+    ) throws IOException {
+        this.eventLoop = eventLoop;
+        this.origin = origin;
+        this.responseParser = new NioResponseParser(maxResponseSize);
+
+        if (origin.isSecure()) {
+            this.sslEngine = sslContext.createSSLEngine(origin.getHost(), origin.getPort());
+            this.sslEngine.setUseClientMode(true);
+            SSLParameters sslParameters = this.sslEngine.getSSLParameters();
+            sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+            this.sslEngine.setSSLParameters(sslParameters);
+
+            int packetBufferSize = this.sslEngine.getSession().getPacketBufferSize();
+            this.networkInput = ByteBuffer.allocate(packetBufferSize);
+            this.networkOutput = ByteBuffer.allocate(packetBufferSize);
+            this.applicationInput = ByteBuffer.allocate(this.sslEngine.getSession().getApplicationBufferSize());
+        } else {
+            this.sslEngine = null;
+            this.networkInput = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+        }
+
+        this.channel = SocketChannel.open();
+        try {
+            this.channel.configureBlocking(false);
+            this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            this.connected = this.channel.connect(origin.toSocketAddress());
+            this.selectionKey = this.channel.register(
+                selector,
+                this.connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT,
+                this
+            );
+            if (this.connected && this.sslEngine != null) {
+                this.sslEngine.beginHandshake();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Get the origin this connection is connected to
+     *
+     * @return The origin of this connection
+     */
+    NioOrigin getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Get the exchange that is currently executed
+     *
+     * @return The current exchange or null if the connection is idle
+     */
+    NioExchange getExchange() {
+        return this.exchange;
+    }
+
+    /**
+     * Get the {@link System#nanoTime()} since when the connection is idle
+     *
+     * @return The time since when the connection is idle
+     */
+    long getIdleSince() {
+        return this.idleSince;
+    }
+
+    /**
+     * Check if the connection establishment took longer than the connect timeout of the current exchange.
+     *
+     * @param now The current {@link System#nanoTime()}
+     * @return true if the connection has not been established in time
+     */
+    boolean isConnectTimedOut(long now) {
+        return this.exchange != null && !this.connected
+            && now - this.connectStartedAt >= this.exchange.getConnectTimeoutNanos();
+    }
+
+    /**
+     * Check if the current exchange waited for data from the server for longer than its read timeout.
+     *
+     * @param now The current {@link System#nanoTime()}
+     * @return true if no data has been received in time
+     */
+    boolean isReadTimedOut(long now) {
+        return this.exchange != null && this.connected
+            && now - this.waitingForInputSince >= this.exchange.getReadTimeoutNanos();
+    }
+
+    /**
+     * Start to execute an exchange on this connection.
+     *
+     * @param exchange The exchange to execute
+     */
+    void start(NioExchange exchange) {
+        this.exchange = exchange;
+        this.responseComplete = false;
+        this.requestWritten = false;
+        this.waitingForInputSince = System.nanoTime();
+        this.responseParser.reset();
+        this.applicationOutput = ByteBuffer.wrap(exchange.getRequest());
+
+        if (this.connected) {
+            this.runSafely(this::writeOutput);
+        }
+    }
+
+    /**
+     * Handle the readiness of the channel reported by the {@link Selector}.
+     */
+    void handle() {
+        this.runSafely(() -> {
+            if (this.selectionKey.isConnectable()) {
+                this.finishConnect();
+            }
+            if (!this.closed && this.selectionKey.isReadable()) {
+                this.readInput();
+            }
+            if (!this.closed && this.selectionKey.isWritable()) {
+                this.writeOutput();
+            }
+        });
+    }
+
+    /**
+     * Close this connection and fail the current exchange.
+     *
+     * @param cause The reason why the connection is closed
+     */
+    void fail(IOException cause) {
+        if (this.closed) {
+            return;
+        }
+        this.close();
+
+        NioExchange failedExchange = this.exchange;
+        this.exchange = null;
+        // A kept-alive connection may have been closed by the server in the meantime, in that case the request
+        // is retried once on a fresh connection. Once a part of it has been written, the server may have consumed
+        // the single-use response already, so the failure is ambiguous and the request must not be sent again.
+        boolean retry = failedExchange != null && this.reused && !this.requestWritten;
+        this.eventLoop.onConnectionClosed(this, failedExchange, cause, retry);
+    }
+
+    /**
+     * Close the channel of this connection without notifying anyone.
+     */
+    void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.selectionKey.cancel();
+
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to do
+        }
+    }
+
+    /**
+     * Run an I/O operation and fail the connection on errors.
+     *
+     * @param operation The operation to run
+     */
+    private void runSafely(IOOperation operation) {
+        try {
+            operation.run();
+            if (this.closed) {
+                return;
+            }
+
+            if (this.responseComplete) {
+                this.completeExchange();
+            } else {
+                this.updateInterest();
+            }
+        } catch (IOException e) {
+            this.fail(e);
+        } catch (RuntimeException e) {
+            this.fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Finish the connection establishment and start the TLS handshake on secure connections.
+     *
+     * @throws IOException Thrown when the connection could not be established
+     */
+    private void finishConnect() throws IOException {
+        if (!this.channel.finishConnect()) {
+            return;
+        }
+        this.connected = true;
+        this.waitingForInputSince = System.nanoTime();
+
+        if (this.sslEngine != null) {
+            this.sslEngine.beginHandshake();
+        }
+
+        this.writeOutput();
+    }
+
+    /**
+     * Write as much of the pending output as the channel accepts.
+     *
+     * @throws IOException Thrown when writing fails
+     */
+    private void writeOutput() throws IOException {
+        if (this.sslEngine == null) {
+            if (this.applicationOutput != null && this.channel.write(this.applicationOutput) > 0) {
+                this.requestWritten = true;
+            }
+
+            return;
+        }
+
+        if (this.isHandshaking() && !this.handshake()) {
+            return;
+        }
+
+        while (this.applicationOutput != null && this.applicationOutput.hasRemaining()) {
+            SSLEngineResult result = this.sslEngine.wrap(this.applicationOutput, this.networkOutput);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new EOFException("TLS session has been closed");
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && !this.flushNetworkOutput()) {
+                return;
+            }
+        }
+
+        this.flushNetworkOutput();
+    }
+
+    /**
+     * Read the available input of the channel and feed it to the response parser.
+     *
+     * @throws IOException Thrown when reading fails or the response is malformed
+     */
+    private void readInput() throws IOException {
+        int read = this.channel.read(this.networkInput);
+        if (read > 0) {
+            this.waitingForInputSince = System.nanoTime();
+        }
+
+        if (this.sslEngine == null) {
+            this.networkInput.flip();
+            try {
+                this.consume(this.networkInput);
+            } finally {
+                this.networkInput.compact();
+            }
+        } else {
+            this.unwrapInput();
+        }
+
+        if (read < 0 && !this.closed && !this.responseComplete) {
+            if (this.exchange == null) {
+                // The server closed an idle connection
+                this.fail(new EOFException("Connection closed by server"));
+            } else {
+                this.responseComplete = this.responseParser.onEndOfStream();
+            }
+        }
+    }
+
+    /**
+     * Decrypt the received network input and feed it to the response parser.
+     *
+     * @throws IOException Thrown when decryption fails or the response is malformed
+     */
+    private void unwrapInput() throws IOException {
+        while (!this.responseComplete) {
+            if (this.isHandshaking()) {
+                if (!this.handshake()) {
+                    return;
+                }
+                // The request may be sent as soon as the handshake has finished
+                this.writeOutput();
+                continue;
+            }
+
+            SSLEngineResult result = this.unwrap();
+            switch (result.getStatus()) {
+                case CLOSED:
+                    throw new EOFException("TLS session has been closed");
+                case BUFFER_UNDERFLOW:
+                    this.ensureNetworkInputCapacity();
+                    return;
+                case BUFFER_OVERFLOW:
+                    this.consumeApplicationInput();
+                    this.ensureApplicationInputCapacity();
+                    break;
+                default:
+                    this.consumeApplicationInput();
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0 && !this.isHandshaking()) {
+                        return;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Drive the TLS handshake as far as possible without blocking.
+     *
+     * @return true if the handshake has finished
+     * @throws IOException Thrown when the handshake fails
+     */
+    private boolean handshake() throws IOException {
+        while (true) {
+            switch (this.sslEngine.getHandshakeStatus()) {
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    return true;
+                case NEED_TASK:
+                    for (Runnable task; (task = this.sslEngine.getDelegatedTask()) != null; ) {
+                        task.run();
+                    }
+                    break;
+                case NEED_WRAP:
+                    SSLEngineResult wrapResult = this.sslEngine.wrap(EMPTY_BUFFER, this.networkOutput);
+                    if (wrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new EOFException("TLS session has been closed during handshake");
+                    }
+                    if (!this.flushNetworkOutput()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // NEED_UNWRAP, the handshake messages of the server are required
+                    if (!this.flushNetworkOutput()) {
+                        return false;
+                    }
+
+                    SSLEngineResult unwrapResult = this.unwrap();
+                    if (unwrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new EOFException("TLS session has been closed during handshake");
+                    }
+                    if (unwrapResult.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        this.ensureNetworkInputCapacity();
+
+                        return false;
+                    }
+                    if (unwrapResult.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        this.ensureApplicationInputCapacity();
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Decrypt the network input into the application input.
+     *
+     * @return The result of the {@link SSLEngine}
+     * @throws IOException Thrown when decryption fails
+     */
+    private SSLEngineResult unwrap() throws IOException {
+        this.networkInput.flip();
+        try {
+            return this.sslEngine.unwrap(this.networkInput, this.applicationInput);
+        } finally {
+            this.networkInput.compact();
+        }
+    }
+
+    /**
+     * Feed the decrypted application input to the response parser.
+     *
+     * @throws IOException Thrown when the response is malformed
+     */
+    private void consumeApplicationInput() throws IOException {
+        this.applicationInput.flip();
+        try {
+            this.consume(this.applicationInput);
+        } finally {
+            this.applicationInput.compact();
+        }
+    }
+
+    /**
+     * Feed received bytes to the response parser.
+     *
+     * @param input The received bytes in read mode
+     * @throws IOException Thrown when the response is malformed or unexpected
+     */
+    private void consume(ByteBuffer input) throws IOException {
+        if (!input.hasRemaining() || this.responseComplete) {
+            return;
+        }
+
+        if (this.exchange == null) {
+            throw new ProtocolException("Received data on an idle connection");
+        }
+
+        this.responseComplete = this.responseParser.feed(input);
+    }
+
+    /**
+     * Write the encrypted network output to the channel.
+     *
+     * @return true if all pending network output has been written
+     * @throws IOException Thrown when writing fails
+     */
+    private boolean flushNetworkOutput() throws IOException {
+        this.networkOutput.flip();
+        try {
+            if (this.channel.write(this.networkOutput) > 0 && this.exchange != null && !this.isHandshaking()) {
+                this.requestWritten = true;
+            }
+        } finally {
+            this.networkOutput.compact();
+        }
+
+        return this.networkOutput.position() == 0;
+    }
+
+    /**
+     * Make sure that the network input is able to hold a whole TLS packet.
+     */
+    private void ensureNetworkInputCapacity() {
+        int packetBufferSize = this.sslEngine.getSession().getPacketBufferSize();
+        if (this.networkInput.capacity() < packetBufferSize) {
+            ByteBuffer enlarged = ByteBuffer.allocate(packetBufferSize);
+            this.networkInput.flip();
+            enlarged.put(this.networkInput);
+            this.networkInput = enlarged;
+        }
+    }
+
+    /**
+     * Make sure that the application input is able to hold the content of a whole TLS packet.
+     */
+    private void ensureApplicationInputCapacity() {
+        int applicationBufferSize = this.sslEngine.getSession().getApplicationBufferSize();
+        if (this.applicationInput.remaining() < applicationBufferSize) {
+            ByteBuffer enlarged = ByteBuffer.allocate(this.applicationInput.position() + applicationBufferSize);
+            this.applicationInput.flip();
+            enlarged.put(this.applicationInput);
+            this.applicationInput = enlarged;
+        }
+    }
+
+    /**
+     * Check if the {@link SSLEngine} is in the middle of a handshake.
+     *
+     * @return true if the handshake is still running
+     */
+    private boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus handshakeStatus = this.sslEngine.getHandshakeStatus();
+
+        return handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+            && handshakeStatus != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /**
+     * Complete the current exchange and hand the connection back to the {@link NioEventLoop}.
+     */
+    private void completeExchange() {
+        NioExchange completedExchange = this.exchange;
+        boolean keepAlive = this.responseParser.isKeepAlive();
+        int statusCode = this.responseParser.getStatusCode();
+        String retryAfter = this.responseParser.getRetryAfter();
+        String body = this.responseParser.getBody();
+
+        this.exchange = null;
+        this.applicationOutput = null;
+        this.responseComplete = false;
+        this.reused = true;
+        this.idleSince = System.nanoTime();
+
+        if (!keepAlive) {
+            this.close();
+        } else {
+            this.selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+
+        if (HttpStatusException.isTemporaryFailure(statusCode)) {
+            completedExchange.getResult().completeExceptionally(
+                new HttpStatusException(statusCode, HttpStatusException.parseRetryAfter(retryAfter))
+            );
+        } else {
+            completedExchange.getResult().complete(body);
+        }
+        this.eventLoop.onExchangeCompleted(this, keepAlive);
+    }
+
+    /**
+     * Update the operations the {@link Selector} should watch for.
+     */
+    private void updateInterest() {
+        if (!this.connected) {
+            this.selectionKey.interestOps(SelectionKey.OP_CONNECT);
+
+            return;
+        }
+
+        boolean pendingOutput = this.applicationOutput != null && this.applicationOutput.hasRemaining()
+            || this.networkOutput != null && this.networkOutput.position() > 0;
+        this.selectionKey.interestOps(SelectionKey.OP_READ | (pendingOutput ? SelectionKey.OP_WRITE : 0));
+    }
+
+    /**
+     * An I/O operation executed on the connection.
+     */
+    @FunctionalInterface
+    private interface IOOperation {
+        /**
+         * Run the operation.
+         *
+         * @throws IOException Thrown when the operation fails
+         */
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single thread that drives many {@link NioConnection}s using a {@link Selector}.
+ * <p>
+ * Exchanges are submitted from any thread and executed on kept-alive connections of this event loop.
+ * The event loop opens at most a configured number of connections per origin, exchanges that exceed
+ * this bound wait until a connection becomes available.
+ * Except for {@link #submit(NioExchange)}, {@link #isRunning()} and {@link #close()}, all methods of this class are
+ * only called from the thread of the event loop.
+ * <p>
+ * An unexpected exception while handling a connection or an exchange only fails that connection or exchange,
+ * the event loop keeps running. Only a failure of the {@link Selector} itself stops the event loop, in which case
+ * all pending and later submitted exchanges fail with that failure as cause.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class NioEventLoop implements Closeable {
+    /**
+     * The maximum time the event loop waits for readiness before it checks for timeouts
+     */
+    private static final long SELECT_TIMEOUT_MILLIS = 50;
+
+    /**
+     * The time the event loop waits for its thread to finish on close
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The {@link Selector} of this event loop
+     */
+    private final Selector selector;
+
+    /**
+     * The thread of this event loop
+     */
+    private final Thread thread;
+
+    /**
+     * The {@link SSLContext} used for secure connections
+     */
+    private final SSLContext sslContext;
+
+    /**
+     * The maximum number of connections per origin
+     */
+    private final int maxConnectionsPerOrigin;
+
+    /**
+     * The time after which idle connections are closed
+     */
+    private final long keepAliveNanos;
+
+    /**
+     * The maximum accepted size of a response body
+     */
+    private final int maxResponseSize;
+
+    /**
+     * Exchanges submitted by other threads that have not been dispatched yet
+     */
+    private final Queue<NioExchange> submittedExchanges = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The state if the selector has already been woken up for newly submitted exchanges
+     */
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+
+    /**
+     * The connection pools by origin
+     */
+    private final Map<NioOrigin, ConnectionPool> connectionPools = new HashMap<>();
+
+    /**
+     * The state if the event loop is running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The failure that stopped the event loop, or null if it has not failed
+     */
+    private volatile Throwable failure;
+
+    /**
+     * The number of currently open connections
+     */
+    private volatile int openConnections;
+
+    /**
+     * Constructor
+     *
+     * @param threadFactory           The {@link ThreadFactory} used to create the thread of the event loop
+     * @param sslContext              The {@link SSLContext} used for secure connections
+     * @param maxConnectionsPerOrigin The maximum number of connections per origin
+     * @param keepAliveNanos          The time after which idle connections are closed
+     * @param maxResponseSize         The maximum accepted size of a response body
+     * @throws IOException Thrown when the {@link Selector} could not be opened
+     */
+    NioEventLoop(
+        ThreadFactory threadFactory,
+        SSLContext sslContext,
+        int maxConnectionsPerOrigin,
+        long keepAliveNanos,
+        int maxResponseSize
+    ) throws IOException {
+        this.selector = Selector.open();
+        this.sslContext = sslContext;
+        this.maxConnectionsPerOrigin = maxConnectionsPerOrigin;
+        this.keepAliveNanos = keepAliveNanos;
+        this.maxResponseSize = maxResponseSize;
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Submit an exchange for execution on this event loop.
+     *
+     * @param exchange The exchange to execute
+     */
+    void submit(NioExchange exchange) {
+        this.submittedExchanges.add(exchange);
+
+        if (!this.running) {
+            // The event loop might have already drained its queue for the last time
+            this.failSubmittedExchanges();
+        } else if (this.wakeupRequested.compareAndSet(false, true)) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Check if this event loop accepts exchanges, which is the case until it has been closed or has failed.
+     *
+     * @return true if the event loop is running
+     */
+    boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Get the number of connections that are currently open.
+     *
+     * @return The number of open connections
+     */
+    int getOpenConnections() {
+        return this.openConnections;
+    }
+
+    /**
+     * Stop the event loop, close all connections and fail all pending exchanges.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+
+        if (Thread.currentThread() != this.thread) {
+            try {
+                this.thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Called by a connection when it has completed an exchange.
+     *
+     * @param connection The connection that completed an exchange
+     * @param keepAlive  The state if the connection can be reused
+     */
+    void onExchangeCompleted(NioConnection connection, boolean keepAlive) {
+        ConnectionPool connectionPool = this.connectionPools.get(connection.getOrigin());
+        if (!keepAlive) {
+            this.removeConnection(connectionPool, connection);
+            this.dispatchWaitingExchanges(connectionPool);
+
+            return;
+        }
+
+        NioExchange nextExchange = this.pollWaitingExchange(connectionPool);
+        if (nextExchange != null) {
+            connection.start(nextExchange);
+        } else {
+            connectionPool.idleConnections.addFirst(connection);
+        }
+    }
+
+    /**
+     * Called by a connection when it has been closed because of an error.
+     *
+     * @param connection The connection that has been closed
+     * @param exchange   The exchange that was executed by the connection or null
+     * @param cause      The reason why the connection has been closed
+     * @param retry      The state if the exchange may be retried on another connection
+     */
+    void onConnectionClosed(NioConnection connection, NioExchange exchange, IOException cause, boolean retry) {
+        ConnectionPool connectionPool = this.connectionPools.get(connection.getOrigin());
+        this.removeConnection(connectionPool, connection);
+
+        if (exchange != null) {
+            if (retry && this.running && !exchange.isExpired(System.nanoTime()) && exchange.markRetried()) {
+                // Retry on a fresh connection, another idle connection might have been closed by the server as well
+                if (connectionPool.connections.size() < this.maxConnectionsPerOrigin) {
+                    this.openConnection(connectionPool, exchange);
+                } else {
+                    connectionPool.waitingExchanges.addFirst(exchange);
+                }
+            } else {
+                exchange.getResult().completeExceptionally(new CaptchaRequestHandlerException(cause));
+            }
+        }
+
+        this.dispatchWaitingExchanges(connectionPool);
+    }
+
+    /**
+     * The main loop of the event loop thread.
+     */
+    private void run() {
+        long lastExpiration = System.nanoTime();
+        try {
+            while (this.running) {
+                this.selector.select(SELECT_TIMEOUT_MILLIS);
+                this.wakeupRequested.set(false);
+
+                Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey selectionKey = selectedKeys.next();
+                    selectedKeys.remove();
+                    NioConnection connection = (NioConnection) selectionKey.attachment();
+                    try {
+                        if (selectionKey.isValid()) {
+                            connection.handle();
+                        }
+                    } catch (RuntimeException e) {
+                        this.failConnection(connection, e);
+                    }
+                }
+
+                for (NioExchange exchange; (exchange = this.submittedExchanges.poll()) != null; ) {
+                    try {
+                        this.dispatch(exchange);
+                    } catch (RuntimeException e) {
+                        // A connection that has already started the exchange is closed once the exchange expires
+                        exchange.getResult().completeExceptionally(new CaptchaRequestHandlerException(e));
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - lastExpiration >= TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT_MILLIS)) {
+                    this.expire(now);
+                    lastExpiration = now;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.failure = e;
+            this.running = false;
+        } finally {
+            this.shutdown();
+        }
+    }
+
+    /**
+     * Execute an exchange on an idle or a new connection, or let it wait for a free connection.
+     *
+     * @param exchange The exchange to dispatch
+     */
+    private void dispatch(NioExchange exchange) {
+        if (exchange.getResult().isDone()) {
+            return;
+        }
+
+        ConnectionPool connectionPool = this.connectionPools.computeIfAbsent(
+            exchange.getOrigin(),
+            origin -> new ConnectionPool()
+        );
+
+        NioConnection idleConnection = connectionPool.idleConnections.pollFirst();
+        if (idleConnection != null) {
+            idleConnection.start(exchange);
+        } else if (connectionPool.connections.size() < this.maxConnectionsPerOrigin) {
+            this.openConnection(connectionPool, exchange);
+        } else {
+            connectionPool.waitingExchanges.add(exchange);
+        }
+    }
+
+    /**
+     * Open a new connection and start an exchange on it.
+     *
+     * @param connectionPool The pool the connection belongs to
+     * @param exchange       The exchange to execute on the new connection
+     */
+    private void openConnection(ConnectionPool connectionPool, NioExchange exchange) {
+        NioConnection connection;
+        try {
+            connection = new NioConnection(
+                this,
+                exchange.getOrigin(),
+                this.selector,
+                this.sslContext,
+                this.maxResponseSize
+            );
+        } catch (IOException | RuntimeException e) {
+            exchange.getResult().completeExceptionally(new CaptchaRequestHandlerException(e));
+
+            return;
+        }
+
+        connectionPool.connections.add(connection);
+        this.openConnections++;
+        connection.start(exchange);
+    }
+
+    /**
+     * Open connections for waiting exchanges as long as the pool is not exhausted.
+     *
+     * @param connectionPool The pool to dispatch the waiting exchanges of
+     */
+    private void dispatchWaitingExchanges(ConnectionPool connectionPool) {
+        while (connectionPool.connections.size() < this.maxConnectionsPerOrigin) {
+            NioExchange exchange = this.pollWaitingExchange(connectionPool);
+            if (exchange == null) {
+                return;
+            }
+
+            this.openConnection(connectionPool, exchange);
+        }
+    }
+
+    /**
+     * Get the next waiting exchange that has not been completed in the meantime.
+     *
+     * @param connectionPool The pool to get the waiting exchange of
+     * @return The next waiting exchange or null
+     */
+    private NioExchange pollWaitingExchange(ConnectionPool connectionPool) {
+        for (NioExchange exchange; (exchange = connectionPool.waitingExchanges.poll()) != null; ) {
+            if (!exchange.getResult().isDone()) {
+                return exchange;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove a closed connection from its pool.
+     *
+     * @param connectionPool The pool of the connection
+     * @param connection     The connection to remove
+     */
+    private void removeConnection(ConnectionPool connectionPool, NioConnection connection) {
+        if (connectionPool.connections.remove(connection)) {
+            connectionPool.idleConnections.remove(connection);
+            this.openConnections--;
+        }
+    }
+
+    /**
+     * Fail timed out exchanges and close connections that have been idle for too long.
+     *
+     * @param now The current {@link System#nanoTime()}
+     */
+    private void expire(long now) {
+        for (ConnectionPool connectionPool : this.connectionPools.values()) {
+            Iterator<NioExchange> waitingExchanges = connectionPool.waitingExchanges.iterator();
+            while (waitingExchanges.hasNext()) {
+                NioExchange exchange = waitingExchanges.next();
+                if (exchange.isExpired(now)) {
+                    waitingExchanges.remove();
+                    exchange.getResult().completeExceptionally(new CaptchaRequestHandlerException(
+                        new SocketTimeoutException("Timed out waiting for a connection")
+                    ));
+                }
+            }
+
+            for (NioConnection connection : new ArrayList<>(connectionPool.connections)) {
+                try {
+                    NioExchange exchange = connection.getExchange();
+                    if (exchange != null && exchange.isExpired(now)) {
+                        connection.fail(new SocketTimeoutException("Request timed out"));
+                    } else if (connection.isConnectTimedOut(now)) {
+                        connection.fail(new SocketTimeoutException("Connect timed out"));
+                    } else if (connection.isReadTimedOut(now)) {
+                        connection.fail(new SocketTimeoutException("Read timed out"));
+                    } else if (exchange == null && now - connection.getIdleSince() >= this.keepAliveNanos) {
+                        connection.close();
+                        this.removeConnection(connectionPool, connection);
+                    }
+                } catch (RuntimeException e) {
+                    this.failConnection(connection, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fail a connection because handling it has thrown an unexpected exception.
+     * If failing it throws as well, the connection is only closed and removed from its pool.
+     *
+     * @param connection The connection to fail
+     * @param cause      The unexpected exception
+     */
+    private void failConnection(NioConnection connection, RuntimeException cause) {
+        try {
+            connection.fail(new IOException(cause));
+        } catch (RuntimeException e) {
+            connection.close();
+            ConnectionPool connectionPool = this.connectionPools.get(connection.getOrigin());
+            if (connectionPool != null) {
+                this.removeConnection(connectionPool, connection);
+            }
+        }
+    }
+
+    /**
+     * Close all connections and fail all exchanges that have not been completed yet.
+     */
+    private void shutdown() {
+        CaptchaRequestHandlerException closedException = this.createClosedException();
+
+        for (ConnectionPool connectionPool : this.connectionPools.values()) {
+            for (NioConnection connection : connectionPool.connections) {
+                connection.close();
+                if (connection.getExchange() != null) {
+                    connection.getExchange().getResult().completeExceptionally(closedException);
+                }
+            }
+            for (NioExchange exchange : connectionPool.waitingExchanges) {
+                exchange.getResult().completeExceptionally(closedException);
+            }
+        }
+        this.connectionPools.clear();
+        this.openConnections = 0;
+        this.failSubmittedExchanges();
+
+        try {
+            this.selector.close();
+        } catch (IOException ignored) {
+            // Nothing left to do
+        }
+    }
+
+    /**
+     * Fail all exchanges that have been submitted but not dispatched yet.
+     */
+    private void failSubmittedExchanges() {
+        for (NioExchange exchange; (exchange = this.submittedExchanges.poll()) != null; ) {
+            exchange.getResult().completeExceptionally(this.createClosedException());
+        }
+    }
+
+    /**
+     * Create the exception that fails exchanges that can not be executed because the event loop has stopped.
+     *
+     * @return The created exception, caused by the failure of the event loop if it has failed
+     */
+    private CaptchaRequestHandlerException createClosedException() {
+        Throwable failure = this.failure;
+        if (failure != null) {
+            return new CaptchaRequestHandlerException("The event loop of the request handler has failed", failure);
+        }
+
+        return new CaptchaRequestHandlerException("The request handler has been closed");
+    }
+
+    /**
+     * The connections and waiting exchanges of a single origin.
+     */
+    private static class ConnectionPool {
+        /**
+         * All open connections of the origin
+         */
+        private final Set<NioConnection> connections = new LinkedHashSet<>();
+
+        /**
+         * The idle connections, the most recently used connection first
+         */
+        private final ArrayDeque<NioConnection> idleConnections = new ArrayDeque<>();
+
+        /**
+         * Exchanges that wait for a connection
+         */
+        private final ArrayDeque<NioExchange> waitingExchanges = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single request to the SiteVerify servers and the future that receives its response.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class NioExchange {
+    /**
+     * The origin the request is send to
+     */
+    private final NioOrigin origin;
+
+    /**
+     * The serialized HTTP request
+     */
+    private final byte[] request;
+
+    /**
+     * The {@link System#nanoTime()} at which the exchange times out
+     */
+    private final long deadline;
+
+    /**
+     * The maximum time in nanoseconds to wait until a new connection has been established
+     */
+    private final long connectTimeoutNanos;
+
+    /**
+     * The maximum time in nanoseconds to wait for data from the server
+     */
+    private final long readTimeoutNanos;
+
+    /**
+     * The future that is completed with the body of the response
+     */
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+
+    /**
+     * The state if the request has already been retried on a fresh connection
+     */
+    private boolean retried;
+
+    /**
+     * Constructor
+     *
+     * @param origin   The origin the request is send to
+     * @param request  The serialized HTTP request
+     * @param deadline The {@link System#nanoTime()} at which the exchange times out
+     */
+    NioExchange(NioOrigin origin, byte[] request, long deadline) {
+        this(origin, request, deadline, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param origin              The origin the request is send to
+     * @param request             The serialized HTTP request
+     * @param deadline            The {@link System#nanoTime()} at which the exchange times out
+     * @param connectTimeoutNanos The maximum time in nanoseconds to wait until a new connection has been established
+     * @param readTimeoutNanos    The maximum time in nanoseconds to wait for data from the server
+     */
+    NioExchange(NioOrigin origin, byte[] request, long deadline, long connectTimeoutNanos, long readTimeoutNanos) {
+        this.origin = origin;
+        this.request = request;
+        this.deadline = deadline;
+        this.connectTimeoutNanos = connectTimeoutNanos;
+        this.readTimeoutNanos = readTimeoutNanos;
+    }
+
+    /**
+     * Get the origin the request is send to
+     *
+     * @return The origin of the request
+     */
+    NioOrigin getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Get the serialized HTTP request
+     *
+     * @return The serialized HTTP request
+     */
+    byte[] getRequest() {
+        return this.request;
+    }
+
+    /**
+     * Get the maximum time in nanoseconds to wait until a new connection has been established
+     *
+     * @return The connect timeout in nanoseconds
+     */
+    long getConnectTimeoutNanos() {
+        return this.connectTimeoutNanos;
+    }
+
+    /**
+     * Get the maximum time in nanoseconds to wait for data from the server
+     *
+     * @return The read timeout in nanoseconds
+     */
+    long getReadTimeoutNanos() {
+        return this.readTimeoutNanos;
+    }
+
+    /**
+     * Get the future that is completed with the body of the response
+     *
+     * @return The future of the response body
+     */
+    CompletableFuture<String> getResult() {
+        return this.result;
+    }
+
+    /**
+     * Check if the exchange has timed out.
+     *
+     * @param now The current {@link System#nanoTime()}
+     * @return true if the deadline of the exchange has passed
+     */
+    boolean isExpired(long now) {
+        return now - this.deadline >= 0;
+    }
+
+    /**
+     * Mark the exchange as retried, which is only allowed once.
+     *
+     * @return true if the exchange may be retried, false if it has already been retried before
+     */
+    boolean markRetried() {
+        if (this.retried) {
+            return false;
+        }
+        this.retried = true;
+
+        return true;
+    }
+}
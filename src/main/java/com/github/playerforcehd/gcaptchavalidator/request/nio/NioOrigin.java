@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * The scheme, host and port of a SiteVerify server.
+ * <p>
+ * Connections are pooled per origin, which means that a kept-alive connection is only reused
+ * for requests to the same origin.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class NioOrigin {
+    /**
+     * The state if connections to this origin use TLS
+     */
+    private final boolean secure;
+
+    /**
+     * The host of the origin
+     */
+    private final String host;
+
+    /**
+     * The port of the origin
+     */
+    private final int port;
+
+    /**
+     * Constructor
+     *
+     * @param secure The state if connections to this origin use TLS
+     * @param host   The host of the origin
+     * @param port   The port of the origin
+     */
+    NioOrigin(boolean secure, String host, int port) {
+        this.secure = secure;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Create the origin of an URI.
+     *
+     * @param uri The URI to get the origin from
+     * @return The origin of the URI
+     * @throws IllegalArgumentException Thrown when the URI is no absolute HTTP(S) URI
+     */
+    static NioOrigin of(URI uri) {
+        String scheme = uri.getScheme();
+        boolean secure;
+        if ("https".equalsIgnoreCase(scheme)) {
+            secure = true;
+        } else if ("http".equalsIgnoreCase(scheme)) {
+            secure = false;
+        } else {
+            throw new IllegalArgumentException("Unsupported scheme of verifier URL: " + scheme);
+        }
+
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IllegalArgumentException("Verifier URL has no host: " + uri);
+        }
+
+        int port = uri.getPort();
+        if (port == -1) {
+            port = secure ? 443 : 80;
+        }
+
+        return new NioOrigin(secure, host, port);
+    }
+
+    /**
+     * Check if connections to this origin use TLS.
+     *
+     * @return true if connections to this origin use TLS
+     */
+    boolean isSecure() {
+        return this.secure;
+    }
+
+    /**
+     * Get the host of the origin.
+     * IPv6 addresses are returned without brackets.
+     *
+     * @return The host of the origin
+     */
+    String getHost() {
+        if (this.host.startsWith("[") && this.host.endsWith("]")) {
+            return this.host.substring(1, this.host.length() - 1);
+        }
+
+        return this.host;
+    }
+
+    /**
+     * Get the port of the origin
+     *
+     * @return The port of the origin
+     */
+    int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Get the value of the Host header used for requests to this origin.
+     * The port is omitted when it is the default port of the scheme.
+     *
+     * @return The value of the Host header
+     */
+    String getHostHeader() {
+        if (this.port == (this.secure ? 443 : 80)) {
+            return this.host;
+        }
+
+        return this.host + ":" + this.port;
+    }
+
+    /**
+     * Create an unresolved socket address of this origin.
+     *
+     * @return The socket address of this origin
+     */
+    InetSocketAddress toSocketAddress() {
+        return new InetSocketAddress(this.getHost(), this.port);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        NioOrigin nioOrigin = (NioOrigin) o;
+
+        return this.secure == nioOrigin.secure && this.port == nioOrigin.port && this.host.equals(nioOrigin.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.secure, this.host, this.port);
+    }
+
+    @Override
+    public String toString() {
+        return (this.secure ? "https://" : "http://") + this.host + ":" + this.port;
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * An incremental parser for HTTP/1.1 responses.
+ * <p>
+ * The parser is fed with the bytes as they arrive on a connection and supports bodies that are
+ * delimited by a Content-Length header, by chunked transfer encoding or by the end of the connection.
+ * One parser instance is reused for all responses of a connection.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class NioResponseParser {
+    /**
+     * The maximum length of the status line and of a single header line
+     */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * The states of the parser
+     */
+    private enum State {
+        STATUS_LINE,
+        HEADERS,
+        FIXED_BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_DATA_END,
+        TRAILERS,
+        BODY_UNTIL_CLOSE,
+        DONE
+    }
+
+    /**
+     * The maximum accepted size of a response body
+     */
+    private final int maxBodySize;
+
+    /**
+     * The line that is currently being read
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * The current state of the parser
+     */
+    private State state;
+
+    /**
+     * The state if any bytes of the current response have been received
+     */
+    private boolean started;
+
+    /**
+     * The status code of the current response
+     */
+    private int statusCode;
+
+    /**
+     * The value of the Retry-After header or null
+     */
+    private String retryAfter;
+
+    /**
+     * The value of the Content-Length header or -1
+     */
+    private long contentLength;
+
+    /**
+     * The state if the body uses chunked transfer encoding
+     */
+    private boolean chunked;
+
+    /**
+     * The state if the connection may be reused after the response
+     */
+    private boolean keepAlive;
+
+    /**
+     * The remaining bytes of the fixed size body or of the current chunk
+     */
+    private long remaining;
+
+    /**
+     * The received body
+     */
+    private byte[] body = new byte[512];
+
+    /**
+     * The number of bytes of the body that have been received
+     */
+    private int bodySize;
+
+    /**
+     * Constructor
+     *
+     * @param maxBodySize The maximum accepted size of a response body
+     */
+    NioResponseParser(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        this.reset();
+    }
+
+    /**
+     * Reset the parser to receive the next response.
+     */
+    void reset() {
+        this.state = State.STATUS_LINE;
+        this.started = false;
+        this.line.setLength(0);
+        this.statusCode = 0;
+        this.retryAfter = null;
+        this.contentLength = -1;
+        this.chunked = false;
+        this.keepAlive = true;
+        this.remaining = 0;
+        this.bodySize = 0;
+    }
+
+    /**
+     * Feed received bytes into the parser.
+     * All bytes up to the end of the response are consumed from the buffer.
+     *
+     * @param buffer The buffer to read the received bytes from
+     * @return true if the response is complete
+     * @throws IOException Thrown when the response is malformed or exceeds the size limits
+     */
+    boolean feed(ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            this.started = true;
+        }
+
+        while (buffer.hasRemaining() && this.state != State.DONE) {
+            switch (this.state) {
+                case STATUS_LINE:
+                    if (this.readLine(buffer)) {
+                        this.parseStatusLine();
+                        this.state = State.HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (this.readLine(buffer)) {
+                        if (this.line.length() == 0) {
+                            this.onHeadersComplete();
+                        } else {
+                            this.parseHeader();
+                        }
+                        this.line.setLength(0);
+                    }
+                    break;
+                case FIXED_BODY:
+                case CHUNK_DATA:
+                    int length = (int) Math.min(this.remaining, buffer.remaining());
+                    this.appendBody(buffer, length);
+                    this.remaining -= length;
+                    if (this.remaining == 0) {
+                        this.state = this.state == State.FIXED_BODY ? State.DONE : State.CHUNK_DATA_END;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (this.readLine(buffer)) {
+                        this.parseChunkSize();
+                    }
+                    break;
+                case CHUNK_DATA_END:
+                    if (this.readLine(buffer)) {
+                        if (this.line.length() != 0) {
+                            throw new ProtocolException("Malformed chunk");
+                        }
+                        this.state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (this.readLine(buffer)) {
+                        if (this.line.length() == 0) {
+                            this.state = State.DONE;
+                        }
+                        this.line.setLength(0);
+                    }
+                    break;
+                case BODY_UNTIL_CLOSE:
+                    this.appendBody(buffer, buffer.remaining());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Notify the parser that the connection has been closed by the server.
+     *
+     * @return true if the closed connection completed the response
+     * @throws EOFException Thrown when the connection has been closed before the response was complete
+     */
+    boolean onEndOfStream() throws EOFException {
+        if (this.state == State.BODY_UNTIL_CLOSE) {
+            this.state = State.DONE;
+            this.keepAlive = false;
+
+            return true;
+        }
+
+        throw new EOFException("Connection closed before the response was complete");
+    }
+
+    /**
+     * Check if any bytes of the current response have been received.
+     *
+     * @return true if the response has been started
+     */
+    boolean hasStarted() {
+        return this.started;
+    }
+
+    /**
+     * Check if the connection may be reused after the current response.
+     *
+     * @return true if the connection may be kept alive
+     */
+    boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    /**
+     * Get the status code of the current response.
+     *
+     * @return The status code of the current response
+     */
+    int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Get the value of the Retry-After header of the current response.
+     *
+     * @return The value of the Retry-After header or null if there is none
+     */
+    String getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    /**
+     * Get the body of the current response decoded as UTF-8.
+     *
+     * @return The body of the current response
+     */
+    String getBody() {
+        return new String(this.body, 0, this.bodySize, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a line terminated by CRLF or LF into {@link #line}.
+     *
+     * @param buffer The buffer to read from
+     * @return true if the line is complete
+     * @throws ProtocolException Thrown when the line is too long
+     */
+    private boolean readLine(ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') {
+                int length = this.line.length();
+                if (length > 0 && this.line.charAt(length - 1) == '\r') {
+                    this.line.setLength(length - 1);
+                }
+
+                return true;
+            }
+
+            if (this.line.length() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+            }
+            this.line.append(c);
+        }
+
+        return false;
+    }
+
+    /**
+     * Parse the status line stored in {@link #line}.
+     *
+     * @throws ProtocolException Thrown when the status line is malformed
+     */
+    private void parseStatusLine() throws ProtocolException {
+        String statusLine = this.line.toString();
+        this.line.setLength(0);
+
+        int firstSpace = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || firstSpace < 0 || statusLine.length() < firstSpace + 4) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+
+        try {
+            this.statusCode = Integer.parseInt(statusLine.substring(firstSpace + 1, firstSpace + 4));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+
+        // HTTP/1.0 closes connections unless a keep-alive header says otherwise
+        this.keepAlive = !statusLine.startsWith("HTTP/1.0");
+    }
+
+    /**
+     * Parse the header line stored in {@link #line}.
+     *
+     * @throws ProtocolException Thrown when a relevant header is malformed
+     */
+    private void parseHeader() throws ProtocolException {
+        int separator = this.line.indexOf(":");
+        if (separator <= 0) {
+            return;
+        }
+
+        String name = this.line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+        String value = this.line.substring(separator + 1).trim();
+        switch (name) {
+            case "content-length":
+                try {
+                    this.contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Malformed Content-Length: " + value);
+                }
+                break;
+            case "retry-after":
+                this.retryAfter = value;
+                break;
+            case "transfer-encoding":
+                this.chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                break;
+            case "connection":
+                String connection = value.toLowerCase(Locale.ROOT);
+                if (connection.contains("close")) {
+                    this.keepAlive = false;
+                } else if (connection.contains("keep-alive")) {
+                    this.keepAlive = true;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Determine how the body is delimited after all headers have been received.
+     *
+     * @throws ProtocolException Thrown when the announced body is too large
+     */
+    private void onHeadersComplete() throws ProtocolException {
+        if (this.statusCode >= 100 && this.statusCode < 200) {
+            // Informational responses are followed by the actual response
+            this.reset();
+            this.started = true;
+
+            return;
+        }
+
+        if (this.statusCode == 204 || this.statusCode == 304) {
+            this.state = State.DONE;
+        } else if (this.chunked) {
+            this.state = State.CHUNK_SIZE;
+        } else if (this.contentLength >= 0) {
+            if (this.contentLength > this.maxBodySize) {
+                throw new ProtocolException("Response body exceeds " + this.maxBodySize + " bytes");
+            }
+            this.remaining = this.contentLength;
+            this.state = this.remaining == 0 ? State.DONE : State.FIXED_BODY;
+        } else {
+            this.keepAlive = false;
+            this.state = State.BODY_UNTIL_CLOSE;
+        }
+    }
+
+    /**
+     * Parse the chunk size line stored in {@link #line}.
+     *
+     * @throws ProtocolException Thrown when the chunk size is malformed
+     */
+    private void parseChunkSize() throws ProtocolException {
+        String chunkSize = this.line.toString();
+        this.line.setLength(0);
+
+        int extension = chunkSize.indexOf(';');
+        if (extension >= 0) {
+            chunkSize = chunkSize.substring(0, extension);
+        }
+
+        try {
+            this.remaining = Long.parseLong(chunkSize.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed chunk size: " + chunkSize);
+        }
+
+        if (this.remaining < 0 || this.bodySize + this.remaining > this.maxBodySize) {
+            throw new ProtocolException("Response body exceeds " + this.maxBodySize + " bytes");
+        }
+
+        this.state = this.remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+    }
+
+    /**
+     * Append bytes of the buffer to the body.
+     *
+     * @param buffer The buffer to read from
+     * @param length The number of bytes to append
+     * @throws ProtocolException Thrown when the body exceeds the maximum size
+     */
+    private void appendBody(ByteBuffer buffer, int length) throws ProtocolException {
+        int requiredSize = this.bodySize + length;
+        if (requiredSize > this.maxBodySize) {
+            throw new ProtocolException("Response body exceeds " + this.maxBodySize + " bytes");
+        }
+
+        if (requiredSize > this.body.length) {
+            int newSize = Math.min(Math.max(requiredSize, this.body.length * 2), this.maxBodySize);
+            this.body = Arrays.copyOf(this.body, newSize);
+        }
+
+        buffer.get(this.body, this.bodySize, length);
+        this.bodySize = requiredSize;
+    }
+}
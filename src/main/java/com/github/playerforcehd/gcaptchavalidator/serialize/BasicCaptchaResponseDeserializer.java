@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CaptchaResponseDeserializer} that is able to only extract if a validation has succeeded,
+ * without deserializing the whole response.
+ * <p>
+ * {@link com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator} uses this fast path for
+ * {@link com.github.playerforcehd.gcaptchavalidator.CaptchaValidator#basicValidate(String, String)}
+ * when its deserializer implements this interface.
+ * The result must be the same as {@code deserialize(response).hasSucceeded()}, which means that
+ * responses that carry error-codes are never treated as succeeded.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public interface BasicCaptchaResponseDeserializer extends CaptchaResponseDeserializer {
+    /**
+     * Check if the validation of a response that is supplied as the original String
+     * that the SiteVerify API responded with has succeeded.
+     *
+     * @param response The response to check
+     * @return true if the validation has succeeded
+     */
+    boolean basicDeserialize(String response);
+
+    /**
+     * Check if the validation of a response that is supplied as the raw UTF-8 encoded bytes
+     * that the SiteVerify API responded with has succeeded.
+     * The remaining bytes of the supplied {@link ByteBuffer} are consumed.
+     *
+     * @param response The response to check
+     * @return true if the validation has succeeded
+     */
+    boolean basicDeserialize(ByteBuffer response);
+}
@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CaptchaResponseDeserializer} that is able to deserialize the raw bytes
+ * received from the Google ReCaptcha SiteVerify API.
+ * <p>
+ * It is used together with a
+ * {@link com.github.playerforcehd.gcaptchavalidator.request.ByteBufferCaptchaRequestHandler}
+ * to avoid an intermediate String between the request and the deserialization.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public interface ByteBufferCaptchaResponseDeserializer extends CaptchaResponseDeserializer {
+    /**
+     * Deserialize a response that is supplied as the raw UTF-8 encoded bytes that the SiteVerify API
+     * responded with.
+     * The remaining bytes of the supplied {@link ByteBuffer} are consumed.
+     *
+     * @param response The response to deserialize
+     * @return The deserialized response as an POJO
+     */
+    CaptchaValidationResponse deserialize(ByteBuffer response);
+}
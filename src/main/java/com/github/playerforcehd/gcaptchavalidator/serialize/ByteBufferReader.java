@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Reader} that decodes the remaining UTF-8 encoded bytes of a {@link ByteBuffer}.
+ * <p>
+ * The bytes are decoded directly into the buffer of the caller.
+ * Other than an {@link java.io.InputStreamReader}, no intermediate byte or char buffers are allocated.
+ * The remaining bytes of the {@link ByteBuffer} are consumed while reading.
+ * Malformed input is replaced with the replacement character, like {@link String#String(byte[],
+ * java.nio.charset.Charset)} does.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+class ByteBufferReader extends Reader {
+    /**
+     * The bytes to decode
+     */
+    private final ByteBuffer input;
+
+    /**
+     * The decoder used to decode the bytes
+     */
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The state if all bytes have been decoded and the decoder has been flushed
+     */
+    private boolean endOfInput;
+
+    /**
+     * Constructor
+     *
+     * @param input The bytes to decode
+     */
+    ByteBufferReader(ByteBuffer input) {
+        this.input = input;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (this.endOfInput) {
+            return -1;
+        }
+
+        CharBuffer output = CharBuffer.wrap(chars, offset, length);
+        CoderResult coderResult = this.decoder.decode(this.input, output, true);
+        if (coderResult.isUnderflow() && this.decoder.flush(output).isUnderflow()) {
+            this.endOfInput = true;
+        }
+
+        int read = output.position() - offset;
+
+        return read == 0 && this.endOfInput ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * Utility class that parses the challenge timestamps sent by the SiteVerify servers.
+ * <p>
+ * The SiteVerify servers always send the timestamp in the format yyyy-MM-dd'T'HH:mm:ss'Z',
+ * which is parsed without the overhead of a {@link java.time.format.DateTimeFormatter}.
+ * Any other ISO-8601 instant is parsed using {@link Instant#parse(CharSequence)}.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+class ChallengeTimestamps {
+    /**
+     * The length of a timestamp in the format yyyy-MM-dd'T'HH:mm:ss'Z'
+     */
+    private static final int TIMESTAMP_LENGTH = 20;
+
+    /**
+     * Parse a challenge timestamp.
+     *
+     * @param timestamp The timestamp to parse
+     * @return The parsed timestamp
+     * @throws DateTimeException Thrown when the timestamp is malformed
+     */
+    static Date parse(String timestamp) {
+        Date date = null;
+        if (timestamp.length() == TIMESTAMP_LENGTH
+            && timestamp.charAt(4) == '-'
+            && timestamp.charAt(7) == '-'
+            && timestamp.charAt(10) == 'T'
+            && timestamp.charAt(13) == ':'
+            && timestamp.charAt(16) == ':'
+            && timestamp.charAt(19) == 'Z') {
+            date = toDate(
+                parseDigits(timestamp, 0, 4),
+                parseDigits(timestamp, 5, 7),
+                parseDigits(timestamp, 8, 10),
+                parseDigits(timestamp, 11, 13),
+                parseDigits(timestamp, 14, 16),
+                parseDigits(timestamp, 17, 19)
+            );
+        }
+
+        return date != null ? date : Date.from(Instant.parse(timestamp));
+    }
+
+    /**
+     * Parse a challenge timestamp that is supplied as UTF-8 encoded bytes.
+     * A String is only created if the timestamp is not in the format yyyy-MM-dd'T'HH:mm:ss'Z'.
+     *
+     * @param buffer The buffer that contains the timestamp
+     * @param start  The index of the first byte of the timestamp
+     * @param end    The index after the last byte of the timestamp
+     * @return The parsed timestamp
+     * @throws DateTimeException Thrown when the timestamp is malformed
+     */
+    static Date parse(ByteBuffer buffer, int start, int end) {
+        Date date = null;
+        if (end - start == TIMESTAMP_LENGTH
+            && buffer.get(start + 4) == '-'
+            && buffer.get(start + 7) == '-'
+            && buffer.get(start + 10) == 'T'
+            && buffer.get(start + 13) == ':'
+            && buffer.get(start + 16) == ':'
+            && buffer.get(start + 19) == 'Z') {
+            date = toDate(
+                parseDigits(buffer, start, start + 4),
+                parseDigits(buffer, start + 5, start + 7),
+                parseDigits(buffer, start + 8, start + 10),
+                parseDigits(buffer, start + 11, start + 13),
+                parseDigits(buffer, start + 14, start + 16),
+                parseDigits(buffer, start + 17, start + 19)
+            );
+        }
+        if (date != null) {
+            return date;
+        }
+
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+
+        return Date.from(Instant.parse(new String(bytes, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Create the {@link Date} of a UTC timestamp.
+     *
+     * @return The created {@link Date} or null if any field is out of range
+     */
+    private static Date toDate(int year, int month, int day, int hour, int minute, int second) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+            || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return null;
+        }
+
+        return new Date((epochDay * 86400L + hour * 3600L + minute * 60L + second) * 1000L);
+    }
+
+    /**
+     * Parse a range of decimal digits.
+     *
+     * @param value The String that contains the digits
+     * @param start The index of the first digit
+     * @param end   The index after the last digit
+     * @return The parsed number or -1 if the range contains other characters than digits
+     */
+    private static int parseDigits(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char character = value.charAt(i);
+            if (character < '0' || character > '9') {
+                return -1;
+            }
+            result = result * 10 + (character - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a range of decimal digits that are supplied as bytes.
+     *
+     * @param buffer The buffer that contains the digits
+     * @param start  The index of the first digit
+     * @param end    The index after the last digit
+     * @return The parsed number or -1 if the range contains other characters than digits
+     */
+    private static int parseDigits(ByteBuffer buffer, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            byte character = buffer.get(i);
+            if (character < '0' || character > '9') {
+                return -1;
+            }
+            result = result * 10 + (character - '0');
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,980 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.ValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A {@link CaptchaResponseDeserializer} with a hand-written parser that is specialised for the
+ * responses of the SiteVerify servers.
+ * <p>
+ * The parser works directly on the UTF-8 encoded bytes of the response and does not depend on Google GSon.
+ * Apart from the returned {@link ValidationResponse}, it only allocates the values that end up in the response,
+ * like the hostname or the {@link Date} of the challenge. Property names are matched on the raw bytes and
+ * error codes are mapped to the {@link ValidationError} constants without creating Strings.
+ * This allows to remove Google GSon from the classpath if this deserializer is used.
+ * <p>
+ * The result is the same as the one of the {@link SiteVerifyCaptchaResponseDeserializer}:
+ * <ul>
+ *     <li>If error-codes are present, the response is treated as failed and all other properties are ignored.</li>
+ *     <li>The response is a ReCaptcha 3 response if both the score and the action are present.</li>
+ *     <li>If both a hostname and an apk package name are present, the apk package name wins.</li>
+ * </ul>
+ * Properties that are null are treated as absent and unknown properties are skipped.
+ * A missing success property or a malformed response causes an {@link IllegalArgumentException}.
+ * <p>
+ * {@link #basicDeserialize(ByteBuffer)} only extracts the success flag and checks for error-codes. All other known
+ * properties are validated like {@link #deserialize(ByteBuffer)} does, so both methods reject the same responses,
+ * but they are not decoded. Apart from the parser itself, it only allocates the {@link Date} that validates the
+ * challenge timestamp, the errors, and the values of properties that contain escape sequences.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class LightweightCaptchaResponseDeserializer
+    implements ByteBufferCaptchaResponseDeserializer, BasicCaptchaResponseDeserializer {
+    /**
+     * Id of an unknown property
+     */
+    private static final int UNKNOWN_KEY = -1;
+
+    /**
+     * Id of the success property
+     */
+    private static final int SUCCESS_KEY = 0;
+
+    /**
+     * Id of the score property
+     */
+    private static final int SCORE_KEY = 1;
+
+    /**
+     * Id of the action property
+     */
+    private static final int ACTION_KEY = 2;
+
+    /**
+     * Id of the challenge timestamp property
+     */
+    private static final int CHALLENGE_TIMESTAMP_KEY = 3;
+
+    /**
+     * Id of the hostname property
+     */
+    private static final int HOSTNAME_KEY = 4;
+
+    /**
+     * Id of the apk package property
+     */
+    private static final int APK_PACKAGE_KEY = 5;
+
+    /**
+     * Id of the error-codes property
+     */
+    private static final int ERROR_CODES_KEY = 6;
+
+    /**
+     * The names of the known properties, indexed by their id
+     */
+    private static final String[] KEYS = {
+        "success",
+        "score",
+        "action",
+        "challenge_ts",
+        "hostname",
+        "apk_package_name",
+        "error-codes"
+    };
+
+    /**
+     * The encoded names of the known properties, indexed by their id
+     */
+    private static final byte[][] ENCODED_KEYS = encodeAll(KEYS);
+
+    /**
+     * All known errors
+     */
+    private static final ValidationError[] KNOWN_ERRORS = ValidationError.values();
+
+    /**
+     * The encoded error codes of all known errors, in the same order as {@link #KNOWN_ERRORS}
+     */
+    private static final byte[][] ENCODED_ERROR_CODES;
+
+    /**
+     * The errors of a response without errors, shared as an empty array can not be modified
+     */
+    private static final ValidationError[] NO_ERRORS = new ValidationError[0];
+
+    /**
+     * Powers of ten that are exactly representable as float
+     */
+    private static final float[] FLOAT_POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    /**
+     * The largest mantissa that is exactly representable as float
+     */
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+
+    static {
+        String[] errorCodes = new String[KNOWN_ERRORS.length];
+        for (int i = 0; i < KNOWN_ERRORS.length; i++) {
+            errorCodes[i] = KNOWN_ERRORS[i].getPlainError();
+        }
+        ENCODED_ERROR_CODES = encodeAll(errorCodes);
+    }
+
+    @Override
+    public CaptchaValidationResponse deserialize(String response) {
+        return this.deserialize(ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public CaptchaValidationResponse deserialize(ByteBuffer response) {
+        ValidationResponse validationResponse = new Parser(response).parse();
+        response.position(response.limit());
+
+        return validationResponse;
+    }
+
+    @Override
+    public boolean basicDeserialize(String response) {
+        return this.basicDeserialize(ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean basicDeserialize(ByteBuffer response) {
+        boolean succeeded = new Parser(response).parseSucceeded();
+        response.position(response.limit());
+
+        return succeeded;
+    }
+
+    /**
+     * Encode Strings to UTF-8.
+     *
+     * @param values The Strings to encode
+     * @return The encoded Strings, in the same order
+     */
+    private static byte[][] encodeAll(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * The parser of a single response.
+     * It reads the bytes between the position and the limit of the buffer, without modifying the buffer.
+     */
+    private static final class Parser {
+        /**
+         * The buffer that contains the response
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The index of the first byte of the response
+         */
+        private final int start;
+
+        /**
+         * The index after the last byte of the response
+         */
+        private final int limit;
+
+        /**
+         * The index of the next byte to read
+         */
+        private int position;
+
+        /**
+         * The index of the first byte of the last read String
+         */
+        private int stringStart;
+
+        /**
+         * The index after the last byte of the last read String
+         */
+        private int stringEnd;
+
+        /**
+         * The state if the last read String contains escape sequences
+         */
+        private boolean stringEscaped;
+
+        /**
+         * The state if the last read String contains non-ASCII characters
+         */
+        private boolean stringNonAscii;
+
+        /**
+         * Constructor
+         *
+         * @param buffer The buffer that contains the response
+         */
+        private Parser(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.start = buffer.position();
+            this.limit = buffer.limit();
+            this.position = this.start;
+        }
+
+        /**
+         * Parse the response.
+         *
+         * @return The parsed response
+         * @throws IllegalArgumentException Thrown when the response is malformed
+         */
+        private ValidationResponse parse() {
+            int succeeded = -1;
+            float score = -1f;
+            boolean hasScore = false;
+            String action = null;
+            int challengeTimestampStart = -1;
+            int challengeTimestampEnd = -1;
+            String escapedChallengeTimestamp = null;
+            String hostname = null;
+            String apkPackageName = null;
+            ValidationError[] errors = null;
+
+            boolean hasNextProperty = this.beginObject();
+            while (hasNextProperty) {
+                int key = this.readPropertyName();
+
+                // Properties that are null are treated as absent
+                if (!this.skipLiteral("null")) {
+                    switch (key) {
+                        case SUCCESS_KEY:
+                            succeeded = this.readBoolean() ? 1 : 0;
+                            break;
+                        case SCORE_KEY:
+                            score = this.readFloat();
+                            hasScore = true;
+                            break;
+                        case ACTION_KEY:
+                            action = this.readStringValue();
+                            break;
+                        case CHALLENGE_TIMESTAMP_KEY:
+                            this.readString();
+                            if (this.stringEscaped) {
+                                escapedChallengeTimestamp = this.decodeString();
+                            } else {
+                                escapedChallengeTimestamp = null;
+                                challengeTimestampStart = this.stringStart;
+                                challengeTimestampEnd = this.stringEnd;
+                            }
+                            break;
+                        case HOSTNAME_KEY:
+                            hostname = this.readStringValue();
+                            break;
+                        case APK_PACKAGE_KEY:
+                            apkPackageName = this.readStringValue();
+                            break;
+                        case ERROR_CODES_KEY:
+                            errors = this.readErrors();
+                            break;
+                        default:
+                            this.skipValue();
+                            break;
+                    }
+                }
+
+                hasNextProperty = this.endProperty();
+            }
+            this.endResponse();
+
+            // Deserialize response with error
+            if (errors != null) {
+                return new ValidationResponse(
+                    ReCaptchaVersion.VERSION_2,
+                    false,
+                    null,
+                    null,
+                    "",
+                    -1,
+                    "",
+                    errors
+                );
+            }
+
+            if (succeeded < 0) {
+                throw this.malformed("The response does not contain the " + KEYS[SUCCESS_KEY] + " property");
+            }
+
+            // Score and action are only set on ReCaptcha 3.0
+            ReCaptchaVersion reCaptchaVersion = ReCaptchaVersion.VERSION_2;
+            if (hasScore && action != null) {
+                reCaptchaVersion = ReCaptchaVersion.VERSION_3;
+            } else {
+                score = -1f;
+                action = "";
+            }
+
+            // The apk package name has precedence over the hostname
+            ClientType clientType = null;
+            String hostnameOrPackageName = "";
+            if (apkPackageName != null) {
+                clientType = ClientType.ANDROID;
+                hostnameOrPackageName = apkPackageName;
+            } else if (hostname != null) {
+                clientType = ClientType.WEB;
+                hostnameOrPackageName = hostname;
+            }
+
+            return new ValidationResponse(
+                reCaptchaVersion,
+                succeeded == 1,
+                this.parseChallengeTimestamp(escapedChallengeTimestamp, challengeTimestampStart, challengeTimestampEnd),
+                clientType,
+                hostnameOrPackageName,
+                score,
+                action,
+                NO_ERRORS
+            );
+        }
+
+        /**
+         * Parse the response, but only extract if the validation has succeeded.
+         * The other properties are validated like {@link #parse()} does, but not decoded,
+         * so this method fails for exactly the same responses.
+         *
+         * @return true if the validation has succeeded and the response does not contain error-codes
+         * @throws IllegalArgumentException Thrown when the response is malformed
+         */
+        private boolean parseSucceeded() {
+            int succeeded = -1;
+            int challengeTimestampStart = -1;
+            int challengeTimestampEnd = -1;
+            String escapedChallengeTimestamp = null;
+            boolean hasErrors = false;
+
+            boolean hasNextProperty = this.beginObject();
+            while (hasNextProperty) {
+                int key = this.readPropertyName();
+
+                // Properties that are null are treated as absent
+                if (!this.skipLiteral("null")) {
+                    switch (key) {
+                        case SUCCESS_KEY:
+                            succeeded = this.readBoolean() ? 1 : 0;
+                            break;
+                        case SCORE_KEY:
+                            this.readFloat();
+                            break;
+                        case CHALLENGE_TIMESTAMP_KEY:
+                            this.readString();
+                            if (this.stringEscaped) {
+                                escapedChallengeTimestamp = this.decodeString();
+                            } else {
+                                escapedChallengeTimestamp = null;
+                                challengeTimestampStart = this.stringStart;
+                                challengeTimestampEnd = this.stringEnd;
+                            }
+                            break;
+                        case ACTION_KEY:
+                        case HOSTNAME_KEY:
+                        case APK_PACKAGE_KEY:
+                            this.readString();
+                            if (this.stringEscaped) {
+                                // Only Strings with escape sequences can be malformed
+                                this.decodeString();
+                            }
+                            break;
+                        case ERROR_CODES_KEY:
+                            this.readErrors();
+                            hasErrors = true;
+                            break;
+                        default:
+                            this.skipValue();
+                            break;
+                    }
+                }
+
+                hasNextProperty = this.endProperty();
+            }
+            this.endResponse();
+
+            // A response with errors never succeeded
+            if (hasErrors) {
+                return false;
+            }
+            if (succeeded < 0) {
+                throw this.malformed("The response does not contain the " + KEYS[SUCCESS_KEY] + " property");
+            }
+            this.parseChallengeTimestamp(escapedChallengeTimestamp, challengeTimestampStart, challengeTimestampEnd);
+
+            return succeeded == 1;
+        }
+
+        /**
+         * Parse the challenge timestamp, which is either supplied as a decoded String
+         * or as the bounds of an unescaped String in the buffer.
+         *
+         * @param escapedChallengeTimestamp The decoded timestamp, or null if the timestamp has not been escaped
+         * @param challengeTimestampStart   The index of the first byte of the unescaped timestamp, or -1
+         * @param challengeTimestampEnd     The index after the last byte of the unescaped timestamp
+         * @return The parsed timestamp, or null if the response does not contain a timestamp
+         * @throws IllegalArgumentException Thrown when the timestamp is malformed
+         */
+        private Date parseChallengeTimestamp(
+            String escapedChallengeTimestamp,
+            int challengeTimestampStart,
+            int challengeTimestampEnd
+        ) {
+            try {
+                if (escapedChallengeTimestamp != null) {
+                    return ChallengeTimestamps.parse(escapedChallengeTimestamp);
+                }
+                if (challengeTimestampStart >= 0) {
+                    return ChallengeTimestamps.parse(this.buffer, challengeTimestampStart, challengeTimestampEnd);
+                }
+
+                return null;
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Malformed challenge timestamp in SiteVerify response", e);
+            }
+        }
+
+        /**
+         * Read the start of the response object.
+         *
+         * @return true if the object has properties
+         */
+        private boolean beginObject() {
+            this.skipWhitespace();
+            this.expect('{');
+            this.skipWhitespace();
+            if (this.peek() == '}') {
+                this.position++;
+
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Read the name of the next property and the following colon.
+         *
+         * @return The id of the property or {@link #UNKNOWN_KEY}
+         */
+        private int readPropertyName() {
+            this.skipWhitespace();
+            int key = this.readKey();
+            this.skipWhitespace();
+            this.expect(':');
+            this.skipWhitespace();
+
+            return key;
+        }
+
+        /**
+         * Read the end of a property.
+         *
+         * @return true if another property follows, false if the end of the object has been reached
+         */
+        private boolean endProperty() {
+            this.skipWhitespace();
+            byte next = this.next();
+            if (next == '}') {
+                return false;
+            }
+            if (next != ',') {
+                throw this.malformed("Expected ',' or '}'");
+            }
+
+            return true;
+        }
+
+        /**
+         * Ensure that nothing but whitespace follows the response object.
+         */
+        private void endResponse() {
+            this.skipWhitespace();
+            if (this.position < this.limit) {
+                throw this.malformed("Unexpected data after the response");
+            }
+        }
+
+        /**
+         * Read a property name and identify it.
+         *
+         * @return The id of the property or {@link #UNKNOWN_KEY}
+         */
+        private int readKey() {
+            this.readString();
+            if (this.stringEscaped) {
+                String key = this.decodeString();
+                for (int i = 0; i < KEYS.length; i++) {
+                    if (KEYS[i].equals(key)) {
+                        return i;
+                    }
+                }
+
+                return UNKNOWN_KEY;
+            }
+
+            return this.indexOfString(ENCODED_KEYS);
+        }
+
+        /**
+         * Read the error-codes array.
+         *
+         * @return The read errors
+         */
+        private ValidationError[] readErrors() {
+            this.expect('[');
+            this.skipWhitespace();
+            if (this.peek() == ']') {
+                this.position++;
+
+                return NO_ERRORS;
+            }
+
+            ValidationError[] errors = new ValidationError[1];
+            int count = 0;
+            while (true) {
+                this.skipWhitespace();
+                ValidationError error = null;
+                if (!this.skipLiteral("null")) {
+                    this.readString();
+                    if (this.stringEscaped) {
+                        error = ValidationError.getValidationErrorByCode(this.decodeString());
+                    } else {
+                        int index = this.indexOfString(ENCODED_ERROR_CODES);
+                        error = index >= 0 ? KNOWN_ERRORS[index] : null;
+                    }
+                }
+
+                if (count == errors.length) {
+                    errors = Arrays.copyOf(errors, count * 2);
+                }
+                errors[count++] = error;
+
+                this.skipWhitespace();
+                byte next = this.next();
+                if (next == ']') {
+                    break;
+                }
+                if (next != ',') {
+                    throw this.malformed("Expected ',' or ']'");
+                }
+            }
+
+            return count == errors.length ? errors : Arrays.copyOf(errors, count);
+        }
+
+        /**
+         * Read a boolean, which is either a literal or a String.
+         *
+         * @return The read boolean
+         */
+        private boolean readBoolean() {
+            if (this.skipLiteral("true")) {
+                return true;
+            }
+            if (this.skipLiteral("false")) {
+                return false;
+            }
+            if (this.peek() == '"') {
+                return Boolean.parseBoolean(this.readStringValue());
+            }
+
+            throw this.malformed("Expected a boolean");
+        }
+
+        /**
+         * Read a float, which is either a number or a String that contains a number.
+         * <p>
+         * Short decimal numbers are converted with a single float division, which is exact as both operands
+         * are exactly representable. All other numbers are parsed by {@link Float#parseFloat(String)}.
+         *
+         * @return The read float
+         */
+        private float readFloat() {
+            if (this.peek() == '"') {
+                try {
+                    return Float.parseFloat(this.readStringValue());
+                } catch (NumberFormatException e) {
+                    throw this.malformed("Expected a number");
+                }
+            }
+
+            int numberStart = this.position;
+            boolean negative = false;
+            if (this.peek() == '-') {
+                negative = true;
+                this.position++;
+            }
+
+            long mantissa = 0;
+            int fractionDigits = 0;
+            boolean exact = true;
+            boolean fraction = false;
+            boolean digits = false;
+            while (this.position < this.limit) {
+                byte character = this.buffer.get(this.position);
+                if (character >= '0' && character <= '9') {
+                    digits = true;
+                    mantissa = mantissa * 10 + (character - '0');
+                    if (fraction) {
+                        fractionDigits++;
+                    }
+                    if (mantissa > MAX_EXACT_FLOAT_MANTISSA || fractionDigits >= FLOAT_POWERS_OF_TEN.length) {
+                        exact = false;
+                        mantissa = 0;
+                    }
+                } else if (character == '.' && !fraction) {
+                    fraction = true;
+                } else if (character == 'e' || character == 'E' || character == '+' || character == '-') {
+                    exact = false;
+                } else {
+                    break;
+                }
+                this.position++;
+            }
+
+            if (!digits) {
+                throw this.malformed("Expected a number");
+            }
+            if (exact) {
+                float value = mantissa / FLOAT_POWERS_OF_TEN[fractionDigits];
+
+                return negative ? -value : value;
+            }
+
+            try {
+                return Float.parseFloat(this.decode(numberStart, this.position, false));
+            } catch (NumberFormatException e) {
+                throw this.malformed("Expected a number");
+            }
+        }
+
+        /**
+         * Read a String and decode it.
+         *
+         * @return The read String
+         */
+        private String readStringValue() {
+            this.readString();
+
+            return this.decodeString();
+        }
+
+        /**
+         * Read the bounds of a String, without decoding it.
+         * The bounds are stored in {@link #stringStart} and {@link #stringEnd}.
+         */
+        private void readString() {
+            this.expect('"');
+            this.stringStart = this.position;
+            this.stringEscaped = false;
+            this.stringNonAscii = false;
+            while (this.position < this.limit) {
+                byte character = this.buffer.get(this.position);
+                if (character == '"') {
+                    this.stringEnd = this.position;
+                    this.position++;
+
+                    return;
+                }
+                if (character == '\\') {
+                    this.stringEscaped = true;
+                    this.position++;
+                } else if (character < 0) {
+                    this.stringNonAscii = true;
+                }
+                this.position++;
+            }
+
+            throw this.malformed("Unterminated string");
+        }
+
+        /**
+         * Decode the last read String.
+         *
+         * @return The decoded String
+         */
+        private String decodeString() {
+            String value = this.decode(this.stringStart, this.stringEnd, this.stringNonAscii);
+
+            return this.stringEscaped ? this.unescape(value) : value;
+        }
+
+        /**
+         * Decode a range of bytes.
+         *
+         * @param from     The index of the first byte
+         * @param to       The index after the last byte
+         * @param nonAscii The state if the range contains non-ASCII characters
+         * @return The decoded String
+         */
+        private String decode(int from, int to, boolean nonAscii) {
+            byte[] bytes;
+            int offset;
+            if (this.buffer.hasArray()) {
+                bytes = this.buffer.array();
+                offset = this.buffer.arrayOffset() + from;
+            } else {
+                bytes = new byte[to - from];
+                for (int i = from; i < to; i++) {
+                    bytes[i - from] = this.buffer.get(i);
+                }
+                offset = 0;
+            }
+
+            // ASCII is a subset of ISO-8859-1, which can be copied without decoding
+            return new String(bytes, offset, to - from, nonAscii ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Resolve the escape sequences of a String.
+         *
+         * @param value The String that contains escape sequences
+         * @return The String without escape sequences
+         */
+        private String unescape(String value) {
+            StringBuilder stringBuilder = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char character = value.charAt(i);
+                if (character != '\\') {
+                    stringBuilder.append(character);
+                    continue;
+                }
+
+                char escaped = ++i < value.length() ? value.charAt(i) : 0;
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        stringBuilder.append(escaped);
+                        break;
+                    case 'b':
+                        stringBuilder.append('\b');
+                        break;
+                    case 'f':
+                        stringBuilder.append('\f');
+                        break;
+                    case 'n':
+                        stringBuilder.append('\n');
+                        break;
+                    case 'r':
+                        stringBuilder.append('\r');
+                        break;
+                    case 't':
+                        stringBuilder.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= value.length()) {
+                            throw this.malformed("Invalid unicode escape sequence");
+                        }
+                        try {
+                            stringBuilder.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                        } catch (NumberFormatException e) {
+                            throw this.malformed("Invalid unicode escape sequence");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        throw this.malformed("Invalid escape sequence");
+                }
+            }
+
+            return stringBuilder.toString();
+        }
+
+        /**
+         * Find the last read String in a list of encoded Strings.
+         *
+         * @param candidates The encoded Strings to search
+         * @return The index of the matching String or -1
+         */
+        private int indexOfString(byte[][] candidates) {
+            int length = this.stringEnd - this.stringStart;
+            for (int i = 0; i < candidates.length; i++) {
+                byte[] candidate = candidates[i];
+                if (candidate.length != length) {
+                    continue;
+                }
+
+                int j = 0;
+                while (j < length && this.buffer.get(this.stringStart + j) == candidate[j]) {
+                    j++;
+                }
+                if (j == length) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Skip a value of a property that is not needed.
+         */
+        private void skipValue() {
+            byte character = this.peek();
+            if (character == '"') {
+                this.readString();
+            } else if (character == '{' || character == '[') {
+                int depth = 0;
+                do {
+                    character = this.peek();
+                    if (character == '"') {
+                        this.readString();
+                        continue;
+                    }
+                    if (character == '{' || character == '[') {
+                        depth++;
+                    } else if (character == '}' || character == ']') {
+                        depth--;
+                    }
+                    this.position++;
+                } while (depth > 0);
+            } else {
+                // Numbers and literals
+                int valueStart = this.position;
+                while (this.position < this.limit && isLiteralCharacter(this.buffer.get(this.position))) {
+                    this.position++;
+                }
+                if (this.position == valueStart) {
+                    throw this.malformed("Expected a value");
+                }
+            }
+        }
+
+        /**
+         * Skip a literal if it is the next value.
+         *
+         * @param literal The literal to skip
+         * @return true if the literal has been skipped
+         */
+        private boolean skipLiteral(String literal) {
+            int length = literal.length();
+            if (this.position + length > this.limit) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (this.buffer.get(this.position + i) != literal.charAt(i)) {
+                    return false;
+                }
+            }
+            this.position += length;
+
+            return true;
+        }
+
+        /**
+         * Skip all whitespace.
+         */
+        private void skipWhitespace() {
+            while (this.position < this.limit) {
+                byte character = this.buffer.get(this.position);
+                if (character != ' ' && character != '\n' && character != '\r' && character != '\t') {
+                    return;
+                }
+                this.position++;
+            }
+        }
+
+        /**
+         * Read the next byte and ensure that it is the expected character.
+         *
+         * @param expected The expected character
+         */
+        private void expect(char expected) {
+            if (this.next() != expected) {
+                this.position--;
+
+                throw this.malformed("Expected '" + expected + "'");
+            }
+        }
+
+        /**
+         * Get the next byte without consuming it.
+         *
+         * @return The next byte
+         */
+        private byte peek() {
+            if (this.position >= this.limit) {
+                throw this.malformed("Unexpected end of response");
+            }
+
+            return this.buffer.get(this.position);
+        }
+
+        /**
+         * Get and consume the next byte.
+         *
+         * @return The next byte
+         */
+        private byte next() {
+            byte character = this.peek();
+            this.position++;
+
+            return character;
+        }
+
+        /**
+         * Create the exception thrown when the response is malformed.
+         *
+         * @param reason The reason why the response is malformed
+         * @return The created exception
+         */
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException(
+                "Malformed SiteVerify response at offset " + (this.position - this.start) + ": " + reason
+            );
+        }
+
+        /**
+         * Check if a byte may be part of a number or a literal.
+         *
+         * @param character The byte to check
+         * @return true if the byte may be part of a number or a literal
+         */
+        private static boolean isLiteralCharacter(byte character) {
+            return (character >= 'a' && character <= 'z')
+                || (character >= '0' && character <= '9')
+                || character == '-'
+                || character == '+'
+                || character == '.'
+                || character == 'E';
+        }
+    }
+}
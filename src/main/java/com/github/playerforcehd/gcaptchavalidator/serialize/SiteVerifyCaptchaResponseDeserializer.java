@@ -32,6 +32,7 @@ import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
 import com.google.gson.*;
 
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Iterator;
@@ -40,6 +41,8 @@ import java.util.Iterator;
  * A {@link CaptchaResponseDeserializer} that uses the Google GSon library to deserialize
  * the supplied response string.
  * <p>
+ * Responses supplied as raw bytes are parsed directly from the bytes, without creating an intermediate String.
+ * <p>
  * If you want to use this {@link CaptchaResponseDeserializer} as base for an own one,
  * extend it and override {@link SiteVerifyCaptchaResponseDeserializer#createGson()} to supply
  * a custom {@link Gson} instance that uses an own implementation of the
@@ -48,7 +51,7 @@ import java.util.Iterator;
  * @author Pascal Zarrad
  * @since 3.0.0
  */
-public class SiteVerifyCaptchaResponseDeserializer implements CaptchaResponseDeserializer {
+public class SiteVerifyCaptchaResponseDeserializer implements ByteBufferCaptchaResponseDeserializer {
     /**
      * The Google GSon instance used by the {@link SiteVerifyCaptchaResponseDeserializer}.
      */
@@ -66,6 +69,11 @@ public class SiteVerifyCaptchaResponseDeserializer implements CaptchaResponseDes
         return this.gSon.fromJson(response, ValidationResponse.class);
     }
 
+    @Override
+    public CaptchaValidationResponse deserialize(ByteBuffer response) {
+        return this.gSon.fromJson(new ByteBufferReader(response), ValidationResponse.class);
+    }
+
     /**
      * Create the {@link Gson} instance used by this deserializer
      *
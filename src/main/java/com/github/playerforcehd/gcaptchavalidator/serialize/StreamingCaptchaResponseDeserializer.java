@@ -0,0 +1,482 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.ValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A {@link CaptchaResponseDeserializer} that reads the response in a single streaming pass
+ * using the {@link JsonReader} of Google GSon.
+ * <p>
+ * Other than the {@link SiteVerifyCaptchaResponseDeserializer}, no JSON tree is built.
+ * Every property is read once in the order it appears and unknown properties are skipped.
+ * The result is the same as the one of the {@link SiteVerifyCaptchaResponseDeserializer}:
+ * <ul>
+ *     <li>If error-codes are present, the response is treated as failed and all other properties are ignored.</li>
+ *     <li>The response is a ReCaptcha 3 response if both the score and the action are present.</li>
+ *     <li>If both a hostname and an apk package name are present, the apk package name wins.</li>
+ *     <li>Literals are read as leniently as GSon reads them, e.g. {@code "true"} and {@code TRUE} are both true,
+ *     other strings and numbers are false, and booleans and numbers are accepted as strings.</li>
+ *     <li>Known properties must not be null, unless they are ignored anyway.</li>
+ *     <li>Data after the response object is rejected.</li>
+ * </ul>
+ * A missing success property or a malformed response causes a {@link JsonParseException}.
+ * <p>
+ * The {@link SiteVerifyCaptchaResponseDeserializer} fails with arbitrary runtime exceptions instead.
+ * Other than it, this deserializer accepts responses without a challenge timestamp,
+ * and rejects arrays where a single value is expected instead of reading their only element.
+ * <p>
+ * {@link #basicDeserialize(String)} only extracts the success flag and checks for error-codes.
+ * All other known properties are validated like {@link #deserialize(String)} does,
+ * so both methods reject the same responses.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class StreamingCaptchaResponseDeserializer
+    implements ByteBufferCaptchaResponseDeserializer, BasicCaptchaResponseDeserializer {
+    /**
+     * Key of the success property
+     */
+    private static final String SUCCESS_KEY = "success";
+
+    /**
+     * Key of the score property
+     */
+    private static final String SCORE_KEY = "score";
+
+    /**
+     * Key of the action property
+     */
+    private static final String ACTION_KEY = "action";
+
+    /**
+     * Key of the challenge timestamp property
+     */
+    private static final String CHALLENGE_TIMESTAMP_KEY = "challenge_ts";
+
+    /**
+     * Key of the hostname property
+     */
+    private static final String HOSTNAME_KEY = "hostname";
+
+    /**
+     * Key of the apk package property
+     */
+    private static final String APK_PACKAGE_KEY = "apk_package_name";
+
+    /**
+     * Key of the error-codes property
+     */
+    private static final String ERROR_CODES_KEY = "error-codes";
+
+    @Override
+    public CaptchaValidationResponse deserialize(String response) {
+        return this.deserialize(new StringReader(response));
+    }
+
+    @Override
+    public CaptchaValidationResponse deserialize(ByteBuffer response) {
+        return this.deserialize(new ByteBufferReader(response));
+    }
+
+    @Override
+    public boolean basicDeserialize(String response) {
+        return this.basicDeserialize(new StringReader(response));
+    }
+
+    @Override
+    public boolean basicDeserialize(ByteBuffer response) {
+        return this.basicDeserialize(new ByteBufferReader(response));
+    }
+
+    /**
+     * Check if the validation of a response that is supplied as a {@link Reader} has succeeded.
+     *
+     * @param response The response to check
+     * @return true if the validation has succeeded
+     * @throws JsonParseException Thrown when the response is malformed
+     */
+    protected boolean basicDeserialize(Reader response) {
+        try (JsonReader jsonReader = new JsonReader(response)) {
+            // Be as lenient as Gson#fromJson, which is used by the SiteVerifyCaptchaResponseDeserializer
+            jsonReader.setLenient(true);
+
+            return this.readSucceeded(jsonReader);
+        } catch (IOException | IllegalStateException | NumberFormatException | DateTimeException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    /**
+     * Deserialize a response that is supplied as a {@link Reader}.
+     *
+     * @param response The response to deserialize
+     * @return The deserialized response as an POJO
+     * @throws JsonParseException Thrown when the response is malformed
+     */
+    protected CaptchaValidationResponse deserialize(Reader response) {
+        try (JsonReader jsonReader = new JsonReader(response)) {
+            // Be as lenient as Gson#fromJson, which is used by the SiteVerifyCaptchaResponseDeserializer
+            jsonReader.setLenient(true);
+
+            return this.readValidationResponse(jsonReader);
+        } catch (IOException | IllegalStateException | NumberFormatException | DateTimeException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    /**
+     * Read the response object from the supplied {@link JsonReader}.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the response object
+     * @return The read response
+     * @throws IOException Thrown when the response is malformed
+     */
+    private ValidationResponse readValidationResponse(JsonReader jsonReader) throws IOException {
+        Boolean succeeded = null;
+        float score = -1f;
+        boolean hasScore = false;
+        String action = null;
+        String challengeTimestamp = null;
+        String hostname = null;
+        String apkPackageName = null;
+        ValidationError[] errors = null;
+        NullProperties nullProperties = new NullProperties();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+                nullProperties.add(name);
+                continue;
+            }
+
+            switch (name) {
+                case SUCCESS_KEY:
+                    succeeded = this.readBoolean(jsonReader);
+                    break;
+                case SCORE_KEY:
+                    score = (float) jsonReader.nextDouble();
+                    hasScore = true;
+                    break;
+                case ACTION_KEY:
+                    action = this.readString(jsonReader);
+                    break;
+                case CHALLENGE_TIMESTAMP_KEY:
+                    challengeTimestamp = this.readString(jsonReader);
+                    break;
+                case HOSTNAME_KEY:
+                    hostname = this.readString(jsonReader);
+                    break;
+                case APK_PACKAGE_KEY:
+                    apkPackageName = this.readString(jsonReader);
+                    break;
+                case ERROR_CODES_KEY:
+                    errors = this.readErrors(jsonReader);
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        this.endResponse(jsonReader);
+
+        // Deserialize response with error
+        if (errors != null) {
+            return new ValidationResponse(
+                ReCaptchaVersion.VERSION_2,
+                false,
+                null,
+                null,
+                "",
+                -1,
+                "",
+                errors
+            );
+        }
+
+        nullProperties.check(hasScore, action != null);
+        if (succeeded == null) {
+            throw new JsonParseException("The response does not contain the " + SUCCESS_KEY + " property");
+        }
+
+        // Score and action are only set on ReCaptcha 3.0
+        ReCaptchaVersion reCaptchaVersion = ReCaptchaVersion.VERSION_2;
+        if (hasScore && action != null) {
+            reCaptchaVersion = ReCaptchaVersion.VERSION_3;
+        } else {
+            score = -1f;
+            action = "";
+        }
+
+        // The apk package name has precedence over the hostname
+        ClientType clientType = null;
+        String hostnameOrPackageName = "";
+        if (apkPackageName != null) {
+            clientType = ClientType.ANDROID;
+            hostnameOrPackageName = apkPackageName;
+        } else if (hostname != null) {
+            clientType = ClientType.WEB;
+            hostnameOrPackageName = hostname;
+        }
+
+        return new ValidationResponse(
+            reCaptchaVersion,
+            succeeded,
+            challengeTimestamp != null ? ChallengeTimestamps.parse(challengeTimestamp) : null,
+            clientType,
+            hostnameOrPackageName,
+            score,
+            action,
+            new ValidationError[0]
+        );
+    }
+
+    /**
+     * Read the response object from the supplied {@link JsonReader}, but only extract the success flag.
+     * The other properties are validated like {@link #readValidationResponse(JsonReader)} does,
+     * so this method fails for exactly the same responses.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the response object
+     * @return true if the validation has succeeded and the response does not contain error-codes
+     * @throws IOException Thrown when the response is malformed
+     */
+    private boolean readSucceeded(JsonReader jsonReader) throws IOException {
+        Boolean succeeded = null;
+        boolean hasScore = false;
+        boolean hasAction = false;
+        String challengeTimestamp = null;
+        boolean hasErrors = false;
+        NullProperties nullProperties = new NullProperties();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+                nullProperties.add(name);
+                continue;
+            }
+
+            switch (name) {
+                case SUCCESS_KEY:
+                    succeeded = this.readBoolean(jsonReader);
+                    break;
+                case SCORE_KEY:
+                    jsonReader.nextDouble();
+                    hasScore = true;
+                    break;
+                case CHALLENGE_TIMESTAMP_KEY:
+                    challengeTimestamp = this.readString(jsonReader);
+                    break;
+                case ACTION_KEY:
+                    this.readString(jsonReader);
+                    hasAction = true;
+                    break;
+                case HOSTNAME_KEY:
+                case APK_PACKAGE_KEY:
+                    this.readString(jsonReader);
+                    break;
+                case ERROR_CODES_KEY:
+                    this.readErrors(jsonReader);
+                    hasErrors = true;
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        this.endResponse(jsonReader);
+
+        // A response with errors never succeeded
+        if (hasErrors) {
+            return false;
+        }
+        nullProperties.check(hasScore, hasAction);
+        if (succeeded == null) {
+            throw new JsonParseException("The response does not contain the " + SUCCESS_KEY + " property");
+        }
+        if (challengeTimestamp != null) {
+            ChallengeTimestamps.parse(challengeTimestamp);
+        }
+
+        return succeeded;
+    }
+
+    /**
+     * Read the error-codes array from the supplied {@link JsonReader}.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the error-codes array
+     * @return The read errors
+     * @throws IOException Thrown when the error-codes are malformed
+     */
+    private ValidationError[] readErrors(JsonReader jsonReader) throws IOException {
+        List<ValidationError> errors = new ArrayList<>(2);
+
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            errors.add(ValidationError.getValidationErrorByCode(this.readString(jsonReader)));
+        }
+        jsonReader.endArray();
+
+        return errors.toArray(new ValidationError[0]);
+    }
+
+    /**
+     * Read a boolean the way GSon reads it from a primitive.
+     * Strings and numbers are true if they equal "true", ignoring case.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the value
+     * @return The read boolean
+     * @throws IOException Thrown when the value is malformed
+     */
+    private boolean readBoolean(JsonReader jsonReader) throws IOException {
+        JsonToken token = jsonReader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return Boolean.parseBoolean(jsonReader.nextString());
+        }
+
+        return jsonReader.nextBoolean();
+    }
+
+    /**
+     * Read a string the way GSon reads it from a primitive, which also accepts booleans and numbers.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the value
+     * @return The read string
+     * @throws IOException Thrown when the value is malformed
+     */
+    private String readString(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.BOOLEAN) {
+            return String.valueOf(jsonReader.nextBoolean());
+        }
+
+        return jsonReader.nextString();
+    }
+
+    /**
+     * Read the end of the response object and make sure that no data follows it.
+     *
+     * @param jsonReader The {@link JsonReader} positioned in front of the end of the response object
+     * @throws IOException Thrown when the response object is not closed or followed by other data
+     */
+    private void endResponse(JsonReader jsonReader) throws IOException {
+        jsonReader.endObject();
+        if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonParseException("The response contains data after the response object");
+        }
+    }
+
+    /**
+     * Tracks the known properties of a response that are null.
+     * A null error-codes property is rejected immediately, as it is never ignored.
+     * The other properties are only rejected once it is known that they would have been read,
+     * which is the case unless the response has error-codes,
+     * or for the score and action, unless the response lacks one of both.
+     */
+    private static class NullProperties {
+        /**
+         * The first property other than the score and action that is null
+         */
+        private String nullProperty;
+
+        /**
+         * The state if the score is null
+         */
+        private boolean nullScore;
+
+        /**
+         * The state if the action is null
+         */
+        private boolean nullAction;
+
+        /**
+         * Add a property that is null.
+         *
+         * @param name The name of the property
+         */
+        private void add(String name) {
+            switch (name) {
+                case ERROR_CODES_KEY:
+                    throw new JsonParseException("The " + ERROR_CODES_KEY + " property must not be null");
+                case SCORE_KEY:
+                    this.nullScore = true;
+                    break;
+                case ACTION_KEY:
+                    this.nullAction = true;
+                    break;
+                case SUCCESS_KEY:
+                case CHALLENGE_TIMESTAMP_KEY:
+                case HOSTNAME_KEY:
+                case APK_PACKAGE_KEY:
+                    if (this.nullProperty == null) {
+                        this.nullProperty = name;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Check that no property that is read is null.
+         * Must only be called for responses without error-codes.
+         *
+         * @param hasScore  The state if the response has a score that is not null
+         * @param hasAction The state if the response has an action that is not null
+         * @throws JsonParseException Thrown when a property that is read is null
+         */
+        private void check(boolean hasScore, boolean hasAction) {
+            if (this.nullProperty != null) {
+                throw new JsonParseException("The " + this.nullProperty + " property must not be null");
+            }
+            // The score and action are only read if both are present
+            boolean readsScoreAndAction = (this.nullScore || hasScore) && (this.nullAction || hasAction);
+            if (readsScoreAndAction && (this.nullScore || this.nullAction)) {
+                throw new JsonParseException(
+                    "The " + SCORE_KEY + " and " + ACTION_KEY + " properties must not be null"
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.tenant;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+
+/**
+ * A source that loads the {@link CaptchaValidatorConfiguration} of a tenant, e.g. from a database,
+ * a configuration file or a secret store.
+ * <p>
+ * The {@link CaptchaValidatorRegistry} loads the configuration of a tenant on its first validation.
+ * Implementations must be thread-safe, but the registry never loads the same tenant concurrently.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+@FunctionalInterface
+public interface CaptchaValidatorConfigurationSource {
+    /**
+     * Load the configuration of a tenant.
+     *
+     * @param tenant The identifier of the tenant, like its name or its site key
+     * @return The configuration of the tenant, or null if the tenant is unknown
+     */
+    CaptchaValidatorConfiguration getConfiguration(String tenant);
+}
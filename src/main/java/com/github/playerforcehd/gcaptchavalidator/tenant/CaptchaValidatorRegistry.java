@@ -0,0 +1,423 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.tenant;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.SiteVerifyCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.serialize.CaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.serialize.SiteVerifyCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A registry of the {@link CaptchaValidator}s of many tenants, like the sites of customers that each have
+ * their own secret.
+ * <p>
+ * All tenants share one {@link CaptchaRequestHandler}, and with it its connection pool, one
+ * {@link CaptchaResponseDeserializer} and one {@link Executor} for asynchronous validations. A tenant only adds
+ * its immutable configuration and a few counters, so registering hundreds of tenants is cheap.
+ * <p>
+ * The configuration of a tenant is loaded from a {@link CaptchaValidatorConfigurationSource} on its first lookup.
+ * Lookups of loaded tenants read a {@link ConcurrentHashMap} without taking a lock. A tenant is loaded only once,
+ * even if it is looked up concurrently, and a failed load is retried on the next lookup.
+ * Tenants that are unknown to the source are remembered for a short time, so repeated lookups of unknown tenants
+ * don't hit the source every time. They become available once that time has elapsed, or right away if they
+ * are registered or invalidated.
+ * <p>
+ * The outcome and duration of the validations of every tenant are recorded and available as {@link TenantStatistics}.
+ * The statistics of a tenant start from zero when it is reloaded after {@link #invalidate(String)}.
+ * <p>
+ * Instances of this class are thread-safe as long as the shared handler, deserializer and source are thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CaptchaValidatorRegistry {
+    /**
+     * The default time for which a tenant that is unknown to the source is remembered
+     */
+    public static final Duration DEFAULT_UNKNOWN_TENANT_TTL = Duration.ofSeconds(5);
+
+    /**
+     * The maximum number of unknown tenants that are remembered at the same time
+     */
+    private static final int MAX_UNKNOWN_TENANTS = 10_000;
+
+    /**
+     * The source the configurations of tenants are loaded from
+     */
+    private final CaptchaValidatorConfigurationSource configurationSource;
+
+    /**
+     * The {@link CaptchaRequestHandler} shared by all tenants
+     */
+    private final CaptchaRequestHandler captchaRequestHandler;
+
+    /**
+     * The {@link CaptchaResponseDeserializer} shared by all tenants
+     */
+    private final CaptchaResponseDeserializer captchaResponseDeserializer;
+
+    /**
+     * The {@link Executor} shared by all tenants to run asynchronous validations
+     */
+    private final Executor executor;
+
+    /**
+     * The validators of the tenants, which are completed once the tenant has been loaded
+     */
+    private final ConcurrentMap<String, CompletableFuture<TenantCaptchaValidator>> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * The time in nanoseconds for which a tenant that is unknown to the source is remembered
+     */
+    private final long unknownTenantTtlNanos;
+
+    /**
+     * The {@link System#nanoTime()} until which a tenant is remembered as unknown, by the tenant
+     */
+    private final ConcurrentMap<String, Long> unknownTenants = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param configurationSource The source the configurations of tenants are loaded from
+     */
+    public CaptchaValidatorRegistry(CaptchaValidatorConfigurationSource configurationSource) {
+        this(configurationSource, new SiteVerifyCaptchaRequestHandler(), new SiteVerifyCaptchaResponseDeserializer());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param configurationSource         The source the configurations of tenants are loaded from
+     * @param captchaRequestHandler       The {@link CaptchaRequestHandler} shared by all tenants
+     * @param captchaResponseDeserializer The {@link CaptchaResponseDeserializer} shared by all tenants
+     */
+    public CaptchaValidatorRegistry(
+        CaptchaValidatorConfigurationSource configurationSource,
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaResponseDeserializer captchaResponseDeserializer
+    ) {
+        this(
+            configurationSource,
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            ValidationExecutors.defaultExecutor()
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param configurationSource         The source the configurations of tenants are loaded from
+     * @param captchaRequestHandler       The {@link CaptchaRequestHandler} shared by all tenants
+     * @param captchaResponseDeserializer The {@link CaptchaResponseDeserializer} shared by all tenants
+     * @param executor                    The {@link Executor} shared by all tenants to run asynchronous validations
+     */
+    public CaptchaValidatorRegistry(
+        CaptchaValidatorConfigurationSource configurationSource,
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaResponseDeserializer captchaResponseDeserializer,
+        Executor executor
+    ) {
+        this(
+            configurationSource,
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            executor,
+            DEFAULT_UNKNOWN_TENANT_TTL
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param configurationSource         The source the configurations of tenants are loaded from
+     * @param captchaRequestHandler       The {@link CaptchaRequestHandler} shared by all tenants
+     * @param captchaResponseDeserializer The {@link CaptchaResponseDeserializer} shared by all tenants
+     * @param executor                    The {@link Executor} shared by all tenants to run asynchronous validations
+     * @param unknownTenantTtl            The time for which a tenant that is unknown to the source is remembered,
+     *                                    zero to look unknown tenants up in the source every time
+     */
+    public CaptchaValidatorRegistry(
+        CaptchaValidatorConfigurationSource configurationSource,
+        CaptchaRequestHandler captchaRequestHandler,
+        CaptchaResponseDeserializer captchaResponseDeserializer,
+        Executor executor,
+        Duration unknownTenantTtl
+    ) {
+        if (unknownTenantTtl.isNegative()) {
+            throw new IllegalArgumentException("The time to remember unknown tenants must not be negative");
+        }
+
+        this.configurationSource = Objects.requireNonNull(configurationSource, "configurationSource");
+        this.captchaRequestHandler = Objects.requireNonNull(captchaRequestHandler, "captchaRequestHandler");
+        this.captchaResponseDeserializer = Objects.requireNonNull(
+            captchaResponseDeserializer,
+            "captchaResponseDeserializer"
+        );
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.unknownTenantTtlNanos = unknownTenantTtl.toNanos();
+    }
+
+    /**
+     * Get the validator of a tenant, loading its configuration if it has not been loaded yet.
+     *
+     * @param tenant The identifier of the tenant
+     * @return The validator of the tenant, or null if the tenant is unknown
+     */
+    public CaptchaValidator getValidator(String tenant) {
+        return this.getTenantValidator(tenant);
+    }
+
+    /**
+     * Get the immutable configuration of a tenant, loading it if it has not been loaded yet.
+     *
+     * @param tenant The identifier of the tenant
+     * @return The configuration of the tenant, or null if the tenant is unknown
+     */
+    public CaptchaValidatorConfiguration getConfiguration(String tenant) {
+        TenantCaptchaValidator tenantCaptchaValidator = this.getTenantValidator(tenant);
+
+        return tenantCaptchaValidator == null ? null : tenantCaptchaValidator.getConfiguration();
+    }
+
+    /**
+     * Get the statistics of a loaded tenant. This does not load the tenant.
+     *
+     * @param tenant The identifier of the tenant
+     * @return The statistics of the tenant, or null if the tenant has not been loaded
+     */
+    public TenantStatistics getStatistics(String tenant) {
+        CompletableFuture<TenantCaptchaValidator> entry = this.tenants.get(tenant);
+        TenantCaptchaValidator tenantCaptchaValidator = entry == null ? null : entry.getNow(null);
+
+        return tenantCaptchaValidator == null ? null : tenantCaptchaValidator.getStatistics();
+    }
+
+    /**
+     * Register a tenant with a configuration, replacing its current configuration if it has been loaded before.
+     * The configuration is copied, so later changes to it don't affect the tenant.
+     * <p>
+     * A loaded tenant keeps its validator and statistics, and validations in flight finish with the
+     * previous configuration, so secrets can be rotated without interrupting the tenant.
+     *
+     * @param tenant                        The identifier of the tenant
+     * @param captchaValidatorConfiguration The configuration of the tenant
+     */
+    public void register(String tenant, CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        Objects.requireNonNull(tenant, "tenant");
+        Objects.requireNonNull(captchaValidatorConfiguration, "captchaValidatorConfiguration");
+        this.tenants.compute(tenant, (key, entry) -> {
+            if (entry != null && entry.isDone() && !entry.isCompletedExceptionally()) {
+                TenantCaptchaValidator tenantCaptchaValidator = entry.join();
+                if (tenantCaptchaValidator != null) {
+                    tenantCaptchaValidator.setConfiguration(captchaValidatorConfiguration);
+                    return entry;
+                }
+            }
+
+            return CompletableFuture.completedFuture(this.createValidator(captchaValidatorConfiguration));
+        });
+        this.unknownTenants.remove(tenant);
+    }
+
+    /**
+     * Forget a tenant, so its configuration is loaded from the source again on its next lookup.
+     * This also applies to a tenant that is remembered as unknown.
+     *
+     * @param tenant The identifier of the tenant
+     * @return true if the tenant has been loaded before
+     */
+    public boolean invalidate(String tenant) {
+        this.unknownTenants.remove(tenant);
+
+        return this.tenants.remove(tenant) != null;
+    }
+
+    /**
+     * Get the identifiers of the tenants that have been loaded or registered.
+     *
+     * @return An unmodifiable view of the identifiers of the loaded tenants
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(this.tenants.keySet());
+    }
+
+    /**
+     * Get the {@link CaptchaRequestHandler} shared by all tenants
+     *
+     * @return The shared {@link CaptchaRequestHandler}
+     */
+    public CaptchaRequestHandler getCaptchaRequestHandler() {
+        return this.captchaRequestHandler;
+    }
+
+    /**
+     * Get the {@link CaptchaResponseDeserializer} shared by all tenants
+     *
+     * @return The shared {@link CaptchaResponseDeserializer}
+     */
+    public CaptchaResponseDeserializer getCaptchaResponseDeserializer() {
+        return this.captchaResponseDeserializer;
+    }
+
+    /**
+     * Get the validator of a tenant, loading its configuration if it has not been loaded yet.
+     *
+     * @param tenant The identifier of the tenant
+     * @return The validator of the tenant, or null if the tenant is unknown
+     */
+    private TenantCaptchaValidator getTenantValidator(String tenant) {
+        Objects.requireNonNull(tenant, "tenant");
+
+        while (true) {
+            CompletableFuture<TenantCaptchaValidator> entry = this.tenants.get(tenant);
+            if (entry == null) {
+                if (this.isUnknown(tenant)) {
+                    return null;
+                }
+
+                CompletableFuture<TenantCaptchaValidator> loadingEntry = new CompletableFuture<>();
+                entry = this.tenants.putIfAbsent(tenant, loadingEntry);
+                if (entry == null) {
+                    return this.load(tenant, loadingEntry);
+                }
+            }
+
+            try {
+                return entry.join();
+            } catch (CompletionException e) {
+                // The load of another thread failed, which has already been reported to that thread, so try again.
+                // This ends as soon as a load succeeds or this thread loads the tenant itself.
+            }
+        }
+    }
+
+    /**
+     * Check if a tenant is remembered as unknown to the source.
+     *
+     * @param tenant The identifier of the tenant
+     * @return true if the tenant is unknown and has been looked up within the time unknown tenants are remembered
+     */
+    private boolean isUnknown(String tenant) {
+        Long unknownUntil = this.unknownTenants.get(tenant);
+        if (unknownUntil == null) {
+            return false;
+        }
+        if (System.nanoTime() - unknownUntil < 0) {
+            return true;
+        }
+
+        this.unknownTenants.remove(tenant, unknownUntil);
+
+        return false;
+    }
+
+    /**
+     * Remember a tenant as unknown to the source.
+     * Expired tenants are removed once the maximum number of remembered tenants is reached,
+     * the tenant is not remembered if that does not free any space.
+     *
+     * @param tenant The identifier of the tenant
+     */
+    private void rememberUnknown(String tenant) {
+        if (this.unknownTenantTtlNanos == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (this.unknownTenants.size() >= MAX_UNKNOWN_TENANTS) {
+            this.unknownTenants.values().removeIf(unknownUntil -> now - unknownUntil >= 0);
+            if (this.unknownTenants.size() >= MAX_UNKNOWN_TENANTS) {
+                return;
+            }
+        }
+
+        this.unknownTenants.put(tenant, now + this.unknownTenantTtlNanos);
+    }
+
+    /**
+     * Load the configuration of a tenant and complete the entry of the tenant with its validator.
+     *
+     * @param tenant       The identifier of the tenant
+     * @param loadingEntry The entry of the tenant that is completed with its validator
+     * @return The validator of the tenant, or null if the tenant is unknown
+     */
+    private TenantCaptchaValidator load(String tenant, CompletableFuture<TenantCaptchaValidator> loadingEntry) {
+        TenantCaptchaValidator tenantCaptchaValidator;
+        try {
+            CaptchaValidatorConfiguration captchaValidatorConfiguration =
+                this.configurationSource.getConfiguration(tenant);
+            tenantCaptchaValidator = captchaValidatorConfiguration == null
+                ? null
+                : this.createValidator(captchaValidatorConfiguration);
+        } catch (RuntimeException | Error e) {
+            this.tenants.remove(tenant, loadingEntry);
+            loadingEntry.completeExceptionally(e);
+
+            throw e;
+        }
+
+        if (tenantCaptchaValidator == null) {
+            // Remember the tenant before removing its entry, so concurrent lookups don't load it again
+            this.rememberUnknown(tenant);
+            this.tenants.remove(tenant, loadingEntry);
+        }
+        loadingEntry.complete(tenantCaptchaValidator);
+
+        return tenantCaptchaValidator;
+    }
+
+    /**
+     * Create the validator of a tenant that uses the shared handler, deserializer and executor.
+     *
+     * @param captchaValidatorConfiguration The configuration of the tenant
+     * @return The created validator
+     */
+    private TenantCaptchaValidator createValidator(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        return new TenantCaptchaValidator(
+            new GCaptchaValidator(
+                this.captchaRequestHandler,
+                this.captchaResponseDeserializer,
+                Objects.requireNonNull(captchaValidatorConfiguration, "captchaValidatorConfiguration")
+            ),
+            this.executor
+        );
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.tenant;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link CaptchaValidator} of a tenant of a {@link CaptchaValidatorRegistry}.
+ * <p>
+ * It records the outcome and duration of every validation and runs asynchronous validations on the
+ * {@link Executor} shared by all tenants.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+final class TenantCaptchaValidator implements CaptchaValidator {
+    /**
+     * The validator that executes the validations
+     */
+    private final GCaptchaValidator captchaValidator;
+
+    /**
+     * The {@link Executor} used to run asynchronous validations
+     */
+    private final Executor executor;
+
+    /**
+     * The number of validations that succeeded
+     */
+    private final LongAdder succeededCount = new LongAdder();
+
+    /**
+     * The number of validations that have been rejected
+     */
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * The number of validations that failed with an internal error
+     */
+    private final LongAdder internalErrorCount = new LongAdder();
+
+    /**
+     * The sum of the durations of all validations in nanoseconds
+     */
+    private final LongAdder totalDurationNanos = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidator The validator that executes the validations
+     * @param executor         The {@link Executor} used to run asynchronous validations
+     */
+    TenantCaptchaValidator(GCaptchaValidator captchaValidator, Executor executor) {
+        this.captchaValidator = captchaValidator;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean basicValidate(String response) {
+        return this.basicValidate(response, "");
+    }
+
+    /**
+     * Validate a Google ReCaptcha response.
+     * The result if the response is valid is being returned as a boolean.
+     * <p>
+     * Only the success flag is extracted if the deserializer supports it. As the reason of a failed validation
+     * is unknown then, it is recorded as rejected.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remote IP of the one who issued the request
+     * @return The result of the external validation as a simple boolean
+     * @see GCaptchaValidator#basicValidate(String, String)
+     */
+    @Override
+    public boolean basicValidate(String response, String remoteIP) {
+        long start = System.nanoTime();
+
+        return this.record(start, this.captchaValidator.basicValidate(response, remoteIP));
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response) {
+        return this.validate(response, "");
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP) {
+        long start = System.nanoTime();
+
+        return this.record(start, this.captchaValidator.validate(response, remoteIP));
+    }
+
+    @Override
+    public CaptchaValidationResponse validate(String response, String remoteIP, Deadline deadline) {
+        long start = System.nanoTime();
+
+        return this.record(start, this.captchaValidator.validate(response, remoteIP, deadline));
+    }
+
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(String response, String remoteIP) {
+        return this.validateAsync(response, remoteIP, this.executor);
+    }
+
+    @Override
+    public CompletableFuture<CaptchaValidationResponse> validateAsync(
+        String response,
+        String remoteIP,
+        Executor executor
+    ) {
+        long start = System.nanoTime();
+
+        return this.captchaValidator.validateAsync(response, remoteIP, executor)
+            .thenApply(captchaValidationResponse -> this.record(start, captchaValidationResponse));
+    }
+
+    @Override
+    public CaptchaValidatorConfiguration getConfiguration() {
+        return this.captchaValidator.getConfiguration();
+    }
+
+    /**
+     * Replace the configuration of this validator while keeping its statistics.
+     *
+     * @param captchaValidatorConfiguration The new configuration
+     * @see GCaptchaValidator#setConfiguration(CaptchaValidatorConfiguration)
+     */
+    void setConfiguration(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        this.captchaValidator.setConfiguration(captchaValidatorConfiguration);
+    }
+
+    /**
+     * Get a snapshot of the statistics of this validator.
+     *
+     * @return The statistics of this validator
+     */
+    TenantStatistics getStatistics() {
+        return new TenantStatistics(
+            this.succeededCount.sum(),
+            this.rejectedCount.sum(),
+            this.internalErrorCount.sum(),
+            this.totalDurationNanos.sum()
+        );
+    }
+
+    /**
+     * Record the outcome and duration of a validation.
+     *
+     * @param start                     The time in nanoseconds at which the validation has been started
+     * @param captchaValidationResponse The result of the validation
+     * @return The supplied result
+     */
+    private CaptchaValidationResponse record(long start, CaptchaValidationResponse captchaValidationResponse) {
+        this.totalDurationNanos.add(System.nanoTime() - start);
+        if (captchaValidationResponse.hasSucceeded()) {
+            this.succeededCount.increment();
+        } else if (isInternalError(captchaValidationResponse)) {
+            this.internalErrorCount.increment();
+        } else {
+            this.rejectedCount.increment();
+        }
+
+        return captchaValidationResponse;
+    }
+
+    /**
+     * Record the outcome and duration of a basic validation, a failed one is recorded as rejected.
+     *
+     * @param start     The time in nanoseconds at which the validation has been started
+     * @param succeeded The result of the validation
+     * @return The supplied result
+     */
+    private boolean record(long start, boolean succeeded) {
+        this.totalDurationNanos.add(System.nanoTime() - start);
+        if (succeeded) {
+            this.succeededCount.increment();
+        } else {
+            this.rejectedCount.increment();
+        }
+
+        return succeeded;
+    }
+
+    /**
+     * Check if a validation failed with an internal error.
+     *
+     * @param captchaValidationResponse The result of the validation
+     * @return true if the result contains the {@link ValidationError#GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+     */
+    private static boolean isInternalError(CaptchaValidationResponse captchaValidationResponse) {
+        for (ValidationError validationError : captchaValidationResponse.getErrors()) {
+            if (validationError == ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.tenant;
+
+/**
+ * An immutable snapshot of the validation statistics of a tenant.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public final class TenantStatistics {
+    /**
+     * The number of validations that succeeded
+     */
+    private final long succeededCount;
+
+    /**
+     * The number of validations that have been rejected
+     */
+    private final long rejectedCount;
+
+    /**
+     * The number of validations that failed with an internal error
+     */
+    private final long internalErrorCount;
+
+    /**
+     * The sum of the durations of all validations in nanoseconds
+     */
+    private final long totalDurationNanos;
+
+    /**
+     * Constructor
+     *
+     * @param succeededCount     The number of validations that succeeded
+     * @param rejectedCount      The number of validations that have been rejected
+     * @param internalErrorCount The number of validations that failed with an internal error
+     * @param totalDurationNanos The sum of the durations of all validations in nanoseconds
+     */
+    public TenantStatistics(long succeededCount, long rejectedCount, long internalErrorCount, long totalDurationNanos) {
+        this.succeededCount = succeededCount;
+        this.rejectedCount = rejectedCount;
+        this.internalErrorCount = internalErrorCount;
+        this.totalDurationNanos = totalDurationNanos;
+    }
+
+    /**
+     * Get the number of validations that succeeded
+     *
+     * @return The number of succeeded validations
+     */
+    public long getSucceededCount() {
+        return this.succeededCount;
+    }
+
+    /**
+     * Get the number of validations that have been rejected, e.g. because the response was invalid or a duplicate
+     *
+     * @return The number of rejected validations
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    /**
+     * Get the number of validations that failed with an internal error, e.g. because the SiteVerify servers
+     * could not be reached
+     *
+     * @return The number of validations that failed with an internal error
+     */
+    public long getInternalErrorCount() {
+        return this.internalErrorCount;
+    }
+
+    /**
+     * Get the number of validations
+     *
+     * @return The number of succeeded, rejected and failed validations
+     */
+    public long getValidationCount() {
+        return this.succeededCount + this.rejectedCount + this.internalErrorCount;
+    }
+
+    /**
+     * Get the average duration of a validation
+     *
+     * @return The average duration in nanoseconds, or 0 if there were no validations yet
+     */
+    public long getAverageDurationNanos() {
+        long validationCount = this.getValidationCount();
+
+        return validationCount == 0 ? 0 : this.totalDurationNanos / validationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantStatistics{" +
+            "succeededCount=" + this.succeededCount +
+            ", rejectedCount=" + this.rejectedCount +
+            ", internalErrorCount=" + this.internalErrorCount +
+            ", averageDurationNanos=" + this.getAverageDurationNanos() +
+            '}';
+    }
+}
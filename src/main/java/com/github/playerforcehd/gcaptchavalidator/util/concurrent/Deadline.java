@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.concurrent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An absolute point in time until which an operation has to complete.
+ * <p>
+ * A deadline is measured with {@link System#nanoTime()}, so it is not affected by changes of the wall clock.
+ * It is passed along with a validation, so every part of it, including retries and hedged requests,
+ * knows how much of the budget of the caller is left.
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public final class Deadline {
+    /**
+     * The deadline that never expires
+     */
+    private static final Deadline NONE = new Deadline(0, false);
+
+    /**
+     * The {@link System#nanoTime()} at which this deadline expires
+     */
+    private final long deadlineNanos;
+
+    /**
+     * If this deadline expires at all
+     */
+    private final boolean limited;
+
+    /**
+     * Constructor
+     *
+     * @param deadlineNanos The {@link System#nanoTime()} at which the deadline expires
+     * @param limited       If the deadline expires at all
+     */
+    private Deadline(long deadlineNanos, boolean limited) {
+        this.deadlineNanos = deadlineNanos;
+        this.limited = limited;
+    }
+
+    /**
+     * Create a deadline that expires after a timeout.
+     *
+     * @param timeout The time from now until the deadline expires
+     * @return The created deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return afterNanos(saturatedNanos(timeout));
+    }
+
+    /**
+     * Create a deadline that expires at a point in time.
+     *
+     * @param instant The point in time at which the deadline expires
+     * @return The created deadline
+     */
+    public static Deadline at(Instant instant) {
+        return after(Duration.between(Instant.now(), instant));
+    }
+
+    /**
+     * Get the deadline that never expires.
+     *
+     * @return The deadline without a limit
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Get the time until this deadline expires.
+     *
+     * @param timeUnit The unit of the returned time
+     * @return The remaining time, which is zero or negative if the deadline has expired or less than one unit
+     * is left, or {@link Long#MAX_VALUE} if the deadline never expires
+     */
+    public long remaining(TimeUnit timeUnit) {
+        if (!this.limited) {
+            return Long.MAX_VALUE;
+        }
+
+        long remainingNanos = this.deadlineNanos - System.nanoTime();
+
+        return remainingNanos <= 0 ? remainingNanos : timeUnit.convert(remainingNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Check if this deadline has expired.
+     *
+     * @return true if the deadline has expired
+     */
+    public boolean isExpired() {
+        return this.limited && this.deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Check if this deadline expires at all.
+     *
+     * @return true if the deadline expires at some point, false if it is {@link #none()}
+     */
+    public boolean isLimited() {
+        return this.limited;
+    }
+
+    /**
+     * Get the earlier of this deadline and a deadline that expires after a timeout.
+     *
+     * @param timeout The timeout from now
+     * @return This deadline if it expires before the timeout elapses, otherwise a deadline after the timeout
+     */
+    public Deadline min(Duration timeout) {
+        long timeoutNanos = saturatedNanos(timeout);
+        if (this.limited && this.remaining(TimeUnit.NANOSECONDS) <= timeoutNanos) {
+            return this;
+        }
+
+        return afterNanos(timeoutNanos);
+    }
+
+    /**
+     * Get the shorter of a timeout and the time until this deadline expires.
+     * This is what a blocking operation should use as its timeout.
+     *
+     * @param timeout The timeout
+     * @return The shorter timeout, which is zero if the deadline has expired
+     */
+    public Duration limit(Duration timeout) {
+        if (!this.limited) {
+            return timeout;
+        }
+
+        long remainingNanos = Math.max(0, this.remaining(TimeUnit.NANOSECONDS));
+
+        return remainingNanos < saturatedNanos(timeout) ? Duration.ofNanos(remainingNanos) : timeout;
+    }
+
+    @Override
+    public String toString() {
+        return this.limited
+            ? "Deadline[remaining=" + Duration.ofNanos(this.remaining(TimeUnit.NANOSECONDS)) + "]"
+            : "Deadline[none]";
+    }
+
+    /**
+     * Create a deadline that expires after a timeout.
+     *
+     * @param timeoutNanos The time from now until the deadline expires in nanoseconds
+     * @return The created deadline
+     */
+    private static Deadline afterNanos(long timeoutNanos) {
+        // Deadlines centuries ahead never expire, and keeping them apart from now avoids overflows
+        if (timeoutNanos >= Long.MAX_VALUE / 2) {
+            return NONE;
+        }
+
+        return new Deadline(System.nanoTime() + Math.max(0, timeoutNanos), true);
+    }
+
+    /**
+     * Convert a timeout to nanoseconds without overflowing.
+     *
+     * @param timeout The timeout
+     * @return The timeout in nanoseconds, or {@link Long#MAX_VALUE} if it is too long to be represented
+     */
+    private static long saturatedNanos(Duration timeout) {
+        try {
+            return timeout.toNanos();
+        } catch (ArithmeticException e) {
+            return timeout.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class that provides the {@link Executor}s used to run validations asynchronously.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ValidationExecutors {
+    /**
+     * Prefix of the names of threads created by the executors of this class
+     */
+    private static final String THREAD_NAME_PREFIX = "gcaptchavalidator-worker-";
+
+    /**
+     * Prefix of the names of virtual threads created by the executors of this class
+     */
+    private static final String VIRTUAL_THREAD_NAME_PREFIX = "gcaptchavalidator-virtual-";
+
+    /**
+     * Prefix of the names of threads created by the scheduler of this class
+     */
+    private static final String SCHEDULER_THREAD_NAME_PREFIX = "gcaptchavalidator-scheduler-";
+
+    /**
+     * Get the {@link Executor} used when no {@link Executor} has been supplied for an asynchronous validation.
+     * <p>
+     * Validations block while waiting for the SiteVerify servers, which is why the
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()} is not used.
+     * Instead, a shared executor is created on first use. On Java 21 or newer, it runs every validation
+     * on its own virtual thread. On older versions of Java, it is a cached thread pool with daemon threads.
+     *
+     * @return The default {@link Executor} for asynchronous validations
+     * @see #newVirtualThreadPerTaskExecutor()
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutorHolder.DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * Get the {@link ScheduledExecutorService} used to run delayed actions, like retries after a backoff.
+     * <p>
+     * The scheduler is created on first use and runs on a single daemon thread.
+     * Scheduled actions must not block, blocking work has to be handed off to another {@link Executor}.
+     *
+     * @return The shared scheduler
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Check if the running JVM supports virtual threads, which requires Java 21 or newer.
+     *
+     * @return true if virtual threads are supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreadSupport.VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Create an {@link ExecutorService} that runs every task on a new virtual thread.
+     * <p>
+     * Blocking validations only occupy a virtual thread while they wait for the SiteVerify servers,
+     * so thousands of concurrent validations do not need thousands of platform threads.
+     * The library is compiled for Java 8, which is why virtual threads are created reflectively.
+     * If the running JVM does not support virtual threads, a cached thread pool with daemon threads is
+     * returned instead, which behaves the same apart from the cost of its threads.
+     * <p>
+     * The caller owns the returned {@link ExecutorService} and is responsible for shutting it down.
+     *
+     * @return The created {@link ExecutorService}
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isVirtualThreadSupported()) {
+            return Executors.newCachedThreadPool(daemonThreadFactory());
+        }
+
+        try {
+            return (ExecutorService) VirtualThreadSupport.NEW_THREAD_PER_TASK_EXECUTOR.invoke(
+                null,
+                VirtualThreadSupport.VIRTUAL_THREAD_FACTORY
+            );
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Create a {@link ThreadFactory} that creates daemon threads named after this library.
+     *
+     * @return The created {@link ThreadFactory}
+     */
+    public static ThreadFactory daemonThreadFactory() {
+        return daemonThreadFactory(THREAD_NAME_PREFIX);
+    }
+
+    /**
+     * Create a {@link ThreadFactory} that creates daemon threads with the supplied name prefix.
+     * The threads are numbered, starting with 1.
+     *
+     * @param threadNamePrefix The prefix of the thread names
+     * @return The created {@link ThreadFactory}
+     */
+    public static ThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    /**
+     * Holder of the default executor, which lazily creates it on first access.
+     */
+    private static class DefaultExecutorHolder {
+        /**
+         * The shared default {@link Executor}
+         */
+        private static final ExecutorService DEFAULT_EXECUTOR = newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Holder of the scheduler, which lazily creates it on first access.
+     */
+    private static class SchedulerHolder {
+        /**
+         * The shared scheduler
+         */
+        private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+        /**
+         * Create the shared scheduler, which discards cancelled actions immediately.
+         *
+         * @return The created scheduler
+         */
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                1,
+                daemonThreadFactory(SCHEDULER_THREAD_NAME_PREFIX)
+            );
+            scheduler.setRemoveOnCancelPolicy(true);
+
+            return scheduler;
+        }
+    }
+
+    /**
+     * Holder of the reflectively resolved virtual thread API of Java 21.
+     * All fields are null if the running JVM does not support virtual threads.
+     */
+    private static class VirtualThreadSupport {
+        /**
+         * The {@link ThreadFactory} that creates named virtual threads
+         */
+        private static final ThreadFactory VIRTUAL_THREAD_FACTORY;
+
+        /**
+         * The method {@code Executors.newThreadPerTaskExecutor(ThreadFactory)}
+         */
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            ThreadFactory virtualThreadFactory = null;
+            Method newThreadPerTaskExecutor = null;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, VIRTUAL_THREAD_NAME_PREFIX, 1L);
+                virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Virtual threads are not supported (or not enabled) by the running JVM
+                virtualThreadFactory = null;
+                newThreadPerTaskExecutor = null;
+            }
+
+            VIRTUAL_THREAD_FACTORY = virtualThreadFactory;
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        }
+    }
+}
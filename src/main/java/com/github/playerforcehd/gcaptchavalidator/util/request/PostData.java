@@ -31,11 +31,42 @@ import java.util.Map;
 /**
  * Utility class that provides functionality to convert a normal {@link java.util.Map} to
  * an byte array that could be passed as post data to an {@link java.net.HttpURLConnection}.
+ * <p>
+ * Single values can also be percent-encoded directly into an existing byte array.
+ * This produces the same output as {@link URLEncoder} with UTF-8, without any intermediate Strings.
  *
  * @author Pascal Zarrad
  * @since 3.0.0
  */
 public class PostData {
+    /**
+     * The upper-case hexadecimal digits used for percent-encoding
+     */
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /**
+     * The ASCII characters that are not percent-encoded, the same as for {@link URLEncoder}
+     */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['-'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['*'] = true;
+    }
+
     /**
      * Create the post request parameters from a map
      *
@@ -54,4 +85,97 @@ public class PostData {
         }
         return postData.toString().getBytes(charset);
     }
+
+    /**
+     * Get the number of bytes a value occupies when it is percent-encoded with UTF-8.
+     *
+     * @param value The value to encode
+     * @return The length of the encoded value in bytes
+     * @since 3.1.0
+     */
+    public static int encodedLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += UNRESERVED[c] || c == ' ' ? 1 : 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c)
+                && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced with '?'
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Percent-encode a value with UTF-8 into a byte array.
+     * The array must have at least {@link #encodedLength(String)} bytes left after the offset.
+     *
+     * @param value  The value to encode
+     * @param target The array to write the encoded value to
+     * @param offset The index in the array where the encoded value starts
+     * @return The index in the array after the encoded value
+     * @since 3.1.0
+     */
+    public static int encode(String value, byte[] target, int offset) {
+        int position = offset;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    target[position++] = (byte) c;
+                } else if (c == ' ') {
+                    target[position++] = '+';
+                } else {
+                    position = encodeByte(c, target, position);
+                }
+            } else if (c < 0x800) {
+                position = encodeByte(0xC0 | (c >> 6), target, position);
+                position = encodeByte(0x80 | (c & 0x3F), target, position);
+            } else if (Character.isHighSurrogate(c)
+                && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                position = encodeByte(0xF0 | (codePoint >> 18), target, position);
+                position = encodeByte(0x80 | ((codePoint >> 12) & 0x3F), target, position);
+                position = encodeByte(0x80 | ((codePoint >> 6) & 0x3F), target, position);
+                position = encodeByte(0x80 | (codePoint & 0x3F), target, position);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced with '?'
+                position = encodeByte('?', target, position);
+            } else {
+                position = encodeByte(0xE0 | (c >> 12), target, position);
+                position = encodeByte(0x80 | ((c >> 6) & 0x3F), target, position);
+                position = encodeByte(0x80 | (c & 0x3F), target, position);
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Write a single percent-encoded byte.
+     *
+     * @param value    The byte to encode
+     * @param target   The array to write the encoded byte to
+     * @param position The index in the array where the encoded byte starts
+     * @return The index in the array after the encoded byte
+     */
+    private static int encodeByte(int value, byte[] target, int position) {
+        target[position] = '%';
+        target[position + 1] = HEX_DIGITS[(value >> 4) & 0xF];
+        target[position + 2] = HEX_DIGITS[value & 0xF];
+
+        return position + 3;
+    }
 }
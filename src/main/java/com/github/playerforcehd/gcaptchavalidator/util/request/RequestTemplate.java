@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ImmutableValidatorConfiguration;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The parts of a request to the SiteVerify servers that only depend on a {@link CaptchaValidatorConfiguration}.
+ * <p>
+ * The verifier URL is parsed, the secret is encoded and the HTTP/1.1 request head is serialized only once,
+ * when the template is created. Creating the post data of a request only encodes the response and the
+ * remote IP and writes everything into a single byte array of the exact size.
+ * <p>
+ * An {@link ImmutableValidatorConfiguration} compiles its template on creation, which makes it
+ * available for free through {@link #of(CaptchaValidatorConfiguration)}.
+ * The template of any other configuration is a snapshot that does not reflect later changes.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RequestTemplate {
+    /**
+     * The name of the secret parameter
+     */
+    private static final byte[] SECRET_PARAMETER = "secret=".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The name and separator of the response parameter
+     */
+    private static final byte[] RESPONSE_PARAMETER = "&response=".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The name and separator of the remote IP parameter
+     */
+    private static final byte[] REMOTE_IP_PARAMETER = "&remoteip=".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The separator between the HTTP/1.1 request head and the post data
+     */
+    private static final byte[] HEAD_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The parsed verifier URL or null if the verifier URL is not a valid {@link URL}
+     */
+    private final URL verifierUrl;
+
+    /**
+     * The parsed verifier URL or null if the verifier URL is not a valid {@link URI}
+     */
+    private final URI verifierUri;
+
+    /**
+     * The verifier URL as configured
+     */
+    private final String rawVerifierUrl;
+
+    /**
+     * The reason why the verifier URL is not a valid {@link URL} or null if it is valid
+     */
+    private final String invalidUrlReason;
+
+    /**
+     * The reason why the verifier URL is not a valid {@link URI} or null if it is valid
+     */
+    private final String invalidUriReason;
+
+    /**
+     * The HTTP headers to send with requests
+     */
+    private final Map<String, String> httpHeaders;
+
+    /**
+     * The encoded post data up to the value of the response parameter
+     */
+    private final byte[] postDataPrefix;
+
+    /**
+     * The serialized HTTP/1.1 request head up to the value of the Content-Length header
+     * or null if the verifier URL has no host
+     */
+    private final byte[] httpRequestHead;
+
+    /**
+     * Constructor
+     *
+     * @param captchaValidatorConfiguration The configuration to compile the template of
+     */
+    public RequestTemplate(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        this.rawVerifierUrl = captchaValidatorConfiguration.getVerifierUrl();
+        this.httpHeaders = Collections.unmodifiableMap(
+            new LinkedHashMap<>(captchaValidatorConfiguration.getHttpHeaders())
+        );
+
+        URL parsedUrl = null;
+        String urlReason = null;
+        try {
+            parsedUrl = new URL(this.rawVerifierUrl);
+        } catch (MalformedURLException e) {
+            urlReason = e.getMessage();
+        }
+        this.verifierUrl = parsedUrl;
+        this.invalidUrlReason = urlReason;
+
+        URI parsedUri = null;
+        String uriReason = null;
+        try {
+            parsedUri = new URI(this.rawVerifierUrl);
+        } catch (URISyntaxException e) {
+            uriReason = e.getReason();
+        } catch (NullPointerException e) {
+            uriReason = "The verifier URL is null";
+        }
+        this.verifierUri = parsedUri;
+        this.invalidUriReason = uriReason;
+
+        // The secret is the same for all requests and only has to be encoded once
+        String secret = String.valueOf(captchaValidatorConfiguration.getSecretToken());
+        byte[] prefix = new byte[SECRET_PARAMETER.length + PostData.encodedLength(secret) + RESPONSE_PARAMETER.length];
+        System.arraycopy(SECRET_PARAMETER, 0, prefix, 0, SECRET_PARAMETER.length);
+        int position = PostData.encode(secret, prefix, SECRET_PARAMETER.length);
+        System.arraycopy(RESPONSE_PARAMETER, 0, prefix, position, RESPONSE_PARAMETER.length);
+        this.postDataPrefix = prefix;
+
+        this.httpRequestHead = parsedUri != null && parsedUri.getHost() != null
+            ? this.createHttpRequestHead(parsedUri)
+            : null;
+    }
+
+    /**
+     * Get the template of a configuration.
+     * The template of an {@link ImmutableValidatorConfiguration} is reused, for all other configurations
+     * a new template is compiled.
+     *
+     * @param captchaValidatorConfiguration The configuration to get the template of
+     * @return The template of the configuration
+     */
+    public static RequestTemplate of(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        if (captchaValidatorConfiguration instanceof ImmutableValidatorConfiguration) {
+            return ((ImmutableValidatorConfiguration) captchaValidatorConfiguration).getRequestTemplate();
+        }
+
+        return new RequestTemplate(captchaValidatorConfiguration);
+    }
+
+    /**
+     * Get the parsed verifier URL as {@link URL}
+     *
+     * @return The parsed verifier URL
+     * @throws MalformedURLException Thrown when the verifier URL is not a valid {@link URL}
+     */
+    public URL getVerifierUrl() throws MalformedURLException {
+        if (this.verifierUrl == null) {
+            throw new MalformedURLException(this.invalidUrlReason);
+        }
+
+        return this.verifierUrl;
+    }
+
+    /**
+     * Get the parsed verifier URL as {@link URI}
+     *
+     * @return The parsed verifier URL
+     * @throws URISyntaxException Thrown when the verifier URL is not a valid {@link URI}
+     */
+    public URI getVerifierUri() throws URISyntaxException {
+        if (this.verifierUri == null) {
+            throw new URISyntaxException(String.valueOf(this.rawVerifierUrl), this.invalidUriReason);
+        }
+
+        return this.verifierUri;
+    }
+
+    /**
+     * Get the HTTP headers to send with requests
+     *
+     * @return An unmodifiable snapshot of the HTTP headers of the configuration
+     */
+    public Map<String, String> getHttpHeaders() {
+        return this.httpHeaders;
+    }
+
+    /**
+     * Create the post data of a request.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remoteIP of the user to validate, can be null or empty
+     * @return The encoded post data
+     */
+    public byte[] createPostData(String response, String remoteIP) {
+        String responseValue = String.valueOf(response);
+        byte[] postData = new byte[this.getPostDataLength(responseValue, remoteIP)];
+        this.writePostData(responseValue, remoteIP, postData, 0);
+
+        return postData;
+    }
+
+    /**
+     * Create a complete HTTP/1.1 POST request, consisting of the request head and the post data.
+     * <p>
+     * The head contains the Host and Content-Length headers and all configured HTTP headers,
+     * except Host, Content-Length and Connection.
+     *
+     * @param response The response to validate
+     * @param remoteIP The remoteIP of the user to validate, can be null or empty
+     * @return The serialized HTTP request
+     * @throws URISyntaxException       Thrown when the verifier URL is not a valid {@link URI}
+     * @throws IllegalArgumentException Thrown when the verifier URL has no host
+     */
+    public byte[] createHttpRequest(String response, String remoteIP) throws URISyntaxException {
+        URI uri = this.getVerifierUri();
+        if (this.httpRequestHead == null) {
+            throw new IllegalArgumentException("Verifier URL has no host: " + uri);
+        }
+
+        String responseValue = String.valueOf(response);
+        int postDataLength = this.getPostDataLength(responseValue, remoteIP);
+        int contentLengthDigits = countDigits(postDataLength);
+
+        byte[] request = new byte[
+            this.httpRequestHead.length + contentLengthDigits + HEAD_END.length + postDataLength
+        ];
+        System.arraycopy(this.httpRequestHead, 0, request, 0, this.httpRequestHead.length);
+        int position = this.httpRequestHead.length + contentLengthDigits;
+        for (int value = postDataLength, digit = position - 1; digit >= this.httpRequestHead.length; digit--) {
+            request[digit] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        System.arraycopy(HEAD_END, 0, request, position, HEAD_END.length);
+        this.writePostData(responseValue, remoteIP, request, position + HEAD_END.length);
+
+        return request;
+    }
+
+    /**
+     * Get the length of the post data of a request.
+     *
+     * @param response The response to validate, not null
+     * @param remoteIP The remoteIP of the user to validate, can be null or empty
+     * @return The length of the encoded post data in bytes
+     */
+    private int getPostDataLength(String response, String remoteIP) {
+        int length = this.postDataPrefix.length + PostData.encodedLength(response);
+        if (remoteIP != null && !remoteIP.isEmpty()) {
+            length += REMOTE_IP_PARAMETER.length + PostData.encodedLength(remoteIP);
+        }
+
+        return length;
+    }
+
+    /**
+     * Write the post data of a request into a byte array.
+     *
+     * @param response The response to validate, not null
+     * @param remoteIP The remoteIP of the user to validate, can be null or empty
+     * @param target   The array to write the post data to
+     * @param offset   The index in the array where the post data starts
+     */
+    private void writePostData(String response, String remoteIP, byte[] target, int offset) {
+        System.arraycopy(this.postDataPrefix, 0, target, offset, this.postDataPrefix.length);
+        int position = PostData.encode(response, target, offset + this.postDataPrefix.length);
+        if (remoteIP != null && !remoteIP.isEmpty()) {
+            System.arraycopy(REMOTE_IP_PARAMETER, 0, target, position, REMOTE_IP_PARAMETER.length);
+            PostData.encode(remoteIP, target, position + REMOTE_IP_PARAMETER.length);
+        }
+    }
+
+    /**
+     * Serialize the HTTP/1.1 request head up to the value of the Content-Length header.
+     *
+     * @param uri The parsed verifier URL
+     * @return The serialized request head
+     */
+    private byte[] createHttpRequestHead(URI uri) {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+
+        // The port is omitted when it is the default port of the scheme
+        String host = uri.getHost();
+        int port = uri.getPort();
+        if (port != -1 && port != ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80)) {
+            host += ":" + port;
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("POST ").append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host).append("\r\n");
+        for (Map.Entry<String, String> header : this.httpHeaders.entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (!name.equals("host") && !name.equals("content-length") && !name.equals("connection")) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        head.append("Content-Length: ");
+
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Count the decimal digits of a non-negative number.
+     *
+     * @param value The number
+     * @return The number of decimal digits
+     */
+    private static int countDigits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
+    }
+}
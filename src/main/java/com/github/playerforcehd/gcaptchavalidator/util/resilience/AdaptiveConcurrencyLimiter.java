@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A limit of the number of concurrent calls to a dependency that adapts itself to the observed round-trip times.
+ * <p>
+ * The limit follows the additive increase, multiplicative decrease (AIMD) scheme known from TCP congestion control.
+ * The lowest round-trip time observed is used as the round-trip time of the dependency without load. A call that
+ * took longer than this no-load round-trip time multiplied with the tolerance shows that requests are queueing
+ * somewhere, e.g. at the dependency or at a gateway in between, and so does a call that has been dropped because it
+ * timed out or got rejected. Both decrease the limit by the backoff ratio. Every other successful call increases
+ * the limit by one divided by the limit, so it grows by about one per round trip. The limit only grows while
+ * at least half of it is used, so an idle application does not build up a limit that has never been tested.
+ * To adapt to a dependency that became faster or slower permanently, the no-load round-trip time is measured
+ * again after every probe interval.
+ * <p>
+ * Callers must acquire a permit with {@link #tryAcquire()} or {@link #acquire(long, TimeUnit)} before every call and
+ * release it by recording the outcome with {@link #onSuccess(long)}, {@link #onDropped()} or {@link #onIgnored()}.
+ * Instances of this class are thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class AdaptiveConcurrencyLimiter {
+    /**
+     * The default limit before any call has been recorded
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    /**
+     * The default lowest limit
+     */
+    public static final int DEFAULT_MIN_LIMIT = 4;
+
+    /**
+     * The default highest limit
+     */
+    public static final int DEFAULT_MAX_LIMIT = 200;
+
+    /**
+     * The default factor the limit is multiplied with when calls are queueing or dropped
+     */
+    public static final float DEFAULT_BACKOFF_RATIO = 0.9f;
+
+    /**
+     * The default factor of the no-load round-trip time from which on a call counts as queued
+     */
+    public static final float DEFAULT_RTT_TOLERANCE = 2f;
+
+    /**
+     * The default number of successful calls after which the no-load round-trip time is measured again
+     */
+    public static final int DEFAULT_PROBE_INTERVAL = 1000;
+
+    /**
+     * The lowest limit
+     */
+    private final int minLimit;
+
+    /**
+     * The highest limit
+     */
+    private final int maxLimit;
+
+    /**
+     * The factor the limit is multiplied with when calls are queueing or dropped
+     */
+    private final float backoffRatio;
+
+    /**
+     * The factor of the no-load round-trip time from which on a call counts as queued
+     */
+    private final float rttTolerance;
+
+    /**
+     * The number of successful calls after which the no-load round-trip time is measured again
+     */
+    private final int probeInterval;
+
+    /**
+     * The source of the current time in nanoseconds
+     */
+    private final LongSupplier nanoClock;
+
+    /**
+     * The number of calls that have not been permitted
+     */
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * The exact limit, guarded by this
+     */
+    private float limit;
+
+    /**
+     * The number of permitted calls that have not completed yet, guarded by this
+     */
+    private int inFlight;
+
+    /**
+     * The number of threads waiting for a permit, guarded by this
+     */
+    private int waiters;
+
+    /**
+     * The lowest round-trip time in nanoseconds since the last probe, guarded by this
+     */
+    private long noLoadRttNanos = Long.MAX_VALUE;
+
+    /**
+     * The number of successful calls since the last probe, guarded by this
+     */
+    private int samplesSinceProbe;
+
+    /**
+     * Constructor
+     */
+    public AdaptiveConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialLimit The limit before any call has been recorded
+     * @param minLimit     The lowest limit
+     * @param maxLimit     The highest limit
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(
+            initialLimit,
+            minLimit,
+            maxLimit,
+            DEFAULT_BACKOFF_RATIO,
+            DEFAULT_RTT_TOLERANCE,
+            DEFAULT_PROBE_INTERVAL,
+            System::nanoTime
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialLimit  The limit before any call has been recorded
+     * @param minLimit      The lowest limit
+     * @param maxLimit      The highest limit
+     * @param backoffRatio  The factor the limit is multiplied with when calls are queueing or dropped,
+     *                      greater than 0 and less than 1
+     * @param rttTolerance  The factor of the no-load round-trip time from which on a call counts as queued,
+     *                      at least 1
+     * @param probeInterval The number of successful calls after which the no-load round-trip time
+     *                      is measured again
+     * @param nanoClock     The source of the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    public AdaptiveConcurrencyLimiter(
+        int initialLimit,
+        int minLimit,
+        int maxLimit,
+        float backoffRatio,
+        float rttTolerance,
+        int probeInterval,
+        LongSupplier nanoClock
+    ) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (!(backoffRatio > 0 && backoffRatio < 1)) {
+            throw new IllegalArgumentException("The backoff ratio must be greater than 0 and less than 1");
+        }
+        if (!(rttTolerance >= 1)) {
+            throw new IllegalArgumentException("The round-trip time tolerance must be at least 1");
+        }
+        if (probeInterval < 1) {
+            throw new IllegalArgumentException("The probe interval must be at least 1");
+        }
+
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.rttTolerance = rttTolerance;
+        this.probeInterval = probeInterval;
+        this.nanoClock = Objects.requireNonNull(nanoClock, "nanoClock");
+    }
+
+    /**
+     * Try to acquire a permit for a call without waiting.
+     *
+     * @return true if the call is permitted, false if the limit has been reached
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (this.inFlight < this.getLimit()) {
+                this.inFlight++;
+
+                return true;
+            }
+        }
+        this.rejections.increment();
+
+        return false;
+    }
+
+    /**
+     * Acquire a permit for a call, waiting until one becomes available or the timeout elapses.
+     *
+     * @param timeout  The maximum time to wait
+     * @param timeUnit The unit of the timeout
+     * @return true if the call is permitted, false if no permit became available in time
+     * @throws InterruptedException Thrown when the current thread has been interrupted while waiting
+     */
+    public boolean acquire(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        synchronized (this) {
+            this.waiters++;
+            try {
+                while (this.inFlight >= this.getLimit()) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        this.rejections.increment();
+
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                }
+                this.inFlight++;
+
+                return true;
+            } finally {
+                this.waiters--;
+            }
+        }
+    }
+
+    /**
+     * Release the permit of a call that has succeeded and adapt the limit to its round-trip time.
+     *
+     * @param rttNanos The round-trip time of the call in nanoseconds
+     */
+    public synchronized void onSuccess(long rttNanos) {
+        this.inFlight--;
+
+        if (++this.samplesSinceProbe >= this.probeInterval) {
+            this.samplesSinceProbe = 0;
+            this.noLoadRttNanos = rttNanos;
+        } else if (rttNanos < this.noLoadRttNanos) {
+            this.noLoadRttNanos = rttNanos;
+        }
+
+        if (rttNanos > this.noLoadRttNanos * this.rttTolerance) {
+            this.decreaseLimit();
+        } else if (this.inFlight * 2 >= this.limit) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1f / this.limit);
+        }
+        this.notifyWaiters();
+    }
+
+    /**
+     * Release the permit of a call that has been dropped by the dependency, e.g. because it timed out
+     * or has been rejected as too many requests, and decrease the limit.
+     */
+    public synchronized void onDropped() {
+        this.inFlight--;
+        this.decreaseLimit();
+        this.notifyWaiters();
+    }
+
+    /**
+     * Release the permit of a call whose outcome does not tell anything about the load of the dependency,
+     * e.g. because it failed locally, without changing the limit.
+     */
+    public synchronized void onIgnored() {
+        this.inFlight--;
+        this.notifyWaiters();
+    }
+
+    /**
+     * Get the current time of the clock of this limiter, which is used to measure the round-trip times.
+     *
+     * @return The current time in nanoseconds
+     */
+    public long nanoTime() {
+        return this.nanoClock.getAsLong();
+    }
+
+    /**
+     * Get the current limit of concurrent calls
+     *
+     * @return The current limit
+     */
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Get the number of calls that are currently in flight
+     *
+     * @return The number of permitted calls that have not completed yet
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Get the lowest round-trip time observed since the last probe
+     *
+     * @return The no-load round-trip time in nanoseconds, or -1 if no call has succeeded yet
+     */
+    public synchronized long getNoLoadRttNanos() {
+        return this.noLoadRttNanos == Long.MAX_VALUE ? -1 : this.noLoadRttNanos;
+    }
+
+    /**
+     * Get the number of calls that have not been permitted because the limit has been reached
+     *
+     * @return The number of rejected calls since this limiter has been created
+     */
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * Multiply the limit with the backoff ratio, must be called while holding the lock on this.
+     */
+    private void decreaseLimit() {
+        this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+    }
+
+    /**
+     * Wake up the threads waiting for a permit, must be called while holding the lock on this.
+     */
+    private void notifyWaiters() {
+        if (this.waiters > 0) {
+            this.notifyAll();
+        }
+    }
+}
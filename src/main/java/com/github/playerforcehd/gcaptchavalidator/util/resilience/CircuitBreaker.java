@@ -0,0 +1,604 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker that stops calls to a failing dependency for a while instead of waiting for every call to fail.
+ * <p>
+ * While {@link CircuitBreakerState#CLOSED closed}, the outcomes of the last calls are recorded in a count-based
+ * sliding window. A call is considered slow if it took at least the slow call duration. Once the window holds
+ * at least the minimum number of calls and either the rate of failed calls or the rate of slow calls reaches its
+ * threshold, the breaker {@link CircuitBreakerState#OPEN opens}.
+ * <p>
+ * While open, {@link #tryAcquirePermission()} rejects every call without taking a lock. After the open duration
+ * has elapsed, the breaker becomes {@link CircuitBreakerState#HALF_OPEN half-open} and permits a limited number of
+ * trial calls. If their failure and slow call rates stay below the thresholds, the breaker closes again,
+ * otherwise it opens for another open duration. The permissions of trial calls that do not record their outcome
+ * within the trial call timeout expire, so a lost trial call can not keep the breaker half-open forever.
+ * <p>
+ * Callers must record the outcome of every permitted call with {@link #onSuccess(long)} or {@link #onError(long)},
+ * or release its permission with {@link #onIgnored()}.
+ * Instances of this class are thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CircuitBreaker {
+    /**
+     * The default number of calls in the sliding window
+     */
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 100;
+
+    /**
+     * The default minimum number of calls in the sliding window before the rates are evaluated
+     */
+    public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 20;
+
+    /**
+     * The default number of trial calls permitted while half-open
+     */
+    public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 5;
+
+    /**
+     * The default rate of failed calls at which the breaker opens
+     */
+    public static final float DEFAULT_FAILURE_RATE_THRESHOLD = 0.5f;
+
+    /**
+     * The default rate of slow calls at which the breaker opens
+     */
+    public static final float DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8f;
+
+    /**
+     * The default duration from which on a call is considered slow
+     */
+    public static final Duration DEFAULT_SLOW_CALL_DURATION = Duration.ofSeconds(2);
+
+    /**
+     * The default time for which the breaker stays open
+     */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+
+    /**
+     * The default time after which the permission of a trial call that has not recorded its outcome expires
+     */
+    public static final Duration DEFAULT_TRIAL_CALL_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The bit of an outcome that marks a failed call
+     */
+    private static final byte FAILED = 1;
+
+    /**
+     * The bit of an outcome that marks a slow call
+     */
+    private static final byte SLOW = 2;
+
+    /**
+     * The minimum number of calls in the sliding window before the rates are evaluated
+     */
+    private final int minimumNumberOfCalls;
+
+    /**
+     * The number of trial calls permitted while half-open
+     */
+    private final int permittedCallsInHalfOpenState;
+
+    /**
+     * The rate of failed calls at which the breaker opens
+     */
+    private final float failureRateThreshold;
+
+    /**
+     * The rate of slow calls at which the breaker opens
+     */
+    private final float slowCallRateThreshold;
+
+    /**
+     * The duration in nanoseconds from which on a call is considered slow
+     */
+    private final long slowCallNanos;
+
+    /**
+     * The time in nanoseconds for which the breaker stays open
+     */
+    private final long openNanos;
+
+    /**
+     * The time in nanoseconds after which the permission of a trial call that has not recorded its outcome expires
+     */
+    private final long trialCallTimeoutNanos;
+
+    /**
+     * The source of the current time in nanoseconds
+     */
+    private final LongSupplier nanoClock;
+
+    /**
+     * The listeners notified on state changes
+     */
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of calls that have not been permitted
+     */
+    private final LongAdder notPermittedCalls = new LongAdder();
+
+    /**
+     * The outcomes of the calls in the sliding window, guarded by this
+     */
+    private final byte[] outcomes;
+
+    /**
+     * The index of the outcome that is overwritten next, guarded by this
+     */
+    private int outcomeIndex;
+
+    /**
+     * The number of calls in the sliding window, guarded by this
+     */
+    private int recordedCalls;
+
+    /**
+     * The number of failed calls in the sliding window, guarded by this
+     */
+    private int failedCalls;
+
+    /**
+     * The number of slow calls in the sliding window, guarded by this
+     */
+    private int slowCalls;
+
+    /**
+     * The number of trial calls permitted since the breaker became half-open, guarded by this
+     */
+    private int halfOpenCalls;
+
+    /**
+     * The time in nanoseconds at which the last trial call has been permitted, guarded by this
+     */
+    private long lastTrialCallPermittedAt;
+
+    /**
+     * The current state, only changed while holding the lock on this
+     */
+    private volatile CircuitBreakerState state = CircuitBreakerState.CLOSED;
+
+    /**
+     * The time in nanoseconds at which the breaker opened
+     */
+    private volatile long openedAt;
+
+    /**
+     * Constructor
+     */
+    public CircuitBreaker() {
+        this(
+            DEFAULT_FAILURE_RATE_THRESHOLD,
+            DEFAULT_SLOW_CALL_RATE_THRESHOLD,
+            DEFAULT_SLOW_CALL_DURATION,
+            DEFAULT_OPEN_DURATION
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param failureRateThreshold  The rate of failed calls at which the breaker opens, between 0 and 1
+     * @param slowCallRateThreshold The rate of slow calls at which the breaker opens, between 0 and 1
+     * @param slowCallDuration      The duration from which on a call is considered slow
+     * @param openDuration          The time for which the breaker stays open
+     */
+    public CircuitBreaker(
+        float failureRateThreshold,
+        float slowCallRateThreshold,
+        Duration slowCallDuration,
+        Duration openDuration
+    ) {
+        this(
+            DEFAULT_SLIDING_WINDOW_SIZE,
+            DEFAULT_MINIMUM_NUMBER_OF_CALLS,
+            DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE,
+            failureRateThreshold,
+            slowCallRateThreshold,
+            slowCallDuration,
+            openDuration,
+            System::nanoTime
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param slidingWindowSize             The number of calls in the sliding window
+     * @param minimumNumberOfCalls          The minimum number of calls in the sliding window before the rates
+     *                                      are evaluated
+     * @param permittedCallsInHalfOpenState The number of trial calls permitted while half-open
+     * @param failureRateThreshold          The rate of failed calls at which the breaker opens, between 0 and 1
+     * @param slowCallRateThreshold         The rate of slow calls at which the breaker opens, between 0 and 1
+     * @param slowCallDuration              The duration from which on a call is considered slow
+     * @param openDuration                  The time for which the breaker stays open
+     * @param nanoClock                     The source of the current time in nanoseconds,
+     *                                      like {@link System#nanoTime()}
+     */
+    public CircuitBreaker(
+        int slidingWindowSize,
+        int minimumNumberOfCalls,
+        int permittedCallsInHalfOpenState,
+        float failureRateThreshold,
+        float slowCallRateThreshold,
+        Duration slowCallDuration,
+        Duration openDuration,
+        LongSupplier nanoClock
+    ) {
+        this(
+            slidingWindowSize,
+            minimumNumberOfCalls,
+            permittedCallsInHalfOpenState,
+            failureRateThreshold,
+            slowCallRateThreshold,
+            slowCallDuration,
+            openDuration,
+            DEFAULT_TRIAL_CALL_TIMEOUT,
+            nanoClock
+        );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param slidingWindowSize             The number of calls in the sliding window
+     * @param minimumNumberOfCalls          The minimum number of calls in the sliding window before the rates
+     *                                      are evaluated
+     * @param permittedCallsInHalfOpenState The number of trial calls permitted while half-open
+     * @param failureRateThreshold          The rate of failed calls at which the breaker opens, between 0 and 1
+     * @param slowCallRateThreshold         The rate of slow calls at which the breaker opens, between 0 and 1
+     * @param slowCallDuration              The duration from which on a call is considered slow
+     * @param openDuration                  The time for which the breaker stays open
+     * @param trialCallTimeout              The time after which the permission of a trial call that has not
+     *                                      recorded its outcome expires
+     * @param nanoClock                     The source of the current time in nanoseconds,
+     *                                      like {@link System#nanoTime()}
+     */
+    public CircuitBreaker(
+        int slidingWindowSize,
+        int minimumNumberOfCalls,
+        int permittedCallsInHalfOpenState,
+        float failureRateThreshold,
+        float slowCallRateThreshold,
+        Duration slowCallDuration,
+        Duration openDuration,
+        Duration trialCallTimeout,
+        LongSupplier nanoClock
+    ) {
+        if (minimumNumberOfCalls < 1 || slidingWindowSize < minimumNumberOfCalls) {
+            throw new IllegalArgumentException("The sizes must satisfy 1 <= minimumNumberOfCalls <= slidingWindowSize");
+        }
+        if (permittedCallsInHalfOpenState < 1 || permittedCallsInHalfOpenState > slidingWindowSize) {
+            throw new IllegalArgumentException(
+                "The permitted calls in half-open state must be between 1 and the sliding window size"
+            );
+        }
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)
+            || !(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1)) {
+            throw new IllegalArgumentException("The rate thresholds must be greater than 0 and at most 1");
+        }
+        if (slowCallDuration.isNegative() || openDuration.isNegative() || trialCallTimeout.isNegative()) {
+            throw new IllegalArgumentException("The durations must not be negative");
+        }
+
+        this.outcomes = new byte[slidingWindowSize];
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.trialCallTimeoutNanos = trialCallTimeout.toNanos();
+        this.nanoClock = Objects.requireNonNull(nanoClock, "nanoClock");
+    }
+
+    /**
+     * Try to acquire the permission to execute a call.
+     * <p>
+     * While the breaker is open, this does neither lock nor allocate.
+     *
+     * @return true if the call is permitted, false if it must not be executed
+     */
+    public boolean tryAcquirePermission() {
+        CircuitBreakerState currentState = this.state;
+        if (currentState == CircuitBreakerState.CLOSED) {
+            return true;
+        }
+        if (currentState == CircuitBreakerState.OPEN && !this.hasOpenDurationElapsed()) {
+            this.notPermittedCalls.increment();
+
+            return false;
+        }
+
+        CircuitBreakerState previousState = null;
+        boolean permitted;
+        synchronized (this) {
+            if (this.state == CircuitBreakerState.OPEN) {
+                if (!this.hasOpenDurationElapsed()) {
+                    this.notPermittedCalls.increment();
+
+                    return false;
+                }
+                previousState = this.transitionTo(CircuitBreakerState.HALF_OPEN);
+            }
+
+            permitted = this.state == CircuitBreakerState.CLOSED || this.tryPermitTrialCall();
+        }
+        if (!permitted) {
+            this.notPermittedCalls.increment();
+        }
+        this.notifyListeners(previousState, CircuitBreakerState.HALF_OPEN);
+
+        return permitted;
+    }
+
+    /**
+     * Record a permitted call that has succeeded.
+     *
+     * @param durationNanos The duration of the call in nanoseconds
+     */
+    public void onSuccess(long durationNanos) {
+        this.record(false, durationNanos);
+    }
+
+    /**
+     * Record a permitted call that has failed.
+     *
+     * @param durationNanos The duration of the call in nanoseconds
+     */
+    public void onError(long durationNanos) {
+        this.record(true, durationNanos);
+    }
+
+    /**
+     * Release the permission of a call whose outcome says nothing about the health of the dependency,
+     * for example because the call has been rejected locally. The call is not recorded, but a trial call
+     * of a half-open breaker is permitted in its place.
+     */
+    public void onIgnored() {
+        if (this.state != CircuitBreakerState.HALF_OPEN) {
+            return;
+        }
+
+        synchronized (this) {
+            if (this.state == CircuitBreakerState.HALF_OPEN && this.halfOpenCalls > this.recordedCalls) {
+                this.halfOpenCalls--;
+            }
+        }
+    }
+
+    /**
+     * Get the current time of the clock of this breaker, which is used to measure the duration of calls.
+     *
+     * @return The current time in nanoseconds
+     */
+    public long nanoTime() {
+        return this.nanoClock.getAsLong();
+    }
+
+    /**
+     * Get the current state of this breaker.
+     * <p>
+     * An open breaker whose open duration has elapsed stays open until the next call acquires a permission.
+     *
+     * @return The current state
+     */
+    public CircuitBreakerState getState() {
+        return this.state;
+    }
+
+    /**
+     * Get the rate of failed calls in the sliding window
+     *
+     * @return The rate of failed calls between 0 and 1, or -1 if less than the minimum number of calls are recorded
+     */
+    public synchronized float getFailureRate() {
+        return this.recordedCalls < this.minimumNumberOfCalls ? -1f : (float) this.failedCalls / this.recordedCalls;
+    }
+
+    /**
+     * Get the rate of slow calls in the sliding window
+     *
+     * @return The rate of slow calls between 0 and 1, or -1 if less than the minimum number of calls are recorded
+     */
+    public synchronized float getSlowCallRate() {
+        return this.recordedCalls < this.minimumNumberOfCalls ? -1f : (float) this.slowCalls / this.recordedCalls;
+    }
+
+    /**
+     * Get the number of calls that have not been permitted because the breaker was open or half-open
+     *
+     * @return The number of calls that have not been permitted since this breaker has been created
+     */
+    public long getNotPermittedCalls() {
+        return this.notPermittedCalls.sum();
+    }
+
+    /**
+     * Add a listener that is notified when this breaker changes its state.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(CircuitBreakerListener listener) {
+        this.listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Remove a previously added listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(CircuitBreakerListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Record the outcome of a permitted call and change the state if a threshold has been reached.
+     *
+     * @param failed        If the call has failed
+     * @param durationNanos The duration of the call in nanoseconds
+     */
+    private void record(boolean failed, long durationNanos) {
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= this.slowCallNanos ? SLOW : 0));
+
+        CircuitBreakerState previousState = null;
+        CircuitBreakerState newState = null;
+        synchronized (this) {
+            CircuitBreakerState currentState = this.state;
+            if (currentState == CircuitBreakerState.OPEN) {
+                return;
+            }
+
+            if (this.recordedCalls == this.outcomes.length) {
+                this.count(this.outcomes[this.outcomeIndex], -1);
+            } else {
+                this.recordedCalls++;
+            }
+            this.outcomes[this.outcomeIndex] = outcome;
+            this.outcomeIndex = (this.outcomeIndex + 1) % this.outcomes.length;
+            this.count(outcome, 1);
+
+            if (currentState == CircuitBreakerState.HALF_OPEN) {
+                if (this.recordedCalls >= this.permittedCallsInHalfOpenState) {
+                    newState = this.isThresholdReached() ? CircuitBreakerState.OPEN : CircuitBreakerState.CLOSED;
+                }
+            } else if (this.recordedCalls >= this.minimumNumberOfCalls && this.isThresholdReached()) {
+                newState = CircuitBreakerState.OPEN;
+            }
+            if (newState != null) {
+                previousState = this.transitionTo(newState);
+            }
+        }
+
+        this.notifyListeners(previousState, newState);
+    }
+
+    /**
+     * Add an outcome to the counters of the sliding window.
+     *
+     * @param outcome The outcome
+     * @param delta   1 to add the outcome, -1 to remove it
+     */
+    private void count(byte outcome, int delta) {
+        if ((outcome & FAILED) != 0) {
+            this.failedCalls += delta;
+        }
+        if ((outcome & SLOW) != 0) {
+            this.slowCalls += delta;
+        }
+    }
+
+    /**
+     * Check if the rate of failed or slow calls in the sliding window has reached its threshold.
+     *
+     * @return true if a threshold has been reached
+     */
+    private boolean isThresholdReached() {
+        return this.failedCalls >= this.failureRateThreshold * this.recordedCalls
+            || this.slowCalls >= this.slowCallRateThreshold * this.recordedCalls;
+    }
+
+    /**
+     * Try to permit a trial call while half-open. Must be called while holding the lock on this.
+     * <p>
+     * If all trial calls have been permitted, but some of them have not recorded their outcome within the
+     * trial call timeout, their permissions expire and new trial calls are permitted instead.
+     *
+     * @return true if the trial call is permitted
+     */
+    private boolean tryPermitTrialCall() {
+        long now = this.nanoClock.getAsLong();
+        if (this.halfOpenCalls >= this.permittedCallsInHalfOpenState
+            && now - this.lastTrialCallPermittedAt >= this.trialCallTimeoutNanos) {
+            this.halfOpenCalls = this.recordedCalls;
+        }
+        if (this.halfOpenCalls >= this.permittedCallsInHalfOpenState) {
+            return false;
+        }
+
+        this.halfOpenCalls++;
+        this.lastTrialCallPermittedAt = now;
+
+        return true;
+    }
+
+    /**
+     * Check if the open duration has elapsed since the breaker opened.
+     *
+     * @return true if the open duration has elapsed
+     */
+    private boolean hasOpenDurationElapsed() {
+        return this.nanoClock.getAsLong() - this.openedAt >= this.openNanos;
+    }
+
+    /**
+     * Change the state and reset the sliding window. Must be called while holding the lock on this.
+     *
+     * @param newState The new state
+     * @return The previous state
+     */
+    private CircuitBreakerState transitionTo(CircuitBreakerState newState) {
+        CircuitBreakerState previousState = this.state;
+        if (newState == CircuitBreakerState.OPEN) {
+            this.openedAt = this.nanoClock.getAsLong();
+        }
+        this.outcomeIndex = 0;
+        this.recordedCalls = 0;
+        this.failedCalls = 0;
+        this.slowCalls = 0;
+        this.halfOpenCalls = 0;
+        this.state = newState;
+
+        return previousState;
+    }
+
+    /**
+     * Notify the listeners about a state change.
+     *
+     * @param previousState The state before the transition, or null if there was no transition
+     * @param newState      The state after the transition
+     */
+    private void notifyListeners(CircuitBreakerState previousState, CircuitBreakerState newState) {
+        if (previousState == null) {
+            return;
+        }
+        for (CircuitBreakerListener listener : this.listeners) {
+            listener.onStateChange(this, previousState, newState);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+/**
+ * A listener that is notified when a {@link CircuitBreaker} changes its state.
+ * <p>
+ * Listeners are called on the thread that caused the transition, after the transition has completed.
+ * They should return quickly and must not throw.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+@FunctionalInterface
+public interface CircuitBreakerListener {
+    /**
+     * Called after a {@link CircuitBreaker} has changed its state.
+     *
+     * @param circuitBreaker The {@link CircuitBreaker} that changed its state
+     * @param previousState  The state before the transition
+     * @param newState       The state after the transition
+     */
+    void onStateChange(CircuitBreaker circuitBreaker, CircuitBreakerState previousState, CircuitBreakerState newState);
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the latencies of requests and estimates a percentile of them.
+ * <p>
+ * Latencies are recorded into a histogram with logarithmic buckets, four per power of two microseconds,
+ * so an estimated percentile is at most 19% above the real value. The histogram covers a window of a fixed number
+ * of latencies. Once a window is full, the percentile is computed from it once and a new window is started,
+ * so the estimate adapts to changing latencies and reading it costs nothing.
+ * Until the first window is full, no estimate is available.
+ * <p>
+ * Instances of this class are thread-safe and recording a latency does not lock or allocate.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class LatencyTracker {
+    /**
+     * The default number of latencies per window
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1_000;
+
+    /**
+     * The number of buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * The number of bits that select the bucket within a power of two
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /**
+     * The number of buckets of a histogram, which covers latencies up to 2^40 microseconds
+     */
+    private static final int BUCKET_COUNT = 41 * SUB_BUCKETS;
+
+    /**
+     * The percentile that is estimated, between 0 and 1
+     */
+    private final float percentile;
+
+    /**
+     * The number of latencies per window
+     */
+    private final int windowSize;
+
+    /**
+     * The histogram of the current window
+     */
+    private final AtomicReference<Window> window = new AtomicReference<>(new Window());
+
+    /**
+     * The estimated percentile in nanoseconds of the last full window, or -1 if there is none yet
+     */
+    private volatile long percentileNanos = -1;
+
+    /**
+     * Constructor
+     *
+     * @param percentile The percentile that is estimated, between 0 and 1, e.g. 0.95 for the p95
+     */
+    public LatencyTracker(float percentile) {
+        this(percentile, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param percentile The percentile that is estimated, between 0 and 1, e.g. 0.95 for the p95
+     * @param windowSize The number of latencies after which the estimate is updated
+     */
+    public LatencyTracker(float percentile, int windowSize) {
+        if (!(percentile > 0 && percentile <= 1)) {
+            throw new IllegalArgumentException("The percentile must be greater than 0 and at most 1");
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("The window size must be at least 1");
+        }
+
+        this.percentile = percentile;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Record the latency of a request.
+     *
+     * @param latencyNanos The latency in nanoseconds
+     */
+    public void record(long latencyNanos) {
+        Window currentWindow = this.window.get();
+        currentWindow.buckets.incrementAndGet(bucketOf(latencyNanos));
+        currentWindow.count.increment();
+
+        if (currentWindow.count.sum() >= this.windowSize && this.window.compareAndSet(currentWindow, new Window())) {
+            // Only the thread that replaced the window computes its percentile
+            this.percentileNanos = this.computePercentileNanos(currentWindow);
+        }
+    }
+
+    /**
+     * Get the estimated percentile of the latencies of the last full window
+     *
+     * @return The estimated percentile in nanoseconds, or -1 if no window has been filled yet
+     */
+    public long getPercentileNanos() {
+        return this.percentileNanos;
+    }
+
+    /**
+     * Get the percentile that is estimated
+     *
+     * @return The percentile, between 0 and 1
+     */
+    public float getPercentile() {
+        return this.percentile;
+    }
+
+    /**
+     * Compute the percentile of a full window.
+     *
+     * @param fullWindow The window
+     * @return The upper bound of the bucket that contains the percentile in nanoseconds
+     */
+    private long computePercentileNanos(Window fullWindow) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += fullWindow.buckets.get(i);
+        }
+
+        long rank = (long) Math.ceil(total * (double) this.percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += fullWindow.buckets.get(i);
+            if (seen >= rank) {
+                return upperBoundNanos(i);
+            }
+        }
+
+        return upperBoundNanos(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get the bucket of a latency.
+     *
+     * @param latencyNanos The latency in nanoseconds
+     * @return The index of the bucket
+     */
+    private static int bucketOf(long latencyNanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = exponent < SUB_BUCKET_BITS
+            ? (int) (micros << (SUB_BUCKET_BITS - exponent)) & (SUB_BUCKETS - 1)
+            : (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return Math.min(exponent * SUB_BUCKETS + subBucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get the upper bound of a bucket.
+     *
+     * @param bucket The index of the bucket
+     * @return The upper bound of the bucket in nanoseconds
+     */
+    private static long upperBoundNanos(int bucket) {
+        int exponent = bucket / SUB_BUCKETS;
+        int subBucket = bucket % SUB_BUCKETS;
+        // The bucket covers [2^e * (1 + s/4), 2^e * (1 + (s+1)/4))
+        long upperBoundMicros = (1L << exponent) * (SUB_BUCKETS + subBucket + 1) / SUB_BUCKETS;
+
+        return TimeUnit.MICROSECONDS.toNanos(Math.max(1, upperBoundMicros));
+    }
+
+    /**
+     * The histogram of a window of latencies.
+     */
+    private static final class Window {
+        /**
+         * The number of latencies per bucket
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        /**
+         * The number of latencies in this window
+         */
+        private final LongAdder count = new LongAdder();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A budget that limits the number of retries relative to the number of requests.
+ * <p>
+ * Every request deposits a fraction of a token into the budget, and every retry withdraws a whole token.
+ * The budget holds at most a maximum number of tokens, which it starts with. As long as requests succeed,
+ * the budget refills and retries are available. During an outage, where every request fails and wants to be
+ * retried, the retries are limited to the retry ratio of the requests once the initial tokens are used up.
+ * This keeps retries from multiplying the load on a dependency that is already overloaded.
+ * <p>
+ * Instances of this class are thread-safe and can be shared between multiple request handlers.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RetryBudget {
+    /**
+     * The default number of retries per request
+     */
+    public static final float DEFAULT_RETRY_RATIO = 0.1f;
+
+    /**
+     * The default maximum number of tokens
+     */
+    public static final int DEFAULT_MAX_TOKENS = 20;
+
+    /**
+     * The number of units a token is divided into
+     */
+    private static final long UNITS_PER_TOKEN = 1000;
+
+    /**
+     * The units deposited by every request
+     */
+    private final long depositUnits;
+
+    /**
+     * The maximum number of units the budget holds
+     */
+    private final long maxUnits;
+
+    /**
+     * The units that are currently available
+     */
+    private final AtomicLong availableUnits;
+
+    /**
+     * Constructor
+     */
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param retryRatio The number of retries allowed per request once the initial tokens are used up,
+     *                   between 0 and 1
+     * @param maxTokens  The maximum number of tokens, which is the number of retries that are possible at once
+     */
+    public RetryBudget(float retryRatio, int maxTokens) {
+        if (!(retryRatio >= 0 && retryRatio <= 1)) {
+            throw new IllegalArgumentException("The retry ratio must be between 0 and 1");
+        }
+        if (maxTokens < 0) {
+            throw new IllegalArgumentException("The maximum number of tokens must not be negative");
+        }
+
+        this.depositUnits = Math.round(retryRatio * UNITS_PER_TOKEN);
+        this.maxUnits = maxTokens * UNITS_PER_TOKEN;
+        this.availableUnits = new AtomicLong(this.maxUnits);
+    }
+
+    /**
+     * Record a request, which deposits a fraction of a token.
+     */
+    public void onRequest() {
+        long units;
+        do {
+            units = this.availableUnits.get();
+            if (units >= this.maxUnits) {
+                return;
+            }
+        } while (!this.availableUnits.compareAndSet(units, Math.min(this.maxUnits, units + this.depositUnits)));
+    }
+
+    /**
+     * Try to withdraw a token for a retry.
+     *
+     * @return true if the retry is allowed, false if the budget is exhausted
+     */
+    public boolean tryAcquireRetry() {
+        long units;
+        do {
+            units = this.availableUnits.get();
+            if (units < UNITS_PER_TOKEN) {
+                return false;
+            }
+        } while (!this.availableUnits.compareAndSet(units, units - UNITS_PER_TOKEN));
+
+        return true;
+    }
+
+    /**
+     * Get the number of tokens that are currently available
+     *
+     * @return The available tokens, one token allows one retry
+     */
+    public float getAvailableTokens() {
+        return (float) this.availableUnits.get() / UNITS_PER_TOKEN;
+    }
+}
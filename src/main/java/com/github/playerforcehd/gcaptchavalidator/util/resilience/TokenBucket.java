@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket that limits the rate of calls while permitting short bursts.
+ * <p>
+ * The bucket holds at most the burst size of tokens and is refilled continuously with the configured rate.
+ * Every call takes one token. Instead of the number of tokens, the bucket stores the point in time at which it will
+ * be full again, which is the single value that is updated with a compare-and-set on every call. This way, the bucket
+ * is lock-free and does not need a thread that refills it.
+ * <p>
+ * Calls either take a token immediately with {@link #tryAcquire()}, or reserve a token that becomes available
+ * within a maximum waiting time with {@link #reserve(long, TimeUnit)} or {@link #tryAcquire(long, TimeUnit)}.
+ * A reserved token is taken from the bucket right away, so callers that wait don't get overtaken by later calls.
+ * <p>
+ * Instances of this class are thread-safe and can be shared between multiple request handlers.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class TokenBucket {
+    /**
+     * The time in nanoseconds in which one token is refilled
+     */
+    private final long refillNanos;
+
+    /**
+     * The maximum number of tokens in the bucket
+     */
+    private final int burstSize;
+
+    /**
+     * The time in nanoseconds it takes to refill an empty bucket
+     */
+    private final long burstNanos;
+
+    /**
+     * The source of the current time in nanoseconds
+     */
+    private final LongSupplier nanoClock;
+
+    /**
+     * The point in time in nanoseconds at which the bucket is full again
+     */
+    private final AtomicLong fullAt;
+
+    /**
+     * The number of calls that did not get a token
+     */
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param permitsPerSecond The number of tokens refilled per second
+     * @param burstSize        The maximum number of tokens in the bucket, which it starts with
+     */
+    public TokenBucket(double permitsPerSecond, int burstSize) {
+        this(permitsPerSecond, burstSize, System::nanoTime);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param permitsPerSecond The number of tokens refilled per second
+     * @param burstSize        The maximum number of tokens in the bucket, which it starts with
+     * @param nanoClock        The source of the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    public TokenBucket(double permitsPerSecond, int burstSize, LongSupplier nanoClock) {
+        if (!(permitsPerSecond > 0) || permitsPerSecond > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("The rate must be greater than 0 and at most one permit per nanosecond");
+        }
+        if (burstSize < 1) {
+            throw new IllegalArgumentException("The burst size must be at least 1");
+        }
+
+        this.refillNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstSize = burstSize;
+        this.burstNanos = this.refillNanos * burstSize;
+        this.nanoClock = Objects.requireNonNull(nanoClock, "nanoClock");
+        this.fullAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Try to take a token without waiting.
+     * <p>
+     * This does neither lock nor allocate.
+     *
+     * @return true if a token has been taken, false if the bucket is empty
+     */
+    public boolean tryAcquire() {
+        return this.reserveNanos(0) == 0;
+    }
+
+    /**
+     * Try to take a token, waiting until it has been refilled if the bucket is empty.
+     *
+     * @param timeout  The maximum time to wait
+     * @param timeUnit The unit of the timeout
+     * @return true if a token has been taken, false if no token will be available in time
+     * @throws InterruptedException Thrown when the current thread has been interrupted while waiting,
+     *                              the reserved token is lost in that case
+     */
+    public boolean tryAcquire(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long waitNanos = this.reserve(timeout, timeUnit);
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reserve a token that will be available within a maximum waiting time.
+     * The token is taken from the bucket immediately, the caller has to wait for the returned time before using it.
+     *
+     * @param maxWait  The maximum time to wait for the token
+     * @param timeUnit The unit of the maximum waiting time
+     * @return The time in nanoseconds until the token may be used, which is zero if it may be used right away,
+     * or -1 if no token will be available in time
+     */
+    public long reserve(long maxWait, TimeUnit timeUnit) {
+        return this.reserveNanos(Math.max(0, timeUnit.toNanos(maxWait)));
+    }
+
+    /**
+     * Get the number of tokens that are currently in the bucket.
+     *
+     * @return The available tokens, which may be fractional while a token is refilled
+     */
+    public double getAvailableTokens() {
+        long emptyNanos = this.fullAt.get() - this.nanoClock.getAsLong();
+        if (emptyNanos <= 0) {
+            return this.burstSize;
+        }
+
+        return Math.max(0, (double) (this.burstNanos - emptyNanos) / this.refillNanos);
+    }
+
+    /**
+     * Get the time since the bucket has been full.
+     * A bucket that has been full for some time behaves exactly like a new bucket.
+     *
+     * @return The time in nanoseconds since the bucket has been full, or zero if it is not full
+     */
+    public long getIdleNanos() {
+        return Math.max(0, this.nanoClock.getAsLong() - this.fullAt.get());
+    }
+
+    /**
+     * Get the maximum number of tokens in the bucket
+     *
+     * @return The burst size
+     */
+    public int getBurstSize() {
+        return this.burstSize;
+    }
+
+    /**
+     * Get the number of tokens refilled per second
+     *
+     * @return The rate of this bucket
+     */
+    public double getPermitsPerSecond() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / this.refillNanos;
+    }
+
+    /**
+     * Get the number of calls that did not get a token
+     *
+     * @return The number of rejected calls since this bucket has been created
+     */
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * Reserve a token that will be available within a maximum waiting time.
+     *
+     * @param maxWaitNanos The maximum time to wait for the token in nanoseconds
+     * @return The time in nanoseconds until the token may be used, or -1 if no token will be available in time
+     */
+    private long reserveNanos(long maxWaitNanos) {
+        while (true) {
+            long now = this.nanoClock.getAsLong();
+            long currentFullAt = this.fullAt.get();
+            // A full bucket does not fill up any further
+            long newFullAt = Math.max(currentFullAt, now) + this.refillNanos;
+            // The token is available once the bucket holds no more than the burst size
+            long waitNanos = Math.max(0, newFullAt - this.burstNanos - now);
+            if (waitNanos > maxWaitNanos) {
+                this.rejections.increment();
+
+                return -1;
+            }
+            if (this.fullAt.compareAndSet(currentFullAt, newFullAt)) {
+                return waitNanos;
+            }
+        }
+    }
+}
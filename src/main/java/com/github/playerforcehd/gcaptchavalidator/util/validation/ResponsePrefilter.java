@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.validation;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+
+/**
+ * Cheap structural checks that tell apart responses which can never be valid before they are sent to Google.
+ * <p>
+ * A response passes the checks if it is neither null nor empty, its length is within the configured bounds
+ * and it only consists of the characters of the URL-safe Base64 alphabet ({@code A-Z}, {@code a-z}, {@code 0-9},
+ * {@code -} and {@code _}) and the dot, which is used by the test responses of Google.
+ * <p>
+ * The checks do not allocate any memory. Instances of this class are immutable and thread-safe.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public final class ResponsePrefilter {
+    /**
+     * The default minimum length of a response
+     */
+    public static final int DEFAULT_MIN_LENGTH = 20;
+
+    /**
+     * The default maximum length of a response
+     */
+    public static final int DEFAULT_MAX_LENGTH = 8192;
+
+    /**
+     * The characters that may occur in a response, indexed by their code
+     */
+    private static final boolean[] ALLOWED_CHARACTERS = new boolean[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            ALLOWED_CHARACTERS[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            ALLOWED_CHARACTERS[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            ALLOWED_CHARACTERS[c] = true;
+        }
+        ALLOWED_CHARACTERS['-'] = true;
+        ALLOWED_CHARACTERS['_'] = true;
+        ALLOWED_CHARACTERS['.'] = true;
+    }
+
+    /**
+     * The minimum length of a response
+     */
+    private final int minLength;
+
+    /**
+     * The maximum length of a response
+     */
+    private final int maxLength;
+
+    /**
+     * Constructor
+     */
+    public ResponsePrefilter() {
+        this(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param minLength The minimum length of a response, at least 1
+     * @param maxLength The maximum length of a response
+     */
+    public ResponsePrefilter(int minLength, int maxLength) {
+        if (minLength < 1 || maxLength < minLength) {
+            throw new IllegalArgumentException("The length bounds must satisfy 1 <= minLength <= maxLength");
+        }
+
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Check a response.
+     *
+     * @param response The response to check
+     * @return null if the response passes the checks, {@link ValidationError#MISSING_INPUT_RESPONSE} if the
+     * response is null or empty, {@link ValidationError#INVALID_INPUT_RESPONSE} if the response is malformed
+     */
+    public ValidationError check(String response) {
+        if (response == null || response.isEmpty()) {
+            return ValidationError.MISSING_INPUT_RESPONSE;
+        }
+
+        int length = response.length();
+        if (length < this.minLength || length > this.maxLength) {
+            return ValidationError.INVALID_INPUT_RESPONSE;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = response.charAt(i);
+            if (c >= ALLOWED_CHARACTERS.length || !ALLOWED_CHARACTERS[c]) {
+                return ValidationError.INVALID_INPUT_RESPONSE;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the minimum length of a response
+     *
+     * @return The minimum length
+     */
+    public int getMinLength() {
+        return this.minLength;
+    }
+
+    /**
+     * Get the maximum length of a response
+     *
+     * @return The maximum length
+     */
+    public int getMaxLength() {
+        return this.maxLength;
+    }
+}
@@ -0,0 +1,682 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.request.RequestTemplate;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link CaptchaRequestHandler} that uses a single shared {@link HttpClient} for communication.
+ * <p>
+ * Other than the {@link SiteVerifyCaptchaRequestHandler}, which opens a new connection for every request,
+ * this handler keeps its connections to the SiteVerify servers alive and reuses them.
+ * HTTP/2 is preferred, which allows many concurrent validations to be multiplexed over a single connection.
+ * If the SiteVerify servers only speak HTTP/1.1, the {@link HttpClient} falls back to a pool of
+ * keep-alive connections.
+ * <p>
+ * The number of requests that are in flight at the same time is bounded. As every in-flight HTTP/1.1
+ * request occupies one connection of the pool, this also bounds the size of the connection pool.
+ * Blocking requests that exceed the bound wait for a free slot until the request timeout elapses.
+ * Asynchronous requests that exceed the bound are queued and sent as soon as a slot becomes free.
+ * The queue is bounded as well, requests that do not fit into it fail immediately with a
+ * {@link ConcurrencyLimitExceededException}. Queued requests fail once their timeout elapses while they wait,
+ * and the time they have waited is deducted from the timeout of the request that is eventually sent.
+ * Cancelling the future of an asynchronous request removes it from the queue or cancels the request in flight,
+ * which aborts the exchange on Java 16 and newer.
+ * <p>
+ * Responses with a status of 429 or 5xx fail the request with an {@link HttpStatusException}.
+ * <p>
+ * A request times out after the shortest of the request timeout of this handler, the request timeout of the
+ * {@link CaptchaValidatorConfiguration} and the time left until its {@link Deadline}. The connect timeout is a
+ * setting of the {@link HttpClient} and therefore configured on this handler instead.
+ * <p>
+ * An instance of this handler is thread-safe and meant to be shared, e.g. between multiple
+ * {@link com.github.playerforcehd.gcaptchavalidator.CaptchaValidator}s.
+ * <p>
+ * This handler requires Java 11 or newer.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class HttpClientCaptchaRequestHandler implements AsyncCaptchaRequestHandler, DeadlineCaptchaRequestHandler {
+    /**
+     * The default timeout used when establishing a connection to the SiteVerify servers.
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * The default timeout of a single request, measured from sending the request until the response has arrived.
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default maximum number of requests that may be in flight at the same time.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+
+    /**
+     * The default maximum number of asynchronous requests that may wait for a free slot.
+     */
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 1024;
+
+    /**
+     * The time a queued request may have waited before it is rebuilt with the remaining timeout
+     */
+    private static final long REBUILD_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Headers that are managed by the {@link HttpClient} itself and cannot be set manually.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+        "connection",
+        "content-length",
+        "expect",
+        "host",
+        "upgrade"
+    );
+
+    /**
+     * The shared {@link HttpClient} that executes all requests of this handler
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * The timeout applied to every single request
+     */
+    private final Duration requestTimeout;
+
+    /**
+     * The permits that bound the number of concurrent requests
+     */
+    private final Semaphore requestPermits;
+
+    /**
+     * Asynchronous requests that wait for a free permit
+     */
+    private final BlockingQueue<PendingRequest> pendingRequests;
+
+    /**
+     * Constructor
+     */
+    public HttpClientCaptchaRequestHandler() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connectTimeout The timeout used when establishing a connection to the SiteVerify servers
+     * @param requestTimeout The timeout of a single request
+     */
+    public HttpClientCaptchaRequestHandler(Duration connectTimeout, Duration requestTimeout) {
+        this(connectTimeout, requestTimeout, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connectTimeout        The timeout used when establishing a connection to the SiteVerify servers
+     * @param requestTimeout        The timeout of a single request
+     * @param maxConcurrentRequests The maximum number of requests that may be in flight at the same time
+     */
+    public HttpClientCaptchaRequestHandler(
+        Duration connectTimeout,
+        Duration requestTimeout,
+        int maxConcurrentRequests
+    ) {
+        this(
+            HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(),
+            requestTimeout,
+            maxConcurrentRequests
+        );
+    }
+
+    /**
+     * Constructor
+     * <p>
+     * Allows to supply an own {@link HttpClient}, e.g. to share it with other parts of an application
+     * or to configure a proxy or SSL context.
+     *
+     * @param httpClient            The {@link HttpClient} used to execute requests
+     * @param requestTimeout        The timeout of a single request
+     * @param maxConcurrentRequests The maximum number of requests that may be in flight at the same time
+     */
+    public HttpClientCaptchaRequestHandler(
+        HttpClient httpClient,
+        Duration requestTimeout,
+        int maxConcurrentRequests
+    ) {
+        this(httpClient, requestTimeout, maxConcurrentRequests, DEFAULT_MAX_PENDING_REQUESTS);
+    }
+
+    /**
+     * Constructor
+     * <p>
+     * Allows to supply an own {@link HttpClient}, e.g. to share it with other parts of an application
+     * or to configure a proxy or SSL context.
+     *
+     * @param httpClient            The {@link HttpClient} used to execute requests
+     * @param requestTimeout        The timeout of a single request
+     * @param maxConcurrentRequests The maximum number of requests that may be in flight at the same time
+     * @param maxPendingRequests    The maximum number of asynchronous requests that may wait for a free slot
+     */
+    public HttpClientCaptchaRequestHandler(
+        HttpClient httpClient,
+        Duration requestTimeout,
+        int maxConcurrentRequests,
+        int maxPendingRequests
+    ) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent requests must be at least 1");
+        }
+        if (maxPendingRequests < 1) {
+            throw new IllegalArgumentException("The maximum number of pending requests must be at least 1");
+        }
+
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.requestPermits = new Semaphore(maxConcurrentRequests);
+        this.pendingRequests = new LinkedBlockingQueue<>(maxPendingRequests);
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.request(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public String request(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) throws CaptchaRequestHandlerException {
+        Duration timeout = this.timeoutOf(captchaValidatorConfiguration, deadline);
+        long expiresAt = System.nanoTime() + timeout.toNanos();
+
+        try {
+            if (!this.requestPermits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw createWaitTimeoutException(deadline);
+            }
+
+            try {
+                // The time spent waiting for a free connection is taken from the timeout of the request
+                long remainingNanos = expiresAt - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw createWaitTimeoutException(deadline);
+                }
+                HttpRequest httpRequest = this.createHttpRequest(
+                    captchaValidatorConfiguration,
+                    response,
+                    remoteIP,
+                    Duration.ofNanos(remainingNanos)
+                );
+
+                return bodyOf(this.httpClient.send(
+                    httpRequest,
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+                ));
+            } finally {
+                this.requestPermits.release();
+            }
+        } catch (IOException e) {
+            throw new CaptchaRequestHandlerException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new CaptchaRequestHandlerException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) {
+        return this.requestAsync(captchaValidatorConfiguration, response, remoteIP, Deadline.none());
+    }
+
+    @Override
+    public CompletableFuture<String> requestAsync(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Deadline deadline
+    ) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        PendingRequest pendingRequest;
+        try {
+            Duration timeout = this.timeoutOf(captchaValidatorConfiguration, deadline);
+            pendingRequest = new PendingRequest(
+                captchaValidatorConfiguration,
+                response,
+                remoteIP,
+                deadline,
+                this.createHttpRequest(captchaValidatorConfiguration, response, remoteIP, timeout),
+                timeout,
+                result
+            );
+        } catch (CaptchaRequestHandlerException e) {
+            result.completeExceptionally(e);
+
+            return result;
+        }
+
+        if (!this.pendingRequests.offer(pendingRequest)) {
+            result.completeExceptionally(new ConcurrencyLimitExceededException(
+                "Too many requests are waiting for a free connection"
+            ));
+
+            return result;
+        }
+        // A request that is cancelled or fails while it waits leaves the queue immediately
+        result.whenComplete((body, throwable) -> pendingRequest.discard());
+
+        this.dispatchPendingRequests();
+        pendingRequest.scheduleExpiration();
+
+        return result;
+    }
+
+    /**
+     * Send queued asynchronous requests as long as there are free permits.
+     */
+    private void dispatchPendingRequests() {
+        while (!this.pendingRequests.isEmpty() && this.requestPermits.tryAcquire()) {
+            PendingRequest pendingRequest = this.pendingRequests.poll();
+            if (pendingRequest == null || !pendingRequest.dequeue()) {
+                this.requestPermits.release();
+                continue;
+            }
+
+            this.sendAsync(pendingRequest);
+        }
+    }
+
+    /**
+     * Send a request asynchronously while holding a permit.
+     * The permit is released and the next queued request is dispatched as soon as the request has completed.
+     *
+     * @param pendingRequest The request to send
+     */
+    private void sendAsync(PendingRequest pendingRequest) {
+        CompletableFuture<String> result = pendingRequest.result;
+        CompletableFuture<HttpResponse<String>> httpResponseFuture;
+        try {
+            httpResponseFuture = this.httpClient.sendAsync(
+                pendingRequest.toHttpRequest(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+            );
+        } catch (CaptchaRequestHandlerException e) {
+            this.requestPermits.release();
+            this.dispatchPendingRequests();
+            result.completeExceptionally(e);
+
+            return;
+        } catch (RuntimeException e) {
+            this.requestPermits.release();
+            this.dispatchPendingRequests();
+            result.completeExceptionally(new CaptchaRequestHandlerException(e));
+
+            return;
+        }
+
+        result.whenComplete((body, throwable) -> {
+            if (result.isCancelled()) {
+                httpResponseFuture.cancel(true);
+            }
+        });
+        httpResponseFuture.whenComplete((httpResponse, throwable) -> {
+            this.requestPermits.release();
+            this.dispatchPendingRequests();
+
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                result.completeExceptionally(new CaptchaRequestHandlerException(cause));
+                return;
+            }
+
+            try {
+                result.complete(bodyOf(httpResponse));
+            } catch (HttpStatusException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Get the {@link HttpClient} that is used by this handler
+     *
+     * @return The {@link HttpClient} used by this handler
+     */
+    public HttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
+    /**
+     * Get the timeout of a request.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param deadline                      The deadline of the request
+     * @return The shortest of the request timeouts and the time left until the deadline, at least one millisecond
+     * @throws DeadlineExceededException Thrown when the deadline has already expired
+     */
+    private Duration timeoutOf(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        Deadline deadline
+    ) throws DeadlineExceededException {
+        if (deadline.isExpired()) {
+            throw CaptchaRequestHandlers.createDeadlineExceededException();
+        }
+
+        Duration timeout = deadline.limit(captchaValidatorConfiguration.getRequestTimeout());
+        if (timeout.compareTo(this.requestTimeout) > 0) {
+            timeout = this.requestTimeout;
+        }
+
+        // The HttpClient rejects timeouts of zero
+        return timeout.isZero() ? Duration.ofMillis(1) : timeout;
+    }
+
+    /**
+     * Create the exception thrown when a request timed out while waiting for a free connection.
+     *
+     * @param deadline The deadline of the request
+     * @return The created exception
+     */
+    private static CaptchaRequestHandlerException createWaitTimeoutException(Deadline deadline) {
+        if (deadline.isExpired()) {
+            return new DeadlineExceededException("The deadline expired while waiting for a free connection");
+        }
+
+        return new CaptchaRequestHandlerException("Timed out waiting for a free connection");
+    }
+
+    /**
+     * Get the body of a response, unless its status indicates a temporary failure.
+     *
+     * @param httpResponse The response of the SiteVerify servers
+     * @return The body of the response
+     * @throws HttpStatusException Thrown when the status of the response is 429 or 5xx
+     */
+    private static String bodyOf(HttpResponse<String> httpResponse) throws HttpStatusException {
+        if (HttpStatusException.isTemporaryFailure(httpResponse.statusCode())) {
+            throw new HttpStatusException(
+                httpResponse.statusCode(),
+                HttpStatusException.parseRetryAfter(httpResponse.headers().firstValue("Retry-After").orElse(null))
+            );
+        }
+
+        return httpResponse.body();
+    }
+
+    /**
+     * Create the {@link HttpRequest} that is send to the SiteVerify servers.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @return The created {@link HttpRequest}
+     * @throws CaptchaRequestHandlerException Thrown when the configuration does not allow to create a request
+     */
+    protected HttpRequest createHttpRequest(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP
+    ) throws CaptchaRequestHandlerException {
+        return this.createHttpRequest(captchaValidatorConfiguration, response, remoteIP, this.requestTimeout);
+    }
+
+    /**
+     * Create the {@link HttpRequest} that is send to the SiteVerify servers.
+     *
+     * @param captchaValidatorConfiguration The configuration of the validator
+     * @param response                      The response to validate
+     * @param remoteIP                      The remoteIP of the user to validate, can be empty
+     * @param timeout                       The timeout of the request
+     * @return The created {@link HttpRequest}
+     * @throws CaptchaRequestHandlerException Thrown when the configuration does not allow to create a request
+     */
+    protected HttpRequest createHttpRequest(
+        CaptchaValidatorConfiguration captchaValidatorConfiguration,
+        String response,
+        String remoteIP,
+        Duration timeout
+    ) throws CaptchaRequestHandlerException {
+        RequestTemplate requestTemplate = RequestTemplate.of(captchaValidatorConfiguration);
+
+        try {
+            byte[] parsedParams = requestTemplate.createPostData(response, remoteIP);
+
+            HttpRequest.Builder builder = HttpRequest.newBuilder(requestTemplate.getVerifierUri())
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(parsedParams));
+            for (Map.Entry<String, String> header : requestTemplate.getHttpHeaders().entrySet()) {
+                if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    builder.header(header.getKey(), header.getValue());
+                }
+            }
+
+            return builder.build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new CaptchaRequestHandlerException(e);
+        }
+    }
+
+    /**
+     * An asynchronous request that waits for a free permit.
+     * A pending request leaves the queue exactly once, either to be sent or because it has been discarded.
+     */
+    private final class PendingRequest {
+        /**
+         * The configuration of the validator
+         */
+        private final CaptchaValidatorConfiguration captchaValidatorConfiguration;
+
+        /**
+         * The response to validate
+         */
+        private final String response;
+
+        /**
+         * The remoteIP of the user to validate, can be empty
+         */
+        private final String remoteIP;
+
+        /**
+         * The deadline of the request
+         */
+        private final Deadline deadline;
+
+        /**
+         * The request created with the full timeout, sent if the request did not have to wait
+         */
+        private final HttpRequest httpRequest;
+
+        /**
+         * The {@link System#nanoTime()} at which the request has been queued
+         */
+        private final long queuedAt;
+
+        /**
+         * The {@link System#nanoTime()} at which the timeout of the request elapses
+         */
+        private final long expiresAt;
+
+        /**
+         * The future that is completed with the body of the response
+         */
+        private final CompletableFuture<String> result;
+
+        /**
+         * The state if the request has left the queue
+         */
+        private final AtomicBoolean dequeued = new AtomicBoolean();
+
+        /**
+         * The task that fails the request once its timeout elapses while it waits
+         */
+        private volatile ScheduledFuture<?> expiration;
+
+        /**
+         * Constructor
+         *
+         * @param captchaValidatorConfiguration The configuration of the validator
+         * @param response                      The response to validate
+         * @param remoteIP                      The remoteIP of the user to validate, can be empty
+         * @param deadline                      The deadline of the request
+         * @param httpRequest                   The request created with the full timeout
+         * @param timeout                       The timeout of the request, including the time it waits
+         * @param result                        The future that is completed with the body of the response
+         */
+        private PendingRequest(
+            CaptchaValidatorConfiguration captchaValidatorConfiguration,
+            String response,
+            String remoteIP,
+            Deadline deadline,
+            HttpRequest httpRequest,
+            Duration timeout,
+            CompletableFuture<String> result
+        ) {
+            this.captchaValidatorConfiguration = captchaValidatorConfiguration;
+            this.response = response;
+            this.remoteIP = remoteIP;
+            this.deadline = deadline;
+            this.httpRequest = httpRequest;
+            this.queuedAt = System.nanoTime();
+            this.expiresAt = this.queuedAt + timeout.toNanos();
+            this.result = result;
+        }
+
+        /**
+         * Take this request out of the queue to send it.
+         * Cancels the expiration of the request.
+         *
+         * @return true if the request should be sent, false if it has already been discarded
+         */
+        private boolean dequeue() {
+            if (!this.dequeued.compareAndSet(false, true)) {
+                return false;
+            }
+            this.cancelExpiration();
+
+            return true;
+        }
+
+        /**
+         * Remove this request from the queue without sending it, unless it has already left the queue.
+         */
+        private void discard() {
+            if (this.dequeued.compareAndSet(false, true)) {
+                HttpClientCaptchaRequestHandler.this.pendingRequests.remove(this);
+                this.cancelExpiration();
+            }
+        }
+
+        /**
+         * Fail this request once its timeout elapses, if it is still waiting for a free permit by then.
+         */
+        private void scheduleExpiration() {
+            if (this.dequeued.get()) {
+                return;
+            }
+
+            this.expiration = ValidationExecutors.scheduler().schedule(
+                () -> this.result.completeExceptionally(createWaitTimeoutException(this.deadline)),
+                this.expiresAt - System.nanoTime(),
+                TimeUnit.NANOSECONDS
+            );
+            if (this.dequeued.get()) {
+                // The request has left the queue while the expiration has been scheduled
+                this.cancelExpiration();
+            }
+        }
+
+        /**
+         * Cancel the expiration of this request, if it has been scheduled.
+         */
+        private void cancelExpiration() {
+            ScheduledFuture<?> expiration = this.expiration;
+            if (expiration != null) {
+                expiration.cancel(false);
+            }
+        }
+
+        /**
+         * Get the request to send, whose timeout is reduced by the time the request has waited.
+         *
+         * @return The request to send
+         * @throws CaptchaRequestHandlerException Thrown when the timeout has elapsed while the request waited
+         */
+        private HttpRequest toHttpRequest() throws CaptchaRequestHandlerException {
+            long now = System.nanoTime();
+            if (now - this.queuedAt < REBUILD_THRESHOLD_NANOS) {
+                return this.httpRequest;
+            }
+
+            long remainingNanos = this.expiresAt - now;
+            if (remainingNanos <= 0) {
+                throw createWaitTimeoutException(this.deadline);
+            }
+
+            return HttpClientCaptchaRequestHandler.this.createHttpRequest(
+                this.captchaValidatorConfiguration,
+                this.response,
+                this.remoteIP,
+                Duration.ofNanos(remainingNanos)
+            );
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.CacheStatistics;
+import com.github.playerforcehd.gcaptchavalidator.cache.ExpiringLruCache;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link CachingCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CachingCaptchaValidatorTest {
+    /**
+     * A successful response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse SUCCEEDED_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        true,
+        null,
+        null,
+        "localhost",
+        -1f,
+        "",
+        new ValidationError[0]
+    );
+
+    /**
+     * A failed response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse FAILED_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        false,
+        null,
+        null,
+        "",
+        -1f,
+        "",
+        new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE}
+    );
+
+    @Test
+    public void testValidateCachesSuccessfulValidation() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "127.0.0.1"))
+            .thenReturn(SUCCEEDED_RESPONSE)
+            .thenReturn(FAILED_RESPONSE);
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(captchaValidator);
+
+        assertSame(cachingCaptchaValidator.validate("SomeResponse", "127.0.0.1"), SUCCEEDED_RESPONSE);
+        assertSame(cachingCaptchaValidator.validate("SomeResponse", "127.0.0.1"), SUCCEEDED_RESPONSE);
+        assertTrue(cachingCaptchaValidator.basicValidate("SomeResponse", "127.0.0.1"));
+        verify(captchaValidator, times(1)).validate("SomeResponse", "127.0.0.1");
+
+        CacheStatistics cacheStatistics = cachingCaptchaValidator.getStatistics();
+        assertEquals(cacheStatistics.getHitCount(), 2);
+        assertEquals(cacheStatistics.getMissCount(), 1);
+        assertEquals(cacheStatistics.getSize(), 1);
+    }
+
+    @Test
+    public void testValidateDoesNotCacheFailedValidation() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(FAILED_RESPONSE).thenReturn(SUCCEEDED_RESPONSE);
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(captchaValidator);
+
+        assertFalse(cachingCaptchaValidator.basicValidate("SomeResponse"));
+        assertTrue(cachingCaptchaValidator.basicValidate("SomeResponse"));
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+    }
+
+    @Test
+    public void testValidateIsKeyedByRemoteIP() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(eq("SomeResponse"), any())).thenReturn(SUCCEEDED_RESPONSE);
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(captchaValidator);
+        cachingCaptchaValidator.validate("SomeResponse", "127.0.0.1");
+        cachingCaptchaValidator.validate("SomeResponse", "127.0.0.2");
+
+        verify(captchaValidator, times(1)).validate("SomeResponse", "127.0.0.1");
+        verify(captchaValidator, times(1)).validate("SomeResponse", "127.0.0.2");
+    }
+
+    @Test
+    public void testValidateAfterExpiration() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(SUCCEEDED_RESPONSE);
+        AtomicLong now = new AtomicLong();
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(
+            captchaValidator,
+            new ExpiringLruCache<>(Duration.ofSeconds(10), 10, now::get)
+        );
+        cachingCaptchaValidator.validate("SomeResponse");
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        cachingCaptchaValidator.validate("SomeResponse");
+
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+        assertEquals(cachingCaptchaValidator.getStatistics().getExpirationCount(), 1);
+    }
+
+    @Test
+    public void testValidateAsyncCachesSuccessfulValidation() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validateAsync(eq("SomeResponse"), eq("127.0.0.1"), any()))
+            .thenReturn(CompletableFuture.completedFuture(SUCCEEDED_RESPONSE));
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(captchaValidator);
+
+        assertSame(cachingCaptchaValidator.validateAsync("SomeResponse", "127.0.0.1").get(), SUCCEEDED_RESPONSE);
+        assertTrue(cachingCaptchaValidator.basicValidateAsync("SomeResponse", "127.0.0.1").get());
+        assertSame(cachingCaptchaValidator.validate("SomeResponse", "127.0.0.1"), SUCCEEDED_RESPONSE);
+        verify(captchaValidator, times(1)).validateAsync(eq("SomeResponse"), eq("127.0.0.1"), any());
+        verify(captchaValidator, never()).validate(any(), any());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(SUCCEEDED_RESPONSE);
+
+        CachingCaptchaValidator cachingCaptchaValidator = new CachingCaptchaValidator(captchaValidator);
+        cachingCaptchaValidator.validate("SomeResponse");
+        cachingCaptchaValidator.invalidateAll();
+        cachingCaptchaValidator.validate("SomeResponse");
+
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link CoalescingCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CoalescingCaptchaValidatorTest {
+    /**
+     * A successful response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse SUCCEEDED_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        true,
+        null,
+        null,
+        "localhost",
+        -1f,
+        "",
+        new ValidationError[0]
+    );
+
+    @Test
+    public void testValidateCoalescesConcurrentValidations() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CountDownLatch validationStarted = new CountDownLatch(1);
+        CountDownLatch releaseValidation = new CountDownLatch(1);
+        when(captchaValidator.validate("SomeResponse", "127.0.0.1")).thenAnswer(invocation -> {
+            validationStarted.countDown();
+            releaseValidation.await();
+
+            return SUCCEEDED_RESPONSE;
+        });
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CaptchaValidationResponse>> results = new ArrayList<>();
+            results.add(executorService.submit(() -> coalescingCaptchaValidator.validate("SomeResponse", "127.0.0.1")));
+            assertTrue(validationStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(executorService.submit(
+                    () -> coalescingCaptchaValidator.validate("SomeResponse", "127.0.0.1")
+                ));
+            }
+
+            // Wait until all validations have joined the validation in flight
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalescingCaptchaValidator.getCoalescedValidations() < 7 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            releaseValidation.countDown();
+
+            for (Future<CaptchaValidationResponse> result : results) {
+                assertSame(result.get(5, TimeUnit.SECONDS), SUCCEEDED_RESPONSE);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(captchaValidator, times(1)).validate("SomeResponse", "127.0.0.1");
+        assertEquals(coalescingCaptchaValidator.getCoalescedValidations(), 7);
+        assertEquals(coalescingCaptchaValidator.getInFlightValidations(), 0);
+    }
+
+    @Test
+    public void testJoinedValidationRespectsDeadline() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CountDownLatch validationStarted = new CountDownLatch(1);
+        CountDownLatch releaseValidation = new CountDownLatch(1);
+        when(captchaValidator.validate("SomeResponse", "127.0.0.1")).thenAnswer(invocation -> {
+            validationStarted.countDown();
+            releaseValidation.await();
+
+            return SUCCEEDED_RESPONSE;
+        });
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<CaptchaValidationResponse> result = executorService.submit(
+                () -> coalescingCaptchaValidator.validate("SomeResponse", "127.0.0.1")
+            );
+            assertTrue(validationStarted.await(5, TimeUnit.SECONDS));
+
+            CaptchaValidationResponse joinedResult = coalescingCaptchaValidator.validate(
+                "SomeResponse",
+                "127.0.0.1",
+                Deadline.after(Duration.ofMillis(50))
+            );
+            assertEquals(
+                joinedResult.getErrors(),
+                new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+            );
+
+            releaseValidation.countDown();
+            assertSame(result.get(5, TimeUnit.SECONDS), SUCCEEDED_RESPONSE);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(captchaValidator, times(1)).validate("SomeResponse", "127.0.0.1");
+        assertEquals(coalescingCaptchaValidator.getCoalescedValidations(), 1);
+    }
+
+    @Test
+    public void testValidateDoesNotCoalesceCompletedValidations() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(eq("SomeResponse"), any())).thenReturn(SUCCEEDED_RESPONSE);
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+
+        assertTrue(coalescingCaptchaValidator.basicValidate("SomeResponse"));
+        assertSame(coalescingCaptchaValidator.validate("SomeResponse"), SUCCEEDED_RESPONSE);
+        assertSame(coalescingCaptchaValidator.validate("SomeResponse", null), SUCCEEDED_RESPONSE);
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+        verify(captchaValidator, times(1)).validate("SomeResponse", null);
+        assertEquals(coalescingCaptchaValidator.getCoalescedValidations(), 0);
+    }
+
+    @Test
+    public void testValidateRethrowsException() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenThrow(new IllegalStateException("Test"));
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+
+        try {
+            coalescingCaptchaValidator.validate("SomeResponse");
+            fail("The exception of the validation has not been rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "Test");
+        }
+        assertEquals(coalescingCaptchaValidator.getInFlightValidations(), 0);
+    }
+
+    @Test
+    public void testValidateAsyncCoalescesConcurrentValidations() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CompletableFuture<CaptchaValidationResponse> validation = new CompletableFuture<>();
+        when(captchaValidator.validateAsync(eq("SomeResponse"), eq("127.0.0.1"), any())).thenReturn(validation);
+        when(captchaValidator.validateAsync(eq("Other"), eq(""), any())).thenReturn(new CompletableFuture<>());
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+
+        CompletableFuture<CaptchaValidationResponse> first =
+            coalescingCaptchaValidator.validateAsync("SomeResponse", "127.0.0.1");
+        CompletableFuture<Boolean> second = coalescingCaptchaValidator.basicValidateAsync("SomeResponse", "127.0.0.1");
+        CompletableFuture<CaptchaValidationResponse> other = coalescingCaptchaValidator.validateAsync("Other", "");
+
+        // Cancelling a coalesced validation must not affect the others
+        coalescingCaptchaValidator.validateAsync("SomeResponse", "127.0.0.1").cancel(true);
+
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(coalescingCaptchaValidator.getInFlightValidations(), 2);
+        assertEquals(coalescingCaptchaValidator.getCoalescedValidations(), 2);
+
+        validation.complete(SUCCEEDED_RESPONSE);
+
+        assertSame(first.get(), SUCCEEDED_RESPONSE);
+        assertTrue(second.get());
+        verify(captchaValidator, times(1)).validateAsync(eq("SomeResponse"), eq("127.0.0.1"), any());
+        verify(captchaValidator, times(1)).validateAsync(eq("Other"), eq(""), any());
+        assertEquals(coalescingCaptchaValidator.getInFlightValidations(), 1);
+        assertFalse(other.isDone());
+    }
+
+    @Test
+    public void testValidateAsyncPropagatesFailure() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CompletableFuture<CaptchaValidationResponse> validation = new CompletableFuture<>();
+        when(captchaValidator.validateAsync(eq("SomeResponse"), eq(""), any())).thenReturn(validation);
+
+        CoalescingCaptchaValidator coalescingCaptchaValidator = new CoalescingCaptchaValidator(captchaValidator);
+
+        CompletableFuture<CaptchaValidationResponse> first = coalescingCaptchaValidator.validateAsync("SomeResponse");
+        CompletableFuture<CaptchaValidationResponse> second = coalescingCaptchaValidator.validateAsync("SomeResponse");
+        validation.completeExceptionally(new IllegalStateException("Test"));
+
+        for (CompletableFuture<CaptchaValidationResponse> result : new CompletableFuture[]{first, second}) {
+            try {
+                result.get();
+                fail("The failure of the validation has not been propagated");
+            } catch (ExecutionException | InterruptedException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(coalescingCaptchaValidator.getInFlightValidations(), 0);
+    }
+
+    @Test
+    public void testGetConfiguration() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        when(captchaValidator.getConfiguration()).thenReturn(captchaValidatorConfiguration);
+
+        assertSame(new CoalescingCaptchaValidator(captchaValidator).getConfiguration(), captchaValidatorConfiguration);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link DegradationPolicy}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class DegradationPolicyTest {
+    @Test
+    public void testFailClosed() {
+        assertFalse(DegradationPolicy.failClosed().allows(null));
+        assertFalse(DegradationPolicy.failClosed().allows("login"));
+    }
+
+    @Test
+    public void testFailOpen() {
+        assertTrue(DegradationPolicy.failOpen().allows(null));
+        assertTrue(DegradationPolicy.failOpen().allows("login"));
+    }
+
+    @Test
+    public void testFailOpenSample() {
+        DegradationPolicy degradationPolicy = DegradationPolicy.failOpenSample(0.5f);
+
+        int allowed = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (degradationPolicy.allows(null)) {
+                allowed++;
+            }
+        }
+
+        assertTrue(allowed > 4_000 && allowed < 6_000, "Allowed: " + allowed);
+        assertFalse(DegradationPolicy.failOpenSample(0f).allows(null));
+        assertTrue(DegradationPolicy.failOpenSample(1f).allows(null));
+    }
+
+    @Test
+    public void testFailOpenSampleRejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> DegradationPolicy.failOpenSample(-0.1f));
+        assertThrows(IllegalArgumentException.class, () -> DegradationPolicy.failOpenSample(1.1f));
+        assertThrows(IllegalArgumentException.class, () -> DegradationPolicy.failOpenSample(Float.NaN));
+    }
+
+    @Test
+    public void testFailOpenBelowRiskTier() {
+        Map<String, Integer> actionRiskTiers = new HashMap<>();
+        actionRiskTiers.put("homepage", 0);
+        actionRiskTiers.put("login", 1);
+        actionRiskTiers.put("payment", 2);
+
+        DegradationPolicy degradationPolicy = DegradationPolicy.failOpenBelowRiskTier(actionRiskTiers, 2);
+        actionRiskTiers.put("checkout", 0);
+
+        assertTrue(degradationPolicy.allows("homepage"));
+        assertTrue(degradationPolicy.allows("login"));
+        assertFalse(degradationPolicy.allows("payment"));
+        assertFalse(degradationPolicy.allows("checkout"));
+        assertFalse(degradationPolicy.allows(null));
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.FingerprintTable;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.request.CircuitBreakerOpenException;
+import com.github.playerforcehd.gcaptchavalidator.request.ConcurrencyLimitExceededException;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineExceededException;
+import com.github.playerforcehd.gcaptchavalidator.request.HttpStatusException;
+import com.github.playerforcehd.gcaptchavalidator.request.RateLimitExceededException;
+import com.github.playerforcehd.gcaptchavalidator.serialize.SiteVerifyCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreaker;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreakerState;
+import com.github.playerforcehd.gcaptchavalidator.util.validation.ResponsePrefilter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link DegradingCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class DegradingCaptchaValidatorTest {
+    /**
+     * A well-formed response used by the tests
+     */
+    private static final String RESPONSE = "03AGdBq25SxXT-pmSeBXjzScW-EiocHwwpwqtk1QXlJnGnUJCL";
+
+    /**
+     * Another well-formed response used by the tests
+     */
+    private static final String OTHER_RESPONSE = "03AGdBq27Xs5GfA4yvB2ZRkN_VQzR8m3eLbPo91dWtUcHsYiKM";
+
+    /**
+     * A successful response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse SUCCEEDED_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        true,
+        null,
+        null,
+        "localhost",
+        -1f,
+        "",
+        new ValidationError[0]
+    );
+
+    @Test
+    public void testValidatePassesResultWhileHealthy() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(RESPONSE, "127.0.0.1")).thenReturn(SUCCEEDED_RESPONSE);
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        assertSame(degradingCaptchaValidator.validate(RESPONSE, "127.0.0.1"), SUCCEEDED_RESPONSE);
+        assertTrue(degradingCaptchaValidator.basicValidate(RESPONSE, "127.0.0.1"));
+        assertFalse(degradingCaptchaValidator.isDegraded());
+        assertFalse(DegradingCaptchaValidator.isDegradedResponse(SUCCEEDED_RESPONSE));
+        assertEquals(degradingCaptchaValidator.getDegradedValidations(), 0);
+    }
+
+    @Test
+    public void testValidateFailsOpenWhenVerifierFails() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(anyString(), eq(""))).thenAnswer(invocation -> createUnavailableResponse());
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        CaptchaValidationResponse firstResponse = degradingCaptchaValidator.validate(RESPONSE);
+        assertFalse(firstResponse.hasSucceeded());
+        assertFalse(DegradingCaptchaValidator.isDegradedResponse(firstResponse));
+
+        CaptchaValidationResponse secondResponse = degradingCaptchaValidator.validate(RESPONSE);
+        CaptchaValidationResponse thirdResponse = degradingCaptchaValidator.validate(OTHER_RESPONSE);
+        assertTrue(degradingCaptchaValidator.isDegraded());
+        assertTrue(secondResponse.hasSucceeded());
+        assertTrue(thirdResponse.hasSucceeded());
+        assertEquals(thirdResponse.getErrors(), new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_DEGRADED});
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(thirdResponse));
+        assertEquals(degradingCaptchaValidator.getDegradedValidations(), 2);
+        verify(captchaValidator, times(2)).validate(RESPONSE, "");
+        verify(captchaValidator, never()).validate(OTHER_RESPONSE, "");
+    }
+
+    @Test
+    public void testValidateFailsClosedWhenVerifierFails() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(RESPONSE, "")).thenAnswer(invocation -> createUnavailableResponse());
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failClosed(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+        degradingCaptchaValidator.validate(RESPONSE);
+        degradingCaptchaValidator.validate(RESPONSE);
+
+        CaptchaValidationResponse captchaValidationResponse = degradingCaptchaValidator.validate(RESPONSE);
+        assertFalse(captchaValidationResponse.hasSucceeded());
+        assertEquals(
+            captchaValidationResponse.getErrors(),
+            new ValidationError[]{
+                ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR,
+                ValidationError.GCAPTCHAVALIDATOR_DEGRADED
+            }
+        );
+        verify(captchaValidator, times(2)).validate(RESPONSE, "");
+    }
+
+    @Test(dataProvider = "localRejectionProvider")
+    public void testLocalRejectionsDoNotSwitchToDegradedMode(CaptchaRequestHandlerException rejection)
+        throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(rejection);
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            new GCaptchaValidator(
+                captchaRequestHandler,
+                new SiteVerifyCaptchaResponseDeserializer(),
+                new ValidatorConfiguration("Secret")
+            ),
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        for (int i = 0; i < 10; i++) {
+            CaptchaValidationResponse captchaValidationResponse = degradingCaptchaValidator.validate(RESPONSE);
+            assertFalse(captchaValidationResponse.hasSucceeded());
+            assertFalse(DegradingCaptchaValidator.isDegradedResponse(captchaValidationResponse));
+        }
+
+        assertFalse(degradingCaptchaValidator.isDegraded());
+        assertEquals(degradingCaptchaValidator.getDegradedValidations(), 0);
+        verify(captchaRequestHandler, times(10)).request(any(), any(), any());
+    }
+
+    @DataProvider
+    public Object[][] localRejectionProvider() {
+        return new Object[][]{
+            {new RateLimitExceededException("Test")},
+            {new ConcurrencyLimitExceededException("Test")},
+            {new CircuitBreakerOpenException("Test")},
+            {new DeadlineExceededException("Test")},
+            {new HttpStatusException(400, null)},
+            {new CaptchaRequestHandlerException("Test")}
+        };
+    }
+
+    @Test
+    public void testUpstreamStatusSwitchesToDegradedMode() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new HttpStatusException(503, null))
+            .thenThrow(new HttpStatusException(429, null));
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            new GCaptchaValidator(
+                captchaRequestHandler,
+                new SiteVerifyCaptchaResponseDeserializer(),
+                new ValidatorConfiguration("Secret")
+            ),
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        assertFalse(degradingCaptchaValidator.validate(RESPONSE).hasSucceeded());
+        assertTrue(degradingCaptchaValidator.validate(RESPONSE).hasSucceeded());
+        assertTrue(degradingCaptchaValidator.isDegraded());
+    }
+
+    @Test
+    public void testDegradedModeRejectsMissingAndMalformedResponses() {
+        DegradingCaptchaValidator degradingCaptchaValidator =
+            this.createDegradedValidator(mock(CaptchaValidator.class));
+
+        CaptchaValidationResponse emptyResponse = degradingCaptchaValidator.validate("");
+        CaptchaValidationResponse nullResponse = degradingCaptchaValidator.validate(null);
+        CaptchaValidationResponse malformedResponse = degradingCaptchaValidator.validate("<script>alert(1)</script>");
+
+        assertFalse(emptyResponse.hasSucceeded());
+        assertEquals(
+            emptyResponse.getErrors(),
+            new ValidationError[]{ValidationError.MISSING_INPUT_RESPONSE, ValidationError.GCAPTCHAVALIDATOR_DEGRADED}
+        );
+        assertFalse(nullResponse.hasSucceeded());
+        assertFalse(malformedResponse.hasSucceeded());
+        assertEquals(
+            malformedResponse.getErrors(),
+            new ValidationError[]{ValidationError.INVALID_INPUT_RESPONSE, ValidationError.GCAPTCHAVALIDATOR_DEGRADED}
+        );
+        assertTrue(degradingCaptchaValidator.validate(OTHER_RESPONSE).hasSucceeded());
+    }
+
+    @Test
+    public void testDegradedModeRejectsReplayedResponses() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(OTHER_RESPONSE, "")).thenReturn(SUCCEEDED_RESPONSE);
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+        // Google has answered this response before the outage
+        assertTrue(degradingCaptchaValidator.validate(OTHER_RESPONSE).hasSucceeded());
+
+        when(captchaValidator.validate(RESPONSE, "")).thenAnswer(invocation -> createUnavailableResponse());
+        CaptchaValidationResponse degradedResponse = degradingCaptchaValidator.validate(RESPONSE);
+        assertTrue(degradingCaptchaValidator.isDegraded());
+        assertTrue(degradedResponse.hasSucceeded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(degradedResponse));
+
+        CaptchaValidationResponse replayedResponse = degradingCaptchaValidator.validate(RESPONSE);
+        CaptchaValidationResponse answeredResponse = degradingCaptchaValidator.validate(OTHER_RESPONSE);
+        assertFalse(replayedResponse.hasSucceeded());
+        assertEquals(
+            replayedResponse.getErrors(),
+            new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE, ValidationError.GCAPTCHAVALIDATOR_DEGRADED}
+        );
+        assertFalse(answeredResponse.hasSucceeded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(answeredResponse));
+    }
+
+    @Test(dataProvider = "replayGuardNestingProvider")
+    public void testDegradedModeWithSharedReplayGuard(boolean guardWrapsDegrading) {
+        AtomicLong clock = new AtomicLong();
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(anyString(), eq(""))).thenAnswer(invocation -> createUnavailableResponse());
+        FingerprintTable fingerprintTable = new FingerprintTable(1024, Duration.ofMinutes(10));
+        CircuitBreaker circuitBreaker = this.createCircuitBreaker(clock);
+        CaptchaValidator guardedCaptchaValidator = guardWrapsDegrading
+            ? new ReplayGuardingCaptchaValidator(
+                new DegradingCaptchaValidator(
+                    captchaValidator,
+                    DegradationPolicy.failOpen(),
+                    circuitBreaker,
+                    new ResponsePrefilter(),
+                    fingerprintTable
+                ),
+                fingerprintTable
+            )
+            : new DegradingCaptchaValidator(
+                new ReplayGuardingCaptchaValidator(captchaValidator, fingerprintTable),
+                DegradationPolicy.failOpen(),
+                circuitBreaker,
+                new ResponsePrefilter(),
+                fingerprintTable
+            );
+
+        assertFalse(guardedCaptchaValidator.validate(RESPONSE).hasSucceeded());
+        CaptchaValidationResponse degradedResponse = guardedCaptchaValidator.validate(RESPONSE);
+        CaptchaValidationResponse otherDegradedResponse = guardedCaptchaValidator.validate(OTHER_RESPONSE);
+        assertEquals(circuitBreaker.getState(), CircuitBreakerState.OPEN);
+        assertTrue(degradedResponse.hasSucceeded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(degradedResponse));
+        assertTrue(otherDegradedResponse.hasSucceeded());
+
+        CaptchaValidationResponse replayedResponse = guardedCaptchaValidator.validate(RESPONSE);
+        assertFalse(replayedResponse.hasSucceeded());
+        assertEquals(replayedResponse.getErrors()[0], ValidationError.TIMEOUT_OR_DUPLICATE);
+
+        // Once Google is available again, the responses that passed a degraded validation are still rejected
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        CaptchaValidationResponse recoveredResponse = guardedCaptchaValidator.validate(OTHER_RESPONSE);
+        assertFalse(recoveredResponse.hasSucceeded());
+        assertEquals(recoveredResponse.getErrors(), new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE});
+        verify(captchaValidator, never()).validate(OTHER_RESPONSE, "");
+    }
+
+    @DataProvider
+    public Object[][] replayGuardNestingProvider() {
+        return new Object[][]{{true}, {false}};
+    }
+
+    @Test
+    public void testInternalErrorWithoutCauseSwitchesToDegradedMode() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        // The result of a validation that has been given up when the deadline expired
+        when(captchaValidator.validate(eq(RESPONSE), eq(""), any(Deadline.class)))
+            .thenAnswer(invocation -> GCaptchaValidator.createInternalErrorResponse());
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        CaptchaValidationResponse firstResponse =
+            degradingCaptchaValidator.validate(RESPONSE, "", Deadline.after(Duration.ofSeconds(1)));
+        assertFalse(firstResponse.hasSucceeded());
+        assertFalse(DegradingCaptchaValidator.isDegradedResponse(firstResponse));
+
+        CaptchaValidationResponse secondResponse =
+            degradingCaptchaValidator.validate(RESPONSE, "", Deadline.after(Duration.ofSeconds(1)));
+        assertTrue(degradingCaptchaValidator.isDegraded());
+        assertTrue(secondResponse.hasSucceeded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(secondResponse));
+    }
+
+    @Test
+    public void testValidateDegradesOnSlowVerifier() {
+        AtomicLong clock = new AtomicLong();
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(RESPONSE, "")).thenAnswer(invocation -> {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+
+            return SUCCEEDED_RESPONSE;
+        });
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failClosed(),
+            this.createCircuitBreaker(clock)
+        );
+
+        assertSame(degradingCaptchaValidator.validate(RESPONSE), SUCCEEDED_RESPONSE);
+        assertSame(degradingCaptchaValidator.validate(RESPONSE), SUCCEEDED_RESPONSE);
+        assertTrue(degradingCaptchaValidator.isDegraded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(degradingCaptchaValidator.validate(RESPONSE)));
+    }
+
+    @Test
+    public void testValidateSwitchesBackWhenVerifierRecovers() {
+        AtomicLong clock = new AtomicLong();
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(RESPONSE, ""))
+            .thenAnswer(invocation -> createUnavailableResponse())
+            .thenAnswer(invocation -> createUnavailableResponse())
+            .thenReturn(SUCCEEDED_RESPONSE);
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(clock)
+        );
+        degradingCaptchaValidator.validate(RESPONSE);
+        degradingCaptchaValidator.validate(RESPONSE);
+        assertTrue(degradingCaptchaValidator.isDegraded());
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertSame(degradingCaptchaValidator.validate(RESPONSE), SUCCEEDED_RESPONSE);
+        assertFalse(degradingCaptchaValidator.isDegraded());
+        assertEquals(degradingCaptchaValidator.getCircuitBreaker().getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testValidateForActionUsesRiskTier() {
+        DegradingCaptchaValidator degradingCaptchaValidator = this.createDegradedValidator(
+            mock(CaptchaValidator.class),
+            DegradationPolicy.failOpenBelowRiskTier(Collections.singletonMap("homepage", 0), 1)
+        );
+
+        CaptchaValidationResponse homepageResponse =
+            degradingCaptchaValidator.validateForAction(RESPONSE, "", "homepage");
+        CaptchaValidationResponse paymentResponse =
+            degradingCaptchaValidator.validateForAction(OTHER_RESPONSE, "", "payment");
+
+        assertTrue(homepageResponse.hasSucceeded());
+        assertEquals(homepageResponse.getAction(), "homepage");
+        assertFalse(paymentResponse.hasSucceeded());
+        assertTrue(DegradingCaptchaValidator.isDegradedResponse(paymentResponse));
+        assertFalse(degradingCaptchaValidator.validate(OTHER_RESPONSE).hasSucceeded());
+    }
+
+    @Test
+    public void testValidateWithDeadlineDegradesWithoutWaiting() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        when(captchaValidator.validate(RESPONSE, "", deadline)).thenAnswer(invocation -> createUnavailableResponse());
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+        degradingCaptchaValidator.validate(RESPONSE, "", deadline);
+        degradingCaptchaValidator.validate(RESPONSE, "", deadline);
+
+        assertTrue(degradingCaptchaValidator.validate(OTHER_RESPONSE, "", deadline).hasSucceeded());
+        verify(captchaValidator, times(2)).validate(RESPONSE, "", deadline);
+    }
+
+    @Test
+    public void testValidateAsyncDegradesWhenVerifierFails() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validateAsync(eq(RESPONSE), eq(""), any())).thenAnswer(invocation -> {
+            CompletableFuture<CaptchaValidationResponse> failedValidation = new CompletableFuture<>();
+            failedValidation.completeExceptionally(new CaptchaRequestHandlerException(new ConnectException("Test")));
+
+            return failedValidation;
+        });
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        CompletableFuture<CaptchaValidationResponse> firstValidation =
+            degradingCaptchaValidator.validateAsync(RESPONSE);
+        CompletionException completionException = expectThrows(CompletionException.class, firstValidation::join);
+        assertTrue(completionException.getCause() instanceof CaptchaRequestHandlerException);
+        expectThrows(CompletionException.class, () -> degradingCaptchaValidator.validateAsync(RESPONSE).join());
+
+        CompletableFuture<CaptchaValidationResponse> degradedValidation =
+            degradingCaptchaValidator.validateForActionAsync(RESPONSE, "", "login");
+        assertTrue(degradedValidation.isDone());
+        assertTrue(degradedValidation.get().hasSucceeded());
+        assertEquals(degradedValidation.get().getAction(), "login");
+        verify(captchaValidator, times(2)).validateAsync(eq(RESPONSE), eq(""), any());
+    }
+
+    @Test
+    public void testValidateIgnoresLocalExceptions() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(RESPONSE, "")).thenThrow(new IllegalStateException("Test"));
+
+        DegradingCaptchaValidator degradingCaptchaValidator = new DegradingCaptchaValidator(
+            captchaValidator,
+            DegradationPolicy.failOpen(),
+            this.createCircuitBreaker(new AtomicLong())
+        );
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalStateException.class, () -> degradingCaptchaValidator.validate(RESPONSE));
+        }
+        assertFalse(degradingCaptchaValidator.isDegraded());
+    }
+
+    @Test
+    public void testGetConfigurationOfWrappedValidator() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        when(captchaValidator.getConfiguration()).thenReturn(captchaValidatorConfiguration);
+
+        assertSame(
+            new DegradingCaptchaValidator(captchaValidator, DegradationPolicy.failOpen()).getConfiguration(),
+            captchaValidatorConfiguration
+        );
+    }
+
+    /**
+     * Create a validator with a fail-open policy that is already in degraded mode.
+     *
+     * @param captchaValidator The wrapped validator
+     * @return The created validator
+     */
+    private DegradingCaptchaValidator createDegradedValidator(CaptchaValidator captchaValidator) {
+        return this.createDegradedValidator(captchaValidator, DegradationPolicy.failOpen());
+    }
+
+    /**
+     * Create a validator that is already in degraded mode.
+     *
+     * @param captchaValidator  The wrapped validator
+     * @param degradationPolicy The policy of the validator
+     * @return The created validator
+     */
+    private DegradingCaptchaValidator createDegradedValidator(
+        CaptchaValidator captchaValidator,
+        DegradationPolicy degradationPolicy
+    ) {
+        CircuitBreaker circuitBreaker = this.createCircuitBreaker(new AtomicLong());
+        for (int i = 0; i < 2; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onError(0);
+        }
+
+        DegradingCaptchaValidator degradingCaptchaValidator =
+            new DegradingCaptchaValidator(captchaValidator, degradationPolicy, circuitBreaker);
+        assertTrue(degradingCaptchaValidator.isDegraded());
+
+        return degradingCaptchaValidator;
+    }
+
+    /**
+     * Create the result of a validation whose request could not connect to the SiteVerify servers.
+     *
+     * @return The created result
+     */
+    private static CaptchaValidationResponse createUnavailableResponse() {
+        return GCaptchaValidator.createInternalErrorResponse(
+            new CaptchaRequestHandlerException(new ConnectException("Test"))
+        );
+    }
+
+    /**
+     * Create a breaker that opens after two failed or slow calls, stays open for a minute
+     * and closes after one successful trial call.
+     *
+     * @param clock The clock of the breaker in nanoseconds
+     * @return The created breaker
+     */
+    private CircuitBreaker createCircuitBreaker(AtomicLong clock) {
+        return new CircuitBreaker(2, 2, 1, 0.5f, 0.5f, Duration.ofSeconds(10), Duration.ofMinutes(1), clock::get);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.serialize.SiteVerifyCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.tenant.CaptchaValidatorRegistry;
+import com.github.playerforcehd.gcaptchavalidator.util.validation.ResponsePrefilter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.testng.Assert.*;
+
+/**
+ * Stress tests for the thread-safety of the {@link GCaptchaValidator} and the validators that wrap it.
+ * <p>
+ * Many threads validate responses against a local stub handler while the configuration is read and
+ * replaced concurrently. Every request has to see a consistent configuration. This covers the
+ * {@link GCaptchaValidator}, every decorating validator of this package and the validators of the
+ * {@link CaptchaValidatorRegistry}, whose configurations are rotated by registering them again.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class GCaptchaValidatorConcurrencyTest {
+    /**
+     * A successful response returned by the stub handler
+     */
+    private static final String SUCCEEDED_BODY =
+        "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}";
+
+    /**
+     * The number of threads that validate responses concurrently
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * The number of validations executed by every thread
+     */
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    public void testStringConstructorUsesImmutableConfiguration() {
+        GCaptchaValidator captchaValidator = new GCaptchaValidator("Secret");
+
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = captchaValidator.getConfiguration();
+        captchaValidatorConfiguration.setSecretToken("ChangedSecret");
+
+        assertTrue(captchaValidatorConfiguration instanceof ImmutableValidatorConfiguration);
+        assertEquals(captchaValidator.getConfiguration().getSecretToken(), "Secret");
+        assertThrows(
+            UnsupportedOperationException.class,
+            () -> captchaValidatorConfiguration.getHttpHeaders().put("Some-Header", "Value")
+        );
+    }
+
+    @Test
+    public void testSetConfigurationIsNotBlockedByMonitorOfValidator() throws Exception {
+        GCaptchaValidator captchaValidator = new GCaptchaValidator("Secret");
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            synchronized (captchaValidator) {
+                Future<CaptchaValidatorConfiguration> previousConfiguration =
+                    executorService.submit(() -> captchaValidator.setConfiguration(createConfiguration(1)));
+
+                assertEquals(previousConfiguration.get(5, TimeUnit.SECONDS).getSecretToken(), "Secret");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(captchaValidator.getConfiguration().getSecretToken(), "Secret1");
+    }
+
+    @Test(dataProvider = "validatorProvider")
+    public void testConcurrentValidationsSeeConsistentConfiguration(
+        String name,
+        Function<CaptchaValidator, CaptchaValidator> decorator,
+        boolean uniqueResponses
+    ) throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger inconsistencies = new AtomicInteger();
+        GCaptchaValidator gCaptchaValidator = new GCaptchaValidator(
+            createRequestHandler(requests, inconsistencies),
+            new SiteVerifyCaptchaResponseDeserializer(),
+            createConfiguration(0)
+        );
+        CaptchaValidator captchaValidator = decorator.apply(gCaptchaValidator);
+
+        int failedValidations = validateConcurrently(
+            captchaValidator,
+            gCaptchaValidator::setConfiguration,
+            uniqueResponses,
+            inconsistencies
+        );
+
+        assertEquals(failedValidations, 0, name);
+        assertEquals(inconsistencies.get(), 0, name);
+        assertTrue(requests.get() > 0, name);
+    }
+
+    @Test
+    public void testConcurrentTenantValidationsSeeConsistentConfiguration() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger inconsistencies = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> createConfiguration(0),
+            createRequestHandler(requests, inconsistencies),
+            new SiteVerifyCaptchaResponseDeserializer()
+        );
+        CaptchaValidator captchaValidator = captchaValidatorRegistry.getValidator("Tenant");
+
+        int failedValidations = validateConcurrently(
+            captchaValidator,
+            captchaValidatorConfiguration -> captchaValidatorRegistry.register("Tenant", captchaValidatorConfiguration),
+            false,
+            inconsistencies
+        );
+
+        assertEquals(failedValidations, 0);
+        assertEquals(inconsistencies.get(), 0);
+        assertTrue(requests.get() > 0);
+        assertSame(captchaValidatorRegistry.getValidator("Tenant"), captchaValidator);
+    }
+
+    @DataProvider
+    public Object[][] validatorProvider() {
+        return new Object[][]{
+            {
+                "GCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) captchaValidator -> captchaValidator,
+                false
+            },
+            {
+                "CachingCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) CachingCaptchaValidator::new,
+                false
+            },
+            {
+                "CoalescingCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) CoalescingCaptchaValidator::new,
+                false
+            },
+            {
+                "NegativeCachingCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) NegativeCachingCaptchaValidator::new,
+                false
+            },
+            {
+                "ReplayGuardingCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) ReplayGuardingCaptchaValidator::new,
+                true
+            },
+            {
+                "PrefilteringCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) PrefilteringCaptchaValidator::new,
+                false
+            },
+            {
+                "DegradingCaptchaValidator",
+                (Function<CaptchaValidator, CaptchaValidator>) captchaValidator -> new DegradingCaptchaValidator(
+                    captchaValidator,
+                    DegradationPolicy.failClosed()
+                ),
+                false
+            }
+        };
+    }
+
+    /**
+     * Create a stub handler that answers every request successfully and counts the requests
+     * that have been sent with an inconsistent configuration.
+     *
+     * @param requests        The counter of sent requests
+     * @param inconsistencies The counter of inconsistent configurations
+     * @return The created handler
+     */
+    private static CaptchaRequestHandler createRequestHandler(AtomicInteger requests, AtomicInteger inconsistencies) {
+        return (captchaValidatorConfiguration, response, remoteIP) -> {
+            requests.incrementAndGet();
+            if (!isConsistent(captchaValidatorConfiguration)) {
+                inconsistencies.incrementAndGet();
+            }
+
+            return SUCCEEDED_BODY;
+        };
+    }
+
+    /**
+     * Validate responses from many threads while the configuration is read and replaced concurrently.
+     * <p>
+     * The responses pass the {@link ResponsePrefilter}. Unless unique responses are requested, the threads
+     * share a small set of responses, so caching and coalescing validators are hit concurrently.
+     *
+     * @param captchaValidator The validator to validate the responses with
+     * @param reconfigure      Replaces the configuration of the validator
+     * @param uniqueResponses  true if every response must be validated only once
+     * @param inconsistencies  The counter of inconsistent configurations, incremented by the reader
+     * @return The number of failed validations
+     * @throws Exception If a thread did not finish in time or failed
+     */
+    private static int validateConcurrently(
+        CaptchaValidator captchaValidator,
+        Consumer<CaptchaValidatorConfiguration> reconfigure,
+        boolean uniqueResponses,
+        AtomicInteger inconsistencies
+    ) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger failedValidations = new AtomicInteger();
+        try {
+            Future<?> writer = executorService.submit(() -> {
+                await(start);
+                for (int i = 1; running.get(); i++) {
+                    reconfigure.accept(createConfiguration(i));
+                }
+            });
+            Future<?> reader = executorService.submit(() -> {
+                await(start);
+                while (running.get()) {
+                    if (!isConsistent(captchaValidator.getConfiguration())) {
+                        inconsistencies.incrementAndGet();
+                    }
+                }
+            });
+            List<Future<?>> validations = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int offset = thread;
+                validations.add(executorService.submit(() -> {
+                    await(start);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        String response = uniqueResponses
+                            ? String.format("Response-Unique-%02d-%04d", offset, i)
+                            : String.format("Response-Shared-%04d", (offset + i) % 64);
+                        boolean succeeded = i % 4 == 0
+                            ? captchaValidator.validateAsync(response).join().hasSucceeded()
+                            : captchaValidator.validate(response, "127.0.0.1").hasSucceeded();
+                        if (!succeeded) {
+                            failedValidations.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> validation : validations) {
+                validation.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            writer.get(10, TimeUnit.SECONDS);
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            running.set(false);
+            executorService.shutdownNow();
+        }
+
+        return failedValidations.get();
+    }
+
+    /**
+     * Create a configuration whose secret and verifier URL both contain the supplied generation.
+     *
+     * @param generation The generation of the configuration
+     * @return The created configuration
+     */
+    private static CaptchaValidatorConfiguration createConfiguration(int generation) {
+        Map<String, String> httpHeaders = new HashMap<>();
+        httpHeaders.put("X-Generation", String.valueOf(generation));
+
+        return new ValidatorConfiguration(
+            "Secret" + generation,
+            "https://verifier.example.com/" + generation,
+            httpHeaders
+        );
+    }
+
+    /**
+     * Check that the secret, verifier URL and headers of a configuration belong to the same generation.
+     *
+     * @param captchaValidatorConfiguration The configuration to check
+     * @return true if all parts of the configuration belong to the same generation
+     */
+    private static boolean isConsistent(CaptchaValidatorConfiguration captchaValidatorConfiguration) {
+        String generation = captchaValidatorConfiguration.getSecretToken().substring("Secret".length());
+
+        return captchaValidatorConfiguration.getVerifierUrl().equals("https://verifier.example.com/" + generation)
+            && generation.equals(captchaValidatorConfiguration.getHttpHeaders().get("X-Generation"));
+    }
+
+    /**
+     * Wait until the supplied latch has been released.
+     *
+     * @param latch The latch to wait for
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -27,12 +27,25 @@ package com.github.playerforcehd.gcaptchavalidator;
 import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
 import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
 import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.AsyncCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.ByteBufferCaptchaRequestHandler;
 import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
 import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineCaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.DeadlineExceededException;
+import com.github.playerforcehd.gcaptchavalidator.serialize.BasicCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.serialize.ByteBufferCaptchaResponseDeserializer;
 import com.github.playerforcehd.gcaptchavalidator.serialize.CaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
@@ -275,6 +288,450 @@ public class GCaptchaValidatorTest {
         assertEquals(result.getErrors(), expectedErrors);
     }
 
+    @Test
+    public void testValidateAsyncWithBlockingHandler() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        String requestHandlerResponse = "{\"success\": true}";
+        CaptchaValidationResponse captchaValidationResponse = new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            true,
+            mock(Date.class),
+            ClientType.WEB,
+            "localhost",
+            0.5f,
+            "home",
+            new ValidationError[0]
+        );
+
+        when(
+            captchaRequestHandler.request(
+                any(ImmutableValidatorConfiguration.class),
+                eq(testResponse),
+                eq(testIP)
+            )
+        ).thenReturn(requestHandlerResponse);
+        when(
+            captchaResponseDeserializer.deserialize(requestHandlerResponse)
+        ).thenReturn(captchaValidationResponse);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        CaptchaValidationResponse result = captchaValidator.validateAsync(testResponse, testIP).get();
+
+        assertEquals(result, captchaValidationResponse);
+    }
+
+    @Test
+    public void testValidateWithByteBufferPipeline() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        ByteBufferCaptchaResponseDeserializer captchaResponseDeserializer = mock(
+            ByteBufferCaptchaResponseDeserializer.class
+        );
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        ByteBuffer requestHandlerResponse = ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8));
+        CaptchaValidationResponse captchaValidationResponse = new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            true,
+            mock(Date.class),
+            ClientType.WEB,
+            "localhost",
+            0.5f,
+            "home",
+            new ValidationError[0]
+        );
+
+        when(
+            captchaRequestHandler.requestBytes(
+                any(ImmutableValidatorConfiguration.class),
+                eq(testResponse),
+                eq(testIP)
+            )
+        ).thenReturn(requestHandlerResponse);
+        when(
+            captchaResponseDeserializer.deserialize(requestHandlerResponse)
+        ).thenReturn(captchaValidationResponse);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        CaptchaValidationResponse result = captchaValidator.validate(testResponse, testIP);
+
+        assertEquals(result, captchaValidationResponse);
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+        verify(captchaResponseDeserializer, never()).deserialize(any(String.class));
+    }
+
+    @Test
+    public void testBasicValidateWithBasicDeserializer() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        BasicCaptchaResponseDeserializer captchaResponseDeserializer = mock(
+            BasicCaptchaResponseDeserializer.class,
+            withSettings().extraInterfaces(ByteBufferCaptchaResponseDeserializer.class)
+        );
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        ByteBuffer requestHandlerResponse = ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8));
+
+        when(
+            captchaRequestHandler.requestBytes(
+                any(ImmutableValidatorConfiguration.class),
+                eq(testResponse),
+                eq(testIP)
+            )
+        ).thenReturn(requestHandlerResponse);
+        when(captchaResponseDeserializer.basicDeserialize(requestHandlerResponse)).thenReturn(true);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        assertTrue(captchaValidator.basicValidate(testResponse, testIP));
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+        verify(captchaResponseDeserializer, never()).deserialize(any(String.class));
+        verify((ByteBufferCaptchaResponseDeserializer) captchaResponseDeserializer, never())
+            .deserialize(any(ByteBuffer.class));
+    }
+
+    @Test
+    public void testBasicValidateWithBasicDeserializerAndStringHandler() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        BasicCaptchaResponseDeserializer captchaResponseDeserializer = mock(BasicCaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String requestHandlerResponse = "{\"success\": false, \"error-codes\": [\"timeout-or-duplicate\"]}";
+
+        when(
+            captchaRequestHandler.request(any(ImmutableValidatorConfiguration.class), eq(testResponse), eq(""))
+        ).thenReturn(requestHandlerResponse);
+        when(captchaResponseDeserializer.basicDeserialize(requestHandlerResponse)).thenReturn(false);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        assertFalse(captchaValidator.basicValidate(testResponse));
+        verify(captchaResponseDeserializer).basicDeserialize(requestHandlerResponse);
+        verify(captchaResponseDeserializer, never()).deserialize(any(String.class));
+    }
+
+    @Test
+    public void testBasicValidateWithBasicDeserializerAndException() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        BasicCaptchaResponseDeserializer captchaResponseDeserializer = mock(BasicCaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        CompletableFuture<String> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new CaptchaRequestHandlerException("Connection refused"));
+
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new CaptchaRequestHandlerException("Connection refused"));
+        when(captchaRequestHandler.requestAsync(any(), any(), any())).thenReturn(failedRequest);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        assertFalse(captchaValidator.basicValidate("SomeResponse"));
+        assertFalse(captchaValidator.basicValidateAsync("SomeResponse").get());
+        verify(captchaResponseDeserializer, never()).basicDeserialize(any(String.class));
+    }
+
+    @Test
+    public void testBasicValidateAsyncWithBasicDeserializer() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        BasicCaptchaResponseDeserializer captchaResponseDeserializer = mock(BasicCaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        String requestHandlerResponse = "{\"success\": true}";
+
+        when(
+            captchaRequestHandler.requestAsync(any(ImmutableValidatorConfiguration.class), eq(testResponse), eq(testIP))
+        ).thenReturn(CompletableFuture.completedFuture(requestHandlerResponse));
+        when(captchaResponseDeserializer.basicDeserialize(requestHandlerResponse)).thenReturn(true);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        assertTrue(captchaValidator.basicValidateAsync(testResponse, testIP).get());
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+        verify(captchaResponseDeserializer, never()).deserialize(any(String.class));
+    }
+
+    @Test
+    public void testValidateAsyncWithAsyncHandler() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        String requestHandlerResponse = "{\"success\": true}";
+        CaptchaValidationResponse captchaValidationResponse = new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            true,
+            mock(Date.class),
+            ClientType.WEB,
+            "localhost",
+            0.5f,
+            "home",
+            new ValidationError[0]
+        );
+
+        when(
+            captchaRequestHandler.requestAsync(
+                any(ImmutableValidatorConfiguration.class),
+                eq(testResponse),
+                eq(testIP)
+            )
+        ).thenReturn(CompletableFuture.completedFuture(requestHandlerResponse));
+        when(
+            captchaResponseDeserializer.deserialize(requestHandlerResponse)
+        ).thenReturn(captchaValidationResponse);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        CaptchaValidationResponse result = captchaValidator.validateAsync(testResponse, testIP, Runnable::run).get();
+        boolean basicResult = captchaValidator.basicValidateAsync(testResponse, testIP).get();
+
+        assertEquals(result, captchaValidationResponse);
+        assertTrue(basicResult);
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testValidateAsyncWithException() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        String testResponse = "SomeResponse";
+        String testIP = "127.0.0.1";
+        CompletableFuture<String> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new CaptchaRequestHandlerException());
+
+        when(
+            captchaRequestHandler.requestAsync(
+                any(ImmutableValidatorConfiguration.class),
+                eq(testResponse),
+                eq(testIP)
+            )
+        ).thenReturn(failedRequest);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        CaptchaValidationResponse result = captchaValidator.validateAsync(testResponse, testIP).get();
+
+        assertFalse(result.hasSucceeded());
+        ValidationError[] expectedErrors = new ValidationError[]{
+            ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR
+        };
+        assertEquals(result.getErrors(), expectedErrors);
+        verifyNoInteractions(captchaResponseDeserializer);
+    }
+
+    @Test
+    public void testValidateWithDeadlineAndBlockingHandler() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+
+        when(captchaRequestHandler.request(any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return "{\"success\": true}";
+        });
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        long start = System.nanoTime();
+        CaptchaValidationResponse result = captchaValidator.validate(
+            "SomeResponse",
+            "",
+            Deadline.after(Duration.ofMillis(100))
+        );
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+        assertFalse(result.hasSucceeded());
+        assertEquals(result.getErrors(), new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR});
+        verify(captchaResponseDeserializer, never()).deserialize(anyString());
+    }
+
+    @Test
+    public void testValidateWithDeadlineHandler() throws CaptchaRequestHandlerException {
+        DeadlineCaptchaRequestHandler captchaRequestHandler = mock(DeadlineCaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Test");
+        CaptchaValidationResponse captchaValidationResponse = mock(CaptchaValidationResponse.class);
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+
+        when(captchaRequestHandler.request(any(), eq("SomeResponse"), eq(""), eq(deadline)))
+            .thenReturn("{\"success\": true}")
+            .thenThrow(new DeadlineExceededException("Test"));
+        when(captchaResponseDeserializer.deserialize("{\"success\": true}")).thenReturn(captchaValidationResponse);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            captchaValidatorConfiguration
+        );
+
+        assertSame(captchaValidator.validate("SomeResponse", "", deadline), captchaValidationResponse);
+        assertEquals(
+            captchaValidator.validate("SomeResponse", "", deadline).getErrors(),
+            new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+        );
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testValidateWithDeadlineAndByteBufferHandler() throws CaptchaRequestHandlerException {
+        DeadlineCaptchaRequestHandler captchaRequestHandler = mock(
+            DeadlineCaptchaRequestHandler.class,
+            withSettings().extraInterfaces(ByteBufferCaptchaRequestHandler.class)
+        );
+        ByteBufferCaptchaResponseDeserializer captchaResponseDeserializer =
+            mock(ByteBufferCaptchaResponseDeserializer.class);
+        CaptchaValidationResponse captchaValidationResponse = mock(CaptchaValidationResponse.class);
+        ByteBuffer requestHandlerResponse = ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8));
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+
+        when(((ByteBufferCaptchaRequestHandler) captchaRequestHandler).requestBytes(
+            any(),
+            eq("SomeResponse"),
+            eq(""),
+            eq(deadline)
+        )).thenReturn(requestHandlerResponse);
+        when(captchaResponseDeserializer.deserialize(requestHandlerResponse)).thenReturn(captchaValidationResponse);
+
+        CaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            new ValidatorConfiguration("Test")
+        );
+
+        assertSame(captchaValidator.validate("SomeResponse", "", deadline), captchaValidationResponse);
+        verify(captchaRequestHandler, never()).request(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testSetConfigurationUsesNewSecret() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CaptchaValidationResponse captchaValidationResponse = mock(CaptchaValidationResponse.class);
+
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+        when(captchaResponseDeserializer.deserialize("{\"success\": true}")).thenReturn(captchaValidationResponse);
+
+        GCaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            new ValidatorConfiguration("OldSecret")
+        );
+        CaptchaValidatorConfiguration previousConfiguration = captchaValidator.setConfiguration(
+            new ValidatorConfiguration("NewSecret")
+        );
+        captchaValidator.validate("SomeResponse", "");
+
+        assertEquals(previousConfiguration.getSecretToken(), "OldSecret");
+        assertEquals(captchaValidator.getConfiguration().getSecretToken(), "NewSecret");
+        verify(captchaRequestHandler).request(
+            argThat(configuration -> configuration.getSecretToken().equals("NewSecret")),
+            eq("SomeResponse"),
+            eq("")
+        );
+    }
+
+    @Test
+    public void testSetConfigurationCopiesConfiguration() {
+        ValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("NewSecret");
+        GCaptchaValidator captchaValidator = new GCaptchaValidator(
+            mock(CaptchaRequestHandler.class),
+            mock(CaptchaResponseDeserializer.class),
+            new ValidatorConfiguration("OldSecret")
+        );
+
+        captchaValidator.setConfiguration(captchaValidatorConfiguration);
+        captchaValidatorConfiguration.setSecretToken("ChangedSecret");
+
+        assertTrue(captchaValidator.getConfiguration() instanceof ImmutableValidatorConfiguration);
+        assertEquals(captchaValidator.getConfiguration().getSecretToken(), "NewSecret");
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testSetConfigurationRejectsNull() {
+        GCaptchaValidator captchaValidator = new GCaptchaValidator(
+            mock(CaptchaRequestHandler.class),
+            mock(CaptchaResponseDeserializer.class),
+            new ValidatorConfiguration("OldSecret")
+        );
+
+        captchaValidator.setConfiguration(null);
+    }
+
+    @Test
+    public void testInFlightValidationFinishesWithPreviousConfiguration() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        CaptchaResponseDeserializer captchaResponseDeserializer = mock(CaptchaResponseDeserializer.class);
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch configurationSwapped = new CountDownLatch(1);
+
+        when(captchaRequestHandler.request(any(), any(), any())).thenAnswer(invocation -> {
+            requestStarted.countDown();
+            configurationSwapped.await(10, TimeUnit.SECONDS);
+            CaptchaValidatorConfiguration configuration = invocation.getArgument(0);
+            return configuration.getSecretToken() + "/" + configuration.getVerifierUrl();
+        });
+        when(captchaResponseDeserializer.deserialize(anyString())).thenReturn(mock(CaptchaValidationResponse.class));
+
+        GCaptchaValidator captchaValidator = new GCaptchaValidator(
+            captchaRequestHandler,
+            captchaResponseDeserializer,
+            new ValidatorConfiguration("OldSecret", "https://old.example.com")
+        );
+        CompletableFuture<CaptchaValidationResponse> inFlight = CompletableFuture.supplyAsync(
+            () -> captchaValidator.validate("SomeResponse", "")
+        );
+        assertTrue(requestStarted.await(10, TimeUnit.SECONDS));
+
+        captchaValidator.setConfiguration(new ValidatorConfiguration("NewSecret", "https://new.example.com"));
+        configurationSwapped.countDown();
+        inFlight.get(10, TimeUnit.SECONDS);
+
+        verify(captchaResponseDeserializer).deserialize("OldSecret/https://old.example.com");
+    }
+
     // --- Integration tests
 
     @Test
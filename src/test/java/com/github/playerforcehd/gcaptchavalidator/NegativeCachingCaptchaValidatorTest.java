@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.CacheStatistics;
+import com.github.playerforcehd.gcaptchavalidator.cache.ExpiringLruCache;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link NegativeCachingCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NegativeCachingCaptchaValidatorTest {
+    /**
+     * A successful response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse SUCCEEDED_RESPONSE = createResponse(true);
+
+    /**
+     * A response rejected as invalid returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse INVALID_RESPONSE = createResponse(
+        false,
+        ValidationError.INVALID_INPUT_RESPONSE
+    );
+
+    @DataProvider
+    public static Object[][] cachedErrorsDataProvider() {
+        return new Object[][]{
+            {ValidationError.INVALID_INPUT_RESPONSE, true},
+            {ValidationError.BAD_REQUEST, true},
+            {ValidationError.TIMEOUT_OR_DUPLICATE, false},
+            {ValidationError.MISSING_INPUT_RESPONSE, false},
+            {ValidationError.INVALID_INPUT_SECRET, false},
+            {ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR, false}
+        };
+    }
+
+    @Test(dataProvider = "cachedErrorsDataProvider")
+    public void testValidateCachesRejections(ValidationError error, boolean cached) {
+        CaptchaValidationResponse failedResponse = createResponse(false, error);
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(eq("SomeResponse"), any())).thenReturn(failedResponse);
+
+        NegativeCachingCaptchaValidator negativeCachingCaptchaValidator =
+            new NegativeCachingCaptchaValidator(captchaValidator);
+
+        assertSame(negativeCachingCaptchaValidator.validate("SomeResponse", "127.0.0.1"), failedResponse);
+        assertSame(negativeCachingCaptchaValidator.validate("SomeResponse", "127.0.0.2"), failedResponse);
+        assertFalse(negativeCachingCaptchaValidator.basicValidate("SomeResponse"));
+        verify(captchaValidator, times(cached ? 1 : 3)).validate(eq("SomeResponse"), any());
+        assertEquals(negativeCachingCaptchaValidator.getStatistics().getHitCount(), cached ? 2 : 0);
+    }
+
+    @Test
+    public void testValidateDoesNotCacheSuccessfulValidation() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(SUCCEEDED_RESPONSE);
+
+        NegativeCachingCaptchaValidator negativeCachingCaptchaValidator =
+            new NegativeCachingCaptchaValidator(captchaValidator);
+
+        assertTrue(negativeCachingCaptchaValidator.basicValidate("SomeResponse"));
+        assertTrue(negativeCachingCaptchaValidator.basicValidate("SomeResponse"));
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+        assertEquals(negativeCachingCaptchaValidator.getStatistics().getSize(), 0);
+    }
+
+    @Test
+    public void testValidateAfterExpiration() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(INVALID_RESPONSE);
+        AtomicLong now = new AtomicLong();
+
+        NegativeCachingCaptchaValidator negativeCachingCaptchaValidator = new NegativeCachingCaptchaValidator(
+            captchaValidator,
+            new ExpiringLruCache<>(Duration.ofSeconds(10), 10, now::get)
+        );
+        negativeCachingCaptchaValidator.validate("SomeResponse");
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        negativeCachingCaptchaValidator.validate("SomeResponse");
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        negativeCachingCaptchaValidator.validate("SomeResponse");
+
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+        CacheStatistics cacheStatistics = negativeCachingCaptchaValidator.getStatistics();
+        assertEquals(cacheStatistics.getHitCount(), 1);
+        assertEquals(cacheStatistics.getExpirationCount(), 1);
+    }
+
+    @Test
+    public void testValidateAsyncCachesRejection() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validateAsync(eq("SomeResponse"), eq(""), any()))
+            .thenReturn(CompletableFuture.completedFuture(INVALID_RESPONSE));
+
+        NegativeCachingCaptchaValidator negativeCachingCaptchaValidator =
+            new NegativeCachingCaptchaValidator(captchaValidator);
+
+        assertSame(negativeCachingCaptchaValidator.validateAsync("SomeResponse").get(), INVALID_RESPONSE);
+        assertFalse(negativeCachingCaptchaValidator.basicValidateAsync("SomeResponse").get());
+        assertSame(negativeCachingCaptchaValidator.validate("SomeResponse"), INVALID_RESPONSE);
+        verify(captchaValidator, times(1)).validateAsync(eq("SomeResponse"), eq(""), any());
+        verify(captchaValidator, never()).validate(any(), any());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", "")).thenReturn(INVALID_RESPONSE);
+
+        NegativeCachingCaptchaValidator negativeCachingCaptchaValidator =
+            new NegativeCachingCaptchaValidator(captchaValidator);
+        negativeCachingCaptchaValidator.validate("SomeResponse");
+        negativeCachingCaptchaValidator.invalidateAll();
+        negativeCachingCaptchaValidator.validate("SomeResponse");
+
+        verify(captchaValidator, times(2)).validate("SomeResponse", "");
+    }
+
+    /**
+     * Create a response returned by the mocked validators.
+     *
+     * @param succeeded If the validation has succeeded
+     * @param errors    The errors of the response
+     * @return The created response
+     */
+    private static CaptchaValidationResponse createResponse(boolean succeeded, ValidationError... errors) {
+        return new ValidationResponse(
+            ReCaptchaVersion.VERSION_2,
+            succeeded,
+            null,
+            null,
+            succeeded ? "localhost" : "",
+            -1f,
+            "",
+            errors
+        );
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.validation.ResponsePrefilter;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link PrefilteringCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class PrefilteringCaptchaValidatorTest {
+    /**
+     * A response that passes the default checks
+     */
+    private static final String VALID_RESPONSE = "03AGdBq25SxXT-pmSeBXjzScW-EiocHwwpwqJRCAC7g_Ne1hPg";
+
+    @Test
+    public void testValidatePassesValidResponse() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CaptchaValidationResponse captchaValidationResponse = mock(CaptchaValidationResponse.class);
+        when(captchaValidator.validate(VALID_RESPONSE, "127.0.0.1")).thenReturn(captchaValidationResponse);
+        when(captchaValidator.basicValidate(VALID_RESPONSE, "")).thenReturn(true);
+
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator = new PrefilteringCaptchaValidator(captchaValidator);
+
+        assertSame(prefilteringCaptchaValidator.validate(VALID_RESPONSE, "127.0.0.1"), captchaValidationResponse);
+        assertTrue(prefilteringCaptchaValidator.basicValidate(VALID_RESPONSE));
+        assertEquals(prefilteringCaptchaValidator.getRejectedValidations(), 0);
+    }
+
+    @Test
+    public void testValidateRejectsMissingResponse() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator = new PrefilteringCaptchaValidator(captchaValidator);
+
+        CaptchaValidationResponse captchaValidationResponse = prefilteringCaptchaValidator.validate(null);
+        assertFalse(captchaValidationResponse.hasSucceeded());
+        assertEquals(
+            captchaValidationResponse.getErrors(),
+            new ValidationError[]{ValidationError.MISSING_INPUT_RESPONSE}
+        );
+        assertFalse(prefilteringCaptchaValidator.basicValidate(""));
+
+        verifyNoInteractions(captchaValidator);
+        assertEquals(prefilteringCaptchaValidator.getMissingResponses(), 2);
+        assertEquals(prefilteringCaptchaValidator.getInvalidResponses(), 0);
+    }
+
+    @Test
+    public void testValidateRejectsInvalidResponse() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator = new PrefilteringCaptchaValidator(captchaValidator);
+
+        CaptchaValidationResponse captchaValidationResponse = prefilteringCaptchaValidator.validate("junk");
+        assertFalse(captchaValidationResponse.hasSucceeded());
+        assertEquals(
+            captchaValidationResponse.getErrors(),
+            new ValidationError[]{ValidationError.INVALID_INPUT_RESPONSE}
+        );
+        assertFalse(prefilteringCaptchaValidator.basicValidate(VALID_RESPONSE + "'; DROP TABLE users"));
+
+        verifyNoInteractions(captchaValidator);
+        assertEquals(prefilteringCaptchaValidator.getMissingResponses(), 0);
+        assertEquals(prefilteringCaptchaValidator.getInvalidResponses(), 2);
+        assertEquals(prefilteringCaptchaValidator.getRejectedValidations(), 2);
+    }
+
+    @Test
+    public void testRejectedResponsesCanNotBeModified() {
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator =
+            new PrefilteringCaptchaValidator(mock(CaptchaValidator.class));
+
+        prefilteringCaptchaValidator.validate("junk").getErrors()[0] = null;
+        prefilteringCaptchaValidator.validate("").getErrors()[0] = ValidationError.INVALID_INPUT_SECRET;
+
+        assertEquals(
+            prefilteringCaptchaValidator.validate("junk").getErrors(),
+            new ValidationError[]{ValidationError.INVALID_INPUT_RESPONSE}
+        );
+        assertEquals(
+            prefilteringCaptchaValidator.validate("").getErrors(),
+            new ValidationError[]{ValidationError.MISSING_INPUT_RESPONSE}
+        );
+    }
+
+    @Test
+    public void testValidateWithCustomPrefilter() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.basicValidate("junk", "")).thenReturn(true);
+        ResponsePrefilter responsePrefilter = new ResponsePrefilter(1, 16);
+
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator = new PrefilteringCaptchaValidator(
+            captchaValidator,
+            responsePrefilter
+        );
+
+        assertTrue(prefilteringCaptchaValidator.basicValidate("junk"));
+        assertSame(prefilteringCaptchaValidator.getResponsePrefilter(), responsePrefilter);
+    }
+
+    @Test
+    public void testValidateAsync() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CaptchaValidationResponse captchaValidationResponse = mock(CaptchaValidationResponse.class);
+        when(captchaValidator.validateAsync(eq(VALID_RESPONSE), eq(""), any()))
+            .thenReturn(CompletableFuture.completedFuture(captchaValidationResponse));
+        when(captchaValidator.basicValidateAsync(VALID_RESPONSE, ""))
+            .thenReturn(CompletableFuture.completedFuture(true));
+
+        PrefilteringCaptchaValidator prefilteringCaptchaValidator = new PrefilteringCaptchaValidator(captchaValidator);
+
+        assertSame(prefilteringCaptchaValidator.validateAsync(VALID_RESPONSE).get(), captchaValidationResponse);
+        assertTrue(prefilteringCaptchaValidator.basicValidateAsync(VALID_RESPONSE).get());
+        assertEquals(
+            prefilteringCaptchaValidator.validateAsync("").get().getErrors(),
+            new ValidationError[]{ValidationError.MISSING_INPUT_RESPONSE}
+        );
+        assertEquals(
+            prefilteringCaptchaValidator.validateAsync("junk").get().getErrors(),
+            new ValidationError[]{ValidationError.INVALID_INPUT_RESPONSE}
+        );
+        assertFalse(prefilteringCaptchaValidator.basicValidateAsync("junk").get());
+        assertEquals(prefilteringCaptchaValidator.getRejectedValidations(), 3);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator;
+
+import com.github.playerforcehd.gcaptchavalidator.cache.MappedFingerprintTable;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link ReplayGuardingCaptchaValidator}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ReplayGuardingCaptchaValidatorTest {
+    /**
+     * A successful response returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse SUCCEEDED_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        true,
+        null,
+        null,
+        "localhost",
+        -1f,
+        "",
+        new ValidationError[0]
+    );
+
+    /**
+     * A response of a failed request returned by the mocked validators
+     */
+    private static final CaptchaValidationResponse INTERNAL_ERROR_RESPONSE = new ValidationResponse(
+        ReCaptchaVersion.VERSION_2,
+        false,
+        null,
+        null,
+        "",
+        -1f,
+        "",
+        new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+    );
+
+    @Test
+    public void testValidateRejectsReplay() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(eq("SomeResponse"), any())).thenReturn(SUCCEEDED_RESPONSE);
+
+        ReplayGuardingCaptchaValidator replayGuardingCaptchaValidator =
+            new ReplayGuardingCaptchaValidator(captchaValidator);
+
+        assertSame(replayGuardingCaptchaValidator.validate("SomeResponse", "127.0.0.1"), SUCCEEDED_RESPONSE);
+
+        // Replays are rejected regardless of the remote IP
+        CaptchaValidationResponse replayResponse = replayGuardingCaptchaValidator.validate("SomeResponse", "10.0.0.1");
+        assertFalse(replayResponse.hasSucceeded());
+        assertEquals(replayResponse.getErrors(), new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE});
+        assertFalse(replayGuardingCaptchaValidator.basicValidate("SomeResponse"));
+
+        verify(captchaValidator, times(1)).validate(eq("SomeResponse"), any());
+        assertEquals(replayGuardingCaptchaValidator.getRejectedValidations(), 2);
+    }
+
+    @Test
+    public void testValidateAllowsRetryAfterInternalError() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate("SomeResponse", ""))
+            .thenReturn(INTERNAL_ERROR_RESPONSE)
+            .thenThrow(new IllegalStateException("Test"))
+            .thenReturn(SUCCEEDED_RESPONSE);
+
+        ReplayGuardingCaptchaValidator replayGuardingCaptchaValidator =
+            new ReplayGuardingCaptchaValidator(captchaValidator);
+
+        assertSame(replayGuardingCaptchaValidator.validate("SomeResponse"), INTERNAL_ERROR_RESPONSE);
+        assertThrows(IllegalStateException.class, () -> replayGuardingCaptchaValidator.validate("SomeResponse"));
+        assertSame(replayGuardingCaptchaValidator.validate("SomeResponse"), SUCCEEDED_RESPONSE);
+        verify(captchaValidator, times(3)).validate("SomeResponse", "");
+        assertEquals(replayGuardingCaptchaValidator.getRejectedValidations(), 0);
+    }
+
+    @Test
+    public void testValidateDoesNotRecordEmptyResponse() {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(any(), any())).thenReturn(SUCCEEDED_RESPONSE);
+
+        ReplayGuardingCaptchaValidator replayGuardingCaptchaValidator =
+            new ReplayGuardingCaptchaValidator(captchaValidator);
+        replayGuardingCaptchaValidator.validate("");
+        replayGuardingCaptchaValidator.validate("");
+        replayGuardingCaptchaValidator.validate(null, "");
+
+        verify(captchaValidator, times(2)).validate("", "");
+        verify(captchaValidator, times(1)).validate(null, "");
+    }
+
+    @Test
+    public void testValidateAsyncRejectsReplay() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validateAsync(eq("SomeResponse"), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(SUCCEEDED_RESPONSE));
+
+        ReplayGuardingCaptchaValidator replayGuardingCaptchaValidator =
+            new ReplayGuardingCaptchaValidator(captchaValidator);
+
+        assertTrue(replayGuardingCaptchaValidator.basicValidateAsync("SomeResponse").get());
+        assertFalse(replayGuardingCaptchaValidator.validateAsync("SomeResponse").get().hasSucceeded());
+        assertFalse(replayGuardingCaptchaValidator.validate("SomeResponse").hasSucceeded());
+        verify(captchaValidator, times(1)).validateAsync(eq("SomeResponse"), any(), any());
+        verify(captchaValidator, never()).validate(any(), any());
+    }
+
+    @Test
+    public void testValidateAsyncAllowsRetryAfterFailure() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        CompletableFuture<CaptchaValidationResponse> failedValidation = new CompletableFuture<>();
+        failedValidation.completeExceptionally(new IllegalStateException("Test"));
+        when(captchaValidator.validateAsync(eq("SomeResponse"), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(INTERNAL_ERROR_RESPONSE))
+            .thenReturn(failedValidation)
+            .thenReturn(CompletableFuture.completedFuture(SUCCEEDED_RESPONSE));
+
+        ReplayGuardingCaptchaValidator replayGuardingCaptchaValidator =
+            new ReplayGuardingCaptchaValidator(captchaValidator);
+
+        assertSame(replayGuardingCaptchaValidator.validateAsync("SomeResponse").get(), INTERNAL_ERROR_RESPONSE);
+        assertTrue(replayGuardingCaptchaValidator.validateAsync("SomeResponse").isCompletedExceptionally());
+        assertSame(replayGuardingCaptchaValidator.validateAsync("SomeResponse").get(), SUCCEEDED_RESPONSE);
+        verify(captchaValidator, times(3)).validateAsync(eq("SomeResponse"), any(), any());
+    }
+
+    @Test
+    public void testValidateRejectsReplayAfterRestart() throws Exception {
+        CaptchaValidator captchaValidator = mock(CaptchaValidator.class);
+        when(captchaValidator.validate(eq("SomeResponse"), any())).thenReturn(SUCCEEDED_RESPONSE);
+        Path path = Files.createTempFile("gcaptchavalidator", ".table");
+        try {
+            new ReplayGuardingCaptchaValidator(
+                captchaValidator,
+                new MappedFingerprintTable(path, 1024, Duration.ofMinutes(2))
+            ).validate("SomeResponse");
+
+            ReplayGuardingCaptchaValidator restartedCaptchaValidator = new ReplayGuardingCaptchaValidator(
+                captchaValidator,
+                new MappedFingerprintTable(path, 1024, Duration.ofMinutes(2))
+            );
+            assertEquals(
+                restartedCaptchaValidator.validate("SomeResponse").getErrors(),
+                new ValidationError[]{ValidationError.TIMEOUT_OR_DUPLICATE}
+            );
+            verify(captchaValidator, times(1)).validate(eq("SomeResponse"), any());
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link ExpiringLruCache}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ExpiringLruCacheTest {
+    @Test
+    public void testGetAndPut() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(Duration.ofMinutes(1), 10);
+
+        assertNull(cache.get("Key"));
+        cache.put("Key", "Value");
+
+        assertEquals(cache.get("Key"), "Value");
+        assertEquals(cache.size(), 1);
+
+        CacheStatistics cacheStatistics = cache.getStatistics();
+        assertEquals(cacheStatistics.getHitCount(), 1);
+        assertEquals(cacheStatistics.getMissCount(), 1);
+        assertEquals(cacheStatistics.getRequestCount(), 2);
+        assertEquals(cacheStatistics.getHitRate(), 0.5);
+        assertEquals(cacheStatistics.getSize(), 1);
+    }
+
+    @Test
+    public void testExpiration() {
+        AtomicLong now = new AtomicLong(Long.MAX_VALUE - 10);
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(Duration.ofNanos(100), 10, now::get);
+
+        cache.put("Key", "Value");
+        now.addAndGet(99);
+        assertEquals(cache.get("Key"), "Value");
+
+        // The time source may overflow
+        now.addAndGet(1);
+        assertNull(cache.get("Key"));
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getStatistics().getExpirationCount(), 1);
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemovedOnPut() {
+        AtomicLong now = new AtomicLong();
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(Duration.ofNanos(100), 10, now::get);
+
+        cache.put("First", "Value");
+        cache.put("Second", "Value");
+        now.addAndGet(100);
+        cache.put("Third", "Value");
+
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getStatistics().getExpirationCount(), 2);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(Duration.ofMinutes(1), 2);
+
+        cache.put("First", "Value");
+        cache.put("Second", "Value");
+        // Use the first entry, so that the second one is the least recently used
+        cache.get("First");
+        cache.put("Third", "Value");
+
+        assertEquals(cache.get("First"), "Value");
+        assertNull(cache.get("Second"));
+        assertEquals(cache.get("Third"), "Value");
+        assertEquals(cache.getStatistics().getEvictionCount(), 1);
+    }
+
+    @Test
+    public void testMaximumSize() {
+        ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<>(Duration.ofMinutes(1), 1000);
+
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(cache.size(), 1000);
+        assertEquals(cache.getStatistics().getEvictionCount(), 9000);
+    }
+
+    @Test
+    public void testInvalidate() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(Duration.ofMinutes(1), 10);
+        cache.put("First", "Value");
+        cache.put("Second", "Value");
+
+        cache.invalidate("First");
+        assertNull(cache.get("First"));
+        assertEquals(cache.size(), 1);
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<>(Duration.ofMinutes(1), 4096);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future[8];
+            for (int thread = 0; thread < futures.length; thread++) {
+                int offset = thread * 100_000;
+                futures[thread] = executorService.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        cache.put(offset + i, i);
+                        // Other threads may have evicted the entry in the meantime
+                        Integer value = cache.get(offset + i);
+                        if (value != null) {
+                            assertEquals(value, Integer.valueOf(i));
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        CacheStatistics cacheStatistics = cache.getStatistics();
+        assertEquals(cacheStatistics.getSize(), 4096);
+        assertEquals(cacheStatistics.getRequestCount(), 800_000);
+        assertEquals(cacheStatistics.getEvictionCount(), 800_000 - 4096);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidTimeToLive() {
+        new ExpiringLruCache<String, String>(Duration.ZERO, 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaximumSize() {
+        new ExpiringLruCache<String, String>(Duration.ofMinutes(1), 0);
+    }
+}
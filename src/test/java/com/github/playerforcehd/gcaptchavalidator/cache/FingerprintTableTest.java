@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link FingerprintTable}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class FingerprintTableTest {
+    @Test
+    public void testAddContainsAndRemove() {
+        FingerprintTable fingerprintTable = new FingerprintTable(1024, Duration.ofMinutes(2));
+
+        assertFalse(fingerprintTable.contains(42L));
+        assertTrue(fingerprintTable.add(42L));
+        assertFalse(fingerprintTable.add(42L));
+        assertTrue(fingerprintTable.contains(42L));
+        assertFalse(fingerprintTable.contains(43L << 16));
+
+        assertTrue(fingerprintTable.remove(42L));
+        assertFalse(fingerprintTable.remove(42L));
+        assertFalse(fingerprintTable.contains(42L));
+        assertTrue(fingerprintTable.add(42L));
+    }
+
+    @Test
+    public void testAddZero() {
+        FingerprintTable fingerprintTable = new FingerprintTable(16, Duration.ofMinutes(2));
+
+        assertTrue(fingerprintTable.add(0L));
+        assertFalse(fingerprintTable.add(0L));
+        assertTrue(fingerprintTable.contains(0L));
+    }
+
+    @Test
+    public void testExpiration() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        FingerprintTable fingerprintTable = new FingerprintTable(16, Duration.ofMillis(800), now::get);
+
+        assertTrue(fingerprintTable.add(1L << 16));
+        now.addAndGet(800);
+        assertTrue(fingerprintTable.contains(1L << 16));
+
+        now.addAndGet(100);
+        assertFalse(fingerprintTable.contains(1L << 16));
+        assertTrue(fingerprintTable.add(1L << 16));
+    }
+
+    @Test
+    public void testEvictionOfOldestFingerprint() {
+        AtomicLong now = new AtomicLong();
+        // A single block of 16 slots
+        FingerprintTable fingerprintTable = new FingerprintTable(16, Duration.ofMillis(800), now::get);
+
+        for (long fingerprint = 1; fingerprint <= 16; fingerprint++) {
+            assertTrue(fingerprintTable.add(fingerprint << 16));
+            now.addAndGet(10);
+        }
+        assertEquals(fingerprintTable.getEvictionCount(), 0);
+
+        now.addAndGet(100);
+        assertTrue(fingerprintTable.add(17L << 16));
+
+        assertEquals(fingerprintTable.getEvictionCount(), 1);
+        assertFalse(fingerprintTable.contains(1L << 16));
+        for (long fingerprint = 2; fingerprint <= 17; fingerprint++) {
+            assertTrue(fingerprintTable.contains(fingerprint << 16));
+        }
+    }
+
+    @Test
+    public void testExpiredSlotsAreReused() {
+        AtomicLong now = new AtomicLong();
+        FingerprintTable fingerprintTable = new FingerprintTable(16, Duration.ofMillis(800), now::get);
+
+        for (long fingerprint = 1; fingerprint <= 16; fingerprint++) {
+            fingerprintTable.add(fingerprint << 16);
+        }
+        now.addAndGet(900);
+        for (long fingerprint = 17; fingerprint <= 32; fingerprint++) {
+            assertTrue(fingerprintTable.add(fingerprint << 16));
+        }
+
+        assertEquals(fingerprintTable.getEvictionCount(), 0);
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(new FingerprintTable(1, Duration.ofMinutes(2)).getCapacity(), 16);
+        assertEquals(new FingerprintTable(1000, Duration.ofMinutes(2)).getCapacity(), 1024);
+        assertEquals(new FingerprintTable(1024, Duration.ofMinutes(2)).getCapacity(), 1024);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new FingerprintTable(FingerprintTable.MAX_CAPACITY + 1, Duration.ofMinutes(2));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRetention() {
+        new FingerprintTable(16, Duration.ofMillis(1));
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        FingerprintTable fingerprintTable = new FingerprintTable(1 << 20, Duration.ofMinutes(2));
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            // All threads add the same fingerprints, each must be added exactly once
+            Future<Integer>[] futures = new Future[8];
+            for (int thread = 0; thread < futures.length; thread++) {
+                futures[thread] = executorService.submit(() -> {
+                    int added = 0;
+                    for (long i = 0; i < 50_000; i++) {
+                        if (fingerprintTable.add(i * 0x9E3779B97F4A7C15L)) {
+                            added++;
+                        }
+                    }
+
+                    return added;
+                });
+            }
+
+            int added = 0;
+            for (Future<Integer> future : futures) {
+                added += future.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(added, 50_000);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
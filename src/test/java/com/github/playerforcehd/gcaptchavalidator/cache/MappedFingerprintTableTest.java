@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link MappedFingerprintTable}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class MappedFingerprintTableTest {
+    /**
+     * The retention used by the tests
+     */
+    private static final Duration RETENTION = Duration.ofMinutes(2);
+
+    /**
+     * The directory that holds the files of a test
+     */
+    private Path directory;
+
+    /**
+     * The file of the table under test
+     */
+    private Path path;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("gcaptchavalidator");
+        this.path = this.directory.resolve("replay.table");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testCreate() throws IOException {
+        MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1000, RETENTION);
+
+        assertEquals(fingerprintTable.getCapacity(), 1024);
+        assertEquals(Files.size(this.path), MappedFingerprintTable.HEADER_SIZE + 1024 * FingerprintTable.SLOT_SIZE);
+        assertTrue(fingerprintTable.add(42L));
+        assertFalse(fingerprintTable.add(42L));
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION);
+        fingerprintTable.add(42L);
+        fingerprintTable.add(43L << 16);
+        fingerprintTable.remove(43L << 16);
+        fingerprintTable.flush();
+
+        MappedFingerprintTable reopenedFingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION);
+        assertTrue(reopenedFingerprintTable.contains(42L));
+        assertFalse(reopenedFingerprintTable.add(42L));
+        assertFalse(reopenedFingerprintTable.contains(43L << 16));
+
+        // Both mappings share the same file
+        assertTrue(reopenedFingerprintTable.add(44L << 16));
+        assertTrue(fingerprintTable.contains(44L << 16));
+    }
+
+    @Test
+    public void testReopenWithDifferentLayout() throws IOException {
+        try (MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION)) {
+            fingerprintTable.add(42L);
+
+            expectThrows(IOException.class, () -> new MappedFingerprintTable(this.path, 2048, RETENTION));
+            expectThrows(IOException.class, () -> new MappedFingerprintTable(this.path, 1024, Duration.ofMinutes(5)));
+
+            // The table is left untouched for the processes that still use it
+            assertEquals(Files.size(this.path), MappedFingerprintTable.HEADER_SIZE + 1024 * FingerprintTable.SLOT_SIZE);
+            assertTrue(fingerprintTable.contains(42L));
+        }
+
+        try (MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION)) {
+            assertTrue(fingerprintTable.contains(42L));
+        }
+    }
+
+    @Test
+    public void testReopenIncompleteFile() throws IOException {
+        new MappedFingerprintTable(this.path, 1024, RETENTION).add(42L);
+        this.writeHeaderLong(0, 0L);
+
+        assertFalse(new MappedFingerprintTable(this.path, 1024, RETENTION).contains(42L));
+    }
+
+    @Test
+    public void testReopenCorruptedHeader() throws IOException {
+        try (MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION)) {
+            fingerprintTable.add(42L);
+        }
+        this.writeHeaderLong(MappedFingerprintTable.CHECKSUM_OFFSET, 0L);
+
+        expectThrows(IOException.class, () -> new MappedFingerprintTable(this.path, 1024, RETENTION));
+        assertEquals(Files.size(this.path), MappedFingerprintTable.HEADER_SIZE + 1024 * FingerprintTable.SLOT_SIZE);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testOpenFileWithDifferentByteOrder() throws IOException {
+        new MappedFingerprintTable(this.path, 1024, RETENTION).close();
+        this.writeHeaderLong(0, Long.reverseBytes(MappedFingerprintTable.MAGIC));
+
+        new MappedFingerprintTable(this.path, 1024, RETENTION);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        MappedFingerprintTable fingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION);
+        fingerprintTable.add(42L);
+        fingerprintTable.close();
+        fingerprintTable.close();
+
+        expectThrows(IllegalStateException.class, () -> fingerprintTable.add(43L));
+        expectThrows(IllegalStateException.class, () -> fingerprintTable.contains(42L));
+        expectThrows(IllegalStateException.class, () -> fingerprintTable.remove(42L));
+        expectThrows(IllegalStateException.class, fingerprintTable::flush);
+        assertEquals(fingerprintTable.getCapacity(), 1024);
+
+        try (MappedFingerprintTable reopenedFingerprintTable = new MappedFingerprintTable(this.path, 1024, RETENTION)) {
+            assertTrue(reopenedFingerprintTable.contains(42L));
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testOpenForeignFile() throws IOException {
+        Files.write(this.path, "Not a fingerprint table".getBytes());
+
+        new MappedFingerprintTable(this.path, 1024, RETENTION);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRetention() throws IOException {
+        try {
+            new MappedFingerprintTable(this.path, 1024, Duration.ofMillis(1));
+        } finally {
+            assertFalse(Files.exists(this.path));
+        }
+    }
+
+    /**
+     * Overwrite a long of the header of the table file.
+     *
+     * @param offset The offset of the long
+     * @param value  The value to write
+     * @throws IOException Thrown when the file cannot be written
+     */
+    private void writeHeaderLong(int offset, long value) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(this.path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder());
+            buffer.putLong(0, value);
+            fileChannel.write(buffer, offset);
+        }
+    }
+}
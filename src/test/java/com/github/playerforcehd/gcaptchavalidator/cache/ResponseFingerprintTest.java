@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.cache;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link ResponseFingerprint}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ResponseFingerprintTest {
+    @Test
+    public void testOf() {
+        ResponseFingerprint responseFingerprint = ResponseFingerprint.of("SomeResponse", "127.0.0.1");
+
+        assertEquals(responseFingerprint, ResponseFingerprint.of("SomeResponse", "127.0.0.1"));
+        assertEquals(responseFingerprint.hashCode(), ResponseFingerprint.of("SomeResponse", "127.0.0.1").hashCode());
+        assertNotEquals(responseFingerprint, ResponseFingerprint.of("SomeResponse", "127.0.0.2"));
+        assertNotEquals(responseFingerprint, ResponseFingerprint.of("OtherResponse", "127.0.0.1"));
+        // The separator prevents that a part of the response is treated as remote IP
+        assertNotEquals(ResponseFingerprint.of("ab", "c"), ResponseFingerprint.of("a", "bc"));
+    }
+
+    @Test
+    public void testOfWithoutRemoteIP() {
+        assertEquals(ResponseFingerprint.of("SomeResponse", null), ResponseFingerprint.of("SomeResponse", ""));
+    }
+
+    @Test
+    public void testHash() {
+        // First 128 bits of the SHA-256 hash of "SomeResponse", a NUL byte and "127.0.0.1"
+        ResponseFingerprint responseFingerprint = ResponseFingerprint.of("SomeResponse", "127.0.0.1");
+
+        assertEquals(responseFingerprint.toString(), "be12d033d643f713dad3d266c65e295b");
+    }
+
+    @Test
+    public void testToString() {
+        ResponseFingerprint responseFingerprint = new ResponseFingerprint(0x0123456789abcdefL, -1L);
+
+        assertEquals(responseFingerprint.toString(), "0123456789abcdefffffffffffffffff");
+        assertEquals(responseFingerprint.getHigh(), 0x0123456789abcdefL);
+        assertEquals(responseFingerprint.getLow(), -1L);
+    }
+}
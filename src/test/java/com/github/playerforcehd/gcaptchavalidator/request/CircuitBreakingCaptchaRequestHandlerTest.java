@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreaker;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.CircuitBreakerState;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link CircuitBreakingCaptchaRequestHandler}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CircuitBreakingCaptchaRequestHandlerTest {
+    /**
+     * The configuration passed to the handlers
+     */
+    private final CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Secret");
+
+    @Test
+    public void testRequest() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn("{\"success\": true}");
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler);
+
+        assertEquals(
+            circuitBreakingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        assertEquals(
+            circuitBreakingCaptchaRequestHandler.requestBytes(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8))
+        );
+        assertEquals(
+            circuitBreakingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .join(),
+            "{\"success\": true}"
+        );
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testRequestFailsFastWhileOpen() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(new CaptchaRequestHandlerException("Test"));
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                circuitBreakingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+                fail();
+            } catch (CaptchaRequestHandlerException e) {
+                assertFalse(e instanceof CircuitBreakerOpenException);
+            }
+        }
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.OPEN);
+
+        assertThrows(
+            CircuitBreakerOpenException.class,
+            () -> circuitBreakingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        ExecutionException executionException = expectThrows(
+            ExecutionException.class,
+            () -> circuitBreakingCaptchaRequestHandler.requestAsync(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ).get()
+        );
+        assertTrue(executionException.getCause() instanceof CircuitBreakerOpenException);
+        verify(captchaRequestHandler, times(2)).request(any(), any(), any());
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getNotPermittedCalls(), 2);
+    }
+
+    @Test
+    public void testRequestRecordsRuntimeExceptions() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(new IllegalStateException("Test"));
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                IllegalStateException.class,
+                () -> circuitBreakingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "", "")
+            );
+        }
+
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.OPEN);
+    }
+
+    @Test
+    public void testExpiredDeadlinesAreNotRecorded() throws CaptchaRequestHandlerException {
+        DeadlineCaptchaRequestHandler captchaRequestHandler = mock(DeadlineCaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any(), any()))
+            .thenThrow(new DeadlineExceededException("Test"));
+        when(captchaRequestHandler.requestAsync(any(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                CompletableFuture<String> request = new CompletableFuture<>();
+                request.completeExceptionally(new DeadlineExceededException("Test"));
+                return request;
+            });
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+        Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                DeadlineExceededException.class,
+                () -> circuitBreakingCaptchaRequestHandler.request(
+                    this.captchaValidatorConfiguration,
+                    "SomeResponse",
+                    "",
+                    deadline
+                )
+            );
+            ExecutionException executionException = expectThrows(
+                ExecutionException.class,
+                () -> circuitBreakingCaptchaRequestHandler.requestAsync(
+                    this.captchaValidatorConfiguration,
+                    "SomeResponse",
+                    "",
+                    deadline
+                ).get()
+            );
+            assertTrue(executionException.getCause() instanceof DeadlineExceededException);
+        }
+
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testExpiredDeadlinesOfByteRequestsAreNotRecorded() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        when(captchaRequestHandler.requestBytes(any(), any(), any(), any()))
+            .thenThrow(new DeadlineExceededException("Test"));
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                DeadlineExceededException.class,
+                () -> circuitBreakingCaptchaRequestHandler.requestBytes(
+                    this.captchaValidatorConfiguration,
+                    "SomeResponse",
+                    ""
+                )
+            );
+        }
+
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testRequestBytesWithByteBufferHandler() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        ByteBuffer body = ByteBuffer.wrap(new byte[]{'{', '}'});
+        when(captchaRequestHandler.requestBytes(
+            eq(this.captchaValidatorConfiguration),
+            eq("SomeResponse"),
+            eq(""),
+            any(Deadline.class)
+        ))
+            .thenReturn(body)
+            .thenThrow(new CaptchaRequestHandlerException("Test"));
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+
+        assertSame(
+            circuitBreakingCaptchaRequestHandler.requestBytes(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            body
+        );
+        assertThrows(
+            CaptchaRequestHandlerException.class,
+            () -> circuitBreakingCaptchaRequestHandler.requestBytes(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            )
+        );
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestAsyncWithAsyncHandler() {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new CaptchaRequestHandlerException("Test"));
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(failedRequest);
+
+        CircuitBreakingCaptchaRequestHandler circuitBreakingCaptchaRequestHandler =
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker());
+        for (int i = 0; i < 2; i++) {
+            assertTrue(circuitBreakingCaptchaRequestHandler.requestAsync(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ).isCompletedExceptionally());
+        }
+
+        assertEquals(circuitBreakingCaptchaRequestHandler.getCircuitBreaker().getState(), CircuitBreakerState.OPEN);
+        verify(captchaRequestHandler, times(2)).requestAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testValidateWhileOpen() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(new CaptchaRequestHandlerException("Test"));
+
+        GCaptchaValidator gCaptchaValidator = new GCaptchaValidator(
+            new CircuitBreakingCaptchaRequestHandler(captchaRequestHandler, this.createCircuitBreaker()),
+            this.captchaValidatorConfiguration
+        );
+        for (int i = 0; i < 3; i++) {
+            assertEquals(
+                gCaptchaValidator.validate("SomeResponse").getErrors(),
+                new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+            );
+        }
+
+        verify(captchaRequestHandler, times(2)).request(any(), any(), any());
+    }
+
+    /**
+     * Create a breaker that opens after two failed calls and stays open for a minute.
+     *
+     * @return The created breaker
+     */
+    private CircuitBreaker createCircuitBreaker() {
+        return new CircuitBreaker(2, 2, 1, 0.5f, 1f, Duration.ofSeconds(10), Duration.ofMinutes(1), System::nanoTime);
+    }
+}
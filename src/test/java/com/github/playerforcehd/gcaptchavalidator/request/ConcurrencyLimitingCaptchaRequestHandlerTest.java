@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.AdaptiveConcurrencyLimiter;
+import org.testng.annotations.Test;
+
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link ConcurrencyLimitingCaptchaRequestHandler}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ConcurrencyLimitingCaptchaRequestHandlerTest {
+    /**
+     * The configuration passed to the handlers
+     */
+    private final CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Secret");
+
+    @Test
+    public void testRequest() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn("{\"success\": true}");
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(captchaRequestHandler);
+
+        assertEquals(
+            concurrencyLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        assertEquals(
+            concurrencyLimitingCaptchaRequestHandler.requestBytes(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ),
+            ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8))
+        );
+        assertEquals(
+            concurrencyLimitingCaptchaRequestHandler.requestAsync(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ).join(),
+            "{\"success\": true}"
+        );
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter =
+            concurrencyLimitingCaptchaRequestHandler.getConcurrencyLimiter();
+        assertEquals(concurrencyLimiter.getInFlight(), 0);
+        assertTrue(concurrencyLimiter.getNoLoadRttNanos() >= 0);
+    }
+
+    @Test
+    public void testRequestFailsFastOverLimit() throws CaptchaRequestHandlerException {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest);
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                new AdaptiveConcurrencyLimiter(1, 1, 1)
+            );
+
+        CompletableFuture<String> result = concurrencyLimitingCaptchaRequestHandler.requestAsync(
+            this.captchaValidatorConfiguration,
+            "SomeResponse",
+            ""
+        );
+        assertThrows(
+            ConcurrencyLimitExceededException.class,
+            () -> concurrencyLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "", "")
+        );
+        ExecutionException executionException = expectThrows(
+            ExecutionException.class,
+            () -> concurrencyLimitingCaptchaRequestHandler.requestAsync(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ).get()
+        );
+        assertTrue(executionException.getCause() instanceof ConcurrencyLimitExceededException);
+
+        slowRequest.complete("{\"success\": true}");
+        assertEquals(result.join(), "{\"success\": true}");
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter =
+            concurrencyLimitingCaptchaRequestHandler.getConcurrencyLimiter();
+        assertEquals(concurrencyLimiter.getInFlight(), 0);
+        assertEquals(concurrencyLimiter.getRejections(), 2);
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestWaitsForPermit() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn("{\"success\": true}");
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                new AdaptiveConcurrencyLimiter(1, 1, 1),
+                Duration.ofSeconds(5)
+            );
+
+        concurrencyLimitingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+        ValidationExecutors.scheduler().schedule(
+            () -> slowRequest.complete("{\"success\": true}"),
+            50,
+            TimeUnit.MILLISECONDS
+        );
+
+        assertEquals(
+            concurrencyLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        assertEquals(concurrencyLimitingCaptchaRequestHandler.getConcurrencyLimiter().getRejections(), 0);
+    }
+
+    @Test
+    public void testWaitIsBoundedByDeadline() throws CaptchaRequestHandlerException {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(new CompletableFuture<>());
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                new AdaptiveConcurrencyLimiter(1, 1, 1),
+                Duration.ofSeconds(5)
+            );
+        concurrencyLimitingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        long start = System.nanoTime();
+        assertThrows(
+            ConcurrencyLimitExceededException.class,
+            () -> concurrencyLimitingCaptchaRequestHandler.request(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                Deadline.after(Duration.ofMillis(50))
+            )
+        );
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testOverloadFailuresDecreaseLimit() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new CaptchaRequestHandlerException("Test", new SocketTimeoutException()))
+            .thenThrow(new HttpStatusException(429, null))
+            .thenThrow(new HttpStatusException(400, null))
+            .thenThrow(new IllegalStateException("Test"));
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                new AdaptiveConcurrencyLimiter(10, 1, 10)
+            );
+        for (int i = 0; i < 3; i++) {
+            assertThrows(
+                CaptchaRequestHandlerException.class,
+                () -> concurrencyLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "", "")
+            );
+        }
+        assertThrows(
+            IllegalStateException.class,
+            () -> concurrencyLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "", "")
+        );
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter =
+            concurrencyLimitingCaptchaRequestHandler.getConcurrencyLimiter();
+        // 10 * 0.9 * 0.9, the client error and the local failure do not change the limit
+        assertEquals(concurrencyLimiter.getLimit(), 8);
+        assertEquals(concurrencyLimiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testExpiredDeadlinesDoNotDecreaseLimit() throws CaptchaRequestHandlerException {
+        DeadlineCaptchaRequestHandler captchaRequestHandler = mock(DeadlineCaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any(), any()))
+            .thenThrow(new DeadlineExceededException("Test"));
+
+        ConcurrencyLimitingCaptchaRequestHandler concurrencyLimitingCaptchaRequestHandler =
+            new ConcurrencyLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                new AdaptiveConcurrencyLimiter(10, 1, 10)
+            );
+        assertThrows(
+            DeadlineExceededException.class,
+            () -> concurrencyLimitingCaptchaRequestHandler.request(
+                this.captchaValidatorConfiguration,
+                "",
+                "",
+                Deadline.after(Duration.ofSeconds(1))
+            )
+        );
+
+        assertEquals(concurrencyLimitingCaptchaRequestHandler.getConcurrencyLimiter().getLimit(), 10);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.LatencyTracker;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.RetryBudget;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link HedgingCaptchaRequestHandler}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class HedgingCaptchaRequestHandlerTest {
+    /**
+     * The configuration passed to the handlers
+     */
+    private final CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Secret");
+
+    @Test
+    public void testRequestIsNotHedgedWithoutLatencies() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn("{\"success\": true}");
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            new HedgingCaptchaRequestHandler(captchaRequestHandler);
+
+        assertEquals(
+            hedgingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        verify(captchaRequestHandler, times(1)).request(any(), any(), any());
+        assertEquals(hedgingCaptchaRequestHandler.getHedges(), 0);
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest)
+            .thenReturn(CompletableFuture.completedFuture("{\"success\": true}"));
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            this.createHandler(captchaRequestHandler, new RetryBudget(0.5f, 1));
+
+        assertEquals(
+            hedgingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .get(5, TimeUnit.SECONDS),
+            "{\"success\": true}"
+        );
+        assertTrue(slowRequest.isCancelled());
+        assertEquals(hedgingCaptchaRequestHandler.getHedges(), 1);
+        assertEquals(hedgingCaptchaRequestHandler.getWonHedges(), 1);
+    }
+
+    @Test
+    public void testDuplicateAnswerOfHedgeDoesNotWin() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest)
+            .thenReturn(hedge);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            this.createHandler(captchaRequestHandler, new RetryBudget(0.5f, 1));
+        CompletableFuture<String> result =
+            hedgingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+        verify(captchaRequestHandler, timeout(5_000).times(2)).requestAsync(any(), any(), any());
+
+        hedge.complete("{\"success\": false, \"error-codes\": [\"timeout-or-duplicate\"]}");
+        assertFalse(result.isDone());
+        slowRequest.complete("{\"success\": true}");
+
+        assertEquals(result.get(5, TimeUnit.SECONDS), "{\"success\": true}");
+        assertEquals(hedgingCaptchaRequestHandler.getWonHedges(), 0);
+    }
+
+    @Test
+    public void testDuplicateAnswerWinsIfNothingElseArrives() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest)
+            .thenReturn(hedge);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            this.createHandler(captchaRequestHandler, new RetryBudget(0.5f, 1));
+        CompletableFuture<String> result =
+            hedgingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+        verify(captchaRequestHandler, timeout(5_000).times(2)).requestAsync(any(), any(), any());
+
+        String duplicate = "{\"success\": false, \"error-codes\": [\"timeout-or-duplicate\"]}";
+        hedge.complete(duplicate);
+        slowRequest.completeExceptionally(new CaptchaRequestHandlerException("Test"));
+
+        assertEquals(result.get(5, TimeUnit.SECONDS), duplicate);
+    }
+
+    @Test
+    public void testFailureWinsIfBothRequestsFail() {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest)
+            .thenReturn(hedge);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            this.createHandler(captchaRequestHandler, new RetryBudget(0.5f, 1));
+        CompletableFuture<String> result =
+            hedgingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+        verify(captchaRequestHandler, timeout(5_000).times(2)).requestAsync(any(), any(), any());
+
+        CaptchaRequestHandlerException failure = new CaptchaRequestHandlerException("Test");
+        slowRequest.completeExceptionally(failure);
+        assertFalse(result.isDone());
+        hedge.completeExceptionally(new CaptchaRequestHandlerException("Other"));
+
+        ExecutionException executionException = expectThrows(
+            ExecutionException.class,
+            () -> result.get(5, TimeUnit.SECONDS)
+        );
+        assertSame(executionException.getCause(), failure);
+    }
+
+    @Test
+    public void testHedgesAreCappedByBudget() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            this.createHandler(captchaRequestHandler, new RetryBudget(0f, 0));
+        CompletableFuture<String> result =
+            hedgingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hedgingCaptchaRequestHandler.getBudgetExhaustedHedges() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        slowRequest.complete("{\"success\": true}");
+
+        assertEquals(result.get(5, TimeUnit.SECONDS), "{\"success\": true}");
+        assertEquals(hedgingCaptchaRequestHandler.getBudgetExhaustedHedges(), 1);
+        assertEquals(hedgingCaptchaRequestHandler.getHedges(), 0);
+        verify(captchaRequestHandler, times(1)).requestAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestRethrowsFailure() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        HttpStatusException failure = new HttpStatusException(503, null);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(failure);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            new HedgingCaptchaRequestHandler(captchaRequestHandler);
+
+        CaptchaRequestHandlerException exception = expectThrows(
+            CaptchaRequestHandlerException.class,
+            () -> hedgingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        assertSame(exception, failure);
+    }
+
+    @Test
+    public void testSuccessfulRequestsAreTracked() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler = new HedgingCaptchaRequestHandler(
+            captchaRequestHandler,
+            new LatencyTracker(0.95f, 5),
+            new RetryBudget(),
+            Duration.ZERO
+        );
+        for (int i = 0; i < 5; i++) {
+            hedgingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+        }
+
+        assertTrue(hedgingCaptchaRequestHandler.getLatencyTracker().getPercentileNanos() > 0);
+    }
+
+    @Test
+    public void testRequestFailsWhenDeadlineExpires() {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest);
+
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler =
+            new HedgingCaptchaRequestHandler(captchaRequestHandler);
+
+        assertThrows(
+            DeadlineExceededException.class,
+            () -> hedgingCaptchaRequestHandler.request(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                Deadline.after(Duration.ofMillis(50))
+            )
+        );
+        // The request is cancelled by whichever thread noticed the expired deadline first
+        long cancelDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!slowRequest.isCancelled() && System.nanoTime() < cancelDeadline) {
+            Thread.yield();
+        }
+        assertTrue(slowRequest.isCancelled());
+    }
+
+    @Test
+    public void testRequestIsNotHedgedAfterDeadline() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> slowRequest = new CompletableFuture<>();
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(slowRequest);
+
+        LatencyTracker latencyTracker = new LatencyTracker(0.5f, 1);
+        latencyTracker.record(TimeUnit.SECONDS.toNanos(1));
+        HedgingCaptchaRequestHandler hedgingCaptchaRequestHandler = new HedgingCaptchaRequestHandler(
+            captchaRequestHandler,
+            latencyTracker,
+            new RetryBudget(),
+            Duration.ZERO
+        );
+
+        CompletableFuture<String> result = hedgingCaptchaRequestHandler.requestAsync(
+            this.captchaValidatorConfiguration,
+            "SomeResponse",
+            "",
+            Deadline.after(Duration.ofMillis(100))
+        );
+        slowRequest.complete("{\"success\": true}");
+
+        assertEquals(result.get(5, TimeUnit.SECONDS), "{\"success\": true}");
+        assertEquals(hedgingCaptchaRequestHandler.getHedges(), 0);
+        verify(captchaRequestHandler, times(1)).requestAsync(any(), any(), any());
+    }
+
+    /**
+     * Create a handler under test that hedges every request after one millisecond
+     *
+     * @param captchaRequestHandler The handler to wrap
+     * @param hedgeBudget           The budget that pays for the hedges
+     * @return The created handler
+     */
+    private HedgingCaptchaRequestHandler createHandler(
+        CaptchaRequestHandler captchaRequestHandler,
+        RetryBudget hedgeBudget
+    ) {
+        LatencyTracker latencyTracker = new LatencyTracker(0.5f, 1);
+        latencyTracker.record(TimeUnit.MILLISECONDS.toNanos(1));
+
+        return new HedgingCaptchaRequestHandler(captchaRequestHandler, latencyTracker, hedgeBudget, Duration.ZERO);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.TokenBucket;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link RateLimitingCaptchaRequestHandler}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RateLimitingCaptchaRequestHandlerTest {
+    /**
+     * The configuration passed to the handlers
+     */
+    private final CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Secret");
+
+    @Test
+    public void testRequest() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn("{\"success\": true}");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler =
+            new RateLimitingCaptchaRequestHandler(captchaRequestHandler, 1, 3);
+
+        assertEquals(
+            rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        assertEquals(
+            rateLimitingCaptchaRequestHandler.requestBytes(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8))
+        );
+        assertEquals(
+            rateLimitingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .join(),
+            "{\"success\": true}"
+        );
+        assertEquals(rateLimitingCaptchaRequestHandler.getRejections(), 0);
+    }
+
+    @Test
+    public void testRequestFailsFastOverRate() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler =
+            new RateLimitingCaptchaRequestHandler(captchaRequestHandler, 0.1, 1);
+
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        ExecutionException executionException = expectThrows(
+            ExecutionException.class,
+            () -> rateLimitingCaptchaRequestHandler.requestAsync(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                ""
+            ).get()
+        );
+        assertTrue(executionException.getCause() instanceof RateLimitExceededException);
+
+        verify(captchaRequestHandler, times(1)).request(any(), any(), any());
+        assertEquals(rateLimitingCaptchaRequestHandler.getRejections(), 2);
+    }
+
+    @Test
+    public void testSecretsHaveSeparateBuckets() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+        CaptchaValidatorConfiguration otherConfiguration = new ValidatorConfiguration("OtherSecret");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler =
+            new RateLimitingCaptchaRequestHandler(captchaRequestHandler, 0.1, 1);
+
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+        rateLimitingCaptchaRequestHandler.request(otherConfiguration, "SomeResponse", "");
+        // Configurations with the same secret share their bucket
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.request(
+                new ValidatorConfiguration("OtherSecret"),
+                "SomeResponse",
+                ""
+            )
+        );
+
+        assertNotSame(
+            rateLimitingCaptchaRequestHandler.getTokenBucket(this.captchaValidatorConfiguration),
+            rateLimitingCaptchaRequestHandler.getTokenBucket(otherConfiguration)
+        );
+        verify(captchaRequestHandler, times(2)).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestWaitsForToken() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            20,
+            1,
+            Duration.ofSeconds(1)
+        );
+
+        long start = System.nanoTime();
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+        assertEquals(
+            rateLimitingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .get(5, TimeUnit.SECONDS),
+            "{\"success\": true}"
+        );
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        verify(captchaRequestHandler, times(3)).request(any(), any(), any());
+        assertEquals(rateLimitingCaptchaRequestHandler.getRejections(), 0);
+    }
+
+    @Test
+    public void testWaitIsBoundedByDeadline() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            1,
+            1,
+            Duration.ofSeconds(5)
+        );
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        long start = System.nanoTime();
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.request(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                Deadline.after(Duration.ofMillis(100))
+            )
+        );
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        verify(captchaRequestHandler, times(1)).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestBytesWaitIsBoundedByDeadline() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        ByteBuffer body = ByteBuffer.wrap("{\"success\": true}".getBytes(StandardCharsets.UTF_8));
+        Deadline deadline = Deadline.after(Duration.ofSeconds(5));
+        when(captchaRequestHandler.requestBytes(any(), any(), any(), any())).thenReturn(body);
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            1,
+            1,
+            Duration.ofSeconds(5)
+        );
+        assertSame(
+            rateLimitingCaptchaRequestHandler.requestBytes(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                deadline
+            ),
+            body
+        );
+
+        long start = System.nanoTime();
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.requestBytes(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                Deadline.after(Duration.ofMillis(100))
+            )
+        );
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        // The deadline is passed on to the wrapped handler
+        verify(captchaRequestHandler, times(1))
+            .requestBytes(this.captchaValidatorConfiguration, "SomeResponse", "", deadline);
+    }
+
+    @Test
+    public void testIdleTokenBucketsAreEvicted() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+        AtomicLong clock = new AtomicLong();
+        CaptchaValidatorConfiguration idleConfiguration = new ValidatorConfiguration("IdleSecret");
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            () -> new TokenBucket(10, 1, clock::get),
+            Duration.ZERO,
+            Duration.ofMillis(1)
+        );
+        rateLimitingCaptchaRequestHandler.request(idleConfiguration, "SomeResponse", "");
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.request(idleConfiguration, "SomeResponse", "")
+        );
+        TokenBucket idleTokenBucket = rateLimitingCaptchaRequestHandler.getTokenBucket(idleConfiguration);
+
+        // The bucket is full again after 100ms and idle another 100ms later
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        Thread.sleep(5);
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        assertEquals(rateLimitingCaptchaRequestHandler.getTokenBucketCount(), 1);
+        assertNotSame(rateLimitingCaptchaRequestHandler.getTokenBucket(idleConfiguration), idleTokenBucket);
+        // The rejections of evicted buckets are still counted
+        assertEquals(rateLimitingCaptchaRequestHandler.getRejections(), 1);
+    }
+
+    @Test
+    public void testBusyTokenBucketsAreKept() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn("{\"success\": true}");
+        AtomicLong clock = new AtomicLong();
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            () -> new TokenBucket(1, 1, clock::get),
+            Duration.ZERO,
+            Duration.ofMillis(1)
+        );
+        rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        // The bucket is not yet full again, so evicting it would hand out another token
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        Thread.sleep(5);
+        assertThrows(
+            RateLimitExceededException.class,
+            () -> rateLimitingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        assertEquals(rateLimitingCaptchaRequestHandler.getTokenBucketCount(), 1);
+    }
+
+    @Test
+    public void testCancelledDelayedRequestIsNotExecuted() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        when(captchaRequestHandler.requestAsync(any(), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture("{\"success\": true}"));
+
+        RateLimitingCaptchaRequestHandler rateLimitingCaptchaRequestHandler = new RateLimitingCaptchaRequestHandler(
+            captchaRequestHandler,
+            20,
+            1,
+            Duration.ofSeconds(1)
+        );
+        rateLimitingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "");
+
+        CompletableFuture<String> delayedRequest = rateLimitingCaptchaRequestHandler.requestAsync(
+            this.captchaValidatorConfiguration,
+            "SomeResponse",
+            ""
+        );
+        assertFalse(delayedRequest.isDone());
+        delayedRequest.cancel(false);
+        Thread.sleep(100);
+
+        verify(captchaRequestHandler, times(1)).requestAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RateLimitingCaptchaRequestHandler(captchaRequestHandler, 0, 1)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RateLimitingCaptchaRequestHandler(captchaRequestHandler, 1, 1, Duration.ofSeconds(-1))
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RateLimitingCaptchaRequestHandler(
+                captchaRequestHandler,
+                () -> new TokenBucket(1, 1),
+                Duration.ZERO,
+                Duration.ZERO
+            )
+        );
+    }
+}
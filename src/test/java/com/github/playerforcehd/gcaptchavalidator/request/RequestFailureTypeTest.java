@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link RequestFailureType}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RequestFailureTypeTest {
+    @Test
+    public void testOf() {
+        assertEquals(RequestFailureType.of(wrap(new ConnectException())), RequestFailureType.CONNECT);
+        assertEquals(RequestFailureType.of(wrap(new UnknownHostException())), RequestFailureType.CONNECT);
+        assertEquals(RequestFailureType.of(wrap(new SocketTimeoutException())), RequestFailureType.TIMEOUT);
+        assertEquals(RequestFailureType.of(wrap(new SocketException())), RequestFailureType.CONNECTION_CLOSED);
+        assertEquals(RequestFailureType.of(wrap(new EOFException())), RequestFailureType.CONNECTION_CLOSED);
+        assertEquals(RequestFailureType.of(wrap(new IOException())), RequestFailureType.OTHER);
+        assertEquals(RequestFailureType.of(new CaptchaRequestHandlerException("Test")), RequestFailureType.OTHER);
+        assertEquals(
+            RequestFailureType.of(new CircuitBreakerOpenException("Test")),
+            RequestFailureType.OTHER
+        );
+        assertEquals(
+            RequestFailureType.of(new ConcurrencyLimitExceededException("Test")),
+            RequestFailureType.OTHER
+        );
+        assertEquals(
+            RequestFailureType.of(new RateLimitExceededException("Test")),
+            RequestFailureType.OTHER
+        );
+    }
+
+    @Test
+    public void testOfHttpStatus() {
+        assertEquals(RequestFailureType.of(new HttpStatusException(500, null)), RequestFailureType.SERVER_ERROR);
+        assertEquals(RequestFailureType.of(new HttpStatusException(503, null)), RequestFailureType.SERVER_ERROR);
+        assertEquals(
+            RequestFailureType.of(new HttpStatusException(429, null)),
+            RequestFailureType.TOO_MANY_REQUESTS
+        );
+    }
+
+    @Test
+    public void testOfUnwrapsAsyncFailures() {
+        assertEquals(
+            RequestFailureType.of(new CompletionException(wrap(new ConnectException()))),
+            RequestFailureType.CONNECT
+        );
+        assertEquals(
+            RequestFailureType.of(new ExecutionException(new HttpStatusException(502, null))),
+            RequestFailureType.SERVER_ERROR
+        );
+    }
+
+    @Test
+    public void testIsTemporaryFailure() {
+        assertTrue(HttpStatusException.isTemporaryFailure(429));
+        assertTrue(HttpStatusException.isTemporaryFailure(500));
+        assertTrue(HttpStatusException.isTemporaryFailure(599));
+        assertFalse(HttpStatusException.isTemporaryFailure(200));
+        assertFalse(HttpStatusException.isTemporaryFailure(400));
+        assertFalse(HttpStatusException.isTemporaryFailure(404));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(HttpStatusException.parseRetryAfter("120"), Duration.ofSeconds(120));
+        assertEquals(HttpStatusException.parseRetryAfter(" 0 "), Duration.ZERO);
+        assertNull(HttpStatusException.parseRetryAfter(null));
+        assertNull(HttpStatusException.parseRetryAfter(""));
+        assertNull(HttpStatusException.parseRetryAfter("-1"));
+        assertNull(HttpStatusException.parseRetryAfter("soon"));
+        assertEquals(
+            HttpStatusException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"),
+            Duration.ZERO
+        );
+
+        String future = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+            ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(10)
+        );
+        Duration retryAfter = HttpStatusException.parseRetryAfter(future);
+        assertNotNull(retryAfter);
+        assertTrue(retryAfter.compareTo(Duration.ofMinutes(9)) > 0);
+        assertTrue(retryAfter.compareTo(Duration.ofMinutes(10)) <= 0);
+    }
+
+    /**
+     * Wrap a failure the way the request handlers report it
+     *
+     * @param cause The failure to wrap
+     * @return A {@link CaptchaRequestHandlerException} caused by the failure
+     */
+    private static CaptchaRequestHandlerException wrap(Throwable cause) {
+        return new CaptchaRequestHandlerException("Test", cause);
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.playerforcehd.gcaptchavalidator.util.resilience.RetryBudget;
+import org.testng.annotations.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link RetryingCaptchaRequestHandler}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RetryingCaptchaRequestHandlerTest {
+    /**
+     * The configuration passed to the handlers
+     */
+    private final CaptchaValidatorConfiguration captchaValidatorConfiguration = new ValidatorConfiguration("Secret");
+
+    @Test
+    public void testRequestRetriesServerErrors() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenThrow(new HttpStatusException(503, null))
+            .thenThrow(new CaptchaRequestHandlerException("Test", new ConnectException()))
+            .thenReturn("{\"success\": true}");
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 3);
+
+        assertEquals(
+            retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        verify(captchaRequestHandler, times(3)).request(any(), any(), any());
+        assertEquals(retryingCaptchaRequestHandler.getRetries(), 2);
+    }
+
+    @Test
+    public void testRequestGivesUpAfterMaxAttempts() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        HttpStatusException failure = new HttpStatusException(500, null);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(failure);
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 3);
+
+        CaptchaRequestHandlerException exception = expectThrows(
+            CaptchaRequestHandlerException.class,
+            () -> retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        assertSame(exception, failure);
+        verify(captchaRequestHandler, times(3)).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestDoesNotRetryTimeoutsOrUnknownFailures() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new CaptchaRequestHandlerException("Test", new SocketTimeoutException()))
+            .thenThrow(new CaptchaRequestHandlerException("Test"));
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 3);
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                CaptchaRequestHandlerException.class,
+                () -> retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+            );
+        }
+        verify(captchaRequestHandler, times(2)).request(any(), any(), any());
+        assertEquals(retryingCaptchaRequestHandler.getRetries(), 0);
+    }
+
+    @Test
+    public void testRequestRetriesConfiguredFailures() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new CaptchaRequestHandlerException("Test", new SocketTimeoutException()))
+            .thenReturn("{\"success\": true}");
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = new RetryingCaptchaRequestHandler(
+            captchaRequestHandler,
+            2,
+            Duration.ofMillis(1),
+            Duration.ofMillis(5),
+            new RetryBudget(),
+            EnumSet.of(RequestFailureType.TIMEOUT)
+        );
+
+        assertEquals(
+            retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+    }
+
+    @Test
+    public void testRequestHonoursRetryAfter() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new HttpStatusException(429, Duration.ofMillis(50)))
+            .thenReturn("{\"success\": true}");
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = new RetryingCaptchaRequestHandler(
+            captchaRequestHandler,
+            2,
+            Duration.ZERO,
+            Duration.ofSeconds(1)
+        );
+
+        long start = System.nanoTime();
+        assertEquals(
+            retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            "{\"success\": true}"
+        );
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testRequestDoesNotWaitForTooLongRetryAfter() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new HttpStatusException(429, Duration.ofMinutes(1)));
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 3);
+
+        assertThrows(
+            HttpStatusException.class,
+            () -> retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+        );
+        verify(captchaRequestHandler, times(1)).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestStopsWhenBudgetIsExhausted() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(new HttpStatusException(503, null));
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = new RetryingCaptchaRequestHandler(
+            captchaRequestHandler,
+            3,
+            Duration.ZERO,
+            Duration.ZERO,
+            new RetryBudget(0f, 1),
+            RetryingCaptchaRequestHandler.DEFAULT_RETRYABLE_FAILURES
+        );
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                HttpStatusException.class,
+                () -> retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "")
+            );
+        }
+        // One retry is paid by the budget, afterwards every request is only attempted once
+        verify(captchaRequestHandler, times(3)).request(any(), any(), any());
+        assertEquals(retryingCaptchaRequestHandler.getRetries(), 1);
+        assertEquals(retryingCaptchaRequestHandler.getBudgetExhaustedRetries(), 2);
+    }
+
+    @Test
+    public void testRequestBytesWithByteBufferHandler() throws CaptchaRequestHandlerException {
+        ByteBufferCaptchaRequestHandler captchaRequestHandler = mock(ByteBufferCaptchaRequestHandler.class);
+        ByteBuffer body = ByteBuffer.wrap(new byte[]{'{', '}'});
+        when(captchaRequestHandler.requestBytes(
+            eq(this.captchaValidatorConfiguration),
+            eq("SomeResponse"),
+            eq(""),
+            any(Deadline.class)
+        ))
+            .thenThrow(new HttpStatusException(502, null))
+            .thenReturn(body);
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 2);
+
+        assertSame(
+            retryingCaptchaRequestHandler.requestBytes(this.captchaValidatorConfiguration, "SomeResponse", ""),
+            body
+        );
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestAsyncWithAsyncHandler() throws Exception {
+        AsyncCaptchaRequestHandler captchaRequestHandler = mock(AsyncCaptchaRequestHandler.class);
+        CompletableFuture<String> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new HttpStatusException(503, null));
+        when(captchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", ""))
+            .thenReturn(failedRequest)
+            .thenReturn(CompletableFuture.completedFuture("{\"success\": true}"));
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 2);
+
+        assertEquals(
+            retryingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .get(5, TimeUnit.SECONDS),
+            "{\"success\": true}"
+        );
+        verify(captchaRequestHandler, times(2)).requestAsync(any(), any(), any());
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestAsyncGivesUpAfterMaxAttempts() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        HttpStatusException failure = new HttpStatusException(503, null);
+        when(captchaRequestHandler.request(any(), any(), any())).thenThrow(failure);
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 3);
+
+        ExecutionException executionException = expectThrows(
+            ExecutionException.class,
+            () -> retryingCaptchaRequestHandler.requestAsync(this.captchaValidatorConfiguration, "SomeResponse", "")
+                .get(5, TimeUnit.SECONDS)
+        );
+        assertSame(executionException.getCause(), failure);
+        verify(captchaRequestHandler, times(3)).request(any(), any(), any());
+    }
+
+    @Test
+    public void testRequestDoesNotRetryPastDeadline() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenThrow(new HttpStatusException(429, Duration.ofMillis(500)));
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = new RetryingCaptchaRequestHandler(
+            captchaRequestHandler,
+            3,
+            Duration.ZERO,
+            Duration.ofSeconds(1)
+        );
+
+        long start = System.nanoTime();
+        assertThrows(
+            HttpStatusException.class,
+            () -> retryingCaptchaRequestHandler.request(
+                this.captchaValidatorConfiguration,
+                "SomeResponse",
+                "",
+                Deadline.after(Duration.ofMillis(100))
+            )
+        );
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        verify(captchaRequestHandler, times(1)).request(any(), any(), any());
+        assertEquals(retryingCaptchaRequestHandler.getRetries(), 0);
+    }
+
+    @Test
+    public void testRequestPassesDeadlineToDeadlineHandler() throws CaptchaRequestHandlerException {
+        DeadlineCaptchaRequestHandler captchaRequestHandler = mock(DeadlineCaptchaRequestHandler.class);
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        when(captchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "", deadline))
+            .thenThrow(new HttpStatusException(503, null))
+            .thenReturn("{\"success\": true}");
+
+        RetryingCaptchaRequestHandler retryingCaptchaRequestHandler = this.createHandler(captchaRequestHandler, 2);
+
+        assertEquals(
+            retryingCaptchaRequestHandler.request(this.captchaValidatorConfiguration, "SomeResponse", "", deadline),
+            "{\"success\": true}"
+        );
+        verify(captchaRequestHandler, times(2)).request(any(), any(), any(), eq(deadline));
+        verify(captchaRequestHandler, never()).request(any(), any(), any());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RetryingCaptchaRequestHandler(captchaRequestHandler, 0, Duration.ZERO, Duration.ZERO)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RetryingCaptchaRequestHandler(captchaRequestHandler, 2, Duration.ofSeconds(2), Duration.ZERO)
+        );
+        assertThrows(
+            NullPointerException.class,
+            () -> new RetryingCaptchaRequestHandler(null)
+        );
+    }
+
+    /**
+     * Create a handler under test that waits at most a few milliseconds between its attempts
+     *
+     * @param captchaRequestHandler The handler to wrap
+     * @param maxAttempts           The maximum number of attempts of a request
+     * @return The created handler
+     */
+    private RetryingCaptchaRequestHandler createHandler(CaptchaRequestHandler captchaRequestHandler, int maxAttempts) {
+        return new RetryingCaptchaRequestHandler(
+            captchaRequestHandler,
+            maxAttempts,
+            Duration.ofMillis(1),
+            Duration.ofMillis(5)
+        );
+    }
+}
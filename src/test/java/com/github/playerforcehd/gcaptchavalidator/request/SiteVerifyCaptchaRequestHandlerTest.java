@@ -26,14 +26,23 @@ package com.github.playerforcehd.gcaptchavalidator.request;
 
 import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
 import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 /**
@@ -284,4 +293,231 @@ public class SiteVerifyCaptchaRequestHandlerTest {
             fail("Failed to validate response", e);
         }
     }
+
+    @Test
+    public void testRequestBytes() throws CaptchaRequestHandlerException {
+        final String expectedResult = "{ \"success\": true, \"challenge_ts\": \"2019-06-17T20:33:57Z\", " +
+            "\"hostname\": \"testkey.google.com\" }";
+
+        // Prepare Test on mock server
+        this.setupWebStubs();
+
+        // Test
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        ByteBuffer result = request.requestBytes(configuration, this.acceptedResponse, this.remoteIP);
+
+        assertEquals(result, ByteBuffer.wrap(expectedResult.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testRequestWithChunkedResponse() throws CaptchaRequestHandlerException {
+        final String expectedResult = "{ \"success\": true, \"challenge_ts\": \"2019-06-17T20:33:57Z\", " +
+            "\"hostname\": \"testkey.google.com\", \"padding\": \"" + repeat('x', 3000) + "\" }";
+
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(expectedResult).withChunkedDribbleDelay(5, 20)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        String result = request.request(configuration, this.acceptedResponse, "");
+
+        assertEquals(result, expectedResult);
+    }
+
+    @Test
+    public void testRequestWithErrorStatus() throws CaptchaRequestHandlerException {
+        final String expectedResult = "{ \"success\": false, \"error-codes\": [\"bad-request\"] }";
+
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withStatus(400).withBody(expectedResult)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        String result = request.request(configuration, this.acceptedResponse, "");
+
+        assertEquals(result, expectedResult);
+    }
+
+    @Test
+    public void testRequestWithTemporaryFailureStatus() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withStatus(503).withBody("Service Unavailable")));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        try {
+            request.request(configuration, this.acceptedResponse, "");
+            fail();
+        } catch (HttpStatusException e) {
+            assertEquals(e.getStatusCode(), 503);
+            assertNull(e.getRetryAfter());
+        } catch (CaptchaRequestHandlerException e) {
+            fail("Expected a HttpStatusException", e);
+        }
+    }
+
+    @Test
+    public void testRequestWithTooManyRequestsStatus() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "7")));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        try {
+            request.request(configuration, this.acceptedResponse, "");
+            fail();
+        } catch (HttpStatusException e) {
+            assertEquals(e.getStatusCode(), 429);
+            assertEquals(e.getRetryAfter(), Duration.ofSeconds(7));
+        } catch (CaptchaRequestHandlerException e) {
+            fail("Expected a HttpStatusException", e);
+        }
+    }
+
+    @Test
+    public void testRetriedRequestWithTemporaryFailureStatus() throws CaptchaRequestHandlerException {
+        final String expectedResult = "{ \"success\": true }";
+
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .inScenario("Retry")
+            .whenScenarioStateIs(STARTED)
+            .willReturn(aResponse().withStatus(503))
+            .willSetStateTo("Recovered"));
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .inScenario("Retry")
+            .whenScenarioStateIs("Recovered")
+            .willReturn(aResponse().withBody(expectedResult)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        RetryingCaptchaRequestHandler request = new RetryingCaptchaRequestHandler(
+            new SiteVerifyCaptchaRequestHandler(),
+            2,
+            Duration.ofMillis(1),
+            Duration.ofMillis(10)
+        );
+        String result = request.request(configuration, this.acceptedResponse, "");
+
+        assertEquals(result, expectedResult);
+        assertEquals(request.getRetries(), 1);
+    }
+
+    @Test(expectedExceptions = CaptchaRequestHandlerException.class)
+    public void testRequestWithTooLargeResponse() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(repeat('x', 2048))));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler(1024);
+        request.request(configuration, this.acceptedResponse, "");
+    }
+
+    @Test(expectedExceptions = CaptchaRequestHandlerException.class)
+    public void testRequestWithTooLargeChunkedResponse() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(repeat('x', 2048)).withChunkedDribbleDelay(5, 20)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler(1024);
+        request.request(configuration, this.acceptedResponse, "");
+    }
+
+    @Test
+    public void testRequestWithReadTimeout() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody("{ \"success\": true }").withFixedDelay(2000)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        ).setReadTimeout(Duration.ofMillis(100));
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        long start = System.nanoTime();
+        try {
+            request.request(configuration, this.acceptedResponse, "");
+            fail();
+        } catch (CaptchaRequestHandlerException e) {
+            assertEquals(RequestFailureType.of(e), RequestFailureType.TIMEOUT);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+
+    @Test
+    public void testRequestWithExpiringDeadline() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody("{ \"success\": true }").withFixedDelay(2000)));
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        long start = System.nanoTime();
+        try {
+            request.request(configuration, this.acceptedResponse, "", Deadline.after(Duration.ofMillis(100)));
+            fail();
+        } catch (DeadlineExceededException e) {
+            assertEquals(RequestFailureType.of(e), RequestFailureType.TIMEOUT);
+        } catch (CaptchaRequestHandlerException e) {
+            fail("Expected a DeadlineExceededException", e);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+
+    @Test(expectedExceptions = DeadlineExceededException.class)
+    public void testRequestWithExpiredDeadline() throws CaptchaRequestHandlerException {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        SiteVerifyCaptchaRequestHandler request = new SiteVerifyCaptchaRequestHandler();
+        request.request(configuration, this.acceptedResponse, "", Deadline.after(Duration.ZERO));
+    }
+
+    /**
+     * Create a String that repeats the supplied character
+     */
+    private static String repeat(char character, int count) {
+        StringBuilder stringBuilder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            stringBuilder.append(character);
+        }
+
+        return stringBuilder.toString();
+    }
 }
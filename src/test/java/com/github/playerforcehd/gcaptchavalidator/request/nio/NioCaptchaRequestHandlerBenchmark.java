@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.request.SiteVerifyCaptchaRequestHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark that compares the {@link NioCaptchaRequestHandler} with the {@link SiteVerifyCaptchaRequestHandler}.
+ * <p>
+ * Both handlers validate against a local stub verifier that answers every request after a fixed delay,
+ * which simulates the round trip to the SiteVerify servers.
+ * The {@link SiteVerifyCaptchaRequestHandler} needs one thread per in-flight request, while the
+ * {@link NioCaptchaRequestHandler} keeps all requests in flight on its event loops.
+ * <p>
+ * The benchmark is no test and is not run by Maven. Run it with:
+ * <pre>
+ * mvn test-compile
+ * java -cp "target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *   com.github.playerforcehd.gcaptchavalidator.request.nio.NioCaptchaRequestHandlerBenchmark [requests] [concurrency] [delayMillis]
+ * </pre>
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NioCaptchaRequestHandlerBenchmark {
+    /**
+     * The body returned by the stub verifier
+     */
+    private static final byte[] RESPONSE_BODY = ("{ \"success\": true, \"challenge_ts\": \"2019-06-17T20:33:57Z\", " +
+        "\"hostname\": \"testkey.google.com\" }").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Run the benchmark
+     *
+     * @param args Optional: number of requests, concurrency and delay of the stub verifier in milliseconds
+     * @throws Exception Thrown when the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int delayMillis = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        ScheduledExecutorService stubScheduler = Executors.newScheduledThreadPool(4);
+        HttpServer stubVerifier = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        stubVerifier.createContext("/recaptcha/api/siteverify", exchange -> {
+            drain(exchange.getRequestBody());
+            stubScheduler.schedule(() -> respond(exchange), delayMillis, TimeUnit.MILLISECONDS);
+        });
+        stubVerifier.setExecutor(Executors.newFixedThreadPool(8));
+        stubVerifier.start();
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            "Secret",
+            "http://127.0.0.1:" + stubVerifier.getAddress().getPort() + "/recaptcha/api/siteverify"
+        );
+
+        System.out.printf(
+            "requests=%d concurrency=%d verifierDelay=%dms%n%n",
+            requests,
+            concurrency,
+            delayMillis
+        );
+
+        try (NioCaptchaRequestHandler nioHandler = new NioCaptchaRequestHandler()) {
+            // Warm up both handlers before measuring
+            runBlocking(new SiteVerifyCaptchaRequestHandler(), configuration, requests / 10, concurrency);
+            runNonBlocking(nioHandler, configuration, requests / 10, concurrency);
+
+            print("SiteVerifyCaptchaRequestHandler", runBlocking(
+                new SiteVerifyCaptchaRequestHandler(),
+                configuration,
+                requests,
+                concurrency
+            ));
+            print("NioCaptchaRequestHandler", runNonBlocking(nioHandler, configuration, requests, concurrency));
+            System.out.printf("NioCaptchaRequestHandler open connections: %d%n", nioHandler.getOpenConnections());
+        } finally {
+            stubVerifier.stop(0);
+            stubScheduler.shutdownNow();
+            ((ExecutorService) stubVerifier.getExecutor()).shutdownNow();
+        }
+    }
+
+    /**
+     * Run the benchmark with a blocking handler that requires one thread per in-flight request.
+     */
+    private static Result runBlocking(
+        CaptchaRequestHandler requestHandler,
+        CaptchaValidatorConfiguration configuration,
+        int requests,
+        int concurrency
+    ) throws InterruptedException {
+        Result result = new Result(requests);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+
+        result.start();
+        for (int i = 0; i < requests; i++) {
+            String token = "token-" + i;
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    requestHandler.request(configuration, token, "");
+                    result.record(start);
+                } catch (CaptchaRequestHandlerException e) {
+                    result.fail();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        result.stop();
+        executor.shutdown();
+
+        return result;
+    }
+
+    /**
+     * Run the benchmark with the non-blocking handler, keeping the same number of requests in flight.
+     */
+    private static Result runNonBlocking(
+        NioCaptchaRequestHandler requestHandler,
+        CaptchaValidatorConfiguration configuration,
+        int requests,
+        int concurrency
+    ) throws InterruptedException {
+        Result result = new Result(requests);
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+
+        result.start();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            long start = System.nanoTime();
+            requestHandler.requestAsync(configuration, "token-" + i, "").whenComplete((body, throwable) -> {
+                if (throwable == null) {
+                    result.record(start);
+                } else {
+                    result.fail();
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        result.stop();
+
+        return result;
+    }
+
+    /**
+     * Print the result of a run.
+     */
+    private static void print(String name, Result result) {
+        long[] latencies = Arrays.copyOf(result.latencies, result.recorded.get());
+        Arrays.sort(latencies);
+
+        System.out.printf("%s%n", name);
+        System.out.printf("  throughput:      %,.0f requests/s%n", result.getThroughput());
+        System.out.printf("  failures:        %d%n", result.failures.get());
+        System.out.printf("  latency p50/p99: %.1f ms / %.1f ms%n", percentile(latencies, 0.5), percentile(latencies, 0.99));
+        System.out.printf("  peak threads:    %d%n", result.peakThreads);
+        System.out.printf("  peak heap used:  %,d KiB%n%n", result.peakHeapUsed.get() / 1024);
+    }
+
+    /**
+     * Get a percentile of sorted latencies in milliseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+
+        return sortedLatencies[(int) ((sortedLatencies.length - 1) * percentile)] / 1_000_000d;
+    }
+
+    /**
+     * Read and discard the request body of the stub verifier.
+     */
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) >= 0) {
+            // Discard
+        }
+    }
+
+    /**
+     * Send the response of the stub verifier.
+     */
+    private static void respond(HttpExchange exchange) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, RESPONSE_BODY.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(RESPONSE_BODY);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The measurements of a single run.
+     */
+    private static class Result {
+        private final long[] latencies;
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong peakHeapUsed = new AtomicLong();
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        private ScheduledExecutorService sampler;
+        private long startNanos;
+        private long stopNanos;
+        private int peakThreads;
+
+        private Result(int requests) {
+            this.latencies = new long[requests];
+        }
+
+        private void start() {
+            System.gc();
+            this.threadMXBean.resetPeakThreadCount();
+            this.sampler = Executors.newSingleThreadScheduledExecutor();
+            this.sampler.scheduleAtFixedRate(() -> {
+                long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+                this.peakHeapUsed.accumulateAndGet(heapUsed, Math::max);
+            }, 0, 5, TimeUnit.MILLISECONDS);
+            this.startNanos = System.nanoTime();
+        }
+
+        private void record(long start) {
+            this.latencies[this.recorded.getAndIncrement()] = System.nanoTime() - start;
+        }
+
+        private void fail() {
+            this.failures.incrementAndGet();
+        }
+
+        private void stop() {
+            this.stopNanos = System.nanoTime();
+            this.peakThreads = this.threadMXBean.getPeakThreadCount();
+            this.sampler.shutdownNow();
+        }
+
+        private double getThroughput() {
+            return this.recorded.get() / ((this.stopNanos - this.startNanos) / 1_000_000_000d);
+        }
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.ValidationExecutors;
+import com.github.playerforcehd.gcaptchavalidator.util.request.RequestTemplate;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.testng.Assert.*;
+
+/**
+ * Test for the {@link NioCaptchaRequestHandler}.
+ * <p>
+ * Note that this test is an integration test instead of a unit test
+ * as the interaction with the external service should work as a whole.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NioCaptchaRequestHandlerTest {
+
+    /**
+     * A test secret key provided by Google
+     */
+    private final String gReCaptchaTestSecret = "6LeIxAcTAAAAAGG-vFI1TnRWxMZNFuojJ4WifJWe";
+
+    /**
+     * The body returned by the mocked SiteVerify servers on success
+     */
+    private final String successBody = "{ \"success\": true, \"challenge_ts\": \"2019-06-17T20:33:57Z\", " +
+        "\"hostname\": \"testkey.google.com\" }";
+
+    /**
+     * The {@link WireMockServer} used to mock the SiteVerify servers
+     */
+    private WireMockServer wireMockServer;
+
+    /**
+     * The handler under test
+     */
+    private NioCaptchaRequestHandler requestHandler;
+
+    /**
+     * Initializes the WireMockServer used to test the requests
+     */
+    @BeforeMethod
+    public void prepare() {
+        this.wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort().dynamicHttpsPort());
+        this.wireMockServer.start();
+    }
+
+    /**
+     * Stop the used {@link WireMockServer} and the handler under test
+     */
+    @AfterMethod
+    public void reset() {
+        if (this.requestHandler != null) {
+            this.requestHandler.close();
+        }
+        this.wireMockServer.stop();
+    }
+
+    /**
+     * Create the configuration pointing to the mocked SiteVerify servers
+     */
+    private CaptchaValidatorConfiguration createConfiguration() {
+        return new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            "http://localhost:" + this.wireMockServer.port() + "/recaptcha/api/siteverify"
+        );
+    }
+
+    @Test
+    public void testRequestWithRemoteIPSet() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .withHeader(
+                "User-Agent",
+                equalTo(
+                    "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+                        "(KHTML, like Gecko) Chrome/87.0.4280.88 Safari/537.36"
+                )
+            )
+            .withHeader("Content-Type", equalTo("application/x-www-form-urlencoded"))
+            .withRequestBody(
+                equalTo("secret=" + this.gReCaptchaTestSecret + "&response=SomeResponse&remoteip=127.0.0.1")
+            )
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler();
+        String result = this.requestHandler.request(this.createConfiguration(), "SomeResponse", "127.0.0.1");
+
+        assertEquals(result, this.successBody);
+    }
+
+    @Test
+    public void testRequestReusesConnections() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler(1, 4, Duration.ofSeconds(5));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(this.requestHandler.request(this.createConfiguration(), "SomeResponse", ""), this.successBody);
+        }
+
+        assertEquals(this.requestHandler.getOpenConnections(), 1);
+    }
+
+    @Test
+    public void testRequestAsyncWithManyConcurrentRequests() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(10).withBody(this.successBody))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler(2, 4, Duration.ofSeconds(30));
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(this.requestHandler.requestAsync(this.createConfiguration(), "SomeResponse" + i, ""));
+        }
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals(result.get(), this.successBody);
+        }
+        assertTrue(this.requestHandler.getOpenConnections() <= 8);
+    }
+
+    @Test
+    public void testRequestWithChunkedResponse() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody).withChunkedDribbleDelay(5, 50))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler();
+
+        assertEquals(this.requestHandler.request(this.createConfiguration(), "SomeResponse", ""), this.successBody);
+    }
+
+    @Test
+    public void testRequestOverHttps() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new TrustAllTrustManager()}, null);
+        this.requestHandler = new NioCaptchaRequestHandler(
+            sslContext,
+            1,
+            4,
+            Duration.ofSeconds(10),
+            Duration.ofSeconds(30)
+        );
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            "https://localhost:" + this.wireMockServer.httpsPort() + "/recaptcha/api/siteverify"
+        );
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(this.requestHandler.request(configuration, "SomeResponse", ""), this.successBody);
+        }
+        assertEquals(this.requestHandler.getOpenConnections(), 1);
+    }
+
+    @Test
+    public void testRequestTimeout() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(2000).withBody(this.successBody))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler(1, 4, Duration.ofMillis(200));
+
+        assertThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(this.createConfiguration(), "SomeResponse", "")
+        );
+    }
+
+    @Test
+    public void testRequestReadTimeout() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(3000).withBody(this.successBody))
+        );
+        CaptchaValidatorConfiguration configuration = this.createConfiguration()
+            .setReadTimeout(Duration.ofMillis(200));
+
+        this.requestHandler = new NioCaptchaRequestHandler();
+        long start = System.nanoTime();
+        CaptchaRequestHandlerException exception = expectThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(configuration, "SomeResponse", "")
+        );
+
+        assertTrue(exception.getCause() instanceof SocketTimeoutException);
+        assertEquals(exception.getCause().getMessage(), "Read timed out");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testRequestConnectTimeout() throws Exception {
+        // Connections to a server whose backlog is full are not established
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<Socket> pendingSockets = new ArrayList<>();
+            try {
+                for (int i = 0; i < 4; i++) {
+                    Socket socket = new Socket();
+                    pendingSockets.add(socket);
+                    try {
+                        socket.connect(serverSocket.getLocalSocketAddress(), 100);
+                    } catch (SocketTimeoutException ignored) {
+                        // The backlog is full
+                    }
+                }
+                CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+                    this.gReCaptchaTestSecret,
+                    "http://localhost:" + serverSocket.getLocalPort() + "/recaptcha/api/siteverify"
+                ).setConnectTimeout(Duration.ofMillis(200));
+
+                this.requestHandler = new NioCaptchaRequestHandler();
+                long start = System.nanoTime();
+                CaptchaRequestHandlerException exception = expectThrows(
+                    CaptchaRequestHandlerException.class,
+                    () -> this.requestHandler.request(configuration, "SomeResponse", "")
+                );
+
+                assertTrue(exception.getCause() instanceof SocketTimeoutException);
+                assertEquals(exception.getCause().getMessage(), "Connect timed out");
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            } finally {
+                for (Socket socket : pendingSockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedRequest() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(5000).withBody(this.successBody))
+        );
+
+        this.requestHandler = new NioCaptchaRequestHandler(1, 4, Duration.ofSeconds(10));
+        Thread requestThread = Thread.currentThread();
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requestThread.interrupt();
+        });
+
+        long start = System.nanoTime();
+        CaptchaRequestHandlerException exception = expectThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(this.createConfiguration(), "SomeResponse", "")
+        );
+
+        assertTrue(exception.getCause() instanceof InterruptedException);
+        assertTrue(Thread.interrupted());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+    }
+
+    @Test
+    public void testEventLoopSurvivesFailedExchange() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+        RequestTemplate requestTemplate = RequestTemplate.of(this.createConfiguration());
+        NioOrigin origin = NioOrigin.of(requestTemplate.getVerifierUri());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        try (NioEventLoop eventLoop = new NioEventLoop(
+            ValidationExecutors.daemonThreadFactory("gcaptchavalidator-nio-test-"),
+            SSLContext.getDefault(),
+            4,
+            TimeUnit.SECONDS.toNanos(30),
+            NioCaptchaRequestHandler.MAX_RESPONSE_SIZE
+        )) {
+            // An exchange without request fails unexpectedly when it is started on a connection
+            NioExchange failingExchange = new NioExchange(origin, null, deadline);
+            eventLoop.submit(failingExchange);
+            ExecutionException exception = expectThrows(
+                ExecutionException.class,
+                () -> failingExchange.getResult().get(5, TimeUnit.SECONDS)
+            );
+            assertTrue(exception.getCause() instanceof CaptchaRequestHandlerException);
+            assertTrue(eventLoop.isRunning());
+
+            NioExchange exchange = new NioExchange(
+                origin,
+                requestTemplate.createHttpRequest("SomeResponse", ""),
+                deadline
+            );
+            eventLoop.submit(exchange);
+            assertEquals(exchange.getResult().get(5, TimeUnit.SECONDS), this.successBody);
+        }
+    }
+
+    @Test
+    public void testRequestIsNotRetriedOnceItHasBeenWritten() throws Exception {
+        // The server reads the second request completely, but closes the connection without answering it
+        try (ScriptedServer server = new ScriptedServer(this.successBody, 2, false)) {
+            this.requestHandler = new NioCaptchaRequestHandler(1, 4, Duration.ofSeconds(5));
+            CaptchaValidatorConfiguration configuration = server.createConfiguration(this.gReCaptchaTestSecret);
+
+            assertEquals(this.requestHandler.request(configuration, "SomeResponse", ""), this.successBody);
+            assertThrows(
+                CaptchaRequestHandlerException.class,
+                () -> this.requestHandler.request(configuration, "OtherResponse", "")
+            );
+            assertEquals(server.getRequests(), 2);
+            assertEquals(server.getConnections(), 1);
+        }
+    }
+
+    @Test
+    public void testRequestIsSentOnFreshConnectionWhenKeptAliveConnectionHasBeenReset() throws Exception {
+        // The server answers the first request and resets the kept-alive connection afterwards
+        try (ScriptedServer server = new ScriptedServer(this.successBody, 1, true)) {
+            this.requestHandler = new NioCaptchaRequestHandler(1, 4, Duration.ofSeconds(5));
+            CaptchaValidatorConfiguration configuration = server.createConfiguration(this.gReCaptchaTestSecret);
+
+            assertEquals(this.requestHandler.request(configuration, "SomeResponse", ""), this.successBody);
+            Thread.sleep(200);
+            assertEquals(this.requestHandler.request(configuration, "OtherResponse", ""), this.successBody);
+            assertEquals(server.getRequests(), 2);
+            assertEquals(server.getConnections(), 2);
+        }
+    }
+
+    @Test
+    public void testRequestWithUnreachableServer() {
+        CaptchaValidatorConfiguration configuration = this.createConfiguration();
+        this.wireMockServer.stop();
+
+        this.requestHandler = new NioCaptchaRequestHandler();
+
+        assertThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(configuration, "SomeResponse", "")
+        );
+    }
+
+    @Test
+    public void testRequestWithInvalidVerifierUrl() {
+        this.requestHandler = new NioCaptchaRequestHandler();
+
+        assertThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(new ValidatorConfiguration("Test", "ftp://localhost/"), "SomeResponse", "")
+        );
+    }
+
+    @Test
+    public void testRequestAfterClose() {
+        this.requestHandler = new NioCaptchaRequestHandler();
+        this.requestHandler.close();
+
+        assertThrows(
+            CaptchaRequestHandlerException.class,
+            () -> this.requestHandler.request(this.createConfiguration(), "SomeResponse", "")
+        );
+    }
+
+    /**
+     * A minimal HTTP server that answers every request on a kept-alive connection, except that it disconnects
+     * once after a configured request. Connections are served one after another.
+     */
+    private static class ScriptedServer implements AutoCloseable {
+        /**
+         * The socket that accepts the connections
+         */
+        private final ServerSocket serverSocket;
+
+        /**
+         * The response sent for every answered request
+         */
+        private final byte[] response;
+
+        /**
+         * The number of the request, starting at 1, after which the connection is closed
+         */
+        private final int disconnectedRequest;
+
+        /**
+         * The state if the disconnected request is answered before the connection is reset,
+         * instead of closing the connection without answering it
+         */
+        private final boolean answerBeforeDisconnect;
+
+        /**
+         * The number of requests that have been received
+         */
+        private final AtomicInteger requests = new AtomicInteger();
+
+        /**
+         * The number of connections that have been accepted
+         */
+        private final AtomicInteger connections = new AtomicInteger();
+
+        /**
+         * Constructor
+         *
+         * @param body                   The body of the answered requests
+         * @param disconnectedRequest    The number of the request, starting at 1, after which the connection is closed
+         * @param answerBeforeDisconnect true to answer the request and reset the connection afterwards,
+         *                               false to close the connection without answering it
+         * @throws IOException Thrown when the server socket could not be opened
+         */
+        private ScriptedServer(String body, int disconnectedRequest, boolean answerBeforeDisconnect)
+            throws IOException {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            this.response = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + content.length
+                + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8);
+            this.disconnectedRequest = disconnectedRequest;
+            this.answerBeforeDisconnect = answerBeforeDisconnect;
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+            Thread thread = new Thread(this::serve, "gcaptchavalidator-scripted-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Create the configuration pointing to this server
+         *
+         * @param secret The secret of the configuration
+         * @return The created configuration
+         */
+        private CaptchaValidatorConfiguration createConfiguration(String secret) {
+            return new ValidatorConfiguration(
+                secret,
+                "http://localhost:" + this.serverSocket.getLocalPort() + "/recaptcha/api/siteverify"
+            );
+        }
+
+        /**
+         * Get the number of requests that have been received
+         *
+         * @return The number of received requests
+         */
+        private int getRequests() {
+            return this.requests.get();
+        }
+
+        /**
+         * Get the number of connections that have been accepted
+         *
+         * @return The number of accepted connections
+         */
+        private int getConnections() {
+            return this.connections.get();
+        }
+
+        /**
+         * Accept and serve connections until the server is closed.
+         */
+        private void serve() {
+            while (!this.serverSocket.isClosed()) {
+                try (Socket socket = this.serverSocket.accept()) {
+                    this.connections.incrementAndGet();
+                    InputStream input = new BufferedInputStream(socket.getInputStream());
+                    OutputStream output = socket.getOutputStream();
+                    while (readRequest(input)) {
+                        int request = this.requests.incrementAndGet();
+                        if (request == this.disconnectedRequest && !this.answerBeforeDisconnect) {
+                            break;
+                        }
+
+                        output.write(this.response);
+                        output.flush();
+                        if (request == this.disconnectedRequest) {
+                            // Closing with a linger time of zero resets the connection
+                            socket.setSoLinger(true, 0);
+                            break;
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // The server has been closed or the client went away
+                }
+            }
+        }
+
+        /**
+         * Read a request including its body.
+         *
+         * @param input The input of the connection
+         * @return true if a request has been read, false if the connection has been closed
+         * @throws IOException Thrown when reading fails
+         */
+        private static boolean readRequest(InputStream input) throws IOException {
+            int contentLength = 0;
+            String line = readLine(input);
+            if (line == null) {
+                return false;
+            }
+            while (line != null && !line.isEmpty()) {
+                if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+                line = readLine(input);
+            }
+            for (int i = 0; i < contentLength; i++) {
+                if (input.read() < 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Read a line terminated by CRLF.
+         *
+         * @param input The input of the connection
+         * @return The line without its terminator, or null if the connection has been closed
+         * @throws IOException Thrown when reading fails
+         */
+        private static String readLine(InputStream input) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int read;
+            while ((read = input.read()) != '\n') {
+                if (read < 0) {
+                    return null;
+                }
+                if (read != '\r') {
+                    line.append((char) read);
+                }
+            }
+
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.serverSocket.close();
+        }
+    }
+
+    /**
+     * A {@link X509ExtendedTrustManager} that trusts the self-signed certificate of the {@link WireMockServer}.
+     */
+    private static class TrustAllTrustManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
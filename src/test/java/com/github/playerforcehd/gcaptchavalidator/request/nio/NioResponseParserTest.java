@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request.nio;
+
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the incremental HTTP response parser of the {@link NioCaptchaRequestHandler}.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class NioResponseParserTest {
+
+    /**
+     * Wrap a string into a buffer
+     */
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFeedWithContentLength() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertTrue(parser.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\ntrue")));
+        assertEquals(parser.getStatusCode(), 200);
+        assertEquals(parser.getBody(), "true");
+        assertTrue(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testFeedInFragments() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+        String response = "HTTP/1.1 200 OK\r\nContent-Length: 17\r\n\r\n{\"success\": true}";
+
+        for (int i = 0; i < response.length() - 1; i++) {
+            assertFalse(parser.feed(bytes(response.substring(i, i + 1))));
+        }
+
+        assertTrue(parser.feed(bytes(response.substring(response.length() - 1))));
+        assertEquals(parser.getBody(), "{\"success\": true}");
+    }
+
+    @Test
+    public void testFeedWithChunkedBody() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertTrue(parser.feed(bytes(
+            "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4;ext=1\r\n{\"su\r\nd\r\nccess\": true}\r\n0\r\n\r\n"
+        )));
+        assertEquals(parser.getBody(), "{\"success\": true}");
+    }
+
+    @Test
+    public void testFeedWithConnectionClose() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertTrue(parser.feed(bytes("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\n{}")));
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testFeedWithBodyUntilClose() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertFalse(parser.feed(bytes("HTTP/1.0 200 OK\r\n\r\n{}")));
+        assertTrue(parser.onEndOfStream());
+        assertEquals(parser.getBody(), "{}");
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testFeedSkipsInformationalResponses() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertTrue(parser.feed(bytes("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}")));
+        assertEquals(parser.getStatusCode(), 200);
+        assertEquals(parser.getBody(), "{}");
+    }
+
+    @Test
+    public void testResetAllowsNextResponse() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+        parser.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}"));
+
+        parser.reset();
+
+        assertFalse(parser.hasStarted());
+        assertTrue(parser.feed(bytes("HTTP/1.1 400 Bad Request\r\nContent-Length: 4\r\n\r\nnope")));
+        assertEquals(parser.getStatusCode(), 400);
+        assertEquals(parser.getBody(), "nope");
+    }
+
+    @Test
+    public void testFeedWithTooLargeBody() {
+        NioResponseParser parser = new NioResponseParser(8);
+
+        assertThrows(
+            ProtocolException.class,
+            () -> parser.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 9\r\n\r\n"))
+        );
+    }
+
+    @Test
+    public void testFeedWithMalformedStatusLine() {
+        NioResponseParser parser = new NioResponseParser(1024);
+
+        assertThrows(ProtocolException.class, () -> parser.feed(bytes("SOMETHING ELSE\r\n")));
+    }
+
+    @Test
+    public void testEndOfStreamBeforeResponseIsComplete() throws IOException {
+        NioResponseParser parser = new NioResponseParser(1024);
+        parser.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 9\r\n\r\n{}"));
+
+        assertThrows(EOFException.class, parser::onEndOfStream);
+    }
+}
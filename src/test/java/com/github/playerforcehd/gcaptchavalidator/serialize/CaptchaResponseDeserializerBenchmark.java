@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Benchmark that compares the {@link LightweightCaptchaResponseDeserializer} and the
+ * {@link StreamingCaptchaResponseDeserializer} with the {@link SiteVerifyCaptchaResponseDeserializer}.
+ * <p>
+ * For every deserializer, the throughput and the number of bytes allocated per deserialization are measured
+ * for typical ReCaptcha 2, ReCaptcha 3 and error responses.
+ * The success-only fast path of the {@link BasicCaptchaResponseDeserializer}s is measured as well.
+ * The allocations are measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)},
+ * which requires a HotSpot based JVM.
+ * <p>
+ * The benchmark is no test and is not run by Maven. Run it with:
+ * <pre>
+ * mvn test-compile
+ * java -cp "target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *   com.github.playerforcehd.gcaptchavalidator.serialize.CaptchaResponseDeserializerBenchmark [iterations]
+ * </pre>
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CaptchaResponseDeserializerBenchmark {
+    /**
+     * The responses used for the benchmark
+     */
+    private static final String[][] RESPONSES = {
+        {
+            "ReCaptcha 2",
+            "{\n  \"success\": true,\n  \"challenge_ts\": \"2020-12-29T17:21:02Z\",\n  \"hostname\": \"localhost\"\n}"
+        },
+        {
+            "ReCaptcha 3",
+            "{\n  \"success\": true,\n  \"challenge_ts\": \"2020-12-29T17:21:02Z\",\n  \"hostname\": \"localhost\",\n" +
+                "  \"score\": 0.9,\n  \"action\": \"login\"\n}"
+        },
+        {
+            "Error",
+            "{\n  \"success\": false,\n  \"error-codes\": [\n    \"timeout-or-duplicate\"\n  ]\n}"
+        }
+    };
+
+    /**
+     * The {@link com.sun.management.ThreadMXBean} used to measure allocations
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Prevents the JIT compiler from eliminating the deserialization
+     */
+    private static volatile Object blackhole;
+
+    /**
+     * Run the benchmark
+     *
+     * @param args Optional: number of measured iterations per deserializer and response
+     */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        SiteVerifyCaptchaResponseDeserializer treeDeserializer = new SiteVerifyCaptchaResponseDeserializer();
+        StreamingCaptchaResponseDeserializer streamingDeserializer = new StreamingCaptchaResponseDeserializer();
+        LightweightCaptchaResponseDeserializer lightweightDeserializer = new LightweightCaptchaResponseDeserializer();
+
+        System.out.printf("%-12s %-32s %14s %12s%n", "Response", "Deserializer", "ops/s", "bytes/op");
+        for (String[] response : RESPONSES) {
+            String json = response[1];
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+            run(response[0], "SiteVerify (String)", iterations, json, treeDeserializer::deserialize);
+            run(response[0], "SiteVerify (ByteBuffer)", iterations, bytes,
+                input -> treeDeserializer.deserialize(ByteBuffer.wrap(input)));
+            run(response[0], "Streaming (String)", iterations, json, streamingDeserializer::deserialize);
+            run(response[0], "Streaming (ByteBuffer)", iterations, bytes,
+                input -> streamingDeserializer.deserialize(ByteBuffer.wrap(input)));
+            run(response[0], "Lightweight (String)", iterations, json, lightweightDeserializer::deserialize);
+            run(response[0], "Lightweight (ByteBuffer)", iterations, bytes,
+                input -> lightweightDeserializer.deserialize(ByteBuffer.wrap(input)));
+            run(response[0], "Streaming basic (ByteBuffer)", iterations, bytes,
+                input -> streamingDeserializer.basicDeserialize(ByteBuffer.wrap(input)));
+            run(response[0], "Lightweight basic (ByteBuffer)", iterations, bytes,
+                input -> lightweightDeserializer.basicDeserialize(ByteBuffer.wrap(input)));
+        }
+    }
+
+    /**
+     * Warm up and measure a single deserializer with a single response.
+     */
+    private static <T> void run(
+        String responseName,
+        String deserializerName,
+        int iterations,
+        T input,
+        Function<T, ?> deserializer
+    ) {
+        // Warm up
+        for (int i = 0; i < iterations / 2; i++) {
+            blackhole = deserializer.apply(input);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole = deserializer.apply(input);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf(
+            "%-12s %-32s %,14.0f %,12d%n",
+            responseName,
+            deserializerName,
+            iterations / (elapsed / 1_000_000_000d),
+            allocated / iterations
+        );
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for the parsing of challenge timestamps.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ChallengeTimestampsTest {
+    @Test(dataProvider = "parseTimestampDataProvider")
+    public void testParseTimestamp(String timestamp) {
+        Date result = ChallengeTimestamps.parse(timestamp);
+
+        assertEquals(result, Date.from(Instant.parse(timestamp)));
+    }
+
+    @DataProvider
+    public Object[][] parseTimestampDataProvider() {
+        return new Object[][]{
+            {"2020-12-29T17:21:02Z"},
+            {"1970-01-01T00:00:00Z"},
+            {"2024-02-29T23:59:59Z"},
+            {"1969-07-20T20:17:40Z"},
+            {"2020-12-29T17:21:02.123Z"}
+        };
+    }
+
+    @Test(dataProvider = "parseTimestampDataProvider")
+    public void testParseTimestampFromBytes(String timestamp) {
+        ByteBuffer buffer = ByteBuffer.wrap(("\"" + timestamp + "\"").getBytes(StandardCharsets.UTF_8));
+        Date result = ChallengeTimestamps.parse(buffer, 1, buffer.limit() - 1);
+
+        assertEquals(result, Date.from(Instant.parse(timestamp)));
+    }
+
+    @Test(dataProvider = "parseMalformedTimestampDataProvider", expectedExceptions = DateTimeException.class)
+    public void testParseMalformedTimestamp(String timestamp) {
+        ChallengeTimestamps.parse(timestamp);
+    }
+
+    @DataProvider
+    public Object[][] parseMalformedTimestampDataProvider() {
+        return new Object[][]{
+            {"2023-02-29T17:21:02Z"},
+            {"2020-13-29T17:21:02Z"},
+            {"2020-12-29T24:21:02Z"},
+            {"2020-12-2XT17:21:02Z"},
+            {"yesterday"}
+        };
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the lightweight site verify response deserializer.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class LightweightCaptchaResponseDeserializerTest {
+    @Test(dataProvider = "deserializeLikeSiteVerifyDataProvider")
+    public void testDeserializeLikeSiteVerify(String testResponse) {
+        CaptchaValidationResponse expected = new SiteVerifyCaptchaResponseDeserializer().deserialize(testResponse);
+
+        LightweightCaptchaResponseDeserializer deserializer = new LightweightCaptchaResponseDeserializer();
+        byte[] bytes = testResponse.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+        directBuffer.put(bytes).flip();
+        byte[] paddedBytes = ("XX" + testResponse + "XX").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer slicedBuffer = ByteBuffer.wrap(paddedBytes, 2, bytes.length).slice();
+
+        CaptchaValidationResponse[] results = {
+            deserializer.deserialize(testResponse),
+            deserializer.deserialize(ByteBuffer.wrap(bytes)),
+            deserializer.deserialize(directBuffer),
+            deserializer.deserialize(slicedBuffer)
+        };
+        for (CaptchaValidationResponse actual : results) {
+            assertEquals(actual.getReCaptchaVersion(), expected.getReCaptchaVersion());
+            assertEquals(actual.hasSucceeded(), expected.hasSucceeded());
+            assertEquals(actual.getChallengeTimestamp(), expected.getChallengeTimestamp());
+            assertEquals(actual.getClientType(), expected.getClientType());
+            assertEquals(actual.getHostnameOrPackageName(), expected.getHostnameOrPackageName());
+            assertEquals(actual.getScore(), expected.getScore());
+            assertEquals(actual.getAction(), expected.getAction());
+            assertEquals(actual.getErrors(), expected.getErrors());
+        }
+        assertFalse(directBuffer.hasRemaining());
+        assertFalse(slicedBuffer.hasRemaining());
+    }
+
+    @Test(dataProvider = "deserializeLikeSiteVerifyDataProvider")
+    public void testBasicDeserialize(String testResponse) {
+        LightweightCaptchaResponseDeserializer deserializer = new LightweightCaptchaResponseDeserializer();
+        boolean expected = deserializer.deserialize(testResponse).hasSucceeded();
+        ByteBuffer buffer = ByteBuffer.wrap(testResponse.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(deserializer.basicDeserialize(testResponse), expected);
+        assertEquals(deserializer.basicDeserialize(buffer), expected);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(dataProvider = "basicDeserializeLikeDeserializeDataProvider")
+    public void testBasicDeserializeLikeDeserialize(String testResponse) {
+        LightweightCaptchaResponseDeserializer deserializer = new LightweightCaptchaResponseDeserializer();
+        Object expected = outcomeOf(() -> deserializer.deserialize(testResponse).hasSucceeded());
+        byte[] bytes = testResponse.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(outcomeOf(() -> deserializer.basicDeserialize(testResponse)), expected);
+        assertEquals(outcomeOf(() -> deserializer.basicDeserialize(ByteBuffer.wrap(bytes))), expected);
+    }
+
+    @DataProvider
+    public Object[][] basicDeserializeLikeDeserializeDataProvider() {
+        return new Object[][]{
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-30T10:00:00Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:60Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00.5Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021\\u002d02-28T10:00:00Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": null,\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"error-codes\": null}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"score\": \"high\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"hostname\": 42}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"hostname\": \"\\x\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"action\": [\"home\"]}"},
+            {"{\"success\": false,\"challenge_ts\": \"yesterday\",\"error-codes\": [\"bad-request\"]}"},
+            {"{\"success\": false,\"error-codes\": [42]}"},
+            {"{\"success\": false,\"error-codes\": \"bad-request\"}"}
+        };
+    }
+
+    @DataProvider
+    public Object[][] deserializeLikeSiteVerifyDataProvider() {
+        return new Object[][]{
+            {
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"success\": false,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\n  \"success\": true,\n  \"challenge_ts\": \"2020-12-29T17:21:02Z\",\n  \"hostname\": \"localhost\",\n" +
+                    "  \"score\": 0.9,\n  \"action\": \"login\"\n}\n"
+            },
+            {
+                "{\"hostname\": \"localhost\",\"action\": \"home\",\"challenge_ts\": \"2020-12-29T17:21:02.5Z\"," +
+                    "\"score\": 0.3,\"success\": true}"
+            },
+            {
+                "{\"success\": true,\"score\": 0.5,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"success\": true,\"score\": 1,\"action\": \"a\\\"b\\\\c\\u00e4\",\"challenge_ts\": \"2020-12-29T17:21:02Z\"," +
+                    "\"hostname\": \"b\u00fccher.example\"}"
+            },
+            {
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\"," +
+                    "\"apk_package_name\": \"com.github.playerforcehd.gcaptchavalidator\"}"
+            },
+            {
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"," +
+                    "\"apk_package_name\": \"com.github.playerforcehd.gcaptchavalidator\"}"
+            },
+            {
+                "{\"success\": false, \"error-codes\": [\"missing-input-secret\", \"missing-input-response\"]}"
+            },
+            {
+                "{\"error-codes\": [\"timeout-or-duplicate\"], \"success\": false}"
+            },
+            {
+                "{\"success\": false, \"error-codes\": [\"bad-request\", \"something-new\", \"invalid-input-secret\"]}"
+            },
+            {
+                "{\"success\": false, \"error-codes\": []}"
+            },
+            {
+                "{\"success\": true,\"unknown\": {\"nested\": [1, -2.5e3, true, {\"a\": null, \"b\": \"}]\"}]}," +
+                    "\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\",\"number\": 17}"
+            }
+        };
+    }
+
+    @Test
+    public void testDeserializeWithNullProperties() {
+        String testResponse = "{\"success\": true,\"challenge_ts\": null,\"hostname\": null,\"action\": null," +
+            "\"score\": 0.5}";
+
+        CaptchaValidationResponse result = new LightweightCaptchaResponseDeserializer().deserialize(testResponse);
+
+        assertTrue(result.hasSucceeded());
+        assertEquals(result.getReCaptchaVersion(), ReCaptchaVersion.VERSION_2);
+        assertNull(result.getChallengeTimestamp());
+        assertNull(result.getClientType());
+        assertEquals(result.getHostnameOrPackageName(), "");
+        assertEquals(result.getScore(), -1f);
+        assertEquals(result.getAction(), "");
+    }
+
+    @Test
+    public void testDeserializeInternsErrors() {
+        String testResponse = "{\"success\": false, \"error-codes\": [\"timeout-or-duplicate\"]}";
+
+        CaptchaValidationResponse result = new LightweightCaptchaResponseDeserializer().deserialize(testResponse);
+
+        assertSame(result.getErrors()[0], ValidationError.TIMEOUT_OR_DUPLICATE);
+        assertEquals(result.getErrors().length, 1);
+    }
+
+    @Test
+    public void testDeserializeScore() {
+        LightweightCaptchaResponseDeserializer deserializer = new LightweightCaptchaResponseDeserializer();
+        Random random = new Random(42);
+        String[] scores = new String[1000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = Double.toString(random.nextDouble());
+        }
+        scores[0] = "0.0";
+        scores[1] = "1.0";
+        scores[2] = "0.123456789";
+        scores[3] = "9e-1";
+        scores[4] = "-0.5";
+        scores[5] = "123456789012345678";
+
+        for (String score : scores) {
+            String testResponse = "{\"success\": true,\"score\": " + score + ",\"action\": \"home\"," +
+                "\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}";
+
+            CaptchaValidationResponse result = deserializer.deserialize(testResponse);
+
+            assertEquals(result.getScore(), Float.parseFloat(score), score);
+        }
+    }
+
+    @Test(dataProvider = "deserializeMalformedDataProvider", expectedExceptions = IllegalArgumentException.class)
+    public void testDeserializeMalformed(String testResponse) {
+        new LightweightCaptchaResponseDeserializer().deserialize(testResponse);
+    }
+
+    @Test(dataProvider = "basicDeserializeMalformedDataProvider", expectedExceptions = IllegalArgumentException.class)
+    public void testBasicDeserializeMalformed(String testResponse) {
+        new LightweightCaptchaResponseDeserializer().basicDeserialize(testResponse);
+    }
+
+    @DataProvider
+    public Object[][] basicDeserializeMalformedDataProvider() {
+        return new Object[][]{
+            {""},
+            {"[]"},
+            {"{\"hostname\": \"localhost\"}"},
+            {"{\"success\": true, \"hostname\": "},
+            {"{\"success\": true, \"hostname\": \"localhost}"},
+            {"{\"success\": true \"hostname\": \"localhost\"}"},
+            {"{\"success\": maybe}"},
+            {"{\"success\": true, \"error-codes\": [\"bad-request\""},
+            {"{\"success\": true} trailing"},
+            {"{\"success\": true, \"score\": \"high\", \"action\": \"home\"}"},
+            {"{\"success\": true, \"hostname\": \"\\x\"}"},
+            {"{\"success\": true, \"challenge_ts\": \"yesterday\"}"},
+            {"{\"success\": true, \"challenge_ts\": \"2021-02-30T10:00:00Z\"}"},
+            {"{\"success\": true, \"challenge_ts\": \"2021-02-28T10:00:60Z\"}"}
+        };
+    }
+
+    @DataProvider
+    public Object[][] deserializeMalformedDataProvider() {
+        return new Object[][]{
+            {""},
+            {"[]"},
+            {"{\"hostname\": \"localhost\"}"},
+            {"{\"success\": true, \"hostname\": "},
+            {"{\"success\": true, \"hostname\": \"localhost}"},
+            {"{\"success\": true \"hostname\": \"localhost\"}"},
+            {"{\"success\": maybe}"},
+            {"{\"success\": true, \"score\": -}"},
+            {"{\"success\": true, \"score\": \"high\", \"action\": \"home\"}"},
+            {"{\"success\": true, \"hostname\": \"\\x\"}"},
+            {"{\"success\": true, \"challenge_ts\": \"yesterday\"}"},
+            {"{\"success\": true} trailing"},
+            {"{\"success\": false, \"error-codes\": [\"bad-request\" \"timeout-or-duplicate\"]}"}
+        };
+    }
+
+    @Test
+    public void testDeserializeWithoutGson() throws Exception {
+        URL classes = LightweightCaptchaResponseDeserializer.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classes}, null)) {
+            // Ensure that the class loader does not see Google GSon
+            try {
+                Class.forName("com.google.gson.Gson", false, classLoader);
+                fail("Google GSon must not be visible to the isolated class loader");
+            } catch (ClassNotFoundException e) {
+                // Expected
+            }
+
+            Class<?> deserializerClass = Class.forName(
+                LightweightCaptchaResponseDeserializer.class.getName(),
+                true,
+                classLoader
+            );
+            Object deserializer = deserializerClass.getConstructor().newInstance();
+            Object result = deserializerClass.getMethod("deserialize", String.class).invoke(
+                deserializer,
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            );
+
+            assertEquals(result.getClass().getMethod("hasSucceeded").invoke(result), true);
+            assertEquals(result.getClass().getMethod("getClientType").invoke(result).toString(), ClientType.WEB.name());
+        }
+    }
+
+    /**
+     * Get the outcome of a deserialization.
+     *
+     * @param deserialization The deserialization to run
+     * @return The result of the deserialization, or the class of the exception it failed with
+     */
+    private static Object outcomeOf(Supplier<Boolean> deserialization) {
+        try {
+            return deserialization.get();
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+}
@@ -30,6 +30,9 @@ import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.testng.Assert.*;
 
 /**
@@ -159,4 +162,25 @@ public class SiteVerifyCaptchaResponseDeserializerTest {
             }
         };
     }
+
+    @Test
+    public void testDeserializeByteBuffer() {
+        byte[] testResponse = ("XX{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\"," +
+            "\"hostname\": \"localhost\"}XX").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer heapBuffer = ByteBuffer.wrap(testResponse, 2, testResponse.length - 4).slice();
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(heapBuffer.remaining());
+        directBuffer.put(heapBuffer.duplicate()).flip();
+
+        SiteVerifyCaptchaResponseDeserializer deserializer = new SiteVerifyCaptchaResponseDeserializer();
+        for (ByteBuffer buffer : new ByteBuffer[]{heapBuffer, directBuffer}) {
+            CaptchaValidationResponse result = deserializer.deserialize(buffer);
+
+            assertTrue(result.hasSucceeded());
+            assertEquals(result.getChallengeTimestamp().getTime(), 1609262462000L);
+            assertEquals(result.getClientType(), ClientType.WEB);
+            assertEquals(result.getHostnameOrPackageName(), "localhost");
+            assertEquals(result.getErrors().length, 0);
+            assertFalse(buffer.hasRemaining());
+        }
+    }
 }
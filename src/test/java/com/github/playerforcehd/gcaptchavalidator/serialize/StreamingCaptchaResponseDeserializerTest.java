@@ -0,0 +1,310 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.serialize;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.data.ClientType;
+import com.github.playerforcehd.gcaptchavalidator.data.ReCaptchaVersion;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.google.gson.JsonParseException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the streaming site verify response deserializer.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class StreamingCaptchaResponseDeserializerTest {
+    @Test(dataProvider = "deserializeLikeSiteVerifyDataProvider")
+    public void testDeserializeLikeSiteVerify(String testResponse) {
+        CaptchaValidationResponse expected = new SiteVerifyCaptchaResponseDeserializer().deserialize(testResponse);
+
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        CaptchaValidationResponse result = deserializer.deserialize(testResponse);
+        CaptchaValidationResponse byteResult = deserializer.deserialize(
+            ByteBuffer.wrap(testResponse.getBytes(StandardCharsets.UTF_8))
+        );
+
+        for (CaptchaValidationResponse actual : new CaptchaValidationResponse[]{result, byteResult}) {
+            assertEquals(actual.getReCaptchaVersion(), expected.getReCaptchaVersion());
+            assertEquals(actual.hasSucceeded(), expected.hasSucceeded());
+            assertEquals(actual.getChallengeTimestamp(), expected.getChallengeTimestamp());
+            assertEquals(actual.getClientType(), expected.getClientType());
+            assertEquals(actual.getHostnameOrPackageName(), expected.getHostnameOrPackageName());
+            assertEquals(actual.getScore(), expected.getScore());
+            assertEquals(actual.getAction(), expected.getAction());
+            assertEquals(actual.getErrors(), expected.getErrors());
+        }
+    }
+
+    @Test(dataProvider = "deserializeLikeSiteVerifyDataProvider")
+    public void testBasicDeserialize(String testResponse) {
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        boolean expected = deserializer.deserialize(testResponse).hasSucceeded();
+        ByteBuffer buffer = ByteBuffer.wrap(testResponse.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(deserializer.basicDeserialize(testResponse), expected);
+        assertEquals(deserializer.basicDeserialize(buffer), expected);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(dataProvider = "basicDeserializeLikeDeserializeDataProvider")
+    public void testBasicDeserializeLikeDeserialize(String testResponse) {
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        Object expected = outcomeOf(() -> deserializer.deserialize(testResponse).hasSucceeded());
+        byte[] bytes = testResponse.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(outcomeOf(() -> deserializer.basicDeserialize(testResponse)), expected);
+        assertEquals(outcomeOf(() -> deserializer.basicDeserialize(ByteBuffer.wrap(bytes))), expected);
+    }
+
+    @DataProvider
+    public Object[][] basicDeserializeLikeDeserializeDataProvider() {
+        return new Object[][]{
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-30T10:00:00Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:60Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00.5Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021\\u002d02-28T10:00:00Z\",\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": null,\"hostname\": \"localhost\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"error-codes\": null}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"score\": \"high\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"hostname\": 42}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"hostname\": \"\\x\"}"},
+            {"{\"success\": true,\"challenge_ts\": \"2021-02-28T10:00:00Z\",\"action\": [\"home\"]}"},
+            {"{\"success\": false,\"challenge_ts\": \"yesterday\",\"error-codes\": [\"bad-request\"]}"},
+            {"{\"success\": false,\"error-codes\": [42]}"},
+            {"{\"success\": false,\"error-codes\": \"bad-request\"}"}
+        };
+    }
+
+    @DataProvider
+    public Object[][] deserializeLikeSiteVerifyDataProvider() {
+        return new Object[][]{
+            {
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"success\": false,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"success\": true,\"score\": 0.5,\"action\": \"home\"," +
+                    "\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"hostname\": \"localhost\",\"action\": \"home\",\"challenge_ts\": \"2020-12-29T17:21:02Z\"," +
+                    "\"score\": 0.9,\"success\": true}"
+            },
+            {
+                "{\"success\": true,\"score\": 0.5,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}"
+            },
+            {
+                "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\"," +
+                    "\"apk_package_name\": \"com.github.playerforcehd.gcaptchavalidator\"}"
+            },
+            {
+                "{\"success\": false, \"error-codes\": [\"missing-input-secret\", \"missing-input-response\"]}"
+            },
+            {
+                "{\"error-codes\": [\"timeout-or-duplicate\"], \"success\": false}"
+            }
+        };
+    }
+
+    @Test(dataProvider = "differentialDataProvider")
+    public void testDeserializeAcceptsAndRejectsLikeSiteVerify(String testResponse) {
+        CaptchaValidationResponse expected;
+        try {
+            expected = new SiteVerifyCaptchaResponseDeserializer().deserialize(testResponse);
+        } catch (RuntimeException e) {
+            expected = null;
+        }
+
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        if (expected == null) {
+            assertThrows(JsonParseException.class, () -> deserializer.deserialize(testResponse));
+            assertThrows(JsonParseException.class, () -> deserializer.basicDeserialize(testResponse));
+            return;
+        }
+
+        CaptchaValidationResponse actual = deserializer.deserialize(testResponse);
+        assertEquals(actual.getReCaptchaVersion(), expected.getReCaptchaVersion());
+        assertEquals(actual.hasSucceeded(), expected.hasSucceeded());
+        assertEquals(actual.getChallengeTimestamp(), expected.getChallengeTimestamp());
+        assertEquals(actual.getClientType(), expected.getClientType());
+        assertEquals(actual.getHostnameOrPackageName(), expected.getHostnameOrPackageName());
+        assertEquals(actual.getScore(), expected.getScore());
+        assertEquals(actual.getAction(), expected.getAction());
+        assertEquals(actual.getErrors(), expected.getErrors());
+        assertEquals(deserializer.basicDeserialize(testResponse), expected.hasSucceeded());
+    }
+
+    @DataProvider
+    public Object[][] differentialDataProvider() {
+        String timestamp = "\"challenge_ts\": \"2020-12-29T17:21:02Z\"";
+
+        return new Object[][]{
+            {"{\"success\": true," + timestamp + "} trailing"},
+            {"{\"success\": true," + timestamp + "}{}"},
+            {"{\"success\": true," + timestamp + "}  "},
+            {"{\"success\": TRUE," + timestamp + "}"},
+            {"{\"success\": True," + timestamp + "}"},
+            {"{\"success\": \"true\"," + timestamp + "}"},
+            {"{\"success\": \"TRUE\"," + timestamp + "}"},
+            {"{\"success\": \"yes\"," + timestamp + "}"},
+            {"{\"success\": 1," + timestamp + "}"},
+            {"{\"success\": null," + timestamp + "}"},
+            {"{\"success\": {}," + timestamp + "}"},
+            {"{" + timestamp + "}"},
+            {"{\"success\": true,\"challenge_ts\": null}"},
+            {"{\"success\": true,\"challenge_ts\": 5}"},
+            {"{\"success\": true," + timestamp + ",\"hostname\": null}"},
+            {"{\"success\": true," + timestamp + ",\"hostname\": 1}"},
+            {"{\"success\": true," + timestamp + ",\"hostname\": true}"},
+            {"{\"success\": true," + timestamp + ",\"apk_package_name\": null,\"hostname\": \"a\"}"},
+            {"{\"success\": true," + timestamp + ",\"score\": null,\"action\": \"home\"}"},
+            {"{\"success\": true," + timestamp + ",\"score\": 0.5,\"action\": null}"},
+            {"{\"success\": true," + timestamp + ",\"score\": null}"},
+            {"{\"success\": true," + timestamp + ",\"action\": null}"},
+            {"{\"success\": true," + timestamp + ",\"score\": \"0.5\",\"action\": \"home\"}"},
+            {"{\"success\": true," + timestamp + ",\"score\": true,\"action\": \"home\"}"},
+            {"{\"success\": true," + timestamp + ",\"score\": 0.5,\"action\": 1}"},
+            {"{\"success\": true," + timestamp + ",\"unknown\": null}"},
+            {"{\"success\": true," + timestamp + ",\"success\": false}"},
+            {"{'success': true,'challenge_ts': '2020-12-29T17:21:02Z'}"},
+            {"{success: true," + timestamp + "}"},
+            {"{\"success\": true," + timestamp + ",}"},
+            {"{\"success\": false,\"hostname\": null,\"error-codes\": [\"bad-request\"]}"},
+            {"{\"success\": false,\"error-codes\": null}"},
+            {"{\"success\": false,\"error-codes\": [null]}"},
+            {"{\"success\": false,\"error-codes\": [true]}"},
+            {"{\"success\": false,\"error-codes\": \"bad-request\"}"},
+            {"{\"success\": false,\"error-codes\": [\"bad-request\"]} trailing"},
+            {"[]"},
+            {"null"},
+            {""}
+        };
+    }
+
+    @Test
+    public void testDeserializeWithoutChallengeTimestamp() {
+        // Unlike the SiteVerifyCaptchaResponseDeserializer, a missing challenge timestamp is accepted
+        String testResponse = "{\"success\": true,\"hostname\": \"localhost\"}";
+
+        CaptchaValidationResponse result = new StreamingCaptchaResponseDeserializer().deserialize(testResponse);
+
+        assertTrue(result.hasSucceeded());
+        assertNull(result.getChallengeTimestamp());
+        assertEquals(result.getHostnameOrPackageName(), "localhost");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testDeserializeWithTrailingData() {
+        new StreamingCaptchaResponseDeserializer().deserialize(ByteBuffer.wrap(
+            "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\"}{\"success\": false}"
+                .getBytes(StandardCharsets.UTF_8)
+        ));
+    }
+
+    @Test
+    public void testDeserializeWithUnknownAndNullProperties() {
+        String testResponse = "{\"success\": true,\"unknown\": {\"nested\": [1, 2, {\"a\": null}]}," +
+            "\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\",\"action\": null}";
+
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        CaptchaValidationResponse result = deserializer.deserialize(testResponse);
+
+        assertTrue(result.hasSucceeded());
+        assertEquals(result.getReCaptchaVersion(), ReCaptchaVersion.VERSION_2);
+        assertEquals(result.getChallengeTimestamp().getTime(), 1609262462000L);
+        assertEquals(result.getClientType(), ClientType.WEB);
+        assertEquals(result.getHostnameOrPackageName(), "localhost");
+        assertEquals(result.getAction(), "");
+        assertEquals(result.getErrors().length, 0);
+    }
+
+    @Test
+    public void testDeserializeWithScoreAsString() {
+        String testResponse = "{\"success\": true,\"score\": \"0.7\",\"action\": \"login\"," +
+            "\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}";
+
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        CaptchaValidationResponse result = deserializer.deserialize(testResponse);
+
+        assertEquals(result.getReCaptchaVersion(), ReCaptchaVersion.VERSION_3);
+        assertEquals(result.getScore(), 0.7f);
+        assertEquals(result.getAction(), "login");
+    }
+
+    @Test
+    public void testDeserializeWithUnknownErrorCode() {
+        String testResponse = "{\"success\": false, \"error-codes\": [\"bad-request\", \"something-new\"]}";
+
+        StreamingCaptchaResponseDeserializer deserializer = new StreamingCaptchaResponseDeserializer();
+        CaptchaValidationResponse result = deserializer.deserialize(testResponse);
+
+        assertFalse(result.hasSucceeded());
+        assertEquals(result.getErrors(), new ValidationError[]{ValidationError.BAD_REQUEST, null});
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testDeserializeWithoutSuccess() {
+        new StreamingCaptchaResponseDeserializer().deserialize("{\"hostname\": \"localhost\"}");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testDeserializeMalformedResponse() {
+        new StreamingCaptchaResponseDeserializer().deserialize("{\"success\": true, \"hostname\": ");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testDeserializeWithMalformedTimestamp() {
+        new StreamingCaptchaResponseDeserializer().deserialize(
+            "{\"success\": true,\"challenge_ts\": \"yesterday\",\"hostname\": \"localhost\"}"
+        );
+    }
+
+    /**
+     * Get the outcome of a deserialization.
+     *
+     * @param deserialization The deserialization to run
+     * @return The result of the deserialization, or the class of the exception it failed with
+     */
+    private static Object outcomeOf(Supplier<Boolean> deserialization) {
+        try {
+            return deserialization.get();
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.tenant;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidationResponse;
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandler;
+import com.github.playerforcehd.gcaptchavalidator.request.CaptchaRequestHandlerException;
+import com.github.playerforcehd.gcaptchavalidator.serialize.BasicCaptchaResponseDeserializer;
+import com.github.playerforcehd.gcaptchavalidator.serialize.SiteVerifyCaptchaResponseDeserializer;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link CaptchaValidatorRegistry}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CaptchaValidatorRegistryTest {
+    /**
+     * A body of a successful validation returned by the mocked handlers
+     */
+    private static final String SUCCEEDED_BODY =
+        "{\"success\": true,\"challenge_ts\": \"2020-12-29T17:21:02Z\",\"hostname\": \"localhost\"}";
+
+    @Test
+    public void testTenantsShareHandlerAndUseOwnSecret() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn(SUCCEEDED_BODY);
+
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> new ValidatorConfiguration("SecretOf" + tenant),
+            captchaRequestHandler,
+            new SiteVerifyCaptchaResponseDeserializer()
+        );
+
+        assertTrue(captchaValidatorRegistry.getValidator("first").basicValidate("SomeResponse"));
+        assertTrue(captchaValidatorRegistry.getValidator("second").basicValidate("SomeResponse"));
+
+        verify(captchaRequestHandler).request(
+            argThat(configuration -> configuration.getSecretToken().equals("SecretOffirst")),
+            eq("SomeResponse"),
+            eq("")
+        );
+        verify(captchaRequestHandler).request(
+            argThat(configuration -> configuration.getSecretToken().equals("SecretOfsecond")),
+            eq("SomeResponse"),
+            eq("")
+        );
+        assertEquals(captchaValidatorRegistry.getTenants().size(), 2);
+    }
+
+    @Test
+    public void testTenantIsLoadedOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> {
+            loads.incrementAndGet();
+
+            return new ValidatorConfiguration("Secret");
+        });
+
+        CaptchaValidator captchaValidator = captchaValidatorRegistry.getValidator("tenant");
+
+        assertSame(captchaValidatorRegistry.getValidator("tenant"), captchaValidator);
+        assertEquals(captchaValidatorRegistry.getConfiguration("tenant").getSecretToken(), "Secret");
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testConcurrentLookupsLoadTenantOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> {
+            loads.incrementAndGet();
+            try {
+                releaseLoad.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new ValidatorConfiguration("Secret");
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CaptchaValidator>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(() -> captchaValidatorRegistry.getValidator("tenant")));
+            }
+            Thread.sleep(50);
+            releaseLoad.countDown();
+
+            CaptchaValidator captchaValidator = results.get(0).get(5, TimeUnit.SECONDS);
+            assertNotNull(captchaValidator);
+            for (Future<CaptchaValidator> result : results) {
+                assertSame(result.get(5, TimeUnit.SECONDS), captchaValidator);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testUnknownTenantIsRemembered() {
+        AtomicInteger loads = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> {
+            loads.incrementAndGet();
+
+            return null;
+        });
+
+        assertNull(captchaValidatorRegistry.getValidator("unknown"));
+        assertNull(captchaValidatorRegistry.getConfiguration("unknown"));
+        assertNull(captchaValidatorRegistry.getStatistics("unknown"));
+        assertTrue(captchaValidatorRegistry.getTenants().isEmpty());
+        assertEquals(loads.get(), 1);
+
+        // Invalidating an unknown tenant looks it up in the source again
+        assertFalse(captchaValidatorRegistry.invalidate("unknown"));
+        assertNull(captchaValidatorRegistry.getValidator("unknown"));
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testUnknownTenantIsLoadedAgainAfterTtl() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> loads.incrementAndGet() == 1 ? null : new ValidatorConfiguration("Secret"),
+            mock(CaptchaRequestHandler.class),
+            new SiteVerifyCaptchaResponseDeserializer(),
+            Runnable::run,
+            Duration.ofMillis(50)
+        );
+
+        assertNull(captchaValidatorRegistry.getValidator("tenant"));
+        assertNull(captchaValidatorRegistry.getValidator("tenant"));
+        Thread.sleep(100);
+
+        assertNotNull(captchaValidatorRegistry.getValidator("tenant"));
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testRegisterUnknownTenant() {
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> null);
+        assertNull(captchaValidatorRegistry.getValidator("tenant"));
+
+        captchaValidatorRegistry.register("tenant", new ValidatorConfiguration("Secret"));
+
+        assertEquals(captchaValidatorRegistry.getConfiguration("tenant").getSecretToken(), "Secret");
+    }
+
+    @Test
+    public void testUnknownTenantsAreNotRememberedWithoutTtl() {
+        AtomicInteger loads = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> {
+                loads.incrementAndGet();
+
+                return null;
+            },
+            mock(CaptchaRequestHandler.class),
+            new SiteVerifyCaptchaResponseDeserializer(),
+            Runnable::run,
+            Duration.ZERO
+        );
+
+        assertNull(captchaValidatorRegistry.getValidator("unknown"));
+        assertNull(captchaValidatorRegistry.getValidator("unknown"));
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testFailedLoadIsRetried() {
+        AtomicInteger loads = new AtomicInteger();
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("Test");
+            }
+
+            return new ValidatorConfiguration("Secret");
+        });
+
+        assertThrows(IllegalStateException.class, () -> captchaValidatorRegistry.getValidator("tenant"));
+        assertNotNull(captchaValidatorRegistry.getValidator("tenant"));
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testConcurrentLookupsRetryFailedLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(tenant -> {
+            if (loads.incrementAndGet() == 1) {
+                try {
+                    releaseLoad.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                throw new IllegalStateException("Test");
+            }
+
+            return new ValidatorConfiguration("Secret");
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<CaptchaValidator> failedLookup =
+                executorService.submit(() -> captchaValidatorRegistry.getValidator("tenant"));
+            Thread.sleep(50);
+            Future<CaptchaValidator> waitingLookup =
+                executorService.submit(() -> captchaValidatorRegistry.getValidator("tenant"));
+            Thread.sleep(50);
+            releaseLoad.countDown();
+
+            ExecutionException exception =
+                expectThrows(ExecutionException.class, () -> failedLookup.get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalStateException);
+            // The waiting lookup loads the tenant itself once the load it waited for has failed
+            assertNotNull(waitingLookup.get(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testInvalidUnknownTenantTtl() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new CaptchaValidatorRegistry(
+                tenant -> null,
+                mock(CaptchaRequestHandler.class),
+                new SiteVerifyCaptchaResponseDeserializer(),
+                Runnable::run,
+                Duration.ofSeconds(-1)
+            )
+        );
+    }
+
+    @Test
+    public void testRegisterAndInvalidate() {
+        CaptchaValidatorConfigurationSource configurationSource = mock(CaptchaValidatorConfigurationSource.class);
+        when(configurationSource.getConfiguration("tenant")).thenReturn(new ValidatorConfiguration("LoadedSecret"));
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(configurationSource);
+
+        ValidatorConfiguration validatorConfiguration = new ValidatorConfiguration("RegisteredSecret");
+        captchaValidatorRegistry.register("tenant", validatorConfiguration);
+        validatorConfiguration.setSecretToken("ChangedSecret");
+
+        CaptchaValidatorConfiguration captchaValidatorConfiguration =
+            captchaValidatorRegistry.getConfiguration("tenant");
+        assertEquals(captchaValidatorConfiguration.getSecretToken(), "RegisteredSecret");
+        verify(configurationSource, never()).getConfiguration(any());
+
+        assertTrue(captchaValidatorRegistry.invalidate("tenant"));
+        assertFalse(captchaValidatorRegistry.invalidate("tenant"));
+        assertEquals(captchaValidatorRegistry.getConfiguration("tenant").getSecretToken(), "LoadedSecret");
+    }
+
+    @Test
+    public void testRegisterReplacesConfigurationOfLoadedTenant() throws CaptchaRequestHandlerException {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any())).thenReturn(SUCCEEDED_BODY);
+
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> new ValidatorConfiguration("OldSecret"),
+            captchaRequestHandler,
+            new SiteVerifyCaptchaResponseDeserializer()
+        );
+        CaptchaValidator captchaValidator = captchaValidatorRegistry.getValidator("tenant");
+        captchaValidator.validate("SomeResponse");
+
+        captchaValidatorRegistry.register("tenant", new ValidatorConfiguration("NewSecret"));
+        captchaValidator.validate("SomeResponse");
+
+        assertSame(captchaValidatorRegistry.getValidator("tenant"), captchaValidator);
+        assertEquals(captchaValidatorRegistry.getStatistics("tenant").getValidationCount(), 2);
+        verify(captchaRequestHandler).request(
+            argThat(configuration -> configuration.getSecretToken().equals("NewSecret")),
+            eq("SomeResponse"),
+            eq("")
+        );
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenReturn(SUCCEEDED_BODY)
+            .thenReturn("{\"success\": false, \"error-codes\": [\"invalid-input-response\"]}")
+            .thenThrow(new CaptchaRequestHandlerException("Test"))
+            .thenReturn(SUCCEEDED_BODY);
+
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> new ValidatorConfiguration("Secret"),
+            captchaRequestHandler,
+            new SiteVerifyCaptchaResponseDeserializer()
+        );
+        assertNull(captchaValidatorRegistry.getStatistics("tenant"));
+
+        CaptchaValidator captchaValidator = captchaValidatorRegistry.getValidator("tenant");
+        captchaValidator.validate("SomeResponse");
+        captchaValidator.validate("SomeResponse");
+        CaptchaValidationResponse failedValidation = captchaValidator.validate("SomeResponse");
+        assertEquals(
+            failedValidation.getErrors(),
+            new ValidationError[]{ValidationError.GCAPTCHAVALIDATOR_INTERNAL_ERROR}
+        );
+        captchaValidator.validateAsync("SomeResponse").get(5, TimeUnit.SECONDS);
+
+        TenantStatistics tenantStatistics = captchaValidatorRegistry.getStatistics("tenant");
+        assertEquals(tenantStatistics.getSucceededCount(), 2);
+        assertEquals(tenantStatistics.getRejectedCount(), 1);
+        assertEquals(tenantStatistics.getInternalErrorCount(), 1);
+        assertEquals(tenantStatistics.getValidationCount(), 4);
+        assertTrue(tenantStatistics.getAverageDurationNanos() >= 0);
+    }
+
+    @Test
+    public void testBasicValidateOnlyExtractsSuccess() throws Exception {
+        String failedBody = "{\"success\": false, \"error-codes\": [\"invalid-input-response\"]}";
+        CaptchaRequestHandler captchaRequestHandler = mock(CaptchaRequestHandler.class);
+        when(captchaRequestHandler.request(any(), any(), any()))
+            .thenReturn(SUCCEEDED_BODY)
+            .thenReturn(failedBody);
+        BasicCaptchaResponseDeserializer basicCaptchaResponseDeserializer =
+            mock(BasicCaptchaResponseDeserializer.class);
+        when(basicCaptchaResponseDeserializer.basicDeserialize(SUCCEEDED_BODY)).thenReturn(true);
+        when(basicCaptchaResponseDeserializer.basicDeserialize(failedBody)).thenReturn(false);
+
+        CaptchaValidatorRegistry captchaValidatorRegistry = new CaptchaValidatorRegistry(
+            tenant -> new ValidatorConfiguration("Secret"),
+            captchaRequestHandler,
+            basicCaptchaResponseDeserializer
+        );
+        CaptchaValidator captchaValidator = captchaValidatorRegistry.getValidator("tenant");
+
+        assertTrue(captchaValidator.basicValidate("SomeResponse"));
+        assertFalse(captchaValidator.basicValidate("SomeResponse", "127.0.0.1"));
+        verify(basicCaptchaResponseDeserializer, never()).deserialize(anyString());
+
+        TenantStatistics tenantStatistics = captchaValidatorRegistry.getStatistics("tenant");
+        assertEquals(tenantStatistics.getSucceededCount(), 1);
+        assertEquals(tenantStatistics.getRejectedCount(), 1);
+        assertEquals(tenantStatistics.getValidationCount(), 2);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link Deadline}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class DeadlineTest {
+    @Test
+    public void testNone() {
+        Deadline deadline = Deadline.none();
+
+        assertFalse(deadline.isLimited());
+        assertFalse(deadline.isExpired());
+        assertEquals(deadline.remaining(TimeUnit.NANOSECONDS), Long.MAX_VALUE);
+        assertEquals(deadline.limit(Duration.ofSeconds(3)), Duration.ofSeconds(3));
+    }
+
+    @Test
+    public void testAfter() {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+
+        assertTrue(deadline.isLimited());
+        assertFalse(deadline.isExpired());
+        long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+        assertTrue(remaining > 9000 && remaining <= 10000);
+    }
+
+    @Test
+    public void testAt() {
+        Deadline deadline = Deadline.at(Instant.now().plusSeconds(10));
+
+        assertTrue(deadline.isLimited());
+        assertTrue(deadline.remaining(TimeUnit.SECONDS) <= 10);
+        assertTrue(deadline.remaining(TimeUnit.SECONDS) >= 8);
+    }
+
+    @Test
+    public void testExpired() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        assertTrue(deadline.isExpired());
+        assertTrue(deadline.remaining(TimeUnit.NANOSECONDS) <= 0);
+        assertEquals(deadline.limit(Duration.ofSeconds(1)), Duration.ZERO);
+    }
+
+    @Test
+    public void testNegativeTimeoutIsExpired() {
+        assertTrue(Deadline.after(Duration.ofSeconds(-5)).isExpired());
+        assertTrue(Deadline.at(Instant.now().minusSeconds(5)).isExpired());
+    }
+
+    @Test
+    public void testHugeTimeoutNeverExpires() {
+        assertFalse(Deadline.after(ChronoUnit.FOREVER.getDuration()).isLimited());
+        assertFalse(Deadline.after(Duration.ofDays(365 * 1000)).isLimited());
+    }
+
+    @Test
+    public void testMin() {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+
+        assertSame(deadline.min(Duration.ofSeconds(10)), deadline);
+        assertTrue(deadline.min(Duration.ofMillis(100)).remaining(TimeUnit.MILLISECONDS) <= 100);
+        assertTrue(Deadline.none().min(Duration.ofSeconds(1)).isLimited());
+    }
+
+    @Test
+    public void testLimit() {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+
+        assertEquals(deadline.limit(Duration.ofMillis(100)), Duration.ofMillis(100));
+        assertTrue(deadline.limit(Duration.ofSeconds(10)).compareTo(Duration.ofSeconds(1)) <= 0);
+    }
+}
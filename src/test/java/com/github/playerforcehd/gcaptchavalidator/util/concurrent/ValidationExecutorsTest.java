@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Test the ValidationExecutors util to ensure its working as intended
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ValidationExecutorsTest {
+    @Test
+    public void testIsVirtualThreadSupported() {
+        boolean expected;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            expected = true;
+        } catch (NoSuchMethodException e) {
+            expected = false;
+        }
+
+        assertEquals(ValidationExecutors.isVirtualThreadSupported(), expected);
+    }
+
+    @Test
+    public void testDefaultExecutorUsesDaemonThreads() throws Exception {
+        Thread thread = CompletableFuture.supplyAsync(
+            Thread::currentThread,
+            ValidationExecutors.defaultExecutor()
+        ).get(5, TimeUnit.SECONDS);
+
+        // Virtual threads are always daemon threads
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void testNewVirtualThreadPerTaskExecutor() throws Exception {
+        int tasks = 500;
+        CountDownLatch allRunning = new CountDownLatch(tasks);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = ValidationExecutors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < tasks; i++) {
+                executorService.execute(() -> {
+                    threads.add(Thread.currentThread());
+                    allRunning.countDown();
+                    try {
+                        // Block like a validation waiting for the SiteVerify servers
+                        allRunning.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            // Every blocking task must run on its own thread at the same time
+            assertTrue(allRunning.await(10, TimeUnit.SECONDS));
+            assertEquals(threads.size(), tasks);
+            for (Thread thread : threads) {
+                assertTrue(thread.getName().startsWith("gcaptchavalidator-"));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDaemonThreadFactory() {
+        ThreadFactory threadFactory = ValidationExecutors.daemonThreadFactory("test-");
+
+        Thread firstThread = threadFactory.newThread(() -> {
+        });
+        Thread secondThread = threadFactory.newThread(() -> {
+        });
+
+        assertTrue(firstThread.isDaemon());
+        assertEquals(firstThread.getName(), "test-1");
+        assertEquals(secondThread.getName(), "test-2");
+    }
+}
@@ -24,10 +24,13 @@
 
 package com.github.playerforcehd.gcaptchavalidator.util.request;
 
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -72,4 +75,32 @@ public class PostDataTest {
 
         PostData.createPostData(inputData, "12345Charset12345");
     }
+
+    @Test(dataProvider = "encodeDataProvider")
+    public void testEncode(String value) throws UnsupportedEncodingException {
+        byte[] expected = URLEncoder.encode(value, StandardCharsets.UTF_8.toString())
+            .getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(PostData.encodedLength(value), expected.length);
+
+        byte[] result = new byte[expected.length + 4];
+        assertEquals(PostData.encode(value, result, 2), expected.length + 2);
+        assertEquals(Arrays.copyOfRange(result, 2, expected.length + 2), expected);
+    }
+
+    @DataProvider
+    public Object[][] encodeDataProvider() {
+        return new Object[][]{
+            {""},
+            {"03AJz9lvRRl27ls2cnen32HC_LRxepB9xmLps0GcDMJfIGHIOaPWW29X-_DlvNGo5Tmx6lANsU.*"},
+            {"THIS IS A INVALID RESPONSE"},
+            {"a+b=c&d/e?f%g#h~i!j'k(l)m"},
+            {"2001:db8::1"},
+            {"\u00e4\u00f6\u00fc\u00df"},
+            {"\u20ac \u4e2d\u6587"},
+            {"\ud83d\ude00"},
+            {"\ud83d unpaired \ude00"},
+            {"\u0000\u001f\u007f\u0080\u07ff\u0800\uffff"}
+        };
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.GCaptchaValidator;
+import com.github.playerforcehd.gcaptchavalidator.ImmutableValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for the {@link RequestTemplate}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RequestTemplateTest {
+    @Test(dataProvider = "createPostDataDataProvider")
+    public void testCreatePostData(String secret, String response, String remoteIP) throws Exception {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(secret);
+
+        // The post data must be the same as the one created by PostData
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("secret", secret);
+        params.put("response", response);
+        if (remoteIP != null && !remoteIP.isEmpty()) {
+            params.put("remoteip", remoteIP);
+        }
+        byte[] expected = PostData.createPostData(params, StandardCharsets.UTF_8.toString());
+
+        assertEquals(new RequestTemplate(configuration).createPostData(response, remoteIP), expected);
+    }
+
+    @DataProvider
+    public Object[][] createPostDataDataProvider() {
+        return new Object[][]{
+            {"6LeIxAcTAAAAAGG-vFI1TnRWxMZNFuojJ4WifJWe", "03AJz9lvRRl27ls2cnen32HC_LRxepB9xmLps0", "127.0.0.1"},
+            {"6LeIxAcTAAAAAGG-vFI1TnRWxMZNFuojJ4WifJWe", "03AJz9lvRRl27ls2cnen32HC_LRxepB9xmLps0", ""},
+            {"6LeIxAcTAAAAAGG-vFI1TnRWxMZNFuojJ4WifJWe", "THIS IS A INVALID RESPONSE", null},
+            {"", "", ""},
+            {"s&cret=\u00e4", "r\u20acsponse+/", "2001:db8::1"},
+            {null, null, "::1"}
+        };
+    }
+
+    @Test
+    public void testCreateHttpRequest() throws URISyntaxException {
+        Map<String, String> httpHeaders = new LinkedHashMap<>();
+        httpHeaders.put("Content-Type", "application/x-www-form-urlencoded");
+        httpHeaders.put("Connection", "close");
+        httpHeaders.put("Content-Length", "1");
+        httpHeaders.put("Host", "example.com");
+        httpHeaders.put("Accept", "*/*");
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            "secret",
+            "https://www.google.com/recaptcha/api/siteverify?x=1",
+            httpHeaders
+        );
+
+        String request = new String(
+            new RequestTemplate(configuration).createHttpRequest("token", "127.0.0.1"),
+            StandardCharsets.ISO_8859_1
+        );
+
+        assertEquals(
+            request,
+            "POST /recaptcha/api/siteverify?x=1 HTTP/1.1\r\n" +
+                "Host: www.google.com\r\n" +
+                "Content-Type: application/x-www-form-urlencoded\r\n" +
+                "Accept: */*\r\n" +
+                "Content-Length: 47\r\n" +
+                "\r\n" +
+                "secret=secret&response=token&remoteip=127.0.0.1"
+        );
+    }
+
+    @Test
+    public void testCreateHttpRequestWithPort() throws URISyntaxException {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            "secret",
+            "http://localhost:8080",
+            new LinkedHashMap<>()
+        );
+
+        String request = new String(
+            new RequestTemplate(configuration).createHttpRequest("token", null),
+            StandardCharsets.ISO_8859_1
+        );
+
+        assertEquals(
+            request,
+            "POST / HTTP/1.1\r\nHost: localhost:8080\r\nContent-Length: 28\r\n\r\nsecret=secret&response=token"
+        );
+    }
+
+    @Test
+    public void testVerifierUrl() throws MalformedURLException, URISyntaxException {
+        RequestTemplate requestTemplate = new RequestTemplate(
+            new ValidatorConfiguration("secret", "https://www.google.com/recaptcha/api/siteverify")
+        );
+
+        assertEquals(requestTemplate.getVerifierUrl(), new URL("https://www.google.com/recaptcha/api/siteverify"));
+        assertEquals(requestTemplate.getVerifierUri(), new URI("https://www.google.com/recaptcha/api/siteverify"));
+    }
+
+    @Test(expectedExceptions = MalformedURLException.class)
+    public void testInvalidVerifierUrl() throws MalformedURLException {
+        new RequestTemplate(new ValidatorConfiguration("secret", "not a url")).getVerifierUrl();
+    }
+
+    @Test(expectedExceptions = URISyntaxException.class)
+    public void testInvalidVerifierUri() throws URISyntaxException {
+        new RequestTemplate(new ValidatorConfiguration("secret", "https://www.google.com/a b")).getVerifierUri();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCreateHttpRequestWithoutHost() throws URISyntaxException {
+        new RequestTemplate(new ValidatorConfiguration("secret", "/siteverify")).createHttpRequest("token", "");
+    }
+
+    @Test
+    public void testOf() {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration("secret");
+        ImmutableValidatorConfiguration immutableConfiguration =
+            (ImmutableValidatorConfiguration) new GCaptchaValidator(configuration).getConfiguration();
+
+        assertSame(RequestTemplate.of(immutableConfiguration), immutableConfiguration.getRequestTemplate());
+        assertNotSame(RequestTemplate.of(configuration), RequestTemplate.of(configuration));
+    }
+
+    @Test
+    public void testHttpHeadersAreSnapshot() {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration("secret");
+        RequestTemplate requestTemplate = new RequestTemplate(configuration);
+        configuration.getHttpHeaders().put("X-Test", "Test");
+
+        assertEquals(requestTemplate.getHttpHeaders().get("X-Test"), null);
+    }
+}
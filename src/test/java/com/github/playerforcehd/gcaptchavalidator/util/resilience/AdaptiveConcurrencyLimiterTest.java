@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link AdaptiveConcurrencyLimiter}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class AdaptiveConcurrencyLimiterTest {
+    @Test
+    public void testRejectsCallsOverLimit() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+        assertTrue(concurrencyLimiter.tryAcquire());
+        assertFalse(concurrencyLimiter.tryAcquire());
+        assertEquals(concurrencyLimiter.getInFlight(), 2);
+        assertEquals(concurrencyLimiter.getRejections(), 1);
+
+        concurrencyLimiter.onIgnored();
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+    }
+
+    @Test
+    public void testLimitGrowsWhileRoundTripTimesAreStable() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(4, 1, 8);
+
+        for (int i = 0; i < 100; i++) {
+            int limit = concurrencyLimiter.getLimit();
+            for (int j = 0; j < limit; j++) {
+                assertTrue(concurrencyLimiter.tryAcquire());
+            }
+            for (int j = 0; j < limit; j++) {
+                concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        }
+
+        assertEquals(concurrencyLimiter.getLimit(), 8);
+        assertEquals(concurrencyLimiter.getInFlight(), 0);
+        assertEquals(concurrencyLimiter.getNoLoadRttNanos(), TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhileIdle() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire());
+            concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        assertEquals(concurrencyLimiter.getLimit(), 10);
+    }
+
+    @Test
+    public void testLimitShrinksWhenRoundTripTimesIncrease() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(20, 2, 100);
+        assertTrue(concurrencyLimiter.tryAcquire());
+        concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+        concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(concurrencyLimiter.getLimit(), 20);
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+        concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(concurrencyLimiter.getLimit(), 18);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire());
+            concurrencyLimiter.onSuccess(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(concurrencyLimiter.getLimit(), 2);
+    }
+
+    @Test
+    public void testLimitShrinksWhenCallsAreDropped() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(10, 2, 100);
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+        concurrencyLimiter.onDropped();
+
+        assertEquals(concurrencyLimiter.getLimit(), 9);
+        assertEquals(concurrencyLimiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testNoLoadRoundTripTimeIsProbedAgain() {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+            10,
+            1,
+            100,
+            0.5f,
+            2f,
+            3,
+            System::nanoTime
+        );
+
+        for (long rttMillis : new long[]{10, 20, 100, 100}) {
+            assertTrue(concurrencyLimiter.tryAcquire());
+            concurrencyLimiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        }
+
+        assertEquals(concurrencyLimiter.getNoLoadRttNanos(), TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testAcquireWaitsForPermit() throws Exception {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        assertTrue(concurrencyLimiter.tryAcquire());
+        assertFalse(concurrencyLimiter.acquire(10, TimeUnit.MILLISECONDS));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch waiting = new CountDownLatch(1);
+            Future<Boolean> acquired = executorService.submit(() -> {
+                waiting.countDown();
+
+                return concurrencyLimiter.acquire(5, TimeUnit.SECONDS);
+            });
+            assertTrue(waiting.await(5, TimeUnit.SECONDS));
+            concurrencyLimiter.onIgnored();
+
+            assertTrue(acquired.get(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(concurrencyLimiter.getInFlight(), 1);
+        assertEquals(concurrencyLimiter.getRejections(), 1);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(0, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(5, 6, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(11, 1, 10));
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new AdaptiveConcurrencyLimiter(5, 1, 10, 1f, 2f, 10, System::nanoTime)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new AdaptiveConcurrencyLimiter(5, 1, 10, 0.9f, 0.5f, 10, System::nanoTime)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new AdaptiveConcurrencyLimiter(5, 1, 10, 0.9f, 2f, 0, System::nanoTime)
+        );
+    }
+}
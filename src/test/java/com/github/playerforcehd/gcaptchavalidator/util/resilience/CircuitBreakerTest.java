@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link CircuitBreaker}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class CircuitBreakerTest {
+    /**
+     * The fake clock of the breaker under test
+     */
+    private AtomicLong now;
+
+    /**
+     * The state changes reported by the breaker under test
+     */
+    private List<CircuitBreakerState> stateChanges;
+
+    /**
+     * The breaker under test, with a window of 10 calls, evaluated from 4 calls on, 2 trial calls,
+     * a failure rate threshold of 0.5, a slow call rate threshold of 0.5, slow calls from 1 second on
+     * and an open duration of 10 seconds
+     */
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeMethod
+    public void setUp() {
+        this.now = new AtomicLong();
+        this.stateChanges = new ArrayList<>();
+        this.circuitBreaker = new CircuitBreaker(
+            10,
+            4,
+            2,
+            0.5f,
+            0.5f,
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(10),
+            this.now::get
+        );
+        this.circuitBreaker.addListener((circuitBreaker, previousState, newState) -> {
+            assertSame(circuitBreaker, this.circuitBreaker);
+            this.stateChanges.add(previousState);
+            this.stateChanges.add(newState);
+        });
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        this.call(false, 0);
+        this.call(true, 0);
+        this.call(false, 0);
+        assertEquals(this.circuitBreaker.getFailureRate(), -1f);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+
+        this.call(true, 0);
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+        assertEquals(this.stateChanges, Arrays.asList(CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN));
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        this.call(false, 0);
+        this.call(false, 999);
+        this.call(false, 1000);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+        assertEquals(this.circuitBreaker.getSlowCallRate(), -1f);
+
+        this.call(false, 5000);
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+    }
+
+    @Test
+    public void testStaysClosedBelowThresholds() {
+        for (int i = 0; i < 100; i++) {
+            this.call(i % 4 == 1, i % 4 == 2 ? 1000 : 0);
+        }
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+        assertEquals(this.circuitBreaker.getFailureRate(), 0.2f);
+        assertEquals(this.circuitBreaker.getSlowCallRate(), 0.3f);
+        assertTrue(this.stateChanges.isEmpty());
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldCalls() {
+        this.circuitBreaker = new CircuitBreaker(
+            10,
+            10,
+            2,
+            0.5f,
+            1f,
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(10),
+            this.now::get
+        );
+        for (int i = 0; i < 4; i++) {
+            this.call(true, 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            this.call(false, 0);
+        }
+        assertEquals(this.circuitBreaker.getFailureRate(), -1f);
+
+        this.call(false, 0);
+        assertEquals(this.circuitBreaker.getFailureRate(), 0.4f);
+        this.call(false, 0);
+        this.call(false, 0);
+        assertEquals(this.circuitBreaker.getFailureRate(), 0.2f);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testOpenRejectsCalls() {
+        this.open();
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+        assertEquals(this.circuitBreaker.getNotPermittedCalls(), 2);
+
+        // Outcomes of calls that have been permitted before the breaker opened are ignored
+        this.circuitBreaker.onSuccess(0);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+    }
+
+    @Test
+    public void testHalfOpenCloses() {
+        this.open();
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.HALF_OPEN);
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+
+        this.circuitBreaker.onSuccess(0);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.HALF_OPEN);
+        this.circuitBreaker.onSuccess(0);
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertEquals(this.stateChanges, Arrays.asList(
+            CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN,
+            CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN,
+            CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED
+        ));
+    }
+
+    @Test
+    public void testHalfOpenOpensAgain() {
+        this.open();
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        this.call(false, 0);
+        this.call(false, 2000);
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testHalfOpenExpiresLostTrialCalls() {
+        this.open();
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        this.circuitBreaker.onSuccess(0);
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+
+        this.now.addAndGet(CircuitBreaker.DEFAULT_TRIAL_CALL_TIMEOUT.toNanos() - 1);
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+        this.now.incrementAndGet();
+
+        // The permission of the trial call that never recorded its outcome has expired
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+        this.circuitBreaker.onSuccess(0);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testIgnoredCallsAreNotRecorded() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(this.circuitBreaker.tryAcquirePermission());
+            this.circuitBreaker.onIgnored();
+        }
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+
+        this.open();
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        assertFalse(this.circuitBreaker.tryAcquirePermission());
+
+        // The ignored trial call returns its permission
+        this.circuitBreaker.onIgnored();
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.HALF_OPEN);
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        this.circuitBreaker.onSuccess(0);
+        this.circuitBreaker.onSuccess(0);
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.CLOSED);
+    }
+
+    @Test
+    public void testRemoveListener() {
+        this.circuitBreaker = new CircuitBreaker();
+        CircuitBreakerListener listener = (circuitBreaker, previousState, newState) -> fail();
+        this.circuitBreaker.addListener(listener);
+        this.circuitBreaker.removeListener(listener);
+
+        for (int i = 0; i < CircuitBreaker.DEFAULT_MINIMUM_NUMBER_OF_CALLS; i++) {
+            this.circuitBreaker.tryAcquirePermission();
+            this.circuitBreaker.onError(0);
+        }
+
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new CircuitBreaker(5, 10, 2, 0.5f, 0.5f, Duration.ofSeconds(1), Duration.ofSeconds(1), System::nanoTime);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPermittedCallsInHalfOpenState() {
+        new CircuitBreaker(10, 10, 0, 0.5f, 0.5f, Duration.ofSeconds(1), Duration.ofSeconds(1), System::nanoTime);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        new CircuitBreaker(0f, 0.5f, Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+
+    /**
+     * Execute a call through the breaker under test.
+     *
+     * @param failed         If the call fails
+     * @param durationMillis The duration of the call in milliseconds
+     */
+    private void call(boolean failed, long durationMillis) {
+        assertTrue(this.circuitBreaker.tryAcquirePermission());
+        long start = this.circuitBreaker.nanoTime();
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(durationMillis));
+        if (failed) {
+            this.circuitBreaker.onError(this.circuitBreaker.nanoTime() - start);
+        } else {
+            this.circuitBreaker.onSuccess(this.circuitBreaker.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Open the breaker under test by failing calls.
+     */
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            this.call(true, 0);
+        }
+        assertEquals(this.circuitBreaker.getState(), CircuitBreakerState.OPEN);
+    }
+}
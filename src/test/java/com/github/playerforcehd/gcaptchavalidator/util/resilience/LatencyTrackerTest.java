@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link LatencyTracker}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class LatencyTrackerTest {
+    @Test
+    public void testNoEstimateBeforeFirstWindow() {
+        LatencyTracker latencyTracker = new LatencyTracker(0.95f, 10);
+        for (int i = 0; i < 9; i++) {
+            latencyTracker.record(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+
+        assertEquals(latencyTracker.getPercentileNanos(), -1);
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyTracker latencyTracker = new LatencyTracker(0.95f, 100);
+        for (int i = 1; i <= 100; i++) {
+            latencyTracker.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        long percentileNanos = latencyTracker.getPercentileNanos();
+        assertTrue(percentileNanos >= TimeUnit.MILLISECONDS.toNanos(95), String.valueOf(percentileNanos));
+        assertTrue(percentileNanos <= TimeUnit.MILLISECONDS.toNanos(95) * 5 / 4, String.valueOf(percentileNanos));
+    }
+
+    @Test
+    public void testEstimateAdaptsWithEveryWindow() {
+        LatencyTracker latencyTracker = new LatencyTracker(0.5f, 10);
+        for (int i = 0; i < 10; i++) {
+            latencyTracker.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        long slowPercentileNanos = latencyTracker.getPercentileNanos();
+
+        for (int i = 0; i < 10; i++) {
+            latencyTracker.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        assertTrue(slowPercentileNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(latencyTracker.getPercentileNanos() < TimeUnit.MILLISECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testExtremeLatencies() {
+        LatencyTracker latencyTracker = new LatencyTracker(1f, 3);
+        latencyTracker.record(0);
+        latencyTracker.record(-1);
+        latencyTracker.record(Long.MAX_VALUE);
+
+        assertTrue(latencyTracker.getPercentileNanos() > TimeUnit.DAYS.toNanos(1));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new LatencyTracker(0f));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyTracker(1.5f));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyTracker(0.5f, 0));
+    }
+}
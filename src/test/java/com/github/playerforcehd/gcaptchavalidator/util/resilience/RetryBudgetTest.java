@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link RetryBudget}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class RetryBudgetTest {
+    @Test
+    public void testStartsFull() {
+        RetryBudget retryBudget = new RetryBudget(0.1f, 3);
+
+        assertEquals(retryBudget.getAvailableTokens(), 3f);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(retryBudget.tryAcquireRetry());
+        }
+        assertFalse(retryBudget.tryAcquireRetry());
+        assertEquals(retryBudget.getAvailableTokens(), 0f);
+    }
+
+    @Test
+    public void testRequestsRefillTheBudget() {
+        RetryBudget retryBudget = new RetryBudget(0.25f, 1);
+        assertTrue(retryBudget.tryAcquireRetry());
+
+        for (int i = 0; i < 3; i++) {
+            retryBudget.onRequest();
+            assertFalse(retryBudget.tryAcquireRetry());
+        }
+        retryBudget.onRequest();
+
+        assertTrue(retryBudget.tryAcquireRetry());
+    }
+
+    @Test
+    public void testBudgetIsCapped() {
+        RetryBudget retryBudget = new RetryBudget(0.5f, 2);
+        for (int i = 0; i < 100; i++) {
+            retryBudget.onRequest();
+        }
+
+        assertEquals(retryBudget.getAvailableTokens(), 2f);
+    }
+
+    @Test
+    public void testRetryRatioDuringOutage() {
+        RetryBudget retryBudget = new RetryBudget(0.1f, 1);
+        assertTrue(retryBudget.tryAcquireRetry());
+
+        int retries = 0;
+        for (int i = 0; i < 1000; i++) {
+            retryBudget.onRequest();
+            if (retryBudget.tryAcquireRetry()) {
+                retries++;
+            }
+        }
+
+        assertEquals(retries, 100);
+    }
+
+    @Test
+    public void testWithoutTokens() {
+        RetryBudget retryBudget = new RetryBudget(1f, 0);
+        retryBudget.onRequest();
+
+        assertFalse(retryBudget.tryAcquireRetry());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(-0.1f, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(1.1f, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(Float.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(0.1f, -1));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.resilience;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link TokenBucket}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class TokenBucketTest {
+    @Test
+    public void testStartsFull() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 3, clock::get);
+
+        assertEquals(tokenBucket.getAvailableTokens(), 3d);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tokenBucket.tryAcquire());
+        }
+        assertFalse(tokenBucket.tryAcquire());
+        assertEquals(tokenBucket.getAvailableTokens(), 0d);
+        assertEquals(tokenBucket.getRejections(), 1);
+    }
+
+    @Test
+    public void testRefillsWithRate() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 2, clock::get);
+        assertTrue(tokenBucket.tryAcquire());
+        assertTrue(tokenBucket.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(tokenBucket.getAvailableTokens(), 0.5d, 0.001d);
+        assertFalse(tokenBucket.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+    }
+
+    @Test
+    public void testIsCappedAtBurstSize() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 2, clock::get);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertEquals(tokenBucket.getAvailableTokens(), 2d);
+        assertTrue(tokenBucket.tryAcquire());
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+    }
+
+    @Test
+    public void testGetIdleNanos() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 2, clock::get);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(tokenBucket.getIdleNanos(), TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertTrue(tokenBucket.tryAcquire());
+        assertEquals(tokenBucket.getIdleNanos(), 0);
+
+        // The bucket is full again after 100ms
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(tokenBucket.getIdleNanos(), TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testReserve() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 1, clock::get);
+
+        assertEquals(tokenBucket.reserve(0, TimeUnit.MILLISECONDS), 0);
+        assertEquals(tokenBucket.reserve(50, TimeUnit.MILLISECONDS), -1);
+        assertEquals(tokenBucket.reserve(100, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS.toNanos(100));
+        // Reserved tokens are taken, so the next caller has to wait even longer
+        assertEquals(tokenBucket.reserve(1, TimeUnit.SECONDS), TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(tokenBucket.getRejections(), 1);
+    }
+
+    @Test
+    public void testTryAcquireWaitsForToken() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(20, 1);
+        assertTrue(tokenBucket.tryAcquire());
+
+        long start = System.nanoTime();
+        assertTrue(tokenBucket.tryAcquire(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertFalse(tokenBucket.tryAcquire(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConcurrentCallsDoNotExceedBurst() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(1, 100, clock::get);
+        AtomicInteger acquired = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        if (tokenBucket.tryAcquire()) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(acquired.get(), 100);
+        assertEquals(tokenBucket.getRejections(), 8 * 1000 - 100);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(Double.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
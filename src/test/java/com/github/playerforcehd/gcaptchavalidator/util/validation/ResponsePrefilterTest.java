@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.util.validation;
+
+import com.github.playerforcehd.gcaptchavalidator.data.ValidationError;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link ResponsePrefilter}
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class ResponsePrefilterTest {
+    /**
+     * A response that passes the default checks
+     */
+    private static final String VALID_RESPONSE = "03AGdBq25SxXT-pmSeBXjzScW-EiocHwwpwqJRCAC7g_Ne1hPg";
+
+    @DataProvider
+    public static Object[][] checkDataProvider() {
+        char[] tooLong = new char[ResponsePrefilter.DEFAULT_MAX_LENGTH + 1];
+        Arrays.fill(tooLong, 'a');
+
+        return new Object[][]{
+            {VALID_RESPONSE, null},
+            {"XXXX.DUMMY.TOKEN.XXXX.DUMMY", null},
+            {null, ValidationError.MISSING_INPUT_RESPONSE},
+            {"", ValidationError.MISSING_INPUT_RESPONSE},
+            {"short", ValidationError.INVALID_INPUT_RESPONSE},
+            {new String(tooLong), ValidationError.INVALID_INPUT_RESPONSE},
+            {new String(tooLong, 0, ResponsePrefilter.DEFAULT_MAX_LENGTH), null},
+            {VALID_RESPONSE + " ", ValidationError.INVALID_INPUT_RESPONSE},
+            {VALID_RESPONSE + "+/=", ValidationError.INVALID_INPUT_RESPONSE},
+            {VALID_RESPONSE + "ä", ValidationError.INVALID_INPUT_RESPONSE},
+            {"<script>alert(1)</script>", ValidationError.INVALID_INPUT_RESPONSE}
+        };
+    }
+
+    @Test(dataProvider = "checkDataProvider")
+    public void testCheck(String response, ValidationError expectedError) {
+        assertEquals(new ResponsePrefilter().check(response), expectedError);
+    }
+
+    @Test
+    public void testCheckWithCustomLength() {
+        ResponsePrefilter responsePrefilter = new ResponsePrefilter(1, 5);
+
+        assertNull(responsePrefilter.check("short"));
+        assertEquals(responsePrefilter.check("longer"), ValidationError.INVALID_INPUT_RESPONSE);
+        assertEquals(responsePrefilter.getMinLength(), 1);
+        assertEquals(responsePrefilter.getMaxLength(), 5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMinLength() {
+        new ResponsePrefilter(0, 5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxLength() {
+        new ResponsePrefilter(5, 4);
+    }
+
+    @Test
+    public void testCheckDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        ResponsePrefilter responsePrefilter = new ResponsePrefilter();
+        String[] responses = {VALID_RESPONSE, "", "short", VALID_RESPONSE + "+"};
+
+        int checks = 0;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            if (responsePrefilter.check(responses[i & 3]) == null) {
+                checks++;
+            }
+        }
+        allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+        assertEquals(checks, 25_000);
+        assertTrue(allocatedBytes < 1024, "Allocated " + allocatedBytes + " bytes");
+    }
+}
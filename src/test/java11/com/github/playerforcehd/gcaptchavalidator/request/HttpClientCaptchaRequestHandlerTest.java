@@ -0,0 +1,398 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Pascal Zarrad
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.playerforcehd.gcaptchavalidator.request;
+
+import com.github.playerforcehd.gcaptchavalidator.CaptchaValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.ValidatorConfiguration;
+import com.github.playerforcehd.gcaptchavalidator.util.concurrent.Deadline;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.testng.Assert.*;
+
+/**
+ * Test for the {@link HttpClientCaptchaRequestHandler}.
+ * <p>
+ * Note that this test is an integration test instead of a unit test
+ * as the interaction with the external service should work as a whole.
+ *
+ * @author Pascal Zarrad
+ * @since 3.1.0
+ */
+public class HttpClientCaptchaRequestHandlerTest {
+
+    /**
+     * A test secret key provided by Google
+     */
+    private final String gReCaptchaTestSecret = "6LeIxAcTAAAAAGG-vFI1TnRWxMZNFuojJ4WifJWe";
+
+    /**
+     * The remote ip used for testing
+     */
+    private final String remoteIP = "127.0.0.1";
+
+    /**
+     * The body returned by the mocked SiteVerify servers on success
+     */
+    private final String successBody = "{ \"success\": true, \"challenge_ts\": \"2019-06-17T20:33:57Z\", " +
+        "\"hostname\": \"testkey.google.com\" }";
+
+    /**
+     * The {@link WireMockServer} used to mock the SiteVerify servers
+     */
+    private WireMockServer wireMockServer;
+
+    /**
+     * Initializes the WireMockServer used to test the requests
+     */
+    @BeforeMethod
+    public void prepare() {
+        this.wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        this.wireMockServer.start();
+    }
+
+    /**
+     * Stop the used {@link WireMockServer}
+     */
+    @AfterMethod
+    public void reset() {
+        this.wireMockServer.stop();
+    }
+
+    /**
+     * Returns the fake SiteVerify URL
+     */
+    private String getMockedSiteVerifyURL() {
+        return this.wireMockServer.baseUrl() + "/recaptcha/api/siteverify";
+    }
+
+    @Test
+    public void testRequestWithRemoteIPSet() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .withHeader("Content-Type", equalTo("application/x-www-form-urlencoded"))
+            .withRequestBody(
+                equalTo("secret=" + this.gReCaptchaTestSecret + "&response=SomeResponse&remoteip=" + this.remoteIP)
+            )
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler();
+        String result = request.request(configuration, "SomeResponse", this.remoteIP);
+
+        assertEquals(result, this.successBody);
+    }
+
+    @Test
+    public void testRequestWithoutRemoteIPSet() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .withRequestBody(equalTo("secret=" + this.gReCaptchaTestSecret + "&response=THIS+IS+A+RESPONSE"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler();
+        String result = request.request(configuration, "THIS IS A RESPONSE", "");
+
+        assertEquals(result, this.successBody);
+    }
+
+    @Test
+    public void testRequestReusesConnections() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(request.request(configuration, "SomeResponse", ""), this.successBody);
+        }
+
+        this.wireMockServer.verify(10, postRequestedFor(urlPathEqualTo("/recaptcha/api/siteverify")));
+    }
+
+    @Test
+    public void testRequestWithErrorStatusReturnsBody() throws CaptchaRequestHandlerException {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withStatus(400).withBody("{ \"success\": false }"))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler();
+
+        assertEquals(request.request(configuration, "SomeResponse", ""), "{ \"success\": false }");
+    }
+
+    @Test
+    public void testRequestTimeout() {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(2000).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            Duration.ofSeconds(1),
+            Duration.ofMillis(200)
+        );
+
+        assertThrows(CaptchaRequestHandlerException.class, () -> request.request(configuration, "SomeResponse", ""));
+    }
+
+    @Test
+    public void testRequestWaitCountsTowardsTimeout() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(1800).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            HttpClient.newHttpClient(),
+            Duration.ofSeconds(3),
+            1
+        );
+        CompletableFuture<String> inFlight = CompletableFuture.supplyAsync(() -> {
+            try {
+                return request.request(configuration, "SomeResponse", "");
+            } catch (CaptchaRequestHandlerException e) {
+                throw new CompletionException(e);
+            }
+        });
+        Thread.sleep(300);
+
+        // The request waits about 1.5s for the connection, so the rest of its timeout is too short for the server
+        assertThrows(CaptchaRequestHandlerException.class, () -> request.request(configuration, "SomeResponse", ""));
+        assertEquals(inFlight.get(), this.successBody);
+    }
+
+    @Test
+    public void testRequestAsyncQueuesRequestsExceedingTheBound() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(50).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(5),
+            2
+        );
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(request.requestAsync(configuration, "SomeResponse", ""));
+        }
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals(result.get(), this.successBody);
+        }
+        this.wireMockServer.verify(6, postRequestedFor(urlPathEqualTo("/recaptcha/api/siteverify")));
+    }
+
+    @Test
+    public void testRequestAsyncRejectsRequestsExceedingTheQueueBound() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(200).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            HttpClient.newHttpClient(),
+            Duration.ofSeconds(5),
+            1,
+            1
+        );
+        CompletableFuture<String> inFlight = request.requestAsync(configuration, "SomeResponse", "");
+        CompletableFuture<String> queued = request.requestAsync(configuration, "SomeResponse", "");
+        CompletableFuture<String> rejected = request.requestAsync(configuration, "SomeResponse", "");
+
+        ExecutionException exception = expectThrows(ExecutionException.class, rejected::get);
+        assertTrue(exception.getCause() instanceof ConcurrencyLimitExceededException);
+        assertEquals(inFlight.get(), this.successBody);
+        assertEquals(queued.get(), this.successBody);
+        this.wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/recaptcha/api/siteverify")));
+    }
+
+    @Test
+    public void testRequestAsyncExpiresQueuedRequests() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(500).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            HttpClient.newHttpClient(),
+            Duration.ofSeconds(5),
+            1
+        );
+        CompletableFuture<String> inFlight = request.requestAsync(configuration, "SomeResponse", "");
+        CompletableFuture<String> timedOut = request.requestAsync(
+            configuration,
+            "SomeResponse",
+            "",
+            Deadline.after(Duration.ofMillis(50))
+        );
+
+        ExecutionException exception = expectThrows(ExecutionException.class, timedOut::get);
+        assertTrue(exception.getCause() instanceof DeadlineExceededException);
+        assertFalse(inFlight.isDone());
+        assertEquals(inFlight.get(), this.successBody);
+        this.wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/recaptcha/api/siteverify")));
+    }
+
+    @Test
+    public void testCancelledQueuedRequestsAreNotSent() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(200).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            HttpClient.newHttpClient(),
+            Duration.ofSeconds(5),
+            1,
+            1
+        );
+        CompletableFuture<String> inFlight = request.requestAsync(configuration, "SomeResponse", "");
+        CompletableFuture<String> cancelled = request.requestAsync(configuration, "SomeResponse", "");
+        assertTrue(cancelled.cancel(false));
+
+        // The cancelled request has left the queue, which frees its slot
+        CompletableFuture<String> queued = request.requestAsync(configuration, "SomeResponse", "");
+
+        assertEquals(inFlight.get(), this.successBody);
+        assertEquals(queued.get(), this.successBody);
+        this.wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/recaptcha/api/siteverify")));
+    }
+
+    @Test
+    public void testCancelledRequestReleasesItsSlot() throws Exception {
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withFixedDelay(2000).withBody(this.successBody))
+        );
+
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler(
+            HttpClient.newHttpClient(),
+            Duration.ofSeconds(5),
+            1
+        );
+        CompletableFuture<String> cancelled = request.requestAsync(configuration, "SomeResponse", "");
+        this.wireMockServer.stubFor(post(urlPathEqualTo("/recaptcha/api/siteverify"))
+            .willReturn(aResponse().withBody(this.successBody))
+        );
+        CompletableFuture<String> queued = request.requestAsync(configuration, "SomeResponse", "");
+        assertTrue(cancelled.cancel(true));
+
+        assertEquals(queued.get(1, TimeUnit.SECONDS), this.successBody);
+    }
+
+    @Test
+    public void testRequestAsyncWithUnreachableServer() {
+        CaptchaValidatorConfiguration configuration = new ValidatorConfiguration(
+            this.gReCaptchaTestSecret,
+            this.getMockedSiteVerifyURL()
+        );
+        this.wireMockServer.stop();
+
+        HttpClientCaptchaRequestHandler request = new HttpClientCaptchaRequestHandler();
+        CompletableFuture<String> result = request.requestAsync(configuration, "SomeResponse", "");
+
+        ExecutionException exception = expectThrows(ExecutionException.class, result::get);
+        assertTrue(exception.getCause() instanceof CaptchaRequestHandlerException);
+    }
+
+    @Test
+    public void testInvalidMaxConcurrentRequests() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new HttpClientCaptchaRequestHandler(Duration.ofSeconds(1), Duration.ofSeconds(1), 0)
+        );
+    }
+
+    @Test
+    public void testInvalidMaxPendingRequests() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new HttpClientCaptchaRequestHandler(HttpClient.newHttpClient(), Duration.ofSeconds(1), 1, 0)
+        );
+    }
+}